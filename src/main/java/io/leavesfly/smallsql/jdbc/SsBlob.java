@@ -0,0 +1,123 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * SsBlob.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.jdbc;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+import io.leavesfly.smallsql.lang.Language;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
+
+/**
+ * SmallSQL 的 Blob 实现类。
+ * <p>
+ * 数据不会一次性加载到内存，而是在读取时从表的 LOB 文件中按块读取。
+ * 这个 Blob 是只读的，修改方法会抛出不支持的异常。
+ */
+public class SsBlob implements Blob {
+
+    /**
+     * LOB 值的引用，调用 free() 后为 null
+     */
+    private LobLocator lob;
+
+    /**
+     * 创建一个 Blob 对象。
+     * 
+     * @param lob LOB 值的引用
+     */
+    SsBlob(LobLocator lob) {
+        this.lob = lob;
+    }
+
+    /**
+     * 获取 LOB 值的引用，如果已经释放则抛出异常。
+     */
+    private LobLocator getLob() throws SQLException {
+        if (lob == null) {
+            throw SmallSQLException.create(Language.LOB_DELETED);
+        }
+        return lob;
+    }
+
+    public long length() throws SQLException {
+        return getLob().length();
+    }
+
+    public byte[] getBytes(long pos, int length) throws SQLException {
+        return getLob().getBytes(Math.max(0, pos - 1), length);
+    }
+
+    public InputStream getBinaryStream() throws SQLException {
+        return getLob().getInputStream();
+    }
+
+    public InputStream getBinaryStream(long pos, long length) throws SQLException {
+        return getLob().getInputStream(Math.max(0, pos - 1), length);
+    }
+
+    /**
+     * 在 Blob 中查找字节模式，按块流式读取，不会一次性加载整个值。
+     * 
+     * @param start 开始查找的位置，从 1 开始
+     * @return 找到的位置（从 1 开始），没有找到则返回 -1
+     */
+    public long position(byte[] pattern, long start) throws SQLException {
+        long idx = getLob().position(pattern, start - 1);
+        return idx < 0 ? -1 : idx + 1;
+    }
+
+    public long position(Blob pattern, long start) throws SQLException {
+        return position(pattern.getBytes(1, (int) pattern.length()), start);
+    }
+
+    public int setBytes(long pos, byte[] bytes) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Blob.setBytes");
+    }
+
+    public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Blob.setBytes");
+    }
+
+    public OutputStream setBinaryStream(long pos) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Blob.setBinaryStream");
+    }
+
+    public void truncate(long len) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Blob.truncate");
+    }
+
+    public void free() {
+        lob = null;
+    }
+}
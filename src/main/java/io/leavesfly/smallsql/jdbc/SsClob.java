@@ -0,0 +1,135 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * SsClob.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.jdbc;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.SQLException;
+
+import io.leavesfly.smallsql.lang.Language;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
+
+/**
+ * SmallSQL 的 Clob 和 NClob 实现类。
+ * <p>
+ * 字符不会一次性加载到内存，而是在读取时从表的 LOB 文件中按块读取。
+ * 这个 Clob 是只读的，修改方法会抛出不支持的异常。
+ */
+public class SsClob implements NClob {
+
+    /**
+     * LOB 值的引用，调用 free() 后为 null
+     */
+    private LobLocator lob;
+
+    /**
+     * 创建一个 Clob 对象。
+     * 
+     * @param lob 字符 LOB 值的引用
+     */
+    SsClob(LobLocator lob) {
+        this.lob = lob;
+    }
+
+    /**
+     * 获取 LOB 值的引用，如果已经释放则抛出异常。
+     */
+    private LobLocator getLob() throws SQLException {
+        if (lob == null) {
+            throw SmallSQLException.create(Language.LOB_DELETED);
+        }
+        return lob;
+    }
+
+    public long length() throws SQLException {
+        return getLob().length();
+    }
+
+    public String getSubString(long pos, int length) throws SQLException {
+        return getLob().getString(Math.max(0, pos - 1), length);
+    }
+
+    public Reader getCharacterStream() throws SQLException {
+        LobLocator lob = getLob();
+        return lob.getReader(0, lob.length());
+    }
+
+    public Reader getCharacterStream(long pos, long length) throws SQLException {
+        return getLob().getReader(Math.max(0, pos - 1), length);
+    }
+
+    public InputStream getAsciiStream() throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Clob.getAsciiStream");
+    }
+
+    /**
+     * 在 Clob 中查找字符串，按块流式读取，不会一次性加载整个值。
+     * 
+     * @param start 开始查找的位置，从 1 开始
+     * @return 找到的位置（从 1 开始），没有找到则返回 -1
+     */
+    public long position(String searchstr, long start) throws SQLException {
+        long idx = getLob().position(searchstr, start - 1);
+        return idx < 0 ? -1 : idx + 1;
+    }
+
+    public long position(Clob searchstr, long start) throws SQLException {
+        return position(searchstr.getSubString(1, (int) searchstr.length()), start);
+    }
+
+    public int setString(long pos, String str) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Clob.setString");
+    }
+
+    public int setString(long pos, String str, int offset, int len) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Clob.setString");
+    }
+
+    public OutputStream setAsciiStream(long pos) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Clob.setAsciiStream");
+    }
+
+    public Writer setCharacterStream(long pos) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Clob.setCharacterStream");
+    }
+
+    public void truncate(long len) throws SQLException {
+        throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "Clob.truncate");
+    }
+
+    public void free() {
+        lob = null;
+    }
+}
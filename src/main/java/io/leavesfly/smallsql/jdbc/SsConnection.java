@@ -61,8 +61,17 @@ import io.leavesfly.smallsql.jdbc.statement.SsPreparedStatement;
 import io.leavesfly.smallsql.jdbc.statement.SsSavepoint;
 import io.leavesfly.smallsql.lang.Language;
 import io.leavesfly.smallsql.logger.Logger;
+import io.leavesfly.smallsql.rdb.command.StatementCache;
+import io.leavesfly.smallsql.rdb.command.dml.BulkLoader;
 import io.leavesfly.smallsql.rdb.engine.Database;
 import io.leavesfly.smallsql.rdb.engine.TransactionStep;
+import io.leavesfly.smallsql.rdb.engine.selector.RowBatch;
+import io.leavesfly.smallsql.rdb.engine.store.GroupCommit;
+import io.leavesfly.smallsql.rdb.engine.store.PageCache;
+import io.leavesfly.smallsql.rdb.engine.store.PageWriter;
+import io.leavesfly.smallsql.rdb.engine.store.VersionStore;
+import io.leavesfly.smallsql.rdb.engine.store.WriteAheadLog;
+import io.leavesfly.smallsql.rdb.engine.store.StorePage;
 
 /**
  * SmallSQL 数据库连接实现类。
@@ -99,7 +108,38 @@ public class SsConnection implements Connection {
      * 事务步骤列表，用于事务提交或回滚
      */
     private List<TransactionStep> commitPages = new ArrayList<TransactionStep>();
+
+    /**
+     * 第一个数据还在内存中的事务步骤，之前步骤的页数据已写入预写日志
+     */
+    private int spillStart;
+
+    /**
+     * 已计算内存大小的事务步骤的数量
+     */
+    private int spillChecked;
+
+    /**
+     * 从 spillStart 到 spillChecked 的事务步骤的页数据在内存中的大小（字节）
+     */
+    private long spillSize;
+
+    /**
+     * 当前事务是否已将页数据写入预写日志
+     */
+    private boolean isSpilled;
     
+    /**
+     * 可重复读和可串行化的事务读取数据的快照，在事务结束时释放
+     */
+    private VersionStore.Snapshot snapshot;
+
+    /**
+     * 本连接在所有表中持有的页锁（LOCK_READ 和 LOCK_WRITE）的数量，
+     * 快照读取只在有页锁时才查找自己未提交的数据
+     */
+    public int pageLockCount;
+
     /**
      * 事务开始的时间
      */
@@ -120,6 +160,51 @@ public class SsConnection implements Connection {
      */
     public final Logger log;
 
+    /**
+     * 连接属性，包括 URL 中的参数
+     */
+    private final Properties props;
+
+    /**
+     * 默认的工作内存大小（字节）
+     */
+    public static final long DEFAULT_WORK_MEMORY = 32L * 1024 * 1024;
+
+    /**
+     * 分组、排序等操作可使用的内存上限（字节），超过后溢出到临时文件
+     */
+    private final long workMemory;
+
+    /**
+     * 分组等操作每次读取的行数，由属性 "batchsize" 设置，0 表示逐行读取
+     */
+    private final int batchSize;
+
+    /**
+     * 一个查询并行扫描表时最多使用的线程数，由属性 "parallelism" 设置，1 表示不并行；默认为处理器的数量
+     */
+    private final int parallelism;
+
+    /**
+     * 持久性级别：提交的数据只写入操作系统缓存（默认）
+     */
+    public static final int DURABILITY_NONE = 0;
+
+    /**
+     * 持久性级别：每次提交后同步（fsync）所有写入的文件
+     */
+    public static final int DURABILITY_FSYNC = 1;
+
+    /**
+     * 持久性级别：并发的提交共享同一次文件同步（group commit）
+     */
+    public static final int DURABILITY_GROUP = 2;
+
+    /**
+     * 提交的持久性级别，由属性 "durability" 设置，取值为 none、fsync 或 group
+     */
+    private final int durability;
+
     /**
      * 构造一个新的数据库连接
      *
@@ -129,10 +214,34 @@ public class SsConnection implements Connection {
     public SsConnection(Properties props) throws SQLException {
         SmallSQLException.setLanguage(props.get("locale"));
         log = new Logger();
+        this.props = props;
+        String workMem = props.getProperty("workmemory");
+        try {
+            workMemory = (workMem == null) ? DEFAULT_WORK_MEMORY : Long.parseLong(workMem) * 1024;
+        } catch (NumberFormatException e) {
+            throw SmallSQLException.createFromException(e);
+        }
+        String batch = props.getProperty("batchsize");
+        try {
+            batchSize = (batch == null) ? RowBatch.DEFAULT_SIZE : Integer.parseInt(batch);
+        } catch (NumberFormatException e) {
+            throw SmallSQLException.createFromException(e);
+        }
+        String parallel = props.getProperty("parallelism");
+        try {
+            parallelism = (parallel == null) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(parallel);
+        } catch (NumberFormatException e) {
+            throw SmallSQLException.createFromException(e);
+        }
+        durability = parseDurability(props.getProperty("durability"));
         String name = props.getProperty("dbpath");
         readOnly = "true".equals(props.getProperty("readonly"));
         boolean create = "true".equals(props.getProperty("create"));
         database = Database.getDatabase(name, this, create);
+        if (database != null && "true".equals(props.getProperty("preload"))) {
+            // 在多个线程中预先打开所有的表和视图
+            database.preloadTables(this);
+        }
         metadata = new SsDatabaseMetaData(this);
     }
 
@@ -146,6 +255,108 @@ public class SsConnection implements Connection {
         database = con.database;
         metadata = con.metadata;
         log = con.log;
+        props = con.props;
+        workMemory = con.workMemory;
+        batchSize = con.batchSize;
+        parallelism = con.parallelism;
+        durability = con.durability;
+    }
+
+    /**
+     * 解析属性 "durability" 的值
+     *
+     * @param value none、fsync、group 或 null
+     * @return 持久性级别常量
+     * @throws SQLException 如果值无效
+     */
+    private static int parseDurability(String value) throws SQLException {
+        if (value == null || "none".equalsIgnoreCase(value)) {
+            return DURABILITY_NONE;
+        }
+        if ("fsync".equalsIgnoreCase(value)) {
+            return DURABILITY_FSYNC;
+        }
+        if ("group".equalsIgnoreCase(value)) {
+            return DURABILITY_GROUP;
+        }
+        throw SmallSQLException.create(Language.CUSTOM_MESSAGE, "Invalid value of property durability: " + value);
+    }
+
+    /**
+     * 获取提交的持久性级别
+     *
+     * @return DURABILITY_NONE、DURABILITY_FSYNC 或 DURABILITY_GROUP
+     */
+    public int getDurability() {
+        return durability;
+    }
+
+    /**
+     * 获取创建连接时使用的属性，包括 URL 中的参数
+     *
+     * @return 连接属性
+     */
+    public Properties getProperties() {
+        return props;
+    }
+
+    /**
+     * 获取分组、排序等操作可使用的内存上限，可通过 URL 参数 "workmemory"（单位 KB）设置
+     *
+     * @return 内存上限（字节）
+     */
+    public long getWorkMemory() {
+        return workMemory;
+    }
+
+    /**
+     * 获取分组等操作以批量方式（RowBatch）每次读取的行数，可通过 URL 参数 "batchsize" 设置
+     *
+     * @return 每批的行数，0 表示逐行读取
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 获取一个查询并行扫描表时最多使用的线程数，可通过 URL 参数 "parallelism" 设置
+     *
+     * @return 最大并行度，小于 2 表示顺序扫描
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 创建一个批量加载器，把CSV或二进制文件的行流式加载到表中，与 COPY 命令相同
+     *
+     * @param tableName 表名
+     * @return 批量加载器，设置选项后调用 load 加载数据
+     * @throws SQLException 如果连接已关闭
+     */
+    public BulkLoader createBulkLoader(String tableName) throws SQLException {
+        testClosedConnection();
+        return new BulkLoader(this, null, tableName);
+    }
+
+    /**
+     * 获取当前数据库中所有连接共享的语句缓存
+     *
+     * @return 语句缓存，如果连接已关闭或未连接到数据库则返回 null
+     */
+    public StatementCache getStatementCache() {
+        Database db = database;
+        return (isClosed() || db == null) ? null : db.getStatementCache();
+    }
+
+    /**
+     * 获取当前数据库中所有表、LOB 和索引文件共享的页缓存，可以读取命中、未命中和淘汰的计数
+     *
+     * @return 页缓存，如果连接已关闭或未连接到数据库则返回 null
+     */
+    public PageCache getPageCache() {
+        Database db = database;
+        return (isClosed() || db == null) ? null : db.getPageCache();
     }
 
     /**
@@ -230,6 +441,7 @@ public class SsConnection implements Connection {
             log.println("AutoCommit:" + autoCommit);
         if (this.autoCommit != autoCommit) {
             commit();
+            endSnapshot();
             this.autoCommit = autoCommit;
         }
     }
@@ -251,6 +463,92 @@ public class SsConnection implements Connection {
         testClosedConnection();
         synchronized (getMonitor()) {
             commitPages.add(storePage);
+            spillIfNeeded();
+        }
+    }
+
+    /**
+     * 如果未提交的页数据超过工作内存，则将其写入预写日志并从堆中移除。
+     * 提交时日志记录引用已写入的数据，因此大事务不需要在内存中保存所有修改的行。
+     *
+     * @throws SQLException 如果写入日志失败
+     */
+    public void spillIfNeeded() throws SQLException {
+        synchronized (getMonitor()) {
+            WriteAheadLog wal = database == null ? null : database.getWriteAheadLog();
+            int count = commitPages.size();
+            if (wal == null || count == 0) {
+                return;
+            }
+            // 最后一个步骤可能还在写入，它的大小每次重新计算
+            while (spillChecked < count - 1) {
+                spillSize += getMemorySize(commitPages.get(spillChecked++));
+            }
+            if (spillSize + getMemorySize(commitPages.get(count - 1)) <= workMemory) {
+                return;
+            }
+            if (!isSpilled) {
+                wal.beginSpill();
+                isSpilled = true;
+            }
+            wal.spill(commitPages.subList(spillStart, count));
+            spillStart = spillChecked = count - 1;
+            spillSize = 0;
+        }
+    }
+
+    /**
+     * 获取一个事务步骤的页数据在内存中的大小
+     */
+    private static long getMemorySize(TransactionStep step) {
+        return step instanceof StorePage ? ((StorePage) step).getMemorySize() : 0;
+    }
+
+    /**
+     * 在事务结束时重置溢出的状态
+     */
+    private void endSpill() {
+        spillStart = spillChecked = 0;
+        spillSize = 0;
+        if (isSpilled) {
+            isSpilled = false;
+            database.getWriteAheadLog().endSpill();
+        }
+    }
+
+    /**
+     * 获取读取数据的快照，读取时不请求页锁，写入的连接也不会被阻塞。
+     * READ_COMMITTED 读取每一页时最新的已提交数据；REPEATABLE_READ 和 SERIALIZABLE
+     * 读取事务第一次读取时的快照，它在事务结束时释放。自动提交模式下结果集在语句提交后才被读取，
+     * 所以快照在下一条语句开始时才释放
+     *
+     * @return 快照，如果是 READ_UNCOMMITTED 则返回 null
+     */
+    public VersionStore.Snapshot getSnapshot() {
+        if (isolationLevel <= TRANSACTION_READ_UNCOMMITTED || database == null) {
+            return null;
+        }
+        VersionStore versions = database.getVersionStore();
+        if (isolationLevel == TRANSACTION_READ_COMMITTED) {
+            return versions.getLatest();
+        }
+        synchronized (getMonitor()) {
+            if (snapshot == null) {
+                snapshot = versions.beginSnapshot();
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 释放事务的快照，只有它需要的旧版本可以被删除
+     */
+    public void endSnapshot() {
+        synchronized (getMonitor()) {
+            if (snapshot != null) {
+                snapshot.close();
+                snapshot = null;
+            }
         }
     }
 
@@ -264,19 +562,64 @@ public class SsConnection implements Connection {
         log.println("Commit");
         testClosedConnection();
         synchronized (getMonitor()) {
+            VersionStore.Commit version = null;
             try {
                 int count = commitPages.size();
+                // 先按文件批量写入所有页，其他步骤（如索引变更）需要新行的最终位置
+                // 有预写日志时，所有页先作为一条记录追加到日志，表文件由检查点同步
+                // 被覆盖的页的已提交数据先保存为版本，供不加锁的快照读取
+                version = database == null ? null : database.getVersionStore().beginCommit(workMemory);
+                PageWriter writer = new PageWriter(version);
+                WriteAheadLog wal = database == null ? null : database.getWriteAheadLog();
+                GroupCommit groupCommit = durability == DURABILITY_GROUP && database != null ? database.getGroupCommit() : null;
+                List<FileChannel> files;
+                if (groupCommit != null) {
+                    groupCommit.startWrite();
+                }
+                try {
+                    for (int i = 0; i < count; i++) {
+                        TransactionStep page = (TransactionStep) commitPages.get(i);
+                        if (page instanceof StorePage) {
+                            ((StorePage) page).commit(writer);
+                        }
+                    }
+                    files = wal == null ? writer.flush() : writer.flush(wal, durability == DURABILITY_FSYNC);
+                } finally {
+                    if (groupCommit != null) {
+                        groupCommit.endWrite();
+                    }
+                }
+                if (files.size() > 0) {
+                    if (groupCommit != null) {
+                        groupCommit.sync(files);
+                    } else if (durability == DURABILITY_FSYNC) {
+                        GroupCommit.force(files);
+                    }
+                }
                 for (int i = 0; i < count; i++) {
                     TransactionStep page = (TransactionStep) commitPages.get(i);
-                    page.commit();
+                    if (!(page instanceof StorePage)) {
+                        page.commit();
+                    }
+                }
+                // 在释放锁之前结束提交，同一页的下一个提交一定在它之后结束
+                if (version != null) {
+                    database.getVersionStore().endCommit(version);
                 }
                 for (int i = 0; i < count; i++) {
                     TransactionStep page = (TransactionStep) commitPages.get(i);
                     page.freeLock();
                 }
                 commitPages.clear();
+                endSpill();
+                if (!autoCommit) {
+                    endSnapshot();
+                }
                 transactionTime = System.currentTimeMillis();
             } catch (Throwable e) {
+                if (version != null) {
+                    database.getVersionStore().endCommit(version);
+                }
                 rollback();
                 throw SmallSQLException.createFromException(e);
             }
@@ -314,6 +657,13 @@ public class SsConnection implements Connection {
                 page.rollback();
                 page.freeLock();
             }
+            int count = commitPages.size();
+            if (spillChecked > count) {
+                // 被回滚的步骤不再计入内存大小，这只是一个估计
+                spillStart = Math.min(spillStart, count);
+                spillChecked = count;
+                spillSize = 0;
+            }
         }
     }
 
@@ -334,6 +684,10 @@ public class SsConnection implements Connection {
                 page.freeLock();
             }
             commitPages.clear();
+            endSpill();
+            if (!autoCommit) {
+                endSnapshot();
+            }
             transactionTime = System.currentTimeMillis();
         }
     }
@@ -346,6 +700,7 @@ public class SsConnection implements Connection {
     @Override
     public void close() throws SQLException {
         rollback();
+        endSnapshot();
         database = null;
         commitPages = null;
         Database.closeConnection(this);
@@ -436,6 +791,7 @@ public class SsConnection implements Connection {
         if (!metadata.supportsTransactionIsolationLevel(level)) {
             throw SmallSQLException.create(Language.ISOLATION_UNKNOWN, String.valueOf(level));
         }
+        endSnapshot();
         isolationLevel = level;
     }
 
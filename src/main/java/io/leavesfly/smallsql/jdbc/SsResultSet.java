@@ -37,10 +37,14 @@ import java.math.*;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.Map;
 import java.util.Calendar;
 import java.net.URL;
 
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
 import io.leavesfly.smallsql.jdbc.metadata.SsResultSetMetaData;
 import io.leavesfly.smallsql.jdbc.statement.SsStatement;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
@@ -50,6 +54,7 @@ import io.leavesfly.smallsql.rdb.command.dql.CommandSelect;
 import io.leavesfly.smallsql.rdb.sql.datatype.DateTime;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.expression.ExpressionValue;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.util.Utils;
 
 public class SsResultSet implements ResultSet {
@@ -240,7 +245,28 @@ public class SsResultSet implements ResultSet {
 	}
 
 	public InputStream getBinaryStream(int columnIndex) throws SQLException {
-		return new ByteArrayInputStream(getBytes(columnIndex));
+		LobLocator lob = getLob(columnIndex);
+		if (lob != null) {
+			return lob.getInputStream();
+		}
+		byte[] bytes = getBytes(columnIndex);
+		return bytes == null ? null : new ByteArrayInputStream(bytes);
+	}
+
+	/**
+	 * Get the reference to a LOB value of a table column. The value is read
+	 * on demand.
+	 * 
+	 * @return the reference or null if it is not a LOB value of a table
+	 */
+	private LobLocator getLob(int columnIndex) throws SQLException {
+		try {
+			LobLocator lob = getValue(columnIndex).getLob();
+			wasNull = false;
+			return lob;
+		} catch (Exception e) {
+			throw SmallSQLException.createFromException(e);
+		}
 	}
 
 	public String getString(String columnName) throws SQLException {
@@ -343,9 +369,12 @@ public class SsResultSet implements ResultSet {
 	}
 
 	public Reader getCharacterStream(int columnIndex) throws SQLException {
-		/** @todo: Implement this java.sql.ResultSet.getCharacterStream method */
-		throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION,
-				"getCharacterStream");
+		LobLocator lob = getLob(columnIndex);
+		if (lob != null) {
+			return lob.getReader(0, lob.length());
+		}
+		String str = getString(columnIndex);
+		return str == null ? null : new StringReader(str);
 	}
 
 	public Reader getCharacterStream(String columnName) throws SQLException {
@@ -781,15 +810,21 @@ public class SsResultSet implements ResultSet {
 	}
 
 	public Blob getBlob(int i) throws SQLException {
-		/** @todo: Implement this java.sql.ResultSet.getBlob method */
-		throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION,
-				"Blob object");
+		LobLocator lob = getLob(i);
+		if (lob != null) {
+			return new SsBlob(lob);
+		}
+		byte[] bytes = getBytes(i);
+		return bytes == null ? null : new SerialBlob(bytes);
 	}
 
 	public Clob getClob(int i) throws SQLException {
-		/** @todo: Implement this java.sql.ResultSet.getClob method */
-		throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION,
-				"Clob object");
+		LobLocator lob = getLob(i);
+		if (lob != null) {
+			return new SsClob(lob);
+		}
+		String str = getString(i);
+		return str == null ? null : new SerialClob(str.toCharArray());
 	}
 
 	public Array getArray(int i) throws SQLException {
@@ -1071,14 +1106,19 @@ public class SsResultSet implements ResultSet {
 
 	@Override
 	public NClob getNClob(int columnIndex) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		LobLocator lob = getLob(columnIndex);
+		if (lob != null) {
+			return new SsClob(lob);
+		}
+		if (getString(columnIndex) == null) {
+			return null;
+		}
+		throw SmallSQLException.create(Language.UNSUPPORTED_OPERATION, "NClob object");
 	}
 
 	@Override
 	public NClob getNClob(String columnLabel) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		return getNClob(findColumn(columnLabel));
 	}
 
 	@Override
@@ -1121,14 +1161,12 @@ public class SsResultSet implements ResultSet {
 
 	@Override
 	public Reader getNCharacterStream(int columnIndex) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		return getCharacterStream(columnIndex);
 	}
 
 	@Override
 	public Reader getNCharacterStream(String columnLabel) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		return getCharacterStream(findColumn(columnLabel));
 	}
 
 	@Override
@@ -898,6 +898,21 @@ public final class SsDatabaseMetaData implements DatabaseMetaData {
         }
     }
 
+    /**
+     * SmallSQL扩展：返回表文件的页统计。DEAD_PAGES是已删除的行和不再被引用的旧版本行，
+     * DEAD_PAGE_RATIO是死页占所有页的比例。COMPACT TABLE会移除所有死页。
+     */
+    public ResultSet getTableStatistics(String catalog, String schema, String table) throws SQLException {
+        try {
+            String[] colNames = {"TABLE_CAT", "TABLE_SCHEM", "TABLE_NAME", "PAGES", "DEAD_PAGES", "DEAD_PAGE_RATIO",
+                    "DEAD_SIZE", "FREE_PAGES"};
+            Object[][] data = con.getDatabase(false).getTableStatistics(con, table);
+            return new SsResultSet(st, Utils.createMemoryCommandSelect(con, colNames, data));
+        } catch (Exception e) {
+            throw SmallSQLException.createFromException(e);
+        }
+    }
+
     public boolean supportsResultSetType(int type) {
         switch (type) {
             case ResultSet.TYPE_FORWARD_ONLY:
@@ -41,8 +41,8 @@ import java.net.URL;
 
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.jdbc.metadata.SsResultSetMetaData;
+import io.leavesfly.smallsql.rdb.command.dml.CommandInsert;
 import io.leavesfly.smallsql.rdb.command.dql.CommandSelect;
-import io.leavesfly.smallsql.rdb.sql.SQLParser;
 import io.leavesfly.smallsql.rdb.sql.datatype.DateTime;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
@@ -51,7 +51,7 @@ import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 
 public class SsPreparedStatement extends SsStatement implements PreparedStatement {
  
-	private ArrayList batches;
+	private ArrayList<ExpressionValue[]> batches;
 	private final int top; // value of an optional top expression
 
 	public SsPreparedStatement(SsConnection con, String sql) throws SQLException {
@@ -62,8 +62,7 @@ public class SsPreparedStatement extends SsStatement implements PreparedStatemen
 			int rsConcurrency) throws SQLException {
 		super(con, rsType, rsConcurrency);
 		con.log.println(sql);
-		SQLParser parser = new SQLParser();
-		cmd = parser.parse(con, sql);
+		cmd = createCommand(sql);
 		top = cmd.getMaxRows();
 	}
 
@@ -219,7 +218,7 @@ public class SsPreparedStatement extends SsStatement implements PreparedStatemen
 				values[i] = (ExpressionValue) params.get(i).clone();
 			}
 			if (batches == null)
-				batches = new ArrayList();
+				batches = new ArrayList<ExpressionValue[]>();
 			batches.add(values);
 		} catch (Exception e) {
 			throw SmallSQLException.createFromException(e);
@@ -237,10 +236,41 @@ public class SsPreparedStatement extends SsStatement implements PreparedStatemen
 			return new int[0];
 		int[] result = new int[batches.size()];
 		BatchUpdateException failed = null;
+		if (cmd instanceof CommandInsert) {
+			SQLException[] errors = new SQLException[batches.size()];
+			try {
+				checkStatement();
+				if (((CommandInsert) cmd).executeBatch(con, this, batches, result, errors)) {
+					batches.clear();
+					for (int b = 0; b < errors.length; b++) {
+						SQLException ex = errors[b];
+						if (ex != null) {
+							if (failed == null) {
+								failed = new BatchUpdateException(ex.getMessage(),
+										ex.getSQLState(), ex.getErrorCode(), result);
+								failed.initCause(ex);
+							}
+							failed.setNextException(ex);
+						}
+					}
+					if (failed != null)
+						throw failed;
+					return result;
+				}
+			} catch (BatchUpdateException ex) {
+				throw ex;
+			} catch (SQLException ex) {
+				batches.clear();
+				failed = new BatchUpdateException(ex.getMessage(),
+						ex.getSQLState(), ex.getErrorCode(), new int[0]);
+				failed.initCause(ex);
+				throw failed;
+			}
+		}
 		for (int b = 0; b < batches.size(); b++) {
 			try {
 				checkStatement();
-				ExpressionValue[] values = (ExpressionValue[]) batches.get(b);
+				ExpressionValue[] values = batches.get(b);
 				for (int i = 0; i < values.length; i++) {
 					((ExpressionValue) cmd.params.get(i)).set(values[i]);
 				}
@@ -264,9 +294,7 @@ public class SsPreparedStatement extends SsStatement implements PreparedStatemen
 	public void setCharacterStream(int parameterIndex, Reader reader, int length)
 			throws SQLException {
 		checkStatement();
-		/** @todo: Implement this java.sql.PreparedStatement method */
-		throw new java.lang.UnsupportedOperationException(
-				"Method setCharacterStream() not yet implemented.");
+		cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGVARCHAR, length);
 	}
 
 	public void setRef(int i, Ref x) throws SQLException {
@@ -278,16 +306,20 @@ public class SsPreparedStatement extends SsStatement implements PreparedStatemen
 
 	public void setBlob(int i, Blob x) throws SQLException {
 		checkStatement();
-		/** @todo: Implement this java.sql.PreparedStatement method */
-		throw new java.lang.UnsupportedOperationException(
-				"Method setBlob() not yet implemented.");
+		if (x == null) {
+			cmd.setParamValue(i, null, SQLTokenizer.LONGVARBINARY);
+		} else {
+			cmd.setParamValue(i, x.getBinaryStream(), SQLTokenizer.LONGVARBINARY, x.length());
+		}
 	}
 
 	public void setClob(int i, Clob x) throws SQLException {
 		checkStatement();
-		/** @todo: Implement this java.sql.PreparedStatement method */
-		throw new java.lang.UnsupportedOperationException(
-				"Method setClob() not yet implemented.");
+		if (x == null) {
+			cmd.setParamValue(i, null, SQLTokenizer.LONGVARCHAR);
+		} else {
+			cmd.setParamValue(i, x.getCharacterStream(), SQLTokenizer.LONGVARCHAR, x.length());
+		}
 	}
 
 	public void setArray(int i, Array x) throws SQLException {
@@ -416,35 +448,39 @@ public class SsPreparedStatement extends SsStatement implements PreparedStatemen
 	@Override
 	public void setNCharacterStream(int parameterIndex, Reader value,
 			long length) throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, value, SQLTokenizer.LONGNVARCHAR, length);
 	}
 
 	@Override
 	public void setNClob(int parameterIndex, NClob value) throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		if (value == null) {
+			cmd.setParamValue(parameterIndex, null, SQLTokenizer.LONGNVARCHAR);
+		} else {
+			cmd.setParamValue(parameterIndex, value.getCharacterStream(), SQLTokenizer.LONGNVARCHAR, value.length());
+		}
 	}
 
 	@Override
 	public void setClob(int parameterIndex, Reader reader, long length)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGVARCHAR, length);
 	}
 
 	@Override
 	public void setBlob(int parameterIndex, InputStream inputStream, long length)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, inputStream, SQLTokenizer.LONGVARBINARY, length);
 	}
 
 	@Override
 	public void setNClob(int parameterIndex, Reader reader, long length)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGNVARCHAR, length);
 	}
 
 	@Override
@@ -457,68 +493,68 @@ public class SsPreparedStatement extends SsStatement implements PreparedStatemen
 	@Override
 	public void setAsciiStream(int parameterIndex, InputStream x, long length)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARCHAR, length);
 	}
 
 	@Override
 	public void setBinaryStream(int parameterIndex, InputStream x, long length)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARBINARY, length);
 	}
 
 	@Override
 	public void setCharacterStream(int parameterIndex, Reader reader,
 			long length) throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGVARCHAR, length);
 	}
 
 	@Override
 	public void setAsciiStream(int parameterIndex, InputStream x)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARCHAR, -1);
 	}
 
 	@Override
 	public void setBinaryStream(int parameterIndex, InputStream x)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, x, SQLTokenizer.LONGVARBINARY, -1);
 	}
 
 	@Override
 	public void setCharacterStream(int parameterIndex, Reader reader)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGVARCHAR, -1);
 	}
 
 	@Override
 	public void setNCharacterStream(int parameterIndex, Reader value)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, value, SQLTokenizer.LONGNVARCHAR, -1);
 	}
 
 	@Override
 	public void setClob(int parameterIndex, Reader reader) throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGVARCHAR, -1);
 	}
 
 	@Override
 	public void setBlob(int parameterIndex, InputStream inputStream)
 			throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, inputStream, SQLTokenizer.LONGVARBINARY, -1);
 	}
 
 	@Override
 	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
-		// TODO Auto-generated method stub
-
+		checkStatement();
+		cmd.setParamValue(parameterIndex, reader, SQLTokenizer.LONGNVARCHAR, -1);
 	}
 }
\ No newline at end of file
@@ -40,6 +40,7 @@ import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.lang.Language;
 import io.leavesfly.smallsql.rdb.command.Command;
+import io.leavesfly.smallsql.rdb.command.StatementCache;
 
 /**
  * SmallSQL 数据库 Statement 实现类。
@@ -61,6 +62,11 @@ public class SsStatement implements Statement {
      */
     Command cmd;
 
+    /**
+     * 如果 cmd 来自语句缓存或可以放入语句缓存，则为对应的缓存项，否则为 null
+     */
+    private StatementCache.CachedCommand cachedCmd;
+
     /**
      * Statement 是否已关闭
      */
@@ -199,13 +205,15 @@ public class SsStatement implements Statement {
         generatedKeys = null;
         try {
             con.log.println(sql);
-            SQLParser parser = new SQLParser();
-            cmd = parser.parse(con, sql);
+            releaseCommand();
+            cmd = createCommand(sql);
             if (maxRows != 0
                     && (cmd.getMaxRows() == -1 || cmd.getMaxRows() > maxRows))
                 cmd.setMaxRows(maxRows);
             cmd.execute(con, this);
         } catch (Exception e) {
+            // 执行失败的命令可能处于不完整的状态，不再放回缓存
+            cachedCmd = null;
             throw SmallSQLException.createFromException(e);
         }
         needGeneratedKeys = false;
@@ -213,12 +221,51 @@ public class SsStatement implements Statement {
         generatedKeyNames = null;
     }
 
+    /**
+     * 解析 SQL 语句。如果语句缓存中有同一连接可用的命令，则直接重用该命令，
+     * 不需要再次解析和编译。
+     *
+     * @param sql 要解析的 SQL 语句
+     * @return 可以执行的命令对象
+     * @throws SQLException 如果解析过程中发生错误
+     */
+    final Command createCommand(String sql) throws SQLException {
+        StatementCache cache = con.getStatementCache();
+        if (cache == null) {
+            return new SQLParser().parse(con, sql);
+        }
+        String key = StatementCache.normalize(sql);
+        cachedCmd = cache.get(con, key, rsType, rsConcurrency);
+        if (cachedCmd != null) {
+            return cachedCmd.getCommand();
+        }
+        SQLParser parser = new SQLParser();
+        Command command = parser.parse(con, sql);
+        if (parser.isCacheable()) {
+            cachedCmd = cache.create(con, key, rsType, rsConcurrency, command,
+                    parser.getDependencies());
+        }
+        return command;
+    }
+
+    /**
+     * 将当前的命令放回语句缓存，之后该命令可以被同一连接的其他 Statement 重用
+     */
+    final void releaseCommand() {
+        StatementCache.CachedCommand cached = cachedCmd;
+        if (cached != null) {
+            cachedCmd = null;
+            cached.release();
+        }
+    }
+
     /**
      * 关闭 Statement 对象并释放相关资源
      */
     final public void close() {
         con.log.println("Statement.close");
         isClosed = true;
+        releaseCommand();
         cmd = null;
         // TODO make Resources free;
     }
@@ -155,6 +155,7 @@ public class Language {
 	public static final String FILE_TOONEW = "SS-0490";
 	public static final String FILE_TOOOLD = "SS-0491";
 	public static final String FILE_CANT_DELETE = "SS-0492";
+	public static final String FILE_LOAD_INVALID = "SS-0493";
 
 	public static final String ROW_0_ABSOLUTE = "SS-0520";
 	public static final String ROW_NOCURRENT = "SS-0521";
@@ -453,6 +454,7 @@ public class Language {
 			{ FILE_TOONEW, "File version ({0}) of file ''{1}'' is too new for this runtime." },
 			{ FILE_TOOOLD, "File version ({0}) of file ''{1}'' is too old for this runtime." },
 			{ FILE_CANT_DELETE, "File ''{0}'' can't be deleted." },
+			{ FILE_LOAD_INVALID, "Invalid data in row {0} of the loaded data." },
 
 			{ ROW_0_ABSOLUTE, "Row 0 is invalid for method absolute()." }, { ROW_NOCURRENT, "No current row." },
 			{ ROWS_WRONG_MAX, "Wrong max rows value: {0}." }, { ROW_LOCKED, "Row is locked from another Connection." },
@@ -537,6 +539,7 @@ public class Language {
 			{ INDEX_CORRUPT, "01000" }, { INDEX_TOOMANY_EQUALS, "01000" },
 
 			{ FILE_TOONEW, "01000" }, { FILE_TOOOLD, "01000" }, { FILE_CANT_DELETE, "01000" },
+			{ FILE_LOAD_INVALID, "01000" },
 
 			{ ROW_0_ABSOLUTE, "01000" }, { ROW_NOCURRENT, "01000" }, { ROWS_WRONG_MAX, "01000" },
 			{ ROW_LOCKED, "01000" }, { ROW_DELETED, "01000" },
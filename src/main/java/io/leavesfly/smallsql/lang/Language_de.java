@@ -148,6 +148,7 @@ public class Language_de extends Language {
             { FILE_TOONEW                     , "Dateiversion ({0}) der Datei ''{1}'' ist zu neu für diese Laufzeitbibliothek." },
             { FILE_TOOOLD                     , "Dateiversion ({0}) der Datei ''{1}'' ist zu alt für diese Laufzeitbibliothek." },
             { FILE_CANT_DELETE                , "Datei ''{0}'' kann nicht gelöscht werden." },
+            { FILE_LOAD_INVALID               , "Ungültige Daten in Zeile {0} der geladenen Daten." },
 
             { ROW_0_ABSOLUTE                  , "Datensatz 0 ist ungültig für die Methode absolute()." },
             { ROW_NOCURRENT                   , "Kein aktueller Datensatz." },
@@ -149,6 +149,7 @@ public class Language_it extends Language {
 { FILE_TOONEW                     , "La versione ({0}) del file ''{1}'' è troppo recente per questo runtime." },
 { FILE_TOOOLD                     , "La versione ({0}) del file ''{1}'' è troppo vecchia per questo runtime." },
 { FILE_CANT_DELETE                , "File ''(0)'' non possono essere eliminati." },
+{ FILE_LOAD_INVALID               , "Dati non validi nella riga {0} dei dati caricati." },
 
 { ROW_0_ABSOLUTE                  , "Il numero di riga 0 non è valido per il metodo ''absolute()''." },
 { ROW_NOCURRENT                   , "Nessuna riga corrente." },
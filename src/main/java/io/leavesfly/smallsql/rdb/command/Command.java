@@ -129,7 +129,7 @@ public abstract class Command {
 	/**
 	 * Set value of a PreparedStatement parameter. The idx starts with 1.
 	 */
-	public void setParamValue(int idx, Object value, int dataType, int length) throws SQLException {
+	public void setParamValue(int idx, Object value, int dataType, long length) throws SQLException {
 		getParam(idx).set(value, dataType, length);
 		if (log.isLogging()) {
 			log.println("param" + idx + '=' + value + "; type=" + dataType + "; length=" + length);
@@ -138,6 +138,10 @@ public abstract class Command {
 
 	public final void execute(SsConnection con, SsStatement st) throws SQLException {
 		int savepoint = con.getSavepoint();
+		if (con.getAutoCommit()) {
+			// the ResultSet of the last statement is not read anymore
+			con.endSnapshot();
+		}
 		try {
 			executeImpl(con, st);
 		} catch (Throwable e) {
@@ -0,0 +1,373 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * StatementCache.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.command;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.rdb.engine.Database;
+import io.leavesfly.smallsql.rdb.engine.View;
+
+/**
+ * A memory bounded cache of parsed and compiled commands that is shared by all
+ * connections of one database. The key is the normalized SQL text of the
+ * statement. A compiled command hold references to the connection that has
+ * compile it, that a cached command is only reused from the same connection.
+ * <p>
+ * A command is taken from the cache while a statement use it and is returned
+ * to the cache if the statement is closed or execute another SQL. The entries
+ * are evicted in LRU order if the estimated memory is larger as the max size.
+ * <p>
+ * Every cached command save the timestamps of the tables and views that it
+ * use. If any table or view was created, dropped or altered since the command
+ * was parsed then the command is discarded and the SQL must be parsed again.
+ *
+ * @see io.leavesfly.smallsql.jdbc.statement.SsStatement
+ */
+public final class StatementCache {
+
+	/** The default size in bytes if nothing is set on the connection URL. */
+	public static final long DEFAULT_SIZE = 4L * 1024 * 1024;
+
+	/** Estimated memory of a command without the size of the SQL text. */
+	private static final int ENTRY_OVERHEAD = 1024;
+
+	/** Estimated memory per character of the SQL text. */
+	private static final int CHAR_OVERHEAD = 32;
+
+	/** key is the normalized SQL, value is a list of free CachedCommand */
+	private final LinkedHashMap<String, ArrayList<CachedCommand>> entries = new LinkedHashMap<String, ArrayList<CachedCommand>>(
+			16, 0.75f, true);
+
+	private final long maxSize;
+	private long usedSize;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Create a new cache.
+	 *
+	 * @param maxSize
+	 *            the maximum estimated memory in bytes of the cached commands.
+	 *            A value of 0 disable the cache.
+	 */
+	public StatementCache(long maxSize) {
+		this.maxSize = Math.max(0, maxSize);
+	}
+
+	/**
+	 * Create the key of a SQL statement. Sequences of whitespace outside of
+	 * quotes are replaced with a single space. If the SQL contains comments
+	 * then only the leading and trailing whitespace is removed because a line
+	 * break can end a comment.
+	 */
+	public static String normalize(String sql) {
+		int length = sql.length();
+		StringBuilder builder = new StringBuilder(length);
+		char quote = 0;
+		boolean space = false;
+		for (int i = 0; i < length; i++) {
+			char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+				builder.append(c);
+				continue;
+			}
+			switch (c) {
+			case '\'':
+			case '\"':
+				quote = c;
+				break;
+			case '[':
+				quote = ']';
+				break;
+			case '-':
+			case '/':
+				if (i + 1 < length && sql.charAt(i + 1) == (c == '-' ? '-' : '*')) {
+					return sql.trim();
+				}
+				break;
+			default:
+				if (Character.isWhitespace(c)) {
+					space = builder.length() > 0;
+					continue;
+				}
+			}
+			if (space) {
+				builder.append(' ');
+				space = false;
+			}
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Take a free command from the cache. The command is removed from the cache
+	 * until it is returned with {@link CachedCommand#release()}. The commands
+	 * are validated outside of the monitor of the cache because the validation
+	 * request the tables and views from the database.
+	 *
+	 * @param con
+	 *            the connection that want execute the command
+	 * @param key
+	 *            the normalized SQL
+	 * @param rsType
+	 *            the result set type of the statement
+	 * @param rsConcurrency
+	 *            the result set concurrency of the statement
+	 * @return the command or null if there is no valid command in the cache
+	 */
+	public CachedCommand get(SsConnection con, String key, int rsType, int rsConcurrency) throws SQLException {
+		if (maxSize == 0) {
+			return null;
+		}
+		while (true) {
+			CachedCommand cached = take(con, key, rsType, rsConcurrency);
+			if (cached == null) {
+				return null;
+			}
+			boolean isValid = cached.isValid();
+			synchronized (this) {
+				if (isValid) {
+					hits++;
+					return cached;
+				}
+				// a table or view was changed, the command is dropped
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Remove a free command of the connection from the cache.
+	 *
+	 * @return the command or null if there is no command for this key
+	 */
+	private synchronized CachedCommand take(SsConnection con, String key, int rsType, int rsConcurrency) {
+		ArrayList<CachedCommand> list = entries.get(key);
+		if (list != null) {
+			for (int i = list.size() - 1; i >= 0; i--) {
+				CachedCommand cached = list.get(i);
+				if (cached.con == con && cached.rsType == rsType && cached.rsConcurrency == rsConcurrency) {
+					list.remove(i);
+					usedSize -= cached.size;
+					if (list.size() == 0) {
+						entries.remove(key);
+					}
+					return cached;
+				}
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Create a cache entry for a new parsed command. The entry is not added to
+	 * the cache until it is returned with {@link CachedCommand#release()}.
+	 *
+	 * @param dependencies
+	 *            the tables and views that the command use
+	 * @return the entry or null if the cache is disabled
+	 */
+	public CachedCommand create(SsConnection con, String key, int rsType, int rsConcurrency, Command cmd,
+			Dependency[] dependencies) {
+		if (maxSize == 0) {
+			return null;
+		}
+		return new CachedCommand(this, con, key, rsType, rsConcurrency, cmd, dependencies);
+	}
+
+	/**
+	 * Return a command to the cache after the statement has finish it. The
+	 * parameters and the max rows are reset to the state after parsing.
+	 */
+	synchronized void release(CachedCommand cached) {
+		Command cmd = cached.command;
+		cmd.clearParams();
+		cmd.setMaxRows(cached.maxRows);
+		cmd.rs = null;
+		ArrayList<CachedCommand> list = entries.get(cached.key);
+		if (list == null) {
+			list = new ArrayList<CachedCommand>(2);
+			entries.put(cached.key, list);
+		}
+		list.add(cached);
+		usedSize += cached.size;
+		Iterator<ArrayList<CachedCommand>> iterator = entries.values().iterator();
+		while (usedSize > maxSize && iterator.hasNext()) {
+			ArrayList<CachedCommand> eldest = iterator.next();
+			while (usedSize > maxSize && eldest.size() > 0) {
+				usedSize -= eldest.remove(0).size;
+				evictions++;
+			}
+			if (eldest.size() == 0) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove all commands of a connection. This must be call if the connection
+	 * is closed.
+	 */
+	public synchronized void removeConnection(SsConnection con) {
+		Iterator<ArrayList<CachedCommand>> iterator = entries.values().iterator();
+		while (iterator.hasNext()) {
+			ArrayList<CachedCommand> list = iterator.next();
+			for (int i = list.size() - 1; i >= 0; i--) {
+				CachedCommand cached = list.get(i);
+				if (cached.con == con) {
+					list.remove(i);
+					usedSize -= cached.size;
+				}
+			}
+			if (list.size() == 0) {
+				iterator.remove();
+			}
+		}
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/** The count of statements that could reuse a cached command. */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/** The count of statements that must be parsed. */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * The count of commands that was removed to make room for other commands or
+	 * because a table was changed.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	/** The estimated memory in bytes of the cached commands. */
+	public synchronized long getUsedSize() {
+		return usedSize;
+	}
+
+	/**
+	 * A table or view that a command use and the timestamp of the table or view
+	 * on parsing.
+	 */
+	public static final class Dependency {
+		private final String catalog;
+		private final String name;
+		private final View view;
+		private final long timestamp;
+
+		public Dependency(String catalog, String name, View view) {
+			this.catalog = catalog;
+			this.name = name;
+			this.view = view;
+			this.timestamp = view.getTimestamp();
+		}
+
+		/**
+		 * If the name resolve to the same unchanged table or view.
+		 */
+		boolean isValid(SsConnection con) {
+			try {
+				View current = Database.getTableView(con, catalog, name);
+				return current == view && current.getTimestamp() == timestamp;
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * A parsed command with all the information to reuse it.
+	 */
+	public static final class CachedCommand {
+		private final StatementCache cache;
+		private final SsConnection con;
+		private final String key;
+		private final int rsType;
+		private final int rsConcurrency;
+		private final Command command;
+		private final Dependency[] dependencies;
+		private final int maxRows;
+		private final int size;
+
+		CachedCommand(StatementCache cache, SsConnection con, String key, int rsType, int rsConcurrency,
+				Command command, Dependency[] dependencies) {
+			this.cache = cache;
+			this.con = con;
+			this.key = key;
+			this.rsType = rsType;
+			this.rsConcurrency = rsConcurrency;
+			this.command = command;
+			this.dependencies = dependencies;
+			this.maxRows = command.getMaxRows();
+			this.size = ENTRY_OVERHEAD + key.length() * CHAR_OVERHEAD;
+		}
+
+		public Command getCommand() {
+			return command;
+		}
+
+		/**
+		 * Return the command to the cache from which it was taken. Nothing
+		 * happens if the connection is already closed.
+		 */
+		public void release() {
+			if (!con.isClosed()) {
+				cache.release(this);
+			}
+		}
+
+		private boolean isValid() {
+			for (int i = 0; i < dependencies.length; i++) {
+				if (!dependencies[i].isValid(con)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -101,6 +101,8 @@ public final class CommandTable extends Command{
             database.createTable( con, name, columns, indexes, foreignKeys );
             break;
         case SQLTokenizer.ADD:
+        case SQLTokenizer.COMPACT:
+            // COMPACT TABLE is a copy without new columns, the new file has no dead pages
             con = new SsConnection(con);
             //TODO disable the transaction to reduce memory use.
             Table oldTable = (Table)database.getTableView( con, name);
@@ -0,0 +1,541 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BulkLoader.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.command.dml;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.leavesfly.smallsql.jdbc.SmallSQLException;
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.lang.Language;
+import io.leavesfly.smallsql.rdb.engine.Database;
+import io.leavesfly.smallsql.rdb.engine.Table;
+import io.leavesfly.smallsql.rdb.engine.View;
+import io.leavesfly.smallsql.rdb.engine.index.IndexDescriptions;
+import io.leavesfly.smallsql.rdb.engine.store.GroupCommit;
+import io.leavesfly.smallsql.rdb.engine.store.StoreImpl;
+import io.leavesfly.smallsql.rdb.engine.store.TableStorePageBatch;
+import io.leavesfly.smallsql.rdb.engine.store.TableStorePageInsert;
+import io.leavesfly.smallsql.rdb.engine.table.Column;
+import io.leavesfly.smallsql.rdb.sql.datatype.Strings;
+import io.leavesfly.smallsql.rdb.sql.expression.ExpressionValue;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
+
+/**
+ * Load the rows of a CSV or binary file into a table. The file is parsed in a
+ * producer thread, the values are encoded with the column encoders of
+ * StoreImpl into the pages of the new rows.
+ * <p>
+ * A CSV file has one row per line. The values are separated with the
+ * delimiter and can be quoted with double quotes. An empty value that is not
+ * quoted is NULL.
+ * <p>
+ * A binary file is a sequence of rows without a header. Every value starts
+ * with a byte that is 0 for NULL and 1 for a value. The value follows in the
+ * format of java.io.DataOutput: BIT and BOOLEAN with writeBoolean, TINYINT,
+ * SMALLINT and INT with writeInt, BIGINT with writeLong, REAL with writeFloat,
+ * FLOAT and DOUBLE with writeDouble, DATE, TIME and TIMESTAMP as milliseconds
+ * with writeLong. Binary values are written as int length and the bytes, all
+ * other values as int length and the UTF-8 bytes of its string value.
+ * <p>
+ * Without minimal logging all rows are one step of the current transaction
+ * like the rows of a batch INSERT. With minimal logging the table is locked,
+ * the rows are written directly to the file and the indexes are created
+ * again after the load. Rows that are written with minimal logging can not be
+ * rolled back and are not written to the write ahead log.
+ */
+public final class BulkLoader {
+
+	/** The count of rows that the parser hands over at once. */
+	private static final int CHUNK_SIZE = 1024;
+	/** The count of chunks that the parser can read ahead. */
+	private static final int QUEUE_SIZE = 16;
+	/** The count of rows that are written with one flush with minimal logging. */
+	private static final int FLUSH_SIZE = 16 * 1024;
+	/** Marks the end of the parsed rows. */
+	private static final Object[][] END = new Object[0][];
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final SsConnection con;
+	private final String catalog;
+	private final String tableName;
+	private Strings columns;
+	private boolean binary;
+	private char delimiter = ',';
+	private boolean header;
+	private boolean minimalLogging;
+
+	/**
+	 * Create a loader for a table.
+	 * 
+	 * @param catalog
+	 *            the database of the table or null for the current database
+	 */
+	public BulkLoader(SsConnection con, String catalog, String tableName) {
+		this.con = con;
+		this.catalog = catalog;
+		this.tableName = tableName;
+	}
+
+	/**
+	 * Set the columns of the values in the file. Columns that are not listed
+	 * get its default value.
+	 * 
+	 * @param columns
+	 *            the column names or null for all columns of the table
+	 */
+	public void setColumns(Strings columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * Set if the file is a binary file or a CSV file. The default is CSV.
+	 */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * Set the separator of the values of a CSV file. The default is a comma.
+	 */
+	public void setDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Set if the first line of a CSV file is a header that is skipped.
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * Set if the rows are written directly without a transaction and the
+	 * indexes are created once after the load.
+	 */
+	public void setMinimalLogging(boolean minimalLogging) {
+		this.minimalLogging = minimalLogging;
+	}
+
+	/**
+	 * Load all rows of the input into the table. If the connection is in auto
+	 * commit mode then the load is committed. If a row is invalid then the
+	 * complete load is rolled back, with minimal logging only the table lock.
+	 * 
+	 * @return the count of loaded rows
+	 */
+	public long load(InputStream input) throws SQLException {
+		int savepoint = con.getSavepoint();
+		try {
+			return loadImpl(input);
+		} catch (Throwable e) {
+			con.rollback(savepoint);
+			throw SmallSQLException.createFromException(e);
+		} finally {
+			if (con.getAutoCommit())
+				con.commit();
+		}
+	}
+
+	/**
+	 * Load all rows of the input without commit or rollback.
+	 */
+	long loadImpl(InputStream input) throws Exception {
+		View tableView = Database.getTableView(con, catalog, tableName);
+		if (!(tableView instanceof Table))
+			throw SmallSQLException.create(Language.VIEW_INSERT);
+		Table table = (Table) tableView;
+		int[] matrix = createMatrix(table);
+		int[] dataTypes = new int[columns == null ? matrix.length : columns.size()];
+		for (int c = 0; c < matrix.length; c++) {
+			if (matrix[c] >= 0) {
+				dataTypes[matrix[c]] = table.columns.get(c).getDataType();
+			}
+		}
+		RowReader reader = binary ? new BinaryReader(input, dataTypes) : new CsvReader(input, delimiter,
+				dataTypes.length, header);
+		Parser parser = new Parser(reader);
+		parser.start();
+		try {
+			return write(table, matrix, parser);
+		} finally {
+			parser.cancel();
+		}
+	}
+
+	/**
+	 * Create the mapping of the table columns to the values of a row of the
+	 * file, -1 for the default value.
+	 */
+	private int[] createMatrix(Table table) throws SQLException {
+		int count = table.columns.size();
+		int[] matrix = new int[count];
+		if (columns == null) {
+			for (int c = 0; c < count; c++) {
+				matrix[c] = c;
+			}
+			return matrix;
+		}
+		Arrays.fill(matrix, -1);
+		for (int i = 0; i < columns.size(); i++) {
+			String name = columns.get(i);
+			int idx = table.findColumnIdx(name);
+			if (idx < 0)
+				throw SmallSQLException.create(Language.COL_MISSING, name);
+			if (matrix[idx] >= 0)
+				throw SmallSQLException.create(Language.COL_DUPLICATE, name);
+			matrix[idx] = i;
+		}
+		return matrix;
+	}
+
+	/**
+	 * Encode the parsed rows into new pages of the table.
+	 */
+	private long write(Table table, int[] matrix, Parser parser) throws Exception {
+		final IndexDescriptions indexes = table.indexes;
+		TableStorePageBatch batch;
+		if (minimalLogging) {
+			// the table lock is hold until the end of the transaction
+			table.requestLock(con, SQLTokenizer.CREATE, -1);
+			// the rows are not logged, older log records must not be replayed
+			// over pages that the rows reuse
+			table.database.checkpoint();
+			batch = new TableStorePageBatch(con, table);
+		} else {
+			batch = table.getStoreInsertBatch(con);
+		}
+		StoreImpl store = StoreImpl.createBatchStore(batch);
+		ExpressionValue[] values = new ExpressionValue[parser.reader.fieldCount];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = new ExpressionValue();
+		}
+		long count = 0;
+		Object[][] chunk;
+		while ((chunk = parser.nextChunk()) != END) {
+			for (int r = 0; r < chunk.length; r++) {
+				Object[] row = chunk[r];
+				try {
+					for (int i = 0; i < values.length; i++) {
+						Object value = row[i];
+						values[i].set(value, value == null ? SQLTokenizer.NULL : -1);
+					}
+					store.startBatchRow();
+					for (int c = 0; c < matrix.length; c++) {
+						Column column = table.columns.get(c);
+						int idx = matrix[c];
+						store.writeExpression(idx >= 0 ? values[idx] : column.getDefaultValue(con), column);
+					}
+					TableStorePageInsert page = store.finishBatchRow();
+					if (!minimalLogging) {
+						for (int i = 0; i < indexes.size(); i++) {
+							indexes.get(i).writeFinish(con, store);
+						}
+					}
+					batch.add(page);
+				} catch (Exception e) {
+					throw SmallSQLException.createFromException(Language.FILE_LOAD_INVALID, Long.valueOf(count + 1), e);
+				}
+				if (++count % FLUSH_SIZE == 0 && minimalLogging) {
+					batch.flush();
+				}
+			}
+		}
+		if (minimalLogging) {
+			batch.flush();
+			if (con.getDurability() != SsConnection.DURABILITY_NONE) {
+				GroupCommit.force(Collections.singletonList(table.raFile));
+			}
+			for (int i = 0; i < indexes.size(); i++) {
+				indexes.get(i).rebuildIndex(con);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Read the rows of the file in its own thread and hand it over in chunks.
+	 */
+	private static final class Parser implements Runnable {
+
+		final RowReader reader;
+		private final ArrayBlockingQueue<Object[][]> queue = new ArrayBlockingQueue<Object[][]>(QUEUE_SIZE);
+		private volatile boolean isCancel;
+		private volatile SQLException error;
+
+		Parser(RowReader reader) {
+			this.reader = reader;
+		}
+
+		void start() {
+			Thread thread = new Thread(this, "SmallSQL bulk loader");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void run() {
+			try {
+				Object[][] chunk = new Object[CHUNK_SIZE][];
+				int size = 0;
+				Object[] row;
+				while (!isCancel && (row = reader.readRow()) != null) {
+					chunk[size++] = row;
+					if (size == CHUNK_SIZE) {
+						put(chunk);
+						chunk = new Object[CHUNK_SIZE][];
+						size = 0;
+					}
+				}
+				if (size > 0) {
+					put(Arrays.copyOf(chunk, size));
+				}
+			} catch (Throwable e) {
+				error = SmallSQLException.createFromException(Language.FILE_LOAD_INVALID, Long.valueOf(reader.rowNumber), e);
+			} finally {
+				try {
+					put(END);
+				} catch (InterruptedException e) {
+					// the loader does not wait anymore
+				}
+			}
+		}
+
+		private void put(Object[][] chunk) throws InterruptedException {
+			while (!isCancel && !queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+				// wait until the loader take the next chunk or cancel
+			}
+		}
+
+		/**
+		 * Get the next parsed rows.
+		 * 
+		 * @return the rows or END if there are no more rows
+		 */
+		Object[][] nextChunk() throws Exception {
+			Object[][] chunk = queue.take();
+			if (chunk == END && error != null) {
+				throw error;
+			}
+			return chunk;
+		}
+
+		/**
+		 * Stop the parsing, the parser thread ends after the current row.
+		 */
+		void cancel() {
+			isCancel = true;
+		}
+	}
+
+	/**
+	 * Read the values of one row after the other.
+	 */
+	private static abstract class RowReader {
+
+		final int fieldCount;
+		/** The number of the last read row. */
+		long rowNumber;
+
+		RowReader(int fieldCount) {
+			this.fieldCount = fieldCount;
+		}
+
+		/**
+		 * Read the next row.
+		 * 
+		 * @return the values of the row or null at the end of the file
+		 */
+		abstract Object[] readRow() throws Exception;
+	}
+
+	private static final class CsvReader extends RowReader {
+
+		private final Reader reader;
+		private final char delimiter;
+		private boolean header;
+		private final char[] buffer = new char[8192];
+		private int pos;
+		private int length;
+		private final StringBuilder value = new StringBuilder();
+
+		CsvReader(InputStream input, char delimiter, int fieldCount, boolean header) {
+			super(fieldCount);
+			this.reader = new InputStreamReader(input, UTF8);
+			this.delimiter = delimiter;
+			this.header = header;
+		}
+
+		private int read() throws IOException {
+			if (pos == length) {
+				length = reader.read(buffer, 0, buffer.length);
+				pos = 0;
+				if (length <= 0) {
+					length = 0;
+					return -1;
+				}
+			}
+			return buffer[pos++];
+		}
+
+		@Override
+		Object[] readRow() throws Exception {
+			int ch = read();
+			if (header) {
+				header = false;
+				while (ch >= 0 && ch != '\n') {
+					ch = read();
+				}
+				ch = read();
+			}
+			if (ch < 0) {
+				return null;
+			}
+			rowNumber++;
+			Object[] values = new Object[fieldCount];
+			int count = 0;
+			while (true) {
+				value.setLength(0);
+				boolean isQuoted = false;
+				if (ch == '"') {
+					isQuoted = true;
+					while ((ch = read()) >= 0) {
+						if (ch == '"') {
+							ch = read();
+							if (ch != '"') {
+								break; // end of the quoted value
+							}
+						}
+						value.append((char) ch);
+					}
+				}
+				while (ch >= 0 && ch != delimiter && ch != '\n' && ch != '\r') {
+					value.append((char) ch);
+					ch = read();
+				}
+				if (count == fieldCount) {
+					throw SmallSQLException.create(Language.COL_VAL_UNMATCH);
+				}
+				values[count++] = (isQuoted || value.length() > 0) ? value.toString() : null;
+				if (ch != delimiter) {
+					break;
+				}
+				ch = read();
+			}
+			if (ch == '\r' && read() != '\n' && length > 0) {
+				pos--; // a single CR is also a line end
+			}
+			if (count != fieldCount) {
+				throw SmallSQLException.create(Language.COL_VAL_UNMATCH);
+			}
+			return values;
+		}
+	}
+
+	private static final class BinaryReader extends RowReader {
+
+		private final DataInputStream input;
+		private final int[] dataTypes;
+
+		BinaryReader(InputStream input, int[] dataTypes) {
+			super(dataTypes.length);
+			this.input = new DataInputStream(new BufferedInputStream(input, 0x10000));
+			this.dataTypes = dataTypes;
+		}
+
+		@Override
+		Object[] readRow() throws Exception {
+			int flag = input.read();
+			if (flag < 0) {
+				return null;
+			}
+			rowNumber++;
+			Object[] values = new Object[fieldCount];
+			for (int i = 0; i < fieldCount; i++) {
+				if (i > 0) {
+					flag = input.readUnsignedByte();
+				}
+				if (flag != 0) {
+					values[i] = readValue(dataTypes[i]);
+				}
+			}
+			return values;
+		}
+
+		private Object readValue(int dataType) throws IOException {
+			switch (dataType) {
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				return Boolean.valueOf(input.readBoolean());
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+				return Integer.valueOf(input.readInt());
+			case SQLTokenizer.BIGINT:
+				return Long.valueOf(input.readLong());
+			case SQLTokenizer.REAL:
+				return Float.valueOf(input.readFloat());
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.DOUBLE:
+				return Double.valueOf(input.readDouble());
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+				return new Timestamp(input.readLong());
+			case SQLTokenizer.BINARY:
+			case SQLTokenizer.VARBINARY:
+			case SQLTokenizer.LONGVARBINARY:
+			case SQLTokenizer.BLOB:
+				return readBytes();
+			default:
+				return new String(readBytes(), UTF8);
+			}
+		}
+
+		private byte[] readBytes() throws IOException {
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * CommandCopy.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.command.dml;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.jdbc.statement.SsStatement;
+import io.leavesfly.smallsql.logger.Logger;
+import io.leavesfly.smallsql.rdb.command.Command;
+import io.leavesfly.smallsql.rdb.sql.datatype.Strings;
+
+/**
+ * The command COPY table [(column, ...)] FROM 'file' [CSV | BINARY]
+ * [DELIMITER 'char'] [HEADER] [MINIMAL_LOGGING]. It loads the rows of the file
+ * with a {@link BulkLoader}.
+ */
+public class CommandCopy extends Command {
+
+	private final String fileName;
+	/** The columns of the file or null for all columns of the table. */
+	public Strings columns;
+	public boolean binary;
+	public char delimiter = ',';
+	public boolean header;
+	public boolean minimalLogging;
+
+	public CommandCopy(Logger log, String catalog, String name, String fileName) {
+		super(log);
+		this.catalog = catalog;
+		this.name = name;
+		this.fileName = fileName;
+	}
+
+	public void executeImpl(SsConnection con, SsStatement st) throws Exception {
+		BulkLoader loader = new BulkLoader(con, catalog, name);
+		loader.setColumns(columns);
+		loader.setBinary(binary);
+		loader.setDelimiter(delimiter);
+		loader.setHeader(header);
+		loader.setMinimalLogging(minimalLogging);
+		InputStream input = new FileInputStream(fileName);
+		try {
+			updateCount = (int) loader.loadImpl(input);
+		} finally {
+			input.close();
+		}
+	}
+}
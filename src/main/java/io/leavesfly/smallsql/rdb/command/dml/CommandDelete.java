@@ -54,6 +54,8 @@ public class CommandDelete extends CommandSelect {
 	public void executeImpl(SsConnection con, SsStatement st) throws Exception {
 		compile(con);
 		TableViewResult result = TableViewResult.getTableViewResult(from);
+		// the deleted rows must be the current rows and not the rows of a snapshot
+		result.readSnapshot = false;
 		
 		updateCount = 0;
 		from.execute();
@@ -33,7 +33,9 @@
 package io.leavesfly.smallsql.rdb.command.dml;
 
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.List;
 
 import io.leavesfly.smallsql.rdb.engine.table.Column;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
@@ -49,7 +51,11 @@ import io.leavesfly.smallsql.rdb.command.dql.CommandSelect;
 import io.leavesfly.smallsql.rdb.engine.Table;
 import io.leavesfly.smallsql.rdb.engine.View;
 import io.leavesfly.smallsql.rdb.engine.index.IndexDescriptions;
+import io.leavesfly.smallsql.rdb.engine.selector.result.NoFromResult;
 import io.leavesfly.smallsql.rdb.engine.store.StoreImpl;
+import io.leavesfly.smallsql.rdb.engine.store.TableStorePageBatch;
+import io.leavesfly.smallsql.rdb.engine.store.TableStorePageInsert;
+import io.leavesfly.smallsql.rdb.sql.expression.ExpressionValue;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 import io.leavesfly.smallsql.util.Utils;
 
@@ -187,13 +193,10 @@ public class CommandInsert extends Command {
 					}
 				}
 				store.writeExpression(valueExpress, column);
-				for (int i = 0; i < indexes.size(); i++) {
-					indexes.get(i).writeExpression(c, valueExpress);
-				}
 			}
 			store.writeFinsh(con);
 			for (int i = 0; i < indexes.size(); i++) {
-				indexes.get(i).writeFinish(con);
+				indexes.get(i).writeFinish(con, store);
 			}
 			updateCount++;
 			if (needGeneratedKeys) {
@@ -205,4 +208,103 @@ public class CommandInsert extends Command {
 		}
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Insert the rows of a batch of parameter values. The insert lock is
+	 * requested once and all rows of the batch are one step of the
+	 * transaction. The rows are written from the parameter values of the batch
+	 * into one reusable page buffer. A row that fails is rolled back alone, the
+	 * other rows are inserted.
+	 * 
+	 * @param batches
+	 *            the parameter values of every row
+	 * @param result
+	 *            the update count of every row or Statement.EXECUTE_FAILED
+	 * @param errors
+	 *            the exception of every failed row
+	 * @return false if this INSERT can not be executed as batch, for example
+	 *         an INSERT SELECT or if generated keys are requested
+	 */
+	public boolean executeBatch(SsConnection con, SsStatement st, List<ExpressionValue[]> batches, int[] result,
+			SQLException[] errors) throws SQLException {
+		int savepoint = con.getSavepoint();
+		try {
+			if (table == null || tableTimestamp != table.getTimestamp())
+				compile(con);
+			if (!(cmdSel.from instanceof NoFromResult) || st.needGeneratedKeys()) {
+				return false;
+			}
+			// the parameter of every column that is a simple parameter
+			int[] paramIdx = new int[matrix.length];
+			boolean needParams = false;
+			for (int c = 0; c < matrix.length; c++) {
+				paramIdx[c] = -1;
+				int idx = matrix[c];
+				if (idx >= 0) {
+					paramIdx[c] = indexOfParam(cmdSel.columnExpressions.get(idx));
+					needParams |= paramIdx[c] < 0;
+				}
+			}
+
+			final IndexDescriptions indexes = table.indexes;
+			TableStorePageBatch batch = table.getStoreInsertBatch(con);
+			StoreImpl store = StoreImpl.createBatchStore(batch);
+			updateCount = 0;
+			for (int b = 0; b < batches.size(); b++) {
+				ExpressionValue[] values = batches.get(b);
+				int rowSavepoint = con.getSavepoint();
+				try {
+					for (int p = 0; p < values.length; p++) {
+						if (values[p].isEmpty())
+							throw SmallSQLException.create(Language.PARAM_EMPTY, Utils.getInteger(p + 1));
+						if (needParams)
+							((ExpressionValue) params.get(p)).set(values[p]);
+					}
+					store.startBatchRow();
+					for (int c = 0; c < matrix.length; c++) {
+						Column column = table.columns.get(c);
+						int idx = matrix[c];
+						Expression valueExpress;
+						if (paramIdx[c] >= 0) {
+							valueExpress = values[paramIdx[c]];
+						} else if (idx >= 0) {
+							valueExpress = cmdSel.columnExpressions.get(idx);
+						} else {
+							valueExpress = column.getDefaultValue(con);
+						}
+						store.writeExpression(valueExpress, column);
+					}
+					TableStorePageInsert row = store.finishBatchRow();
+					for (int i = 0; i < indexes.size(); i++) {
+						indexes.get(i).writeFinish(con, store);
+					}
+					batch.add(row);
+					result[b] = 1;
+					updateCount++;
+				} catch (Throwable e) {
+					con.rollback(rowSavepoint);
+					result[b] = Statement.EXECUTE_FAILED;
+					errors[b] = SmallSQLException.createFromException(e);
+				}
+			}
+			return true;
+		} catch (Throwable e) {
+			con.rollback(savepoint);
+			throw SmallSQLException.createFromException(e);
+		} finally {
+			if (con.getAutoCommit())
+				con.commit();
+		}
+	}
+
+	/**
+	 * Return the index of the parameter or -1 if the expression is not a
+	 * parameter of this command.
+	 */
+	private int indexOfParam(Expression expr) {
+		for (int p = 0; p < params.size(); p++) {
+			if (params.get(p) == expr)
+				return p;
+		}
+		return -1;
+	}
+}
@@ -33,19 +33,30 @@
 package io.leavesfly.smallsql.rdb.command.dql;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import io.leavesfly.smallsql.jdbc.SsResultSet;
 import io.leavesfly.smallsql.jdbc.statement.SsStatement;
 import io.leavesfly.smallsql.rdb.engine.RowSource;
+import io.leavesfly.smallsql.rdb.engine.Table;
+import io.leavesfly.smallsql.rdb.engine.index.IndexDescription;
+import io.leavesfly.smallsql.rdb.engine.index.IndexDescriptions;
 import io.leavesfly.smallsql.rdb.engine.selector.DataSource;
 import io.leavesfly.smallsql.rdb.engine.selector.Scrollable;
 import io.leavesfly.smallsql.rdb.engine.selector.multioper.Distinct;
 import io.leavesfly.smallsql.rdb.engine.selector.multioper.Join;
 import io.leavesfly.smallsql.rdb.engine.selector.multioper.Where;
 import io.leavesfly.smallsql.rdb.engine.selector.result.NoFromResult;
+import io.leavesfly.smallsql.rdb.engine.selector.result.TableResult;
+import io.leavesfly.smallsql.rdb.engine.selector.result.TableViewResult;
 import io.leavesfly.smallsql.rdb.engine.table.Columns;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
+import io.leavesfly.smallsql.rdb.sql.datatype.Strings;
 import io.leavesfly.smallsql.rdb.sql.expression.ExpressionName;
+import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionArithmetic;
+import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionInSelect;
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.lang.Language;
@@ -61,6 +72,13 @@ import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 
 public class CommandSelect extends Command {
 
+    /** The estimated count of page reads for the search of a value in an index. */
+    private static final double INDEX_SEARCH_COST = 4;
+    /** The cost of reading a single row with its offset compared to reading the next row of a full scan. */
+    private static final double RANDOM_READ_COST = 2;
+    /** The part of the rows that is expected for a single bound of a range like a < 5. */
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+
     private DataSources tables; // List of TableResult (Tables and Views)
     private Expression where;
     public RowSource from;
@@ -73,6 +91,8 @@ public class CommandSelect extends Command {
      * is set if the keyword DISTINCT is used
      */
     private boolean isDistinct;
+    /** The arrays of the new values for every table that are reused for every row of updateRow(). */
+    private Expression[][] updateValuesBuffer;
 
     public CommandSelect(Logger log) {
         super(log);
@@ -161,15 +181,19 @@ public class CommandSelect extends Command {
         }
 
         if (from instanceof Join) {
-            compileJoin((Join) from);
+            compileJoin((Join) from, con.getWorkMemory());
         }
 
         if (where != null) {
-            from = new Where(from, where);
+            Expression residual = compilePlan();
+            if (residual != null) {
+                from = new Where(from, residual);
+            }
         }
 
         if (isGroupResult()) {
-            from = new GroupResult(this, from, groupBy, having, orderBy);
+            from = new GroupResult(this, from, groupBy, having, orderBy, con.getWorkMemory(),
+                    con.getBatchSize(), con.getParallelism());
             if (having != null) {
                 from = new Where(from, having);
             }
@@ -180,7 +204,7 @@ public class CommandSelect extends Command {
         }
 
         if (orderBy != null) {
-            from = new SortedResult(from, orderBy);
+            from = new SortedResult(this, from, orderBy, con.getWorkMemory());
         }
 
         return true;
@@ -198,15 +222,19 @@ public class CommandSelect extends Command {
      * Set the link between the Named Expression and the Table object in the
      * condition. If there are cascade Joins then follow the tree with a
      * recursion.
+     *
+     * @param memoryLimit
+     *            the max size of the hash table of a hash join
      */
-    private void compileJoin(Join singleJoin) throws Exception {
+    private void compileJoin(Join singleJoin, long memoryLimit) throws Exception {
+        singleJoin.setMemoryLimit(memoryLimit);
         if (singleJoin.condition != null)
             compileLinkExpressionParams(singleJoin.condition);
         if (singleJoin.left instanceof Join) {
-            compileJoin((Join) singleJoin.left);
+            compileJoin((Join) singleJoin.left, memoryLimit);
         }
         if (singleJoin.right instanceof Join) {
-            compileJoin((Join) singleJoin.right);
+            compileJoin((Join) singleJoin.right, memoryLimit);
         }
     }
 
@@ -234,7 +262,7 @@ public class CommandSelect extends Command {
                     if (colIdx >= 0) {
                         // Column was find and now we set the DataSouce, column
                         // index and TableView.
-                        expr.setFrom(fromEntry, colIdx, table);
+                        compileSetFrom(expr, fromEntry, colIdx, table);
                         break;
                     } else
                         throw SmallSQLException.create(Language.COL_INVALID_NAME, new Object[]{expr.getName()});
@@ -258,7 +286,7 @@ public class CommandSelect extends Command {
                     // Column was find and now we set the DataSouce, column
                     // index and TableView.
                     isSetFrom = true;
-                    expr.setFrom(fromEntry, colIdx, table);
+                    compileSetFrom(expr, fromEntry, colIdx, table);
                 }
             }
             if (!isSetFrom) {
@@ -268,6 +296,17 @@ public class CommandSelect extends Command {
         compileLinkExpressionParams(expr);
     }
 
+    /**
+     * Link a named Expression to a column of a table source. A table is informed
+     * that the column is needed that it can skip the other columns on reading.
+     */
+    private static void compileSetFrom(ExpressionName expr, DataSource fromEntry, int colIdx, View table) {
+        expr.setFrom(fromEntry, colIdx, table);
+        if (fromEntry instanceof TableResult) {
+            ((TableResult) fromEntry).requireColumn(colIdx);
+        }
+    }
+
     private void compileLinkExpressionParams(Expression expr) throws Exception {
         // check sub Expression (parameters)
         Expression[] expParams = expr.getParams();
@@ -286,10 +325,296 @@ public class CommandSelect extends Command {
         expr.optimize();
     }
 
+    /**
+     * Plan the access to the tables of the FROM clause. The conditions of the WHERE that use only a single table are
+     * moved below the joins direct over the table. For every table the cheaper way of a full table scan or an index
+     * scan is chosen. The plan is part of the compiled command, it is reused on every execute of a
+     * PreparedStatement.
+     * 
+     * @return the part of the WHERE that must be verified after the joins or null if there is nothing
+     */
+    private Expression compilePlan() throws Exception {
+        ArrayList<Expression> conditions = new ArrayList<Expression>();
+        splitConjunction(where, conditions);
+        if (from instanceof TableResult) {
+            compileAccessPath((TableResult) from, conditions);
+            return where;
+        }
+        if (!(from instanceof Join)) {
+            return where;
+        }
+        from = compilePushDown(from, conditions, false);
+        Expression residual = null;
+        for (int i = 0; i < conditions.size(); i++) {
+            Expression condition = conditions.get(i);
+            residual = (residual == null) ? condition : new ExpressionArithmetic(residual, condition,
+                    ExpressionArithmetic.AND);
+        }
+        return residual;
+    }
+
+    /**
+     * Move the conditions that use only one table below the joins. A table on the side of an outer join that can
+     * be filled with NULL values is skipped because the WHERE must be verified after the outer join.
+     * 
+     * @param source
+     *            a node of the join tree
+     * @param conditions
+     *            the conditions that are not moved yet; moved conditions are removed
+     * @param isNullable
+     *            true if the rows of this node can be replaced with NULL values by an outer join
+     * @return the new node
+     */
+    private RowSource compilePushDown(RowSource source, List<Expression> conditions, boolean isNullable)
+            throws Exception {
+        if (source instanceof Join) {
+            Join join = (Join) source;
+            int type = join.getType();
+            join.left = compilePushDown(join.left, conditions, isNullable || type == Join.RIGHT_JOIN
+                    || type == Join.FULL_JOIN);
+            join.right = compilePushDown(join.right, conditions, isNullable || type == Join.LEFT_JOIN
+                    || type == Join.FULL_JOIN);
+            return join;
+        }
+        if (!(source instanceof TableResult) || isNullable) {
+            return source;
+        }
+        TableResult tableResult = (TableResult) source;
+        ArrayList<Expression> tableConditions = new ArrayList<Expression>();
+        Expression tableWhere = null;
+        for (int i = 0; i < conditions.size(); i++) {
+            Expression condition = conditions.get(i);
+            if (isTableCondition(condition, tableResult) == 1) {
+                conditions.remove(i--);
+                tableConditions.add(condition);
+                tableWhere = (tableWhere == null) ? condition : new ExpressionArithmetic(tableWhere, condition,
+                        ExpressionArithmetic.AND);
+            }
+        }
+        if (tableWhere == null) {
+            return source;
+        }
+        compileAccessPath(tableResult, tableConditions);
+        return new Where(tableResult, tableWhere);
+    }
+
+    /**
+     * Check if a condition use only columns of the given table.
+     * 
+     * @return 1 if there are columns only from this table, 0 if there are no columns, -1 if there are columns of
+     *         other tables or expressions that can not be moved like a sub select or an aggregate function.
+     */
+    private static int isTableCondition(Expression expr, TableResult tableResult) {
+        if (expr instanceof ExpressionInSelect || expr.getType() >= Expression.GROUP_BEGIN) {
+            return -1;
+        }
+        if (expr.getType() == Expression.NAME) {
+            return ((ExpressionName) expr).getDataSource() == tableResult ? 1 : -1;
+        }
+        int result = 0;
+        Expression[] params = expr.getParams();
+        if (params != null) {
+            for (int i = 0; i < params.length; i++) {
+                int paramResult = isTableCondition(params[i], tableResult);
+                if (paramResult < 0) {
+                    return -1;
+                }
+                result |= paramResult;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Choose between a full table scan and an index scan for a single table. The cost of a full scan is the count
+     * of rows. The cost of an index scan is the search in the index and a random read of every found row. The count
+     * of found rows is estimated from the distinct values of the index columns.
+     * 
+     * @param conditions
+     *            the conditions that must be true for every row of the table
+     */
+    private void compileAccessPath(TableResult tableResult, List<Expression> conditions) throws Exception {
+        View view = tableResult.getTableView();
+        if (!(view instanceof Table) || ((Table) view).indexes == null) {
+            return;
+        }
+        Table table = (Table) view;
+        IndexDescriptions indexes = table.indexes;
+        long rowCount = table.getRowCountEstimate();
+
+        // the columns with an equals condition
+        Strings equalsColumns = new Strings();
+        for (int c = 0; c < table.columns.size(); c++) {
+            if (findCondition(conditions, tableResult, c, ExpressionArithmetic.EQUALS) != null) {
+                equalsColumns.add(table.columns.get(c).getName());
+            }
+        }
+
+        IndexDescription bestIndex = null;
+        Expression[] bestPrefix = null;
+        Expression bestFrom = null;
+        Expression bestTo = null;
+        double bestCost = rowCount;
+        for (int i = 0; i < indexes.size(); i++) {
+            IndexDescription index = indexes.get(i);
+            if (!index.isUsable()) {
+                continue;
+            }
+            int columnCount = index.getColumns().size();
+            ArrayList<Expression> prefix = new ArrayList<Expression>();
+            Expression from = null;
+            Expression to = null;
+            for (int c = 0; c < columnCount; c++) {
+                int colIdx = index.getTableColumnIdx(c);
+                Expression value = findCondition(conditions, tableResult, colIdx, ExpressionArithmetic.EQUALS);
+                if (value != null) {
+                    prefix.add(value);
+                    continue;
+                }
+                if (index.isRangeUsable(c)) {
+                    from = findCondition(conditions, tableResult, colIdx, ExpressionArithmetic.GRE_EQU);
+                    to = findCondition(conditions, tableResult, colIdx, ExpressionArithmetic.LES_EQU);
+                }
+                break;
+            }
+            if (prefix.size() == 0 && from == null && to == null) {
+                continue;
+            }
+            double rows;
+            if (index.isUnique() && index.matchFactor(equalsColumns) != Integer.MAX_VALUE) {
+                rows = 1; // all columns of a unique index
+            } else {
+                rows = rowCount / index.getDistinctEstimate(prefix.size(), rowCount);
+                if (from != null) {
+                    rows *= RANGE_SELECTIVITY;
+                }
+                if (to != null) {
+                    rows *= RANGE_SELECTIVITY;
+                }
+            }
+            double cost = INDEX_SEARCH_COST + rows * RANDOM_READ_COST;
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestIndex = index;
+                bestPrefix = prefix.toArray(new Expression[prefix.size()]);
+                bestFrom = from;
+                bestTo = to;
+            }
+        }
+        if (bestIndex != null) {
+            tableResult.setIndexScan(bestIndex, bestPrefix, bestFrom, bestTo);
+        }
+    }
+
+    /**
+     * Split the AND operations of a condition.
+     */
+    private static void splitConjunction(Expression expr, List<Expression> conditions) {
+        if (expr instanceof ExpressionArithmetic && ((ExpressionArithmetic) expr).getOperation() == ExpressionArithmetic.AND) {
+            Expression[] params = expr.getParams();
+            splitConjunction(params[0], conditions);
+            splitConjunction(params[1], conditions);
+        } else {
+            conditions.add(expr);
+        }
+    }
+
+    /**
+     * Search a condition for a column with a constant value.
+     * 
+     * @param operation
+     *            EQUALS for an equals condition, GRE_EQU for a lower bound and LES_EQU for an upper bound
+     * @return the value or null if there is no such condition.
+     */
+    private static Expression findCondition(List<Expression> conditions, TableResult tableResult, int colIdx,
+            int operation) {
+        for (int i = 0; i < conditions.size(); i++) {
+            Expression expr = conditions.get(i);
+            if (!(expr instanceof ExpressionArithmetic)) {
+                continue;
+            }
+            Expression[] params = expr.getParams();
+            int op = ((ExpressionArithmetic) expr).getOperation();
+            if (op == ExpressionArithmetic.BETWEEN) {
+                if (isColumn(params[0], tableResult, colIdx) && isConstant(params[1]) && isConstant(params[2])) {
+                    if (operation == ExpressionArithmetic.GRE_EQU) {
+                        return params[1];
+                    }
+                    if (operation == ExpressionArithmetic.LES_EQU) {
+                        return params[2];
+                    }
+                }
+                continue;
+            }
+            if (params == null || params.length != 2) {
+                continue;
+            }
+            Expression value;
+            if (isColumn(params[0], tableResult, colIdx) && isConstant(params[1])) {
+                value = params[1];
+            } else if (isColumn(params[1], tableResult, colIdx) && isConstant(params[0])) {
+                value = params[0];
+                // the column is on the right side, swap the direction
+                switch (op) {
+                case ExpressionArithmetic.GREATER:
+                    op = ExpressionArithmetic.LESSER;
+                    break;
+                case ExpressionArithmetic.GRE_EQU:
+                    op = ExpressionArithmetic.LES_EQU;
+                    break;
+                case ExpressionArithmetic.LESSER:
+                    op = ExpressionArithmetic.GREATER;
+                    break;
+                case ExpressionArithmetic.LES_EQU:
+                    op = ExpressionArithmetic.GRE_EQU;
+                    break;
+                }
+            } else {
+                continue;
+            }
+            switch (op) {
+            case ExpressionArithmetic.EQUALS:
+                if (operation == ExpressionArithmetic.EQUALS) {
+                    return value;
+                }
+                break;
+            case ExpressionArithmetic.GREATER:
+            case ExpressionArithmetic.GRE_EQU:
+                // the bounds are inclusive, the WHERE remove the equals rows
+                if (operation == ExpressionArithmetic.GRE_EQU) {
+                    return value;
+                }
+                break;
+            case ExpressionArithmetic.LESSER:
+            case ExpressionArithmetic.LES_EQU:
+                if (operation == ExpressionArithmetic.LES_EQU) {
+                    return value;
+                }
+                break;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isColumn(Expression expr, TableResult tableResult, int colIdx) {
+        if (expr.getType() != Expression.NAME) {
+            return false;
+        }
+        ExpressionName name = (ExpressionName) expr;
+        return name.getDataSource() == tableResult && name.getColumnIndex() == colIdx;
+    }
+
+    /**
+     * If the value of the expression is the same for all rows. This are constants and parameters.
+     */
+    private static boolean isConstant(Expression expr) {
+        return expr.getType() == Expression.VALUE;
+    }
+
     private final int compileAdd_All_Table_Columns(DataSource fromEntry, View table, int position) {
         for (int k = 0; k < table.columns.size(); k++) {
             ExpressionName expr = new ExpressionName(table.columns.get(k).getName());
-            expr.setFrom(fromEntry, k, table);
+            compileSetFrom(expr, fromEntry, k, table);
             columnExpressions.add(position++, expr);
         }
         return position;
@@ -300,6 +625,13 @@ public class CommandSelect extends Command {
      */
     public void executeImpl(SsConnection con, SsStatement st) throws Exception {
         compile(con);
+        if (st.rsConcurrency == ResultSet.CONCUR_UPDATABLE) {
+            // the rows of an updatable ResultSet can be changed, they are not read from a snapshot
+            RowSource source = from instanceof Where ? ((Where) from).getFrom() : from;
+            if (source instanceof TableViewResult) {
+                ((TableViewResult) source).readSnapshot = false;
+            }
+        }
         if ((st.rsType == ResultSet.TYPE_SCROLL_INSENSITIVE || st.rsType == ResultSet.TYPE_SCROLL_SENSITIVE)
                 && !from.isScrollable()) {
             from = new Scrollable(from);
@@ -416,6 +748,23 @@ public class CommandSelect extends Command {
         return row;
     }
 
+    /**
+     * Get an empty array for the new values of the table with the index t. The array is only created on the first
+     * call or after a change of the table.
+     */
+    private Expression[] getUpdateValues(int t, int count) {
+        if (updateValuesBuffer == null || updateValuesBuffer.length != tables.size()) {
+            updateValuesBuffer = new Expression[tables.size()][];
+        }
+        Expression[] updateValues = updateValuesBuffer[t];
+        if (updateValues == null || updateValues.length != count) {
+            updateValues = updateValuesBuffer[t] = new Expression[count];
+        } else {
+            Arrays.fill(updateValues, null);
+        }
+        return updateValues;
+    }
+
     public final void updateRow(SsConnection con, Expression[] newRowSources) throws SQLException {
         int savepoint = con.getSavepoint();
         try {
@@ -427,7 +776,7 @@ public class CommandSelect extends Command {
                 int count = tableColumns.size();
 
                 // order the new Values after it position in the table
-                Expression[] updateValues = new Expression[count];
+                Expression[] updateValues = getUpdateValues(t, count);
                 boolean isUpdateNeeded = false;
                 for (int i = 0; i < columnExpressions.size(); i++) {
                     Expression src = newRowSources[i];
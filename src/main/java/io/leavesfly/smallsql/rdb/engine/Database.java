@@ -36,11 +36,21 @@ import java.util.*;
 import java.io.*;
 import java.nio.channels.FileChannel;
 import java.sql.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.rdb.command.StatementCache;
 import io.leavesfly.smallsql.rdb.command.ddl.CommandCreateDatabase;
 import io.leavesfly.smallsql.rdb.engine.index.IndexDescription;
 import io.leavesfly.smallsql.rdb.engine.index.IndexDescriptions;
+import io.leavesfly.smallsql.rdb.engine.store.GroupCommit;
+import io.leavesfly.smallsql.rdb.engine.store.PageCache;
+import io.leavesfly.smallsql.rdb.engine.store.VersionStore;
+import io.leavesfly.smallsql.rdb.engine.store.WriteAheadLog;
 import io.leavesfly.smallsql.rdb.engine.table.Column;
 import io.leavesfly.smallsql.rdb.engine.table.Columns;
 import io.leavesfly.smallsql.rdb.engine.table.ForeignKey;
@@ -64,11 +74,24 @@ public final class Database {
 	private static HashMap<String, Database> databases = new HashMap<String, Database>();
 
 	private final TableViewMap tableViews = new TableViewMap();
+	/**
+	 * Count of removed tables and views. A table that was loaded while the
+	 * count has changed can be outdated.
+	 */
+	private volatile int changeCount;
+	private final AtomicBoolean preloaded = new AtomicBoolean();
 	private final String name;
 	private final boolean readonly;
 	private final File directory;
 	private final FileChannel master;
 	private final WeakHashMap<SsConnection, ?> connections = new WeakHashMap();
+	private final PageCache pageCache;
+	private final StatementCache statementCache;
+	private final GroupCommit groupCommit = new GroupCommit();
+	/** The old versions of the row pages for the snapshot reads. */
+	private final VersionStore versionStore = new VersionStore();
+	/** The log of all commits, null if the database is read only. */
+	private final WriteAheadLog writeAheadLog;
 
 	/**
 	 * Get a instance of the Database Class. If the Database with the given name
@@ -103,7 +126,7 @@ public final class Database {
 					CommandCreateDatabase command = new CommandCreateDatabase(con.log, name);
 					command.execute(con, null);
 				}
-				db = new Database(name, file, con.isReadOnly());
+				db = new Database(name, file, con.isReadOnly(), con.getProperties());
 				databases.put(dbKey, db);
 			}
 			db.connections.put(con, null);
@@ -124,13 +147,20 @@ public final class Database {
 	 *            the directory that is already canonical
 	 * @param readonly
 	 *            open database in read only mode
+	 * @param props
+	 *            the properties of the first connection, for example the
+	 *            "cachesize" in KB of the page cache and the
+	 *            "statementcache" in KB of the statement cache and the
+	 *            "checkpointsize" in KB of the write ahead log
 	 * @throws SQLException
 	 *             If can't open
 	 */
-	private Database(String name, File canonicalFile, boolean readonly) throws SQLException {
+	private Database(String name, File canonicalFile, boolean readonly, Properties props) throws SQLException {
 		try {
 			this.name = name;
 			this.readonly = readonly;
+			pageCache = new PageCache(getSizeProperty(props, "cachesize", PageCache.DEFAULT_SIZE));
+			statementCache = new StatementCache(getSizeProperty(props, "statementcache", StatementCache.DEFAULT_SIZE));
 			directory = canonicalFile;
 			if (!directory.isDirectory()) {
 				throw SmallSQLException.create(Language.DB_NONEXISTENT, name);
@@ -139,11 +169,35 @@ public final class Database {
 			if (!file.exists())
 				throw SmallSQLException.create(Language.DB_NOT_DIRECTORY, name);
 			master = Utils.openRaFile(file, readonly);
+			if (readonly) {
+				writeAheadLog = null;
+			} else {
+				// replay the commits of a previous crash before any table is opened
+				writeAheadLog = WriteAheadLog.open(directory,
+						getSizeProperty(props, "checkpointsize", WriteAheadLog.DEFAULT_CHECKPOINT_SIZE));
+			}
 		} catch (Exception e) {
 			throw SmallSQLException.createFromException(e);
 		}
 	}
 
+	/**
+	 * Get a size property of the connection URL that is set in KB.
+	 * 
+	 * @return the size in bytes or the default size if the property is not
+	 *         set
+	 * @throws SQLException
+	 *             if the value is not a number
+	 */
+	private static long getSizeProperty(Properties props, String key, long defaultSize) throws SQLException {
+		String value = props.getProperty(key);
+		try {
+			return (value == null) ? defaultSize : Long.parseLong(value) * 1024;
+		} catch (NumberFormatException e) {
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -152,6 +206,67 @@ public final class Database {
 		return readonly;
 	}
 
+	/**
+	 * Get the cache for the pages of all tables, lobs and indexes of this
+	 * database.
+	 */
+	public PageCache getPageCache() {
+		return pageCache;
+	}
+
+	/**
+	 * Get the cache for the parsed commands of all connections of this
+	 * database.
+	 */
+	public StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	/**
+	 * Get the shared sync of the files for connections with group commit.
+	 */
+	public GroupCommit getGroupCommit() {
+		return groupCommit;
+	}
+
+	/**
+	 * Get the old versions of the row pages that the snapshots of the running
+	 * transactions need.
+	 */
+	public VersionStore getVersionStore() {
+		return versionStore;
+	}
+
+	/**
+	 * Get the log of all commits.
+	 * 
+	 * @return the log or null if the database is read only
+	 */
+	public WriteAheadLog getWriteAheadLog() {
+		return writeAheadLog;
+	}
+
+	/**
+	 * Register a file of a table or LOBs that is logged in the write ahead
+	 * log.
+	 */
+	public void registerFile(FileChannel raFile, File file) {
+		if (writeAheadLog != null) {
+			writeAheadLog.register(raFile, file);
+		}
+	}
+
+	/**
+	 * Synchronize all written files and truncate the write ahead log. This
+	 * must be called before a file is deleted or renamed, else an old log
+	 * record can be replayed into a new file with the same name.
+	 */
+	public void checkpoint() throws SQLException {
+		if (writeAheadLog != null) {
+			writeAheadLog.checkpoint();
+		}
+	}
+
 	/**
 	 * Remove a connection from this database.
 	 */
@@ -162,6 +277,7 @@ public final class Database {
 				Database database = (Database) iterator.next();
 				WeakHashMap<?, ?> connections = database.connections;
 				connections.remove(con);
+				database.statementCache.removeConnection(con);
 				if (connections.size() == 0) {
 					try {
 						iterator.remove();
@@ -178,6 +294,10 @@ public final class Database {
 	 * Close all tables and views of this Database.
 	 */
 	private final void close() throws Exception {
+		if (writeAheadLog != null) {
+			// the tables must be open for the last checkpoint
+			writeAheadLog.close();
+		}
 		synchronized (tableViews) {
 			Iterator iterator = tableViews.values().iterator();
 			while (iterator.hasNext()) {
@@ -195,7 +315,8 @@ public final class Database {
 
 	/**
 	 * Return a TableView object. If the TableView object is not loaded then it
-	 * load it.
+	 * load it. A loaded object is returned without any lock. The loading block
+	 * only other threads that request the same name.
 	 * 
 	 * @param con
 	 * @param tableName
@@ -204,17 +325,99 @@ public final class Database {
 	 *             if the table or view does not exists
 	 */
 	public View getTableView(SsConnection con, String tableName) throws SQLException {
-		synchronized (tableViews) {
-			View tableView = tableViews.get(tableName);
-			if (tableView == null) {
-				// FIXME it should block only one table and not all tables,
-				// loading of the table should outside of the global
-				// synchronized
-				tableView = View.load(con, this, tableName);
-				tableViews.put(tableName, tableView);
-			}
+		View tableView = tableViews.get(tableName);
+		if (tableView != null) {
 			return tableView;
 		}
+		Object loadLock = tableViews.getLoadLock(tableName);
+		try {
+			synchronized (loadLock) {
+				while (true) {
+					tableView = tableViews.get(tableName);
+					if (tableView != null) {
+						return tableView;
+					}
+					int count = changeCount;
+					View loaded;
+					try {
+						loaded = View.load(con, this, tableName);
+					} catch (SQLException e) {
+						if (count != changeCount) {
+							// the file was replaced while loading
+							continue;
+						}
+						throw e;
+					}
+					synchronized (tableViews) {
+						tableView = tableViews.get(tableName);
+						if (tableView == null && count == changeCount) {
+							tableViews.put(tableName, loaded);
+							return loaded;
+						}
+					}
+					// a DDL command has changed the table while loading
+					try {
+						loaded.close();
+					} catch (Exception e) {
+						throw SmallSQLException.createFromException(e);
+					}
+					if (tableView != null) {
+						return tableView;
+					}
+				}
+			}
+		} finally {
+			tableViews.removeLoadLock(tableName, loadLock);
+		}
+	}
+
+	/**
+	 * Load all tables and views of this database with multiple threads. Only
+	 * the first call has an effect. Errors are ignored, they occur again on the
+	 * first use of the table.
+	 * 
+	 * @param con
+	 *            the connection that open the database, every thread use its
+	 *            own copy
+	 */
+	public void preloadTables(final SsConnection con) {
+		if (!preloaded.compareAndSet(false, true)) {
+			return;
+		}
+		Strings names = getTables(null);
+		int threadCount = Math.min(names.size(), Runtime.getRuntime().availableProcessors());
+		if (threadCount == 0) {
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "SmallSQL preload " + name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (int i = 0; i < names.size(); i++) {
+				final String tableName = names.get(i);
+				tasks.add(new Callable<Object>() {
+					public Object call() throws Exception {
+						SsConnection copy = new SsConnection(con);
+						try {
+							getTableView(copy, tableName);
+						} finally {
+							copy.rollback();
+						}
+						return null;
+					}
+				});
+			}
+			executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+		}
 	}
 
 	public static void dropTable(SsConnection con, String catalog, String tableName) throws Exception {
@@ -223,6 +426,8 @@ public final class Database {
 
 	public void dropTable(SsConnection con, String tableName) throws Exception {
 		synchronized (tableViews) {
+			checkpoint();
+			changeCount++;
 			Table table = (Table) tableViews.get(tableName);
 			if (table != null) {
 				tableViews.remove(tableName);
@@ -241,20 +446,23 @@ public final class Database {
 	 */
 	public void removeTableView(String tableViewName) {
 		synchronized (tableViews) {
+			changeCount++;
 			tableViews.remove(tableViewName);
 		}
 	}
 
 	public void replaceTable(Table oldTable, Table newTable) throws Exception {
 		synchronized (tableViews) {
+			checkpoint();
+			changeCount++;
 			tableViews.remove(oldTable.name);
 			tableViews.remove(newTable.name);
 			oldTable.close();
 			newTable.close();
 			File oldFile = oldTable.getFile(this);
 			File newFile = newTable.getFile(this);
-			File tmpFile = new File(Utils.createTableViewFileName(this,
-					"#" + System.currentTimeMillis() + this.hashCode()));
+			String tmpName = "#" + System.currentTimeMillis() + this.hashCode();
+			File tmpFile = new File(Utils.createTableViewFileName(this, tmpName));
 			if (!oldFile.renameTo(tmpFile)) {
 				throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
 			}
@@ -262,7 +470,25 @@ public final class Database {
 				tmpFile.renameTo(oldFile); // restore the old table
 				throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
 			}
+
+			// the LOB data of the new table must follow its rows, else the rows
+			// of a copy from ALTER TABLE or COMPACT TABLE point into the old LOB file
+			File oldLobFile = new File(Utils.createLobFileName(this, oldTable.name));
+			File newLobFile = new File(Utils.createLobFileName(this, newTable.name));
+			File tmpLobFile = new File(Utils.createLobFileName(this, tmpName));
+			if (oldLobFile.exists() && !oldLobFile.renameTo(tmpLobFile)) {
+				oldFile.renameTo(newFile);
+				tmpFile.renameTo(oldFile); // restore the old table
+				throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
+			}
+			if (newLobFile.exists() && !newLobFile.renameTo(oldLobFile)) {
+				tmpLobFile.renameTo(oldLobFile);
+				oldFile.renameTo(newFile);
+				tmpFile.renameTo(oldFile); // restore the old table
+				throw SmallSQLException.create(Language.TABLE_CANT_RENAME, oldTable.name);
+			}
 			tmpFile.delete();
+			tmpLobFile.delete();
 		}
 	}
 
@@ -272,6 +498,7 @@ public final class Database {
 
 	void dropView(String viewName) throws Exception {
 		synchronized (tableViews) {
+			changeCount++;
 			Object view = tableViews.remove(viewName);
 			if (view != null && !(view instanceof ViewTable))
 				throw SmallSQLException.create(Language.VIEWDROP_NOT_VIEW, viewName);
@@ -526,6 +753,37 @@ public final class Database {
 		return result;
 	}
 
+	/**
+	 * Count the dead pages of the tables. A dead page is a deleted row or an
+	 * old version of a relocated row that is not referenced anymore.
+	 * 
+	 * @see Table#getPageStatistics()
+	 */
+	public Object[][] getTableStatistics(SsConnection con, String table) throws Exception {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		Strings tables = getTables(table);
+		for (int t = 0; t < tables.size(); t++) {
+			String tableName = tables.get(t);
+			View tab = getTableView(con, tableName);
+			if (!(tab instanceof Table))
+				continue;
+			long[] pages = ((Table) tab).getPageStatistics();
+			Object[] row = new Object[8];
+			row[0] = getName(); // TABLE_CAT
+								// TABLE_SCHEM
+			row[2] = tableName; // TABLE_NAME
+			row[3] = Long.valueOf(pages[0]); // PAGES
+			row[4] = Long.valueOf(pages[1]); // DEAD_PAGES
+			row[5] = Double.valueOf(pages[0] == 0 ? 0 : (double) pages[1] / pages[0]); // DEAD_PAGE_RATIO
+			row[6] = Long.valueOf(pages[2]); // DEAD_SIZE
+			row[7] = Utils.getInteger(((Table) tab).getFreeSpace().size()); // FREE_PAGES
+			rows.add(row);
+		}
+		Object[][] result = new Object[rows.size()][];
+		rows.toArray(result);
+		return result;
+	}
+
 	public Object[][] getIndexInfo(SsConnection con, String table, boolean unique) throws SQLException {
 		List rows = new ArrayList();
 		Strings tables = getTables(table);
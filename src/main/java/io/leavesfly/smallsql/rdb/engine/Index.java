@@ -40,6 +40,7 @@ import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.util.datastruct.LongTreeList;
+import io.leavesfly.smallsql.util.datastruct.LongTreeListEnum;
 
 
 /**
@@ -223,6 +224,176 @@ public class Index{
 	}
 
 	
+	/**
+	 * Add the rowOffsets of all values with the key prefix and in the range from - to of the next column to the list.
+	 * The bounds are inclusive. The range can only be used for data types with a fixed count of digits like numbers
+	 * and dates.
+	 * 
+	 * @param prefix
+	 *            the values of the first index columns, can be an empty array. NULL values does not return any rows.
+	 * @param from
+	 *            the lower bound of the next column or null
+	 * @param to
+	 *            the upper bound of the next column or null
+	 * @param rows
+	 *            the list that receive the rowOffsets
+	 */
+	public final void findRows(Expression[] prefix, Expression from, Expression to, LongTreeList rows) throws Exception{
+		IndexNode page = rootPage;
+		for(int i = 0; i < prefix.length; i++){
+			page = findRows(page, prefix[i], false, null);
+			if(page == null)
+				return;
+			Object value = page.getValue();
+			if(!(value instanceof IndexNode)){
+				// last column of the index
+				addRows(value, rows);
+				return;
+			}
+			page = (IndexNode)value;
+		}
+		if(from == null && to == null){
+			addRows(page, rows);
+			return;
+		}
+		if((from != null && from.isNull()) || (to != null && to.isNull()))
+			return;
+		int dataType = (from != null ? from : to).getDataType();
+		int digitCount = getDigitCount(dataType);
+		if(digitCount < 0 || (from != null && to != null && digitCount != getDigitCount(to.getDataType())))
+			throw new Error(String.valueOf(dataType));
+		long fromKey = (from != null) ? getFixedKey(from) : 0;
+		long toKey = (to != null) ? getFixedKey(to) : 0;
+		findRange(page, 0, digitCount, fromKey, from != null, toKey, to != null, rows);
+	}
+	
+	
+	/**
+	 * Returns the count of 16 bit digits of a key for the data type or -1 if the data type has a variable length
+	 * or is not ordered like the values.
+	 */
+	public static int getDigitCount(int dataType){
+		switch(dataType){
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+				return 1;
+			case SQLTokenizer.REAL:
+			case SQLTokenizer.INT:
+				return 2;
+			case SQLTokenizer.DOUBLE:
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				return 4;
+			default:
+				return -1;
+		}
+	}
+	
+	
+	final static private long getFixedKey(Expression expr) throws Exception{
+		switch(expr.getDataType()){
+			case SQLTokenizer.REAL:
+				return floatToBinarySortOrder( expr.getFloat());
+			case SQLTokenizer.DOUBLE:
+			case SQLTokenizer.FLOAT:
+				return doubleToBinarySortOrder( expr.getDouble());
+			case SQLTokenizer.TINYINT:
+				return expr.getInt();
+			case SQLTokenizer.SMALLINT:
+				return shortToBinarySortOrder( expr.getInt());
+			case SQLTokenizer.INT:
+				return intToBinarySortOrder( expr.getInt());
+			default:
+				return longToBinarySortOrder( expr.getLong());
+		}
+	}
+	
+	
+	/**
+	 * Scan the child nodes of node in the range fromKey - toKey.
+	 * @param level the count of digits that are already consumed by the path to node.
+	 */
+	final private void findRange(IndexNode node, int level, int digitCount, long fromKey, boolean hasFrom, long toKey, boolean hasTo, LongTreeList rows) throws Exception{
+		char fromDigit = getDigit(fromKey, level, digitCount);
+		char toDigit = getDigit(toKey, level, digitCount);
+		IndexNode[] nodes = node.getChildNodes();
+		for(int i = 0; i < nodes.length; i++){
+			IndexNode child = nodes[i];
+			char digit = child.getDigit();
+			if(hasFrom && digit < fromDigit)
+				continue;
+			if(hasTo && digit > toDigit)
+				break;
+			boolean isFrom = hasFrom && digit == fromDigit;
+			boolean isTo = hasTo && digit == toDigit;
+			char[] remainder = child.getRemainderValue();
+			if(remainder != null){
+				if(isFrom && compare(remainder, fromKey, level + 1, digitCount) < 0)
+					continue;
+				if(isTo && compare(remainder, toKey, level + 1, digitCount) > 0)
+					continue;
+				addRows(child.getValue(), rows);
+			}else if(level + 1 == digitCount){
+				addRows(child.getValue(), rows);
+			}else{
+				findRange(child, level + 1, digitCount, fromKey, isFrom, toKey, isTo, rows);
+			}
+		}
+	}
+	
+	
+	final static private char getDigit(long key, int level, int digitCount){
+		return (char)(key >> ((digitCount - 1 - level) << 4));
+	}
+	
+	
+	final static private int compare(char[] remainder, long key, int level, int digitCount){
+		for(int i = 0; i < remainder.length; i++){
+			char digit = getDigit(key, level + i, digitCount);
+			if(remainder[i] != digit)
+				return remainder[i] - digit;
+		}
+		return 0;
+	}
+	
+	
+	/**
+	 * Add all rowOffsets of a value of an IndexNode. If the value is the root of the next column then the complete
+	 * sub tree is added.
+	 */
+	final static private void addRows(Object value, LongTreeList rows) throws SQLException{
+		if(value == null)
+			return;
+		if(value instanceof Long){
+			rows.add(((Long)value).longValue());
+		}else if(value instanceof LongTreeList){
+			LongTreeList list = (LongTreeList)value;
+			LongTreeListEnum listEnum = new LongTreeListEnum();
+			long rowOffset;
+			while((rowOffset = list.getNext(listEnum)) >= 0){
+				rows.add(rowOffset);
+			}
+		}else{
+			addRows((IndexNode)value, rows);
+		}
+	}
+	
+	
+	final static private void addRows(IndexNode node, LongTreeList rows) throws SQLException{
+		addRows(node.getValue(), rows);
+		IndexNode[] nodes = node.getChildNodes();
+		for(int i = 0; i < nodes.length; i++){
+			addRows(nodes[i], rows);
+		}
+	}
+	
+
 	/**
 	 * Add a value to the index.
 	 * @param rowOffset Is the value that is save in the index. It is typical a row number or a rowOffset.
@@ -297,20 +468,31 @@ public class Index{
 	}
 	
 	
-	final void removeValue( long rowOffset, Expressions expressions ) throws Exception{
+	/**
+	 * Remove a value from the index. If the value is not in the index then nothing occur.
+	 * @param rowOffset the value that was saved with addValues()
+	 * @param expressions the key of the value.
+	 */
+	public final void removeValue( long rowOffset, Expressions expressions ) throws Exception{
 		ArrayList nodeList = new ArrayList();
 		Object obj = findRows(expressions, true, nodeList);
+		if(obj == null) return;
+		IndexNode node = (IndexNode)nodeList.get(nodeList.size()-1);
 		if(!rootPage.getUnique()){
 			LongTreeList list = (LongTreeList)obj;
 			list.remove(rowOffset);
+			node.setChanged();
 			if(list.getSize() > 0) return;
+		}else if(((Long)obj).longValue() != rowOffset){
+			return;
 		}
-		IndexNode node = (IndexNode)nodeList.get(nodeList.size()-1);
 		node.clearValue();
 		for(int i = nodeList.size()-2; i >= 0; i--){
 			if(!node.isEmpty())
 				break;
 			IndexNode parent = (IndexNode)nodeList.get(i);
+			if(parent.getChildNode( node.getDigit() ) != node)
+				break; // start of the next column of a multi column index
 			parent.removeNode( node.getDigit() );
 			node = parent;
 		}
@@ -393,7 +575,8 @@ public class Index{
 			if(node == null) return null;
 			if(nodeList != null) nodeList.add(node);
 			if(++i == length){
-				return node;
+				// a node with a remainder is the end of a longer key
+				return node.getRemainderValue() == null ? node : null;
 			}
 
 			if(equals(node.getRemainderValue(), key, i)){
@@ -452,6 +635,62 @@ public class Index{
 	 ================================================================*/
 	
 	
+	/**
+	 * Get the key of the current value of the expression in the order of this index. Fixed size values are
+	 * returned as Long that must be compared unsigned, all other values as String that must be compared
+	 * char by char. Sorting rows by this keys give the same order as scrolling through an index. 
+	 * @return the key or null for a NULL value
+	 */
+	public static Object getSortKey(Expression expr) throws Exception{
+		if(expr.isNull()){
+			return null;
+		}
+		switch(expr.getDataType()){
+			case SQLTokenizer.REAL:
+				return Long.valueOf( floatToBinarySortOrder( expr.getFloat()) & 0xFFFFFFFFL );
+			case SQLTokenizer.DOUBLE:
+			case SQLTokenizer.FLOAT:
+				return Long.valueOf( doubleToBinarySortOrder( expr.getDouble()) );
+			case SQLTokenizer.TINYINT:
+				return Long.valueOf( expr.getInt() & 0xFFFFL );
+			case SQLTokenizer.SMALLINT:
+				return Long.valueOf( shortToBinarySortOrder( expr.getInt()) & 0xFFFFL );
+			case SQLTokenizer.INT:
+				return Long.valueOf( intToBinarySortOrder( expr.getInt()) & 0xFFFFFFFFL );
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.SMALLDATETIME:
+			case SQLTokenizer.MONEY:
+			case SQLTokenizer.SMALLMONEY:
+				return Long.valueOf( longToBinarySortOrder( expr.getLong()) );
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+			case SQLTokenizer.LONGVARCHAR:
+			case SQLTokenizer.LONGNVARCHAR:
+				return new String( stringToBinarySortOrder( expr.getString(), false ) );
+			case SQLTokenizer.NCHAR:
+			case SQLTokenizer.CHAR:
+				return new String( stringToBinarySortOrder( expr.getString(), true ) );
+			case SQLTokenizer.VARBINARY:
+			case SQLTokenizer.BINARY:
+			case SQLTokenizer.LONGVARBINARY:
+			case SQLTokenizer.BLOB:
+			case SQLTokenizer.UNIQUEIDENTIFIER:
+				return new String( bytesToBinarySortOrder( expr.getBytes()) );
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+				return Long.valueOf( expr.getBoolean() ? 2 : 1 );
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+				return new String( numericToBinarySortOrder( expr.getNumeric()) );
+			default: 
+				throw new Error(String.valueOf(expr.getDataType()));
+		}
+	}
+	
+	
 	final static private int floatToBinarySortOrder(float value){
 		int intValue = Float.floatToIntBits(value);
 		return (intValue<0) ?
@@ -486,7 +725,13 @@ public class Index{
 		}
 		char[] puffer = new char[length];
 		for(int i=0; i<length; i++){
-			puffer[i] = Character.toLowerCase(Character.toUpperCase( value.charAt(i) ));
+			char c = value.charAt(i);
+			if(c < 0x80){
+				// ASCII, the most frequent characters of the compact string format
+				puffer[i] = (c >= 'A' && c <= 'Z') ? (char)(c + ('a' - 'A')) : c;
+			}else{
+				puffer[i] = Character.toLowerCase(Character.toUpperCase( c ));
+			}
 		}
 		return puffer;
 	}
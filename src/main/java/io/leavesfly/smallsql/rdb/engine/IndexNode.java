@@ -112,7 +112,7 @@ public class IndexNode {
 		return new IndexNode(unique, digit);
 	}
 
-	final char getDigit() {
+	public final char getDigit() {
 		return digit;
 	}
 
@@ -127,6 +127,7 @@ public class IndexNode {
 	 *            The digit must be in the range 0 between 255.
 	 */
 	final boolean isEmpty() {
+		ensureLoaded();
 		return nodes == EMPTY_NODES && value == null;
 	}
 
@@ -134,10 +135,14 @@ public class IndexNode {
 		nodes = EMPTY_NODES;
 		value = null;
 		remainderKey = null;
+		setChanged();
 	}
 
 	final void clearValue() {
+		ensureLoaded();
 		value = null;
+		remainderKey = null;
+		setChanged();
 	}
 
 	/**
@@ -147,10 +152,12 @@ public class IndexNode {
 	 *            The digit must be in the range 0 between 255.
 	 */
 	public final Object getValue() {
+		ensureLoaded();
 		return value;
 	}
 
 	public final IndexNode[] getChildNodes() {
+		ensureLoaded();
 		return nodes;
 	}
 
@@ -161,6 +168,7 @@ public class IndexNode {
 	 *            The digit must be in the range 0 between 255.
 	 */
 	final IndexNode getChildNode(char digit) {
+		ensureLoaded();
 		int pos = findNodePos(digit);
 		if (pos >= 0)
 			return nodes[pos];
@@ -168,6 +176,7 @@ public class IndexNode {
 	}
 
 	final char[] getRemainderValue() {
+		ensureLoaded();
 		return remainderKey;
 	}
 
@@ -178,12 +187,14 @@ public class IndexNode {
 	 *            The digit must be in the range 0 between 255.
 	 */
 	final IndexNode addNode(char digit) throws SQLException {
+		ensureLoaded();
 		if (remainderKey != null)
 			moveRemainderValue();
 		int pos = findNodePos(digit);
 		if (pos == -1) {
 			IndexNode node = createIndexNode(unique, digit);
 			saveNode(node);
+			setChanged();
 			return node;
 		} else {
 			return nodes[pos];
@@ -197,6 +208,7 @@ public class IndexNode {
 	 *            The digit must be in the range 0 between 255.
 	 */
 	final void removeNode(char digit) {
+		ensureLoaded();
 		int pos = findNodePos(digit);
 		if (pos != -1) {
 			int length = nodes.length - 1;
@@ -204,6 +216,7 @@ public class IndexNode {
 			System.arraycopy(nodes, 0, temp, 0, pos);
 			System.arraycopy(nodes, pos + 1, temp, pos, length - pos);
 			nodes = temp;
+			setChanged();
 		}
 	}
 
@@ -217,7 +230,7 @@ public class IndexNode {
 	 */
 	final void addNode(char digit, long rowOffset) throws SQLException {
 		IndexNode node = addNode(digit);
-		if (node.remainderKey != null)
+		if (node.getRemainderValue() != null)
 			node.moveRemainderValue();
 		node.saveValue(rowOffset);
 	}
@@ -234,6 +247,8 @@ public class IndexNode {
 	 *            The value that is saved in the tree.
 	 */
 	final void saveValue(long rowOffset) throws SQLException {
+		ensureLoaded();
+		setChanged();
 		if (unique) {
 			if (value != null)
 				throw SmallSQLException.create(Language.KEY_DUPLICATE);
@@ -264,12 +279,16 @@ public class IndexNode {
 	 *            tree. The range is from 1 to 3;
 	 */
 	final void addRemainderKey(long rowOffset, long remainderValue, int charCount) throws SQLException {
+		ensureLoaded();
 		saveRemainderValue(remainderValue, charCount);
+		setChanged();
 		value = (unique) ? (Object) new Long(rowOffset) : new LongTreeList(rowOffset);
 	}
 
 	final void addRemainderKey(long rowOffset, char[] remainderValue, int offset) throws SQLException {
+		ensureLoaded();
 		saveRemainderValue(remainderValue, offset);
+		setChanged();
 		value = (unique) ? (Object) new Long(rowOffset) : new LongTreeList(rowOffset);
 	}
 
@@ -283,17 +302,19 @@ public class IndexNode {
 	 */
 	final IndexNode addRoot(char digit) throws SQLException {
 		IndexNode node = addNode(digit);
-		if (node.remainderKey != null)
+		if (node.getRemainderValue() != null)
 			node.moveRemainderValue();
 		return node.addRoot();
 	}
 
 	final IndexNode addRootValue(char[] remainderValue, int offset) throws SQLException {
+		ensureLoaded();
 		saveRemainderValue(remainderValue, offset);
 		return addRoot();
 	}
 
 	final IndexNode addRootValue(long remainderValue, int digitCount) throws SQLException {
+		ensureLoaded();
 		saveRemainderValue(remainderValue, digitCount);
 		return addRoot();
 	}
@@ -309,9 +330,11 @@ public class IndexNode {
 		char[] puffer = remainderKey;
 		value = null;
 		remainderKey = null;
+		setChanged();
 		IndexNode newNode = addNode(puffer[0]);
 		if (puffer.length == 1) {
 			newNode.value = rowOffset;
+			newNode.setChanged();
 		} else {
 			newNode.moveRemainderValueSub(rowOffset, puffer);
 		}
@@ -322,6 +345,7 @@ public class IndexNode {
 		this.remainderKey = new char[length];
 		value = rowOffset;
 		System.arraycopy(remainderValue, 1, this.remainderKey, 0, length);
+		setChanged();
 	}
 
 	private final void saveRemainderValue(char[] remainderValue, int offset) {
@@ -344,9 +368,11 @@ public class IndexNode {
 	 * @param digit
 	 */
 	final IndexNode addRoot() throws SQLException {
+		ensureLoaded();
 		IndexNode root = (IndexNode) value;
 		if (root == null) {
 			value = root = createIndexNode(unique, (char) -1);
+			setChanged();
 		}
 		return root;
 	}
@@ -401,7 +427,25 @@ public class IndexNode {
 		}
 	}
 
+	/**
+	 * Is called before the fields of this node are accessed. An extended class
+	 * can use it to load the node lazy.
+	 */
+	protected void ensureLoaded() {
+		// a memory node is ever loaded
+	}
+
+	/**
+	 * Is called after the value, the remainder or the list of child nodes of
+	 * this node was changed. An extended class can use it to mark the node as
+	 * dirty.
+	 */
+	protected void setChanged() {
+		// a memory node need not be saved
+	}
+
 	protected void save(StoreImpl output) throws SQLException {
+		ensureLoaded();
 		output.writeShort(digit);
 
 		int length = remainderKey == null ? 0 : remainderKey.length;
@@ -433,7 +477,10 @@ public class IndexNode {
 
 	}
 
-	IndexNode loadRef(long offset) throws SQLException {
+	/**
+	 * Read a reference to a node that was written with saveRef().
+	 */
+	protected IndexNode loadRef(StoreImpl input) throws SQLException {
 		throw new Error();
 	}
 
@@ -453,7 +500,7 @@ public class IndexNode {
 			value = new LongTreeList(input);
 			break;
 		case 3:
-			value = loadRef(input.readLong());
+			value = loadRef(input);
 			break;
 		default:
 			throw SmallSQLException.create(Language.INDEX_CORRUPT, String.valueOf(valueType));
@@ -461,7 +508,7 @@ public class IndexNode {
 
 		nodes = new IndexNode[input.readShort()];
 		for (int i = 0; i < nodes.length; i++) {
-			nodes[i] = loadRef(input.readLong());
+			nodes[i] = loadRef(input);
 		}
 	}
 
@@ -36,6 +36,7 @@ import java.sql.*;
 
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.lang.Language;
+import io.leavesfly.smallsql.rdb.engine.selector.RowBatch;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 import io.leavesfly.smallsql.util.Utils;
 
@@ -44,6 +45,8 @@ import io.leavesfly.smallsql.util.Utils;
  * class and not an interface because interfaces are ever public. All
  * Implementations are used as a Source in the FROM clause.
  * <p>
+ * The rows can also be read in blocks with nextBatch().
+ * <p>
  * Know Implementations are: - Join - TableResult - ViewResult - MemoryResult -
  * GroupResult (extends from MemoryResult) - SortedResult - UnionAll
  * <p>
@@ -89,6 +92,39 @@ public abstract class RowSource {
 
     public abstract boolean next() throws Exception;
 
+    /**
+     * Read the next rows into the batch. The batch is cleared before. This is
+     * the adapter for RowSources without an own batch implementation. It move
+     * with next() and evaluate the column expressions of the batch on every
+     * row. After the call the current row of this RowSource is undefined.
+     *
+     * @param batch the batch with the columns that are needed by the caller
+     * @return false if there are no more rows
+     */
+    public boolean nextBatch(RowBatch batch) throws Exception {
+        batch.clear();
+        while (!batch.isFull() && next()) {
+            batch.readRow();
+        }
+        return batch.size() > 0;
+    }
+
+    /**
+     * Split the rows of this RowSource into partitions that can be read with
+     * nextBatch() at the same time from different threads. Every partition
+     * must be read with its own copy of the batch. The union of the
+     * partitions are the rows of the current execute. Must be called after
+     * execute().
+     *
+     * @param batch the batch with the columns that are needed by the caller
+     * @param count the max count of partitions
+     * @return the partitions or null if the rows can not be split
+     * @see RowBatch#copyEmpty()
+     */
+    public RowSource[] createPartitions(RowBatch batch, int count) throws Exception {
+        return null;
+    }
+
     public boolean last() throws Exception {
         throw SmallSQLException.create(Language.RSET_FWDONLY);
     }
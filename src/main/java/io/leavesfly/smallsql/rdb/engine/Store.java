@@ -37,6 +37,7 @@ import java.sql.*;
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.rdb.engine.store.StoreNoCurrentRow;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.rdb.engine.store.StoreNull;
 
 /**
@@ -72,6 +73,15 @@ public abstract class Store {
 
 	public abstract String getString(int offset, int dataType) throws Exception;
 
+	/**
+	 * Get a reference to a LOB value that read the data on demand.
+	 * 
+	 * @return the reference or null if the value is NULL or not saved as LOB
+	 */
+	public LobLocator getLob(int offset, int dataType) throws Exception {
+		return null;
+	}
+
 	/**
 	 * Get the status of the current page.
 	 * 
@@ -83,6 +93,20 @@ public abstract class Store {
 
 	public abstract void scanObjectOffsets(int[] offsets, int dataTypes[]);
 
+	/**
+	 * Calculate the offsets of the columns from index <code>from</code>
+	 * (inclusive) to index <code>to</code> (exclusive). If from is larger as 0
+	 * then the offsets before from must already be calculated for the current
+	 * row.
+	 * 
+	 * @param fixedOffsets
+	 *            the offsets relative to the row start of the leading columns
+	 *            with a fixed size and as last value the offset after these
+	 *            columns or null.
+	 * @see io.leavesfly.smallsql.rdb.engine.Table#getFixedOffsets()
+	 */
+	public abstract void scanObjectOffsets(int[] offsets, int dataTypes[], int from, int to, int[] fixedOffsets);
+
 	public abstract int getUsedSize();
 
 	public abstract long getNextPagePos();
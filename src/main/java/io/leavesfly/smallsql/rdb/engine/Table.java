@@ -37,16 +37,22 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.rdb.engine.index.IndexDescription;
 import io.leavesfly.smallsql.rdb.engine.index.IndexDescriptions;
+import io.leavesfly.smallsql.rdb.engine.store.FreeSpaceMap;
 import io.leavesfly.smallsql.rdb.engine.store.StoreImpl;
 import io.leavesfly.smallsql.rdb.engine.store.TableStorePage;
+import io.leavesfly.smallsql.rdb.engine.store.TableStorePageBatch;
 import io.leavesfly.smallsql.rdb.engine.store.TableStorePageInsert;
+import io.leavesfly.smallsql.rdb.engine.store.VersionStore;
+import io.leavesfly.smallsql.rdb.engine.table.Column;
 import io.leavesfly.smallsql.rdb.engine.table.Columns;
 import io.leavesfly.smallsql.rdb.engine.table.ForeignKey;
 import io.leavesfly.smallsql.rdb.engine.table.ForeignKeys;
@@ -54,8 +60,10 @@ import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.lang.Language;
 import io.leavesfly.smallsql.rdb.engine.store.StorePageLink;
+import io.leavesfly.smallsql.rdb.engine.store.StorePage;
 import io.leavesfly.smallsql.rdb.engine.table.Lobs;
 import io.leavesfly.smallsql.util.Utils;
+import io.leavesfly.smallsql.util.datastruct.LongObjectMap;
 
 public class Table extends View {
 
@@ -66,17 +74,46 @@ public class Table extends View {
 	private Lobs lobs; // file handle of lob data for this table
 	long firstPage; // offset of the first page
 
-	final private HashMap<Long, TableStorePage> locks = new HashMap<Long, TableStorePage>();
-	private SsConnection tabLockConnection; // if set then it is the Connection
-											// with a LOCK_TAB
+	/** The count of stripes of the page locks, must be a power of 2. */
+	private static final int LOCK_STRIPES = 16;
+	/**
+	 * The LOCK_READ and LOCK_WRITE locks of the pages. Every stripe has its own
+	 * monitor. The offset of the page select the stripe.
+	 */
+	final private LockStripe[] lockStripes = createLockStripes();
+	/**
+	 * The count of the page locks in all stripes. It is changed with the
+	 * monitor of the stripe.
+	 */
+	final private AtomicInteger pageLockCount = new AtomicInteger();
+	/**
+	 * The monitor for the table wide locks: LOCK_TAB, LOCK_INSERT,
+	 * LOCK_SNAPSHOT and the serializable connections. A page lock is never
+	 * requested while this monitor is hold.
+	 */
+	final private Object tableMonitor = new Object();
+	private volatile SsConnection tabLockConnection; // if set then it is the
+														// Connection with a
+														// LOCK_TAB
 	private int tabLockCount;
-	/** if set then it is the Connection with a LOCK_WRITE_TAB */
-	final private ArrayList<TableStorePage> locksInsert = new ArrayList<TableStorePage>(); // liste
-																							// der
-	// LOCK_INSERT
+	final private ArrayList<TableStorePage> locksInsert = new ArrayList<TableStorePage>(); // list of the LOCK_INSERT
+	/** The LOCK_SNAPSHOT of the transactions that read this table with a snapshot. */
+	final private ArrayList<TableStorePage> locksSnapshot = new ArrayList<TableStorePage>();
 	final private HashMap<SsConnection, SsConnection> serializeConnections = new HashMap<SsConnection, SsConnection>();
+	/** The threads that wait for a LOCK_TAB or a LOCK_INSERT. */
+	final private ArrayList<Thread> tableWaiters = new ArrayList<Thread>();
+	private volatile int tableWaiterCount;
+	/** The deleted pages that can be reused for new rows. */
+	final private FreeSpaceMap freeSpace = new FreeSpaceMap();
 	public final IndexDescriptions indexes;
 	public final ForeignKeys references;
+	/** The cached value of getFixedOffsets() */
+	private int[] fixedOffsets;
+	/**
+	 * If the CHAR and VARCHAR values of the rows are saved in the compact
+	 * format. This is false for files of an older table format version.
+	 */
+	private boolean compactStrings = true;
 
 	/**
 	 * Constructor for read existing tables.
@@ -87,6 +124,8 @@ public class Table extends View {
 		this.database = database;
 		this.raFile = raFile;
 		this.firstPage = offset;
+		this.compactStrings = tableFormatVersion > TABLE_VIEW_WIDE_CHAR_VERSION;
+		database.registerFile(raFile, getFile(database));
 		StoreImpl store = getStore(con, firstPage, SQLTokenizer.SELECT);
 		if (store == null) {
 			throw SmallSQLException.create(Language.TABLE_FILE_INVALID, getFile(database));
@@ -135,6 +174,9 @@ public class Table extends View {
 		if (existIndexes == null) {
 			this.indexes = newIndexes;
 		} else {
+			// the row offsets of the existing indexes are not valid for the
+			// new file
+			existIndexes.reset(database, this);
 			this.indexes = existIndexes;
 			existIndexes.add(newIndexes);
 		}
@@ -155,6 +197,17 @@ public class Table extends View {
 		this.database = database;
 		indexes = null;
 		references = null;
+		compactStrings = false;
+	}
+
+	/**
+	 * If the CHAR and VARCHAR values are saved with one byte per Latin-1
+	 * character and without the padding of CHAR values.
+	 * 
+	 * @see StoreImpl#writeExpression
+	 */
+	public boolean isCompactStrings() {
+		return compactStrings;
 	}
 
 	/**
@@ -195,6 +248,7 @@ public class Table extends View {
 	public void close() throws Exception {
 		if (indexes != null)
 			indexes.close();
+		database.getPageCache().invalidate(raFile);
 		raFile.close();
 		raFile = null;
 		if (lobs != null) {
@@ -205,6 +259,7 @@ public class Table extends View {
 
 	private void write(SsConnection con) throws Exception {
 		raFile = createFile(con, database);
+		database.registerFile(raFile, getFile(database));
 		firstPage = 8;
 		StoreImpl store = getStore(con, firstPage, SQLTokenizer.CREATE);
 		int count = columns.size();
@@ -244,6 +299,7 @@ public class Table extends View {
 		buffer.putInt(TABLE_VIEW_VERSION);
 		buffer.position(0);
 		raFile.write(buffer);
+		StorePage.incrementWriteCount(raFile);
 	}
 
 	/*
@@ -257,6 +313,26 @@ public class Table extends View {
 		return StoreImpl.createStore(this, storePage, pageOperation, filePos);
 	}
 
+	/**
+	 * Read a row for a snapshot without a page lock. If the connection has a
+	 * lock of the page then its not committed data are read. A read on a table
+	 * with a LOCK_TAB of another connection wait like a read with locks.
+	 */
+	public StoreImpl getStore(SsConnection con, long filePos, VersionStore.Snapshot snapshot) throws Exception {
+		if (raFile == null) {
+			throw SmallSQLException.create(Language.TABLE_MODIFIED, name);
+		}
+		SsConnection tabCon = tabLockConnection;
+		if (tabCon != null && tabCon != con) {
+			return getStore(con, filePos, SQLTokenizer.SELECT);
+		}
+		TableStorePage storePage = getOwnPageLock(con, filePos);
+		if (storePage == null) {
+			storePage = new TableStorePage(con, this, LOCK_NONE, filePos);
+		}
+		return StoreImpl.createSnapshotStore(this, storePage, filePos, snapshot);
+	}
+
 	public StoreImpl getStore(TableStorePage storePage, int pageOperation) throws Exception {
 		// is used for not committed INSERT pages, a new lock is not needed
 		return StoreImpl.recreateStore(this, storePage, pageOperation);
@@ -277,6 +353,14 @@ public class Table extends View {
 		return StoreImpl.createStore(this, storePage, SQLTokenizer.INSERT, -1);
 	}
 
+	/**
+	 * Request one insert lock for a batch of new rows. The rows are written
+	 * with {@link StoreImpl#createBatchStore(TableStorePageBatch)}.
+	 */
+	public TableStorePageBatch getStoreInsertBatch(SsConnection con) throws Exception {
+		return (TableStorePageBatch) requestLock(con, SQLTokenizer.VALUES, -1);
+	}
+
 	/**
 	 * Create a Store that is not invoke in a transaction for copy of data.
 	 */
@@ -286,10 +370,18 @@ public class Table extends View {
 	}
 
 	public StoreImpl getLobStore(SsConnection con, long filePos, int pageOperation) throws Exception {
+		return getLobs().getStore(con, filePos, pageOperation);
+	}
+
+	/**
+	 * Get the file with the LOB values of this table. The file is opened on
+	 * the first call.
+	 */
+	public Lobs getLobs() throws Exception {
 		if (lobs == null) {
 			lobs = new Lobs(this);
 		}
-		return lobs.getStore(con, filePos, pageOperation);
+		return lobs;
 	}
 
 	/**
@@ -300,33 +392,157 @@ public class Table extends View {
 		return firstPage;
 	}
 
+	/**
+	 * Get the offsets of the leading columns with a fixed size relative to the
+	 * start of a row. The last value is the offset after these columns. The
+	 * values are calculated on the first call because the columns can not
+	 * change for a Table instance.
+	 * 
+	 * @see Store#scanObjectOffsets(int[], int[], int, int, int[])
+	 */
+	public final int[] getFixedOffsets() {
+		int[] result = fixedOffsets;
+		if (result == null) {
+			int count = 0;
+			while (count < columns.size() && StoreImpl.getFixedSize(columns.get(count).getDataType()) > 0) {
+				count++;
+			}
+			result = new int[count + 1];
+			for (int i = 0; i < count; i++) {
+				result[i + 1] = result[i] + StoreImpl.getFixedSize(columns.get(i).getDataType());
+			}
+			fixedOffsets = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Estimate the count of rows of this table for the planning of a query.
+	 * Every row is saved in its own page, the size of a page is estimated from
+	 * the column definitions. Deleted rows and old values of updated rows are
+	 * counted also.
+	 */
+	public final long getRowCountEstimate() {
+		FileChannel file = raFile;
+		if (file == null) {
+			return 0;
+		}
+		try {
+			return Math.max(0, (file.size() - firstPage) / getRowSizeEstimate());
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Return the free pages of the table file that can be used for new rows.
+	 */
+	public final FreeSpaceMap getFreeSpace() {
+		return freeSpace;
+	}
+
+	/**
+	 * Count the pages of the rows and the dead pages that are not used by any
+	 * row. The file is read without locks, not committed changes of other
+	 * connections are counted also.
+	 * 
+	 * @return the count of pages, the count of dead pages and the size of the
+	 *         dead pages in bytes
+	 * @see StoreImpl#countPages(FileChannel, long)
+	 */
+	public long[] getPageStatistics() throws Exception {
+		return StoreImpl.countPages(raFile, firstPage);
+	}
+
+	/**
+	 * Estimate the average size of a row page in the file.
+	 */
+	private int getRowSizeEstimate() {
+		int size = StoreImpl.PAGE_CONTROL_SIZE; // the page header
+		for (int i = 0; i < columns.size(); i++) {
+			Column column = columns.get(i);
+			size++; // isNull flag
+			switch (column.getDataType()) {
+			case SQLTokenizer.BIT:
+			case SQLTokenizer.BOOLEAN:
+			case SQLTokenizer.TINYINT:
+				size += 1;
+				break;
+			case SQLTokenizer.SMALLINT:
+				size += 2;
+				break;
+			case SQLTokenizer.INT:
+			case SQLTokenizer.REAL:
+			case SQLTokenizer.SMALLMONEY:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.SMALLDATETIME:
+				size += 4;
+				break;
+			case SQLTokenizer.UNIQUEIDENTIFIER:
+				size += 16;
+				break;
+			case SQLTokenizer.NUMERIC:
+			case SQLTokenizer.DECIMAL:
+				size += 2 + ((column.getPrecision() + 8) / 9) * 4;
+				break;
+			case SQLTokenizer.CHAR:
+			case SQLTokenizer.NCHAR:
+				size += 2 + column.getPrecision() * 2;
+				break;
+			case SQLTokenizer.VARCHAR:
+			case SQLTokenizer.NVARCHAR:
+				// a variable value is expected half full
+				size += 2 + column.getPrecision();
+				break;
+			case SQLTokenizer.BINARY:
+				size += 2 + column.getPrecision();
+				break;
+			case SQLTokenizer.VARBINARY:
+				size += 2 + column.getPrecision() / 2;
+				break;
+			default:
+				size += 8; // 8 byte values and references to LOB data
+			}
+		}
+		return size;
+	}
+
 	/**
 	 * Return a list of Links to not commited rows. The list include only the
 	 * rows that are visible for the current isolation level.
 	 */
 	public List<StorePageLink> getInserts(SsConnection con) {
-		synchronized (locks) {
+		synchronized (tableMonitor) {
 			ArrayList<StorePageLink> inserts = new ArrayList<StorePageLink>();
 			if (con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED) {
 				for (int i = 0; i < locksInsert.size(); i++) {
-					TableStorePageInsert lock = (TableStorePageInsert) locksInsert.get(i);
-					inserts.add(lock.getLink());
+					addInsert(inserts, locksInsert.get(i));
 				}
 			} else {
 				for (int i = 0; i < locksInsert.size(); i++) {
-					TableStorePageInsert lock = (TableStorePageInsert) locksInsert.get(i);
+					TableStorePage lock = locksInsert.get(i);
 					if (lock.con == con)
-						inserts.add(lock.getLink());
+						addInsert(inserts, lock);
 				}
 			}
 			return inserts;
 		}
 	}
 
+	private static void addInsert(List<StorePageLink> inserts, TableStorePage lock) {
+		if (lock instanceof TableStorePageBatch) {
+			((TableStorePageBatch) lock).addLinks(inserts);
+		} else {
+			inserts.add(((TableStorePageInsert) lock).getLink());
+		}
+	}
+
 	/**
 	 * Request a page lock. If the request is valid then it return the
 	 * StorePage. If the lock can not be created within 5 seconds then it throw
-	 * an exception.
+	 * an exception. A waiting thread is parked until a lock of its page or a
+	 * table lock is freed.
 	 * 
 	 * @param con
 	 *            The connection that request the lock
@@ -339,148 +555,211 @@ public class Table extends View {
 	 *             if a timeout occurs
 	 */
 	public final TableStorePage requestLock(SsConnection con, int pageOperation, long page) throws Exception {
-		synchronized (locks) {
-			if (raFile == null) {
-				throw SmallSQLException.create(Language.TABLE_MODIFIED, name);
-			}
-			long endTime = 0;
-			while (true) {
-				TableStorePage storePage = requestLockImpl(con, pageOperation, page);
-				if (storePage != null)
-					return storePage; // the normal case should be the fasted
-				if (endTime == 0)
-					endTime = System.currentTimeMillis() + 5000;
-				long waitTime = endTime - System.currentTimeMillis();
-				if (waitTime <= 0)
-					throw SmallSQLException.create(Language.TABLE_DEADLOCK, name);
-				locks.wait(waitTime);
+		if (raFile == null) {
+			throw SmallSQLException.create(Language.TABLE_MODIFIED, name);
+		}
+		long endTime = 0;
+		while (true) {
+			TableStorePage storePage = requestLockImpl(con, pageOperation, page);
+			if (storePage != null)
+				return storePage; // the normal case should be the fasted
+			if (endTime == 0)
+				endTime = System.currentTimeMillis() + 5000;
+			long waitTime = endTime - System.currentTimeMillis();
+			if (waitTime <= 0) {
+				cancelWait(pageOperation, page);
+				throw SmallSQLException.create(Language.TABLE_DEADLOCK, name);
 			}
+			LockSupport.parkNanos(this, waitTime * 1000000);
 		}
 	}
 
 	/**
 	 * Request a page lock. If the request is valid then it return the
-	 * StorePage. In the other case it return null.
+	 * StorePage. In the other case it return null and the current thread is
+	 * registered as waiter.
 	 * 
 	 * @param page
 	 *            The fileOffset or -1 for a new page
 	 * @throws SQLException
 	 */
 	final private TableStorePage requestLockImpl(SsConnection con, int pageOperation, long page) throws SQLException {
-		synchronized (locks) {
-			if (tabLockConnection != null && tabLockConnection != con)
-				return null;
-			switch (con.isolationLevel) {
-			case Connection.TRANSACTION_SERIALIZABLE:
+		if (con.isolationLevel == Connection.TRANSACTION_SERIALIZABLE) {
+			synchronized (tableMonitor) {
 				serializeConnections.put(con, con);
-				break;
 			}
+		}
+		switch (pageOperation) {
+		case SQLTokenizer.CREATE:
+		case SQLTokenizer.ALTER:
+			return requestTableLock(con, pageOperation, page);
+		case SQLTokenizer.INSERT:
+			return requestInsertLock(con, false);
+		case SQLTokenizer.VALUES:
+			// is used for a batch of INSERT VALUES rows
+			return requestInsertLock(con, true);
+		case SQLTokenizer.SELECT:
+		case SQLTokenizer.UPDATE:
+			return requestPageLock(con, pageOperation, page);
+		case SQLTokenizer.REPEATABLE:
+			// is used for the snapshot of a REPEATABLE_READ or SERIALIZABLE
+			// transaction
+			return requestSnapshotLock(con);
+		case SQLTokenizer.LONGVARBINARY:
+			// is used for written BLOB and CLOB
+			// the difference to INSERT is that page described the size of
+			// the byte buffer
+			return new TableStorePage(con, this, LOCK_INSERT, -1);
+		default:
+			throw new Error("pageOperation:" + pageOperation);
+		}
+	}
 
-			switch (pageOperation) {
-			case SQLTokenizer.CREATE: {
-				// first check if another connection has a lock before creating
-				// a table lock
-				if (locks.size() > 0) {
-					Iterator values = locks.values().iterator();
-					while (values.hasNext()) {
-						TableStorePage lock = (TableStorePage) values.next();
-						if (lock.con != con)
-							return null;
-					}
-				}
-				for (int i = 0; i < locksInsert.size(); i++) {
-					// the first StorePage in the linked list must be ever
-					// TableStorePageInsert
-					TableStorePageInsert lock = (TableStorePageInsert) locksInsert.get(i);
-					if (lock.con != con)
-						return null;
-				}
-				if (serializeConnections.size() > 0) {
-					Iterator values = locks.values().iterator();
-					while (values.hasNext()) {
-						TableStorePage lock = (TableStorePage) values.next();
-						if (lock.con != con)
-							return null;
-					}
+	/**
+	 * Request a LOCK_TAB. CREATE is valid if there are no locks of other
+	 * connections. ALTER is valid if there are no page and insert locks.
+	 */
+	private TableStorePage requestTableLock(SsConnection con, int pageOperation, long page) throws SQLException {
+		synchronized (tableMonitor) {
+			// the waiter must be registered before the page locks are checked,
+			// else the free of a page lock can be lost
+			addTableWaiter();
+			if (tabLockConnection != null && tabLockConnection != con) {
+				return null;
+			}
+			boolean hasTabLock = tabLockConnection != null;
+			// set the owner before the page locks are checked, every new page
+			// lock of another connection will see it
+			tabLockConnection = con;
+			boolean isValid;
+			if (pageOperation == SQLTokenizer.ALTER) {
+				isValid = locksInsert.size() == 0 && locksSnapshot.size() == 0 && !hasPageLocks(null);
+			} else {
+				isValid = !hasInsertLocks(con) && !hasSnapshotLocks(con) && !hasPageLocks(con);
+			}
+			if (!isValid) {
+				if (!hasTabLock) {
+					tabLockConnection = null;
+					wakePageWaiters();
 				}
-				tabLockConnection = con;
-				tabLockCount++;
-				TableStorePage lock = new TableStorePage(con, this, LOCK_TAB, page);
+				return null;
+			}
+			removeTableWaiter();
+			tabLockCount++;
+			TableStorePage lock = new TableStorePage(con, this, LOCK_TAB, page);
+			if (pageOperation == SQLTokenizer.CREATE) {
 				con.add(lock);
-				return lock;
+			} else {
+				lock.rollback();
 			}
-			case SQLTokenizer.ALTER: {
-				// first check if there is any lock before creating a table lock
-				if (locks.size() > 0 || locksInsert.size() > 0) {
-					return null;
+			return lock;
+		}
+	}
+
+	/**
+	 * Request a LOCK_INSERT for a single row or for a batch of rows.
+	 */
+	private TableStorePage requestInsertLock(SsConnection con, boolean isBatch) throws SQLException {
+		synchronized (tableMonitor) {
+			addTableWaiter();
+			if (tabLockConnection != null && tabLockConnection != con) {
+				return null;
+			}
+			// if there are more as one Connection with a serializable lock
+			// then an INSERT is not valid
+			if (serializeConnections.size() > 1)
+				return null;
+			if (serializeConnections.size() == 1 && serializeConnections.get(con) == null)
+				return null;
+			removeTableWaiter();
+			TableStorePage lock = isBatch ? new TableStorePageBatch(con, this) : new TableStorePageInsert(con, this,
+					LOCK_INSERT);
+			locksInsert.add(lock);
+			con.add(lock);
+			return lock;
+		}
+	}
+
+	/**
+	 * Request a LOCK_SNAPSHOT for the transaction of the connection. The rows
+	 * are read without page locks, the lock prevent only a LOCK_TAB until the
+	 * end of the transaction. A connection has only one such lock per table.
+	 */
+	private TableStorePage requestSnapshotLock(SsConnection con) throws SQLException {
+		synchronized (tableMonitor) {
+			addTableWaiter();
+			if (tabLockConnection != null && tabLockConnection != con) {
+				return null;
+			}
+			removeTableWaiter();
+			for (int i = 0; i < locksSnapshot.size(); i++) {
+				TableStorePage lock = locksSnapshot.get(i);
+				if (lock.con == con) {
+					return lock;
 				}
-				if (serializeConnections.size() > 0) {
-					Iterator values = locks.values().iterator();
-					while (values.hasNext()) {
-						TableStorePage lock = (TableStorePage) values.next();
-						if (lock.con != con)
-							return null;
+			}
+			TableStorePage lock = new TableStorePage(con, this, LOCK_SNAPSHOT, -1);
+			locksSnapshot.add(lock);
+			con.add(lock);
+			return lock;
+		}
+	}
+
+	/**
+	 * Request a LOCK_READ or LOCK_WRITE for a page. Only the monitor of the
+	 * stripe of the page is used.
+	 */
+	private TableStorePage requestPageLock(SsConnection con, int pageOperation, long page) throws SQLException {
+		LockStripe stripe = getLockStripe(page);
+		Thread thread = Thread.currentThread();
+		synchronized (stripe) {
+			stripe.removeWaiter(thread);
+			SsConnection tabCon = tabLockConnection;
+			if (tabCon != null && tabCon != con) {
+				stripe.addWaiter(thread, page);
+				return null;
+			}
+			TableStorePage prevLock = null;
+			TableStorePage lock = stripe.locks.get(page);
+			TableStorePage usableLock = null;
+			while (lock != null) {
+				if (lock.con == con || con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED) {
+					usableLock = lock;
+				} else {
+					if (lock.lockType == LOCK_WRITE) {
+						// write lock of another Connection
+						stripe.addWaiter(thread, page);
+						return null;
 					}
 				}
-				tabLockConnection = con;
-				tabLockCount++;
-				TableStorePage lock = new TableStorePage(con, this, LOCK_TAB, page);
-				lock.rollback();
-				return lock;
+				prevLock = lock;
+				lock = lock.nextLock;
 			}
-			case SQLTokenizer.INSERT: {
-				// if there are more as one Connection with a serializable lock
-				// then an INSERT is not valid
-				if (serializeConnections.size() > 1)
-					return null;
-				if (serializeConnections.size() == 1 && serializeConnections.get(con) == null)
+			if (usableLock != null) {
+				return usableLock;
+			}
+			lock = new TableStorePage(con, this, LOCK_NONE, page);
+			if (con.isolationLevel >= Connection.TRANSACTION_REPEATABLE_READ
+					|| pageOperation == SQLTokenizer.UPDATE) {
+				// count the lock before the table lock is checked again,
+				// requestTableLock set the owner before it read the count
+				pageLockCount.incrementAndGet();
+				tabCon = tabLockConnection;
+				if (tabCon != null && tabCon != con) {
+					pageLockCount.decrementAndGet();
+					stripe.addWaiter(thread, page);
 					return null;
-				TableStorePageInsert lock = new TableStorePageInsert(con, this, LOCK_INSERT);
-				locksInsert.add(lock);
-				con.add(lock);
-				return lock;
-			}
-			case SQLTokenizer.SELECT:
-			case SQLTokenizer.UPDATE: {
-				Long pageKey = new Long(page); // TODO performance
-				TableStorePage prevLock = null;
-				TableStorePage lock = (TableStorePage) locks.get(pageKey);
-				TableStorePage usableLock = null;
-				while (lock != null) {
-					if (lock.con == con || con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED) {
-						usableLock = lock;
-					} else {
-						if (lock.lockType == LOCK_WRITE) {
-							return null; // write lock of another Connection
-						}
-					}
-					prevLock = lock;
-					lock = lock.nextLock;
-				}
-				if (usableLock != null) {
-					return usableLock;
 				}
-				lock = new TableStorePage(con, this, LOCK_NONE, page);
-				if (con.isolationLevel >= Connection.TRANSACTION_REPEATABLE_READ
-						|| pageOperation == SQLTokenizer.UPDATE) {
-					lock.lockType = pageOperation == SQLTokenizer.UPDATE ? LOCK_WRITE : LOCK_READ;
-					if (prevLock != null) {
-						prevLock.nextLock = lock.nextLock;
-					} else {
-						locks.put(pageKey, lock);
-					}
-					con.add(lock);
+				lock.lockType = pageOperation == SQLTokenizer.UPDATE ? LOCK_WRITE : LOCK_READ;
+				if (prevLock != null) {
+					prevLock.nextLock = lock;
+				} else {
+					stripe.locks.put(page, lock);
 				}
-				return lock;
-			}
-			case SQLTokenizer.LONGVARBINARY:
-				// is used for written BLOB and CLOB
-				// the difference to INSERT is that page described the size of
-				// the byte buffer
-				return new TableStorePage(con, this, LOCK_INSERT, -1);
-			default:
-				throw new Error("pageOperation:" + pageOperation);
+				con.pageLockCount++;
+				con.add(lock);
 			}
+			return lock;
 		}
 	}
 
@@ -498,44 +777,49 @@ public class Table extends View {
 			con.add(lock);
 			return lock;
 		}
-		Long pageKey = new Long(readlock.fileOffset); // TODO performance
-		TableStorePage prevLock = null;
-		TableStorePage lock = (TableStorePage) locks.get(pageKey);
-		while (lock != null) {
-			if (lock.con != con)
-				return null; // there is already any lock from another
-								// connection, we can not start write
-			if (lock.lockType < LOCK_WRITE) {
-				// if there is only a read lock we can transfer it
-				// this is required for rollback to a savepoint
-				lock.lockType = LOCK_WRITE;
-				return lock;
-			}
-			prevLock = lock;
-			lock = lock.nextLock;
-		}
-		lock = new TableStorePage(con, this, LOCK_WRITE, readlock.fileOffset);
-		if (prevLock != null) {
-			prevLock.nextLock = lock;
-		} else {
-			locks.put(pageKey, lock);
+		long page = readlock.fileOffset;
+		LockStripe stripe = getLockStripe(page);
+		synchronized (stripe) {
+			TableStorePage prevLock = null;
+			TableStorePage lock = stripe.locks.get(page);
+			while (lock != null) {
+				if (lock.con != con)
+					return null; // there is already any lock from another
+									// connection, we can not start write
+				if (lock.lockType < LOCK_WRITE) {
+					// if there is only a read lock we can transfer it
+					// this is required for rollback to a savepoint
+					lock.lockType = LOCK_WRITE;
+					return lock;
+				}
+				prevLock = lock;
+				lock = lock.nextLock;
+			}
+			lock = new TableStorePage(con, this, LOCK_WRITE, page);
+			if (prevLock != null) {
+				prevLock.nextLock = lock;
+			} else {
+				stripe.locks.put(page, lock);
+			}
+			pageLockCount.incrementAndGet();
+			con.pageLockCount++;
+			con.add(lock);
+			return lock;
 		}
-		con.add(lock);
-		return lock;
 	}
 
 	/**
-	 * Remove the lock from this table.
+	 * Remove the lock from this table and wake the threads that wait for it.
 	 */
 	public void freeLock(TableStorePage storePage) {
 		final int lockType = storePage.lockType;
 		final long fileOffset = storePage.fileOffset;
-		synchronized (locks) {
-			try {
-				TableStorePage lock;
-				TableStorePage prev;
-				switch (lockType) {
-				case LOCK_INSERT:
+		TableStorePage lock;
+		TableStorePage prev;
+		switch (lockType) {
+		case LOCK_INSERT:
+			synchronized (tableMonitor) {
+				try {
 					for (int i = 0; i < locksInsert.size(); i++) {
 						prev = lock = (TableStorePage) locksInsert.get(i);
 						while (lock != null) {
@@ -561,46 +845,271 @@ public class Table extends View {
 							lock = lock.nextLock;
 						}
 					}
-					break;
-				case LOCK_READ:
-				case LOCK_WRITE:
-					Long pageKey = new Long(fileOffset); // TODO performance
-					lock = (TableStorePage) locks.get(pageKey);
+				} finally {
+					wakeTableWaiters();
+				}
+			}
+			break;
+		case LOCK_READ:
+		case LOCK_WRITE:
+			LockStripe stripe = getLockStripe(fileOffset);
+			synchronized (stripe) {
+				try {
+					lock = stripe.locks.get(fileOffset);
 					prev = lock;
 					while (lock != null) {
 						if (lock == storePage) {
-							// lock entfernen
+							// remove the lock
 							if (lock == prev) {
 								if (lock.nextLock == null) {
-									// erste und einzige Lock in Liste
-									locks.remove(pageKey);
+									// the first and only lock in the list
+									stripe.locks.remove(fileOffset);
 								} else {
 									// the first lock in the list is removed
-									locks.put(pageKey, lock.nextLock);
+									stripe.locks.put(fileOffset, lock.nextLock);
 								}
 							} else {
 								// a lock in the middle or end of the list is
 								// removed
 								prev.nextLock = lock.nextLock;
 							}
-							return;
+							lock.con.pageLockCount--;
+							pageLockCount.decrementAndGet();
+							break;
 						}
 						prev = lock;
 						lock = lock.nextLock;
 					}
 					// a run through can occur if a lock was step high and the
 					// type does not compare
-					break;
-				case LOCK_TAB:
-					assert storePage.con == tabLockConnection : "Internal Error with TabLock";
-					if (--tabLockCount == 0)
-						tabLockConnection = null;
-					break;
-				default:
-					throw new Error();
+				} finally {
+					stripe.wakeWaiters(fileOffset);
+				}
+			}
+			if (tableWaiterCount > 0) {
+				synchronized (tableMonitor) {
+					wakeTableWaiters();
+				}
+			}
+			break;
+		case LOCK_SNAPSHOT:
+			synchronized (tableMonitor) {
+				locksSnapshot.remove(storePage);
+				// the transaction is ended, a serializable connection does
+				// not prevent inserts anymore
+				serializeConnections.remove(storePage.con);
+				wakeTableWaiters();
+			}
+			break;
+		case LOCK_TAB:
+			synchronized (tableMonitor) {
+				assert storePage.con == tabLockConnection : "Internal Error with TabLock";
+				if (--tabLockCount == 0)
+					tabLockConnection = null;
+				wakeTableWaiters();
+			}
+			wakePageWaiters();
+			break;
+		default:
+			throw new Error();
+		}
+	}
+
+	/**
+	 * Check if there are insert locks of other connections. Must be called
+	 * with the tableMonitor.
+	 */
+	private boolean hasInsertLocks(SsConnection con) {
+		for (int i = 0; i < locksInsert.size(); i++) {
+			// the first StorePage in the linked list must be ever
+			// TableStorePageInsert or TableStorePageBatch
+			TableStorePage lock = locksInsert.get(i);
+			if (lock.con != con)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check if there are snapshot locks of other connections. Must be called
+	 * with the tableMonitor.
+	 */
+	private boolean hasSnapshotLocks(SsConnection con) {
+		for (int i = 0; i < locksSnapshot.size(); i++) {
+			if (locksSnapshot.get(i).con != con)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Find the last page lock of the connection for a page. The stripe is only
+	 * synchronized if the connection has page locks.
+	 */
+	private TableStorePage getOwnPageLock(SsConnection con, long page) {
+		if (con.pageLockCount == 0) {
+			return null;
+		}
+		LockStripe stripe = getLockStripe(page);
+		synchronized (stripe) {
+			TableStorePage ownLock = null;
+			for (TableStorePage lock = stripe.locks.get(page); lock != null; lock = lock.nextLock) {
+				if (lock.con == con) {
+					ownLock = lock;
+				}
+			}
+			return ownLock;
+		}
+	}
+
+	/**
+	 * Check if there are page locks of other connections. The stripes are
+	 * only scanned if there are any page locks on this table. Must be called
+	 * after the tabLockConnection was set.
+	 * 
+	 * @param con
+	 *            the connection that is ignored or null to find the locks of
+	 *            all connections
+	 */
+	private boolean hasPageLocks(SsConnection con) {
+		if (pageLockCount.get() == 0) {
+			return false;
+		}
+		for (int s = 0; s < lockStripes.length; s++) {
+			LockStripe stripe = lockStripes[s];
+			synchronized (stripe) {
+				LongObjectMap<TableStorePage> locks = stripe.locks;
+				if (locks.size() == 0) {
+					continue;
+				}
+				for (int i = locks.capacity() - 1; i >= 0; i--) {
+					TableStorePage lock = locks.valueAt(i);
+					while (lock != null) {
+						if (lock.con != con)
+							return true;
+						lock = lock.nextLock;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private LockStripe getLockStripe(long page) {
+		long hash = page * 0x9E3779B97F4A7C15L;
+		return lockStripes[(int) (hash >>> 60) & (LOCK_STRIPES - 1)];
+	}
+
+	private static LockStripe[] createLockStripes() {
+		LockStripe[] stripes = new LockStripe[LOCK_STRIPES];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new LockStripe();
+		}
+		return stripes;
+	}
+
+	/**
+	 * Remove the registration of a waiting thread after a timeout.
+	 */
+	private void cancelWait(int pageOperation, long page) {
+		switch (pageOperation) {
+		case SQLTokenizer.SELECT:
+		case SQLTokenizer.UPDATE:
+			LockStripe stripe = getLockStripe(page);
+			synchronized (stripe) {
+				stripe.removeWaiter(Thread.currentThread());
+			}
+			break;
+		default:
+			synchronized (tableMonitor) {
+				removeTableWaiter();
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the tableMonitor.
+	 */
+	private void addTableWaiter() {
+		Thread thread = Thread.currentThread();
+		if (!tableWaiters.contains(thread)) {
+			tableWaiters.add(thread);
+			tableWaiterCount = tableWaiters.size();
+		}
+	}
+
+	/**
+	 * Must be called with the tableMonitor.
+	 */
+	private void removeTableWaiter() {
+		if (tableWaiters.remove(Thread.currentThread())) {
+			tableWaiterCount = tableWaiters.size();
+		}
+	}
+
+	/**
+	 * Must be called with the tableMonitor.
+	 */
+	private void wakeTableWaiters() {
+		for (int i = 0; i < tableWaiters.size(); i++) {
+			LockSupport.unpark(tableWaiters.get(i));
+		}
+	}
+
+	/**
+	 * Wake all threads that wait for a page lock, for example after a LOCK_TAB
+	 * is freed.
+	 */
+	private void wakePageWaiters() {
+		for (int s = 0; s < lockStripes.length; s++) {
+			LockStripe stripe = lockStripes[s];
+			synchronized (stripe) {
+				stripe.wakeWaiters(-1);
+			}
+		}
+	}
+
+	/**
+	 * A part of the page locks of a table with the threads that wait for a
+	 * page of this stripe. All access must be synchronized with the stripe.
+	 */
+	private static final class LockStripe {
+		final LongObjectMap<TableStorePage> locks = new LongObjectMap<TableStorePage>();
+		private Thread[] waitThreads = new Thread[4];
+		private long[] waitPages = new long[4];
+		private int waitCount;
+
+		void addWaiter(Thread thread, long page) {
+			if (waitCount == waitThreads.length) {
+				waitThreads = Arrays.copyOf(waitThreads, waitCount * 2);
+				waitPages = Arrays.copyOf(waitPages, waitCount * 2);
+			}
+			waitThreads[waitCount] = thread;
+			waitPages[waitCount++] = page;
+		}
+
+		void removeWaiter(Thread thread) {
+			for (int i = 0; i < waitCount; i++) {
+				if (waitThreads[i] == thread) {
+					waitThreads[i] = waitThreads[--waitCount];
+					waitPages[i] = waitPages[waitCount];
+					waitThreads[waitCount] = null;
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Unpark the threads that wait for a page.
+		 * 
+		 * @param page
+		 *            the offset of the page or -1 for all waiting threads
+		 */
+		void wakeWaiters(long page) {
+			for (int i = 0; i < waitCount; i++) {
+				if (page < 0 || waitPages[i] == page) {
+					LockSupport.unpark(waitThreads[i]);
 				}
-			} finally {
-				locks.notifyAll();
 			}
 		}
 	}
@@ -40,6 +40,7 @@ import java.sql.*;
 
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.rdb.engine.store.CreateFile;
+import io.leavesfly.smallsql.rdb.engine.store.StorePage;
 import io.leavesfly.smallsql.rdb.engine.table.Column;
 import io.leavesfly.smallsql.rdb.engine.table.Columns;
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
@@ -53,8 +54,22 @@ public abstract class View {
 
 	public static final int MAGIC_TABLE = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'T';
 	public static final int MAGIC_VIEW = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'V';
-	public static final int TABLE_VIEW_VERSION = 2;
+	public static final int TABLE_VIEW_VERSION = 4;
 	public static final int TABLE_VIEW_OLD_VERSION = 1;
+	/**
+	 * The last version with the large page control block for every row. Such a
+	 * file is set to the current version if it is opened for writing. The old
+	 * pages can be read, all new pages are written with the small control
+	 * block.
+	 */
+	public static final int TABLE_VIEW_OLD_PAGE_VERSION = 2;
+	/**
+	 * The last version that saves every character of CHAR and VARCHAR values
+	 * with 2 bytes and pads CHAR values with spaces. The rows of such a file
+	 * are read and written ever in this format. New tables save the strings
+	 * in the compact format.
+	 */
+	public static final int TABLE_VIEW_WIDE_CHAR_VERSION = 3;
 
 	public final String name;
 	public final Columns columns;
@@ -76,6 +91,9 @@ public abstract class View {
 											// only one LOCK_WRITE per page
 											// possible
 	public static final int LOCK_TAB = 4; // lock the total table
+	public static final int LOCK_SNAPSHOT = 5; // occur on a snapshot read of a
+												// transaction and prevent only
+												// LOCK_TAB
 
 	protected View(String name, Columns columns) {
 		this.name = name;
@@ -109,9 +127,18 @@ public abstract class View {
 				throw SmallSQLException.create(Language.FILE_TOONEW, new Object[] { new Integer(version), fileName });
 			if (version < TABLE_VIEW_OLD_VERSION)
 				throw SmallSQLException.create(Language.FILE_TOOOLD, new Object[] { new Integer(version), fileName });
-			if (magic == MAGIC_TABLE)
-				return new Table(database, con, name, raFile, raFile.position(), version);
-			return new ViewTable(con, name, raFile, raFile.position());
+			if (magic == MAGIC_TABLE) {
+				long offset = raFile.position();
+				if (version == TABLE_VIEW_OLD_PAGE_VERSION && !database.isReadOnly()) {
+					buffer.clear();
+					buffer.putInt(TABLE_VIEW_WIDE_CHAR_VERSION);
+					buffer.flip();
+					raFile.write(buffer, 4);
+					StorePage.incrementWriteCount(raFile);
+				}
+				return new Table(database, con, name, raFile, offset, version);
+			}
+			return new ViewTable(database, con, name, raFile, raFile.position());
 		} catch (Throwable e) {
 			if (raFile != null)
 				try {
@@ -63,9 +63,10 @@ public class ViewTable extends View {
 	/**
 	 * Constructor for loading an existing view.
 	 */
-	public ViewTable(SsConnection con, String name, FileChannel raFile, long offset) throws Exception {
+	public ViewTable(Database database, SsConnection con, String name, FileChannel raFile, long offset)
+			throws Exception {
 		super(name, new Columns());
-		StorePage storePage = new StorePage(null, -1, raFile, offset);
+		StorePage storePage = new StorePage(null, -1, raFile, offset, database.getPageCache());
 		StoreImpl store = StoreImpl.createStore(null, storePage, SQLTokenizer.SELECT, offset);
 		sql = store.readString();
 
@@ -80,6 +81,7 @@ public class ViewTable extends View {
 			store.setCurrentOffsetInPage(offsetInPage + size);
 		}
 
+		database.getPageCache().invalidate(raFile);
 		raFile.close();
 		commandSelect = (CommandSelect) new SQLParser().parse(con, sql);
 		createColumns(con);
@@ -134,7 +136,7 @@ public class ViewTable extends View {
 
 	private void write(Database database, SsConnection con) throws Exception {
 		FileChannel raFile = createFile(con, database);
-		StorePage storePage = new StorePage(null, -1, raFile, 8);
+		StorePage storePage = new StorePage(null, -1, raFile, 8, database.getPageCache());
 		StoreImpl store = StoreImpl.createStore(null, storePage, SQLTokenizer.CREATE, 8);
 		store.writeString(sql);
 
@@ -142,6 +144,7 @@ public class ViewTable extends View {
 		store.writeInt(0); // no more additinal informations
 
 		store.writeFinsh(null);
+		database.getPageCache().invalidate(raFile);
 		raFile.close();
 	}
 
@@ -152,6 +155,7 @@ public class ViewTable extends View {
 		buffer.putInt(TABLE_VIEW_VERSION);
 		buffer.position(0);
 		raFile.write(buffer);
+		StorePage.incrementWriteCount(raFile);
 	}
 
 }
@@ -35,20 +35,35 @@ package io.leavesfly.smallsql.rdb.engine.index;
 import java.nio.channels.FileChannel;
 import java.sql.SQLException;
 
-import io.leavesfly.smallsql.rdb.engine.store.MemoryStream;
+import io.leavesfly.smallsql.rdb.engine.store.PageCache;
 import io.leavesfly.smallsql.rdb.engine.store.StoreImpl;
 import io.leavesfly.smallsql.rdb.engine.store.StorePage;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.rdb.engine.IndexNode;
 
 /**
+ * A node of an index that is saved in an index file. Every node is saved in its
+ * own page. A node reference the pages of its child nodes with the digit and
+ * the file offset. The nodes are loaded lazy on the first access. Changed nodes
+ * are written with saveTree() on new pages at the end of the file.
+ * 
  * @author Volker Berlin
  *
  */
 public class FileIndexNode extends IndexNode {
 
 	private final FileChannel file;
+	private final PageCache cache;
+	/**
+	 * The offset of the page of this node in the file or -1 if the node was
+	 * not saved since its last change.
+	 */
 	private long fileOffset;
+	/**
+	 * false if only the reference of this node was read but not the page of
+	 * the node.
+	 */
+	private boolean loaded;
 
 	/**
 	 * Create a new Node in the Index.
@@ -56,48 +71,110 @@ public class FileIndexNode extends IndexNode {
 	 * @param unique
 	 *            describe if it is an unique index (primary key) or a multi
 	 *            value index is.
+	 * @param cache
+	 *            the page cache of the database, can be null.
 	 */
-	FileIndexNode(boolean unique, char digit, FileChannel file) {
+	FileIndexNode(boolean unique, char digit, FileChannel file, PageCache cache) {
 		super(unique, digit);
 		this.file = file;
+		this.cache = cache;
 		fileOffset = -1;
+		loaded = true;
+	}
+
+	/**
+	 * Create a reference to a saved node. The node is loaded on the first
+	 * access.
+	 */
+	private FileIndexNode(boolean unique, char digit, FileChannel file, PageCache cache, long offset) {
+		super(unique, digit);
+		this.file = file;
+		this.cache = cache;
+		fileOffset = offset;
 	}
 
 	@Override
 	protected IndexNode createIndexNode(boolean unique, char digit) {
-		return new FileIndexNode(unique, digit, file);
+		return new FileIndexNode(unique, digit, file, cache);
 	}
 
-	void save() throws SQLException {
-		StorePage storePage = new StorePage(null, -1, file, fileOffset);
-		StoreImpl store = StoreImpl.createStore(null, storePage, SQLTokenizer.INSERT, fileOffset);
-		save(store);
-		fileOffset = store.writeFinsh(null);
+	@Override
+	protected void ensureLoaded() {
+		if (!loaded) {
+			loaded = true;
+			try {
+				StorePage storePage = new StorePage(null, -1, file, fileOffset, cache);
+				StoreImpl store = StoreImpl.createStore(null, storePage, SQLTokenizer.SELECT, fileOffset);
+				store.readShort(); // the digit is already read with the reference
+				load(store);
+			} catch (SQLException e) {
+				loaded = false;
+				throw new RuntimeException(e);
+			}
+		}
 	}
 
+	@Override
+	protected void setChanged() {
+		fileOffset = -1;
+	}
+
+	/**
+	 * Save this node and all its loaded child nodes that was changed. A node
+	 * need also be saved if the offset of a child node has changed.
+	 * 
+	 * @return the file offset of the page of this node
+	 */
+	long saveTree() throws SQLException {
+		if (!loaded) {
+			return fileOffset;
+		}
+		Object value = getValue();
+		if (value instanceof FileIndexNode) {
+			FileIndexNode root = (FileIndexNode) value;
+			long offset = root.fileOffset;
+			if (root.saveTree() != offset) {
+				fileOffset = -1;
+			}
+		}
+		IndexNode[] nodes = getChildNodes();
+		for (int i = 0; i < nodes.length; i++) {
+			FileIndexNode node = (FileIndexNode) nodes[i];
+			long offset = node.fileOffset;
+			if (node.saveTree() != offset) {
+				fileOffset = -1;
+			}
+		}
+		if (fileOffset < 0) {
+			StorePage storePage = new StorePage(null, -1, file, -1, cache);
+			StoreImpl store = StoreImpl.createStore(null, storePage, SQLTokenizer.INSERT, -1);
+			save(store);
+			fileOffset = store.writeFinsh(null);
+		}
+		return fileOffset;
+	}
+
+	@Override
 	protected void saveRef(StoreImpl output) throws SQLException {
 		if (fileOffset < 0) {
-			save();
+			throw new Error(); // saveTree() save the child nodes first
 		}
+		output.writeShort(getDigit());
 		output.writeLong(fileOffset);
 	}
 
-	IndexNode loadRef(long offset) throws SQLException {
-		StorePage storePage = new StorePage(null, -1, file, offset);
-		StoreImpl store = StoreImpl.createStore(null, storePage, SQLTokenizer.INSERT, fileOffset);
-		MemoryStream input = new MemoryStream();
-		FileIndexNode node = new FileIndexNode(getUnique(), (char) input.readShort(), file);
-		node.fileOffset = offset;
-		node.load(store);
-		return node;
+	@Override
+	protected IndexNode loadRef(StoreImpl input) throws SQLException {
+		char digit = (char) input.readShort();
+		long offset = input.readLong();
+		return new FileIndexNode(getUnique(), digit, file, cache, offset);
 	}
 
-	static FileIndexNode loadRootNode(boolean unique, FileChannel file, long offset) throws Exception {
-		StorePage storePage = new StorePage(null, -1, file, offset);
-		StoreImpl store = StoreImpl.createStore(null, storePage, SQLTokenizer.SELECT, offset);
-		FileIndexNode node = new FileIndexNode(unique, (char) store.readShort(), file);
-		node.fileOffset = offset;
-		node.load(store);
-		return node;
+	/**
+	 * Create the root node of a saved index. The node is loaded on the first
+	 * access.
+	 */
+	static FileIndexNode loadRootNode(boolean unique, FileChannel file, PageCache cache, long offset) {
+		return new FileIndexNode(unique, (char) -1, file, cache, offset);
 	}
 }
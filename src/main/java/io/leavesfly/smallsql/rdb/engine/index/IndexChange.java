@@ -0,0 +1,97 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ *
+ * ---------------
+ * IndexChange.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.index;
+
+import java.sql.SQLException;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.rdb.engine.TransactionStep;
+import io.leavesfly.smallsql.rdb.engine.store.StorePageLink;
+import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
+
+/**
+ * A not committed change of a single row for one index. The committed index is
+ * only changed on commit. Until the commit the change is registered in the
+ * IndexDescription that a lookup of the same connection find the changed row.
+ * The keys of unique indexes are not verified, like before the indexes was
+ * maintained a duplicate key is not detected.
+ */
+final class IndexChange extends TransactionStep {
+
+	final IndexDescription indexDesc;
+	final SsConnection con;
+	/**
+	 * A Long with the rowOffset of a committed row or the StorePageLink of a
+	 * row that was inserted in the current transaction.
+	 */
+	final Object row;
+	/** The key in the committed index or null. */
+	final Expressions oldKey;
+	/** The key after this change or null if the row was deleted. */
+	final Expressions newKey;
+	/** The previous not committed change of the same row or null. */
+	final IndexChange previous;
+	boolean done;
+
+	IndexChange(IndexDescription indexDesc, SsConnection con, Object row, Expressions oldKey, Expressions newKey,
+			IndexChange previous) {
+		super(indexDesc.getTableFile());
+		this.indexDesc = indexDesc;
+		this.con = con;
+		this.row = row;
+		this.oldKey = oldKey;
+		this.newKey = newKey;
+		this.previous = previous;
+	}
+
+	/**
+	 * The rowOffset of the changed row. For an inserted row it is only valid
+	 * after the commit of the row.
+	 */
+	final long getRowOffset() {
+		if (row instanceof StorePageLink) {
+			return ((StorePageLink) row).filePos;
+		}
+		return ((Long) row).longValue();
+	}
+
+	@Override
+	public long commit() throws SQLException {
+		indexDesc.commit(this);
+		return -1;
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		indexDesc.rollback(this);
+	}
+}
@@ -34,13 +34,20 @@
 package io.leavesfly.smallsql.rdb.engine.index;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
 
 import io.leavesfly.smallsql.rdb.engine.Index;
+import io.leavesfly.smallsql.rdb.engine.IndexNode;
+import io.leavesfly.smallsql.rdb.engine.Table;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
+import io.leavesfly.smallsql.rdb.sql.expression.ExpressionValue;
 import io.leavesfly.smallsql.rdb.sql.SQLParser;
 import io.leavesfly.smallsql.rdb.sql.datatype.Strings;
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
@@ -49,24 +56,70 @@ import io.leavesfly.smallsql.lang.Language;
 import io.leavesfly.smallsql.rdb.engine.Database;
 import io.leavesfly.smallsql.rdb.engine.View;
 import io.leavesfly.smallsql.rdb.engine.store.CreateFile;
+import io.leavesfly.smallsql.rdb.engine.store.PageCache;
 import io.leavesfly.smallsql.rdb.engine.store.StoreImpl;
+import io.leavesfly.smallsql.rdb.engine.store.StorePage;
+import io.leavesfly.smallsql.rdb.engine.store.TableStorePage;
+import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.util.Utils;
+import io.leavesfly.smallsql.util.datastruct.LongTreeList;
+import io.leavesfly.smallsql.util.datastruct.LongTreeListEnum;
 
 
 public final class IndexDescription {
 
 	static final int MAGIC_INDEX = 'S' << 24 | 'Q' << 16 | 'L' << 8 | 'I';
-	static final int INDEX_VERSION = 1;
+	static final int INDEX_VERSION = 2;
+	
+	/**
+	 * The size of the file header: magic, version, offset of the root node, status and the file size after the
+	 * last complete write.
+	 */
+	private static final int HEADER_SIZE = 28;
+	/** The saved tree is not valid, the index must be rebuild from the table. */
+	private static final int STATUS_DIRTY = 0;
+	/** The saved tree is equals to the committed rows of the table. */
+	private static final int STATUS_CLEAN = 1;
+	/**
+	 * If the file is larger as this factor of the size after the last complete write then the index is rebuild on
+	 * next load. Changed nodes are ever appended at the end of the file.
+	 */
+	private static final int COMPACT_FACTOR = 4;
+	private static final long COMPACT_MIN_SIZE = 0x10000;
+	
+	private static final long[] NO_ROWS = new long[0];
 	
 	private final String name;
 	final private int constraintType; //PRIMARY, UNIQUE, FOREIGIN, INDEX
 	final private Strings columns;
 	private int[] matrix;
 	final private Expressions expressions;
+	/** The table column of every index column. */
+	private int[] columnIdx;
+	/** The data types of all columns of the table. */
+	private int[] dataTypes;
+	private Table table;
+	/** false if the index can not be maintained, for example a view or a LOB column. */
+	private boolean isSupported;
+	private boolean isReadOnly;
+	
+	/** The committed values of the index. It is loaded on the first use. */
 	private Index index;
+	private FileIndexNode rootNode;
+	/** true if the header of the file reference the saved tree and the loaded tree was not changed. */
+	private boolean isHeaderClean;
+	/** The file size after the last complete write of the tree. */
+	private long baseSize;
+	/** true if the tree was rebuild and need to be written completely. */
+	private boolean isRebuild;
+	
+	/** The last not committed change of every changed row. */
+	private final HashMap<Object,IndexChange> changes = new HashMap<Object,IndexChange>();
+	
     private FileChannel raFile;
+    private PageCache pageCache;
     
 	
 	/**
@@ -110,12 +163,20 @@ public final class IndexDescription {
 	}
 	
 	
+	/**
+	 * If the table column with the index colIdx is a part of this index.
+	 */
+	public final boolean containsColumn(int colIdx){
+		return matrix[colIdx] >= 0;
+	}
+	
+	
 	/**
 	 * Described how well the index match to the column list.
 	 * @param strings a list of columns that should match
 	 * @return Integer.MAX_VALUE does not match; 0 - 100% match
 	 */
-	final int matchFactor(Strings strings){
+	public final int matchFactor(Strings strings){
 		if(strings.size() < columns.size())
 			return Integer.MAX_VALUE; //does not map
 		
@@ -139,14 +200,28 @@ public final class IndexDescription {
 	 * @see IndexDescriptions#setTableView
 	 */
 	final void init(Database database, View tableView)/* throws Exception*/{
+		pageCache = database.getPageCache();
+		isReadOnly = database.isReadOnly();
 		int size = tableView.columns.size();
 		matrix = new int[size];
+		dataTypes = new int[size];
 		for(int i=0; i<matrix.length; i++){
 			matrix[i] = -1;
+			dataTypes[i] = tableView.columns.get(i).getDataType();
 		}
 		
+		columnIdx = new int[columns.size()];
+		isSupported = tableView instanceof Table;
 		for(int i=0; i<columns.size(); i++){
-			matrix[tableView.findColumnIdx(columns.get(i))] = i;
+			int idx = tableView.findColumnIdx(columns.get(i));
+			matrix[idx] = i;
+			columnIdx[i] = idx;
+			if(getKeyType(dataTypes[idx]) < 0){
+				isSupported = false;
+			}
+		}
+		if(tableView instanceof Table){
+			table = (Table)tableView;
 		}
 	}
 	
@@ -160,6 +235,25 @@ public final class IndexDescription {
 	}
 	
 	
+	/**
+	 * Bind the index to a new file of the table, for example after ALTER TABLE or COMPACT TABLE. The row offsets of
+	 * the saved tree are not valid for the new file. The tree is rebuild from the rows of the new file on the next use.
+	 */
+	final synchronized void reset(Database database, View tableView) throws Exception{
+	    init( database, tableView );
+	    index = null;
+	    rootNode = null;
+	    changes.clear();
+	    if(raFile != null && !isReadOnly){
+	        if(pageCache != null) pageCache.invalidate(raFile);
+	        raFile.truncate(HEADER_SIZE);
+	        baseSize = 0;
+	        writeHeader(raFile, -1, STATUS_DIRTY);
+	    }
+	    isHeaderClean = false;
+	}
+	
+	
 	static File getFile(Database database, String name) throws Exception{
 		return new File( Utils.createIdxFileName( database, name ) );
 	}
@@ -210,6 +304,9 @@ public final class IndexDescription {
 	
 
 	void drop(Database database) throws Exception {
+        synchronized(this){
+            index = null; // there is no need to save the index
+        }
         close();
 		boolean ok = getFile( database, name).delete();
 		if(!ok) throw SmallSQLException.create(Language.TABLE_CANT_DROP, name);
@@ -218,6 +315,14 @@ public final class IndexDescription {
     
     void close() throws Exception{
         if(raFile != null){
+            synchronized(this){
+                if(index != null && !isReadOnly){
+                    save();
+                }
+                index = null;
+                rootNode = null;
+            }
+            if(pageCache != null) pageCache.invalidate(raFile);
             raFile.close();
             raFile = null;
         }
@@ -225,33 +330,620 @@ public final class IndexDescription {
     
 
 	private final void writeMagic(FileChannel raFile) throws Exception{
-	    ByteBuffer buffer = ByteBuffer.allocate(8);
+	    writeHeader(raFile, -1, STATUS_DIRTY);
+	}
+	
+	
+	/**
+	 * Write the file header.
+	 * @param root the file offset of the root node or -1
+	 * @param status STATUS_CLEAN or STATUS_DIRTY
+	 */
+	private final void writeHeader(FileChannel raFile, long root, int status) throws IOException{
+	    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
 	    buffer.putInt(MAGIC_INDEX);
 	    buffer.putInt(INDEX_VERSION);
+	    buffer.putLong(root);
+	    buffer.putInt(status);
+	    buffer.putLong(baseSize);
 	    buffer.position(0);
-	    raFile.write(buffer);
+	    while(buffer.hasRemaining()){
+	        raFile.write(buffer, buffer.position());
+	    }
+	    StorePage.incrementWriteCount(raFile);
+	}
+	
+	
+	/**
+	 * Load the root of the saved tree. If the saved tree is not valid then the index is rebuild from the rows of
+	 * the table. The caller must synchronize on this.
+	 */
+	private void loadIndex(SsConnection con) throws Exception{
+	    if(index != null){
+	        return;
+	    }
+	    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+	    while(buffer.hasRemaining()){
+	        if(raFile.read(buffer, buffer.position()) < 0){
+	            break;
+	        }
+	    }
+	    long root = -1;
+	    int status = STATUS_DIRTY;
+	    if(!buffer.hasRemaining()){ // a file of version 1 has only magic and version
+	        buffer.position(8);
+	        root = buffer.getLong();
+	        status = buffer.getInt();
+	        baseSize = buffer.getLong();
+	    }
+	    if(status == STATUS_CLEAN && root >= 0){
+	        rootNode = FileIndexNode.loadRootNode(false, raFile, pageCache, root);
+	        isHeaderClean = true;
+	    }else{
+	        rebuild(con);
+	    }
+	    index = new FileIndex(rootNode);
+	}
+	
+	
+	/**
+	 * Create the tree again with one pass over the rows of the table. This is needed after rows was written to the
+	 * table without index changes, for example by a bulk load with minimal logging.
+	 */
+	public final synchronized void rebuildIndex(SsConnection con) throws SQLException{
+	    if(!isSupported || raFile == null){
+	        return;
+	    }
+	    try{
+	        rebuild(con);
+	        index = new FileIndex(rootNode);
+	    }catch(Exception e){
+	        throw SmallSQLException.createFromException(e);
+	    }
 	}
 
 
 	/**
-	 * This is call if a single colum of the table is changed.
-	 * @param columnIdx The column position in the table
-	 * @param valueExpression the new value of the current row.
+	 * Create the tree from the committed rows of the table. The old pages of the file are removed.
+	 */
+	private void rebuild(SsConnection con) throws Exception{
+	    if(!isReadOnly){
+	        if(pageCache != null) pageCache.invalidate(raFile);
+	        raFile.truncate(HEADER_SIZE);
+	        baseSize = 0;
+	        writeHeader(raFile, -1, STATUS_DIRTY);
+	    }
+	    isHeaderClean = false;
+	    isRebuild = true;
+	    rootNode = new FileIndexNode(false, (char)-1, raFile, pageCache);
+	    Index newIndex = new FileIndex(rootNode);
+	    long filePos = table.getFirstPage();
+	    while(true){
+	        TableStorePage storePage = new TableStorePage(con, table, View.LOCK_NONE, filePos);
+	        StoreImpl store = StoreImpl.createStore(table, storePage, SQLTokenizer.SELECT, filePos);
+	        if(store == null){
+	            break;
+	        }
+	        if(store.isValidPage()){
+	            Expressions key = getKey(store);
+	            if(key != null){
+	                newIndex.addValues(filePos, key);
+	            }
+	        }
+	        filePos = store.getNextPagePos();
+	    }
+	}
+	
+	
+	/**
+	 * Write the changed nodes of the tree at the end of the file and mark the file as clean. If there are not
+	 * committed changes then the saved tree can not be used later. If the file contains to many unused pages then
+	 * the file is cleared and the index is rebuild on the next load.
+	 */
+	private void save() throws Exception{
+	    if(isHeaderClean){
+	        return; // nothing was changed
+	    }
+	    long root = rootNode.saveTree();
+	    long size = raFile.size();
+	    if(isRebuild){
+	        baseSize = size;
+	        isRebuild = false;
+	    }
+	    if(size > COMPACT_MIN_SIZE && size > baseSize * COMPACT_FACTOR){
+	        if(pageCache != null) pageCache.invalidate(raFile);
+	        raFile.truncate(HEADER_SIZE);
+	        writeHeader(raFile, -1, STATUS_DIRTY);
+	        return;
+	    }
+	    writeHeader(raFile, root, changes.isEmpty() ? STATUS_CLEAN : STATUS_DIRTY);
+	    isHeaderClean = changes.isEmpty();
+	}
+	
+	
+	/**
+	 * Returns the data type that is used for the key values of a column data type or -1 if the column can not be
+	 * indexed. Numbers with the same sort order are mapped to the same key type.
+	 */
+	private static int getKeyType(int dataType){
+	    switch(dataType){
+	        case SQLTokenizer.BIT:
+	        case SQLTokenizer.BOOLEAN:
+	            return SQLTokenizer.BOOLEAN;
+	        case SQLTokenizer.TINYINT:
+	        case SQLTokenizer.SMALLINT:
+	        case SQLTokenizer.INT:
+	            return SQLTokenizer.INT;
+	        case SQLTokenizer.BIGINT:
+	        case SQLTokenizer.MONEY:
+	        case SQLTokenizer.SMALLMONEY:
+	        case SQLTokenizer.DATE:
+	        case SQLTokenizer.TIME:
+	        case SQLTokenizer.TIMESTAMP:
+	        case SQLTokenizer.SMALLDATETIME:
+	            return SQLTokenizer.BIGINT;
+	        case SQLTokenizer.REAL:
+	            return SQLTokenizer.REAL;
+	        case SQLTokenizer.FLOAT:
+	        case SQLTokenizer.DOUBLE:
+	            return SQLTokenizer.DOUBLE;
+	        case SQLTokenizer.NUMERIC:
+	        case SQLTokenizer.DECIMAL:
+	            return SQLTokenizer.DECIMAL;
+	        case SQLTokenizer.CHAR:
+	        case SQLTokenizer.NCHAR:
+	            return SQLTokenizer.CHAR;
+	        case SQLTokenizer.VARCHAR:
+	        case SQLTokenizer.NVARCHAR:
+	            return SQLTokenizer.VARCHAR;
+	        case SQLTokenizer.BINARY:
+	        case SQLTokenizer.VARBINARY:
+	            return SQLTokenizer.VARBINARY;
+	        default:
+	            return -1;
+	    }
+	}
+	
+	
+	/**
+	 * Read the key of the row from the store. 
+	 * @return the key or null if a value of the key is NULL. NULL values are not saved in the index.
+	 */
+	private Expressions getKey(StoreImpl store) throws Exception{
+	    int[] offsets = new int[dataTypes.length];
+	    // the store can be in writing, the write position must not change
+	    int currentOffset = store.getCurrentOffsetInPage();
+	    try{
+	        return getKey(store, offsets);
+	    }finally{
+	        store.setCurrentOffsetInPage(currentOffset);
+	    }
+	}
+	
+	
+	private Expressions getKey(StoreImpl store, int[] offsets) throws Exception{
+	    store.scanObjectOffsets(offsets, dataTypes);
+	    Expressions key = new Expressions();
+	    for(int i=0; i<columnIdx.length; i++){
+	        int idx = columnIdx[i];
+	        int offset = offsets[idx];
+	        if(store.isNull(offset)){
+	            return null;
+	        }
+	        int dataType = dataTypes[idx];
+	        int keyType = getKeyType(dataType);
+	        Object value;
+	        switch(dataType){
+	            case SQLTokenizer.MONEY:
+	            case SQLTokenizer.SMALLMONEY:
+	                value = Long.valueOf(store.getMoney(offset, dataType));
+	                break;
+	            default:
+	                switch(keyType){
+	                    case SQLTokenizer.BOOLEAN:
+	                        value = Boolean.valueOf(store.getBoolean(offset, dataType));
+	                        break;
+	                    case SQLTokenizer.INT:
+	                        value = Integer.valueOf(store.getInt(offset, dataType));
+	                        break;
+	                    case SQLTokenizer.BIGINT:
+	                        value = Long.valueOf(store.getLong(offset, dataType));
+	                        break;
+	                    case SQLTokenizer.REAL:
+	                        value = Float.valueOf(store.getFloat(offset, dataType));
+	                        break;
+	                    case SQLTokenizer.DOUBLE:
+	                        value = Double.valueOf(store.getDouble(offset, dataType));
+	                        break;
+	                    case SQLTokenizer.DECIMAL:
+	                        value = store.getNumeric(offset, dataType);
+	                        break;
+	                    case SQLTokenizer.VARBINARY:
+	                        value = store.getBytes(offset, dataType);
+	                        break;
+	                    default:
+	                        value = store.getString(offset, dataType);
+	                }
+	        }
+	        key.add(new ExpressionValue(value, keyType));
+	    }
+	    return key;
+	}
+	
+	
+	/**
+	 * Convert a search value for the index column to a key value. Only values that are compared like the stored
+	 * values can be converted.
+	 * @param idx the index column
+	 * @return the key value or null if the index can not be used for this value.
+	 */
+	private Expression createKey(int idx, Expression value) throws Exception{
+	    int dataType = dataTypes[columnIdx[idx]];
+	    int keyType = getKeyType(dataType);
+	    int valueKeyType = getKeyType(value.getDataType());
+	    Object key;
+	    switch(dataType){
+	        case SQLTokenizer.MONEY:
+	        case SQLTokenizer.SMALLMONEY:
+	        case SQLTokenizer.DATE:
+	        case SQLTokenizer.TIME:
+	        case SQLTokenizer.TIMESTAMP:
+	        case SQLTokenizer.SMALLDATETIME:
+	            if(value.getDataType() != dataType){
+	                return null;
+	            }
+	            if(dataType == SQLTokenizer.MONEY || dataType == SQLTokenizer.SMALLMONEY){
+	                key = Long.valueOf(value.getMoney());
+	            }else{
+	                key = Long.valueOf(value.getLong());
+	            }
+	            break;
+	        default:
+	            switch(keyType){
+	                case SQLTokenizer.BOOLEAN:
+	                    if(valueKeyType != SQLTokenizer.BOOLEAN){
+	                        return null;
+	                    }
+	                    key = Boolean.valueOf(value.getBoolean());
+	                    break;
+	                case SQLTokenizer.INT:
+	                case SQLTokenizer.BIGINT:
+	                    if(valueKeyType != SQLTokenizer.INT && valueKeyType != SQLTokenizer.BIGINT || isMoneyOrDate(value.getDataType())){
+	                        return null;
+	                    }
+	                    long longValue = value.getLong();
+	                    if(keyType == SQLTokenizer.INT){
+	                        // values outside of the range can not be stored, the WHERE condition verify the rows
+	                        key = Integer.valueOf((int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, longValue)));
+	                    }else{
+	                        key = Long.valueOf(longValue);
+	                    }
+	                    break;
+	                case SQLTokenizer.REAL:
+	                case SQLTokenizer.DOUBLE:
+	                    if(valueKeyType != SQLTokenizer.INT && valueKeyType != SQLTokenizer.BIGINT && valueKeyType != SQLTokenizer.REAL
+	                            && valueKeyType != SQLTokenizer.DOUBLE || isMoneyOrDate(value.getDataType())){
+	                        return null;
+	                    }
+	                    if(keyType == SQLTokenizer.REAL){
+	                        key = Float.valueOf(value.getFloat());
+	                    }else{
+	                        key = Double.valueOf(value.getDouble());
+	                    }
+	                    break;
+	                case SQLTokenizer.DECIMAL:
+	                    if(valueKeyType != SQLTokenizer.INT && valueKeyType != SQLTokenizer.BIGINT && valueKeyType != SQLTokenizer.DECIMAL
+	                            || isMoneyOrDate(value.getDataType())){
+	                        return null;
+	                    }
+	                    MutableNumeric numeric = new MutableNumeric(value.getNumeric());
+	                    numeric.setScale(table.columns.get(columnIdx[idx]).getScale());
+	                    key = numeric;
+	                    break;
+	                case SQLTokenizer.VARBINARY:
+	                    if(valueKeyType != SQLTokenizer.VARBINARY){
+	                        return null;
+	                    }
+	                    key = value.getBytes();
+	                    break;
+	                default:
+	                    if(valueKeyType != SQLTokenizer.CHAR && valueKeyType != SQLTokenizer.VARCHAR){
+	                        return null;
+	                    }
+	                    key = value.getString();
+	            }
+	    }
+	    return new ExpressionValue(key, keyType);
+	}
+	
+	
+	private static boolean isMoneyOrDate(int dataType){
+	    switch(dataType){
+	        case SQLTokenizer.MONEY:
+	        case SQLTokenizer.SMALLMONEY:
+	        case SQLTokenizer.DATE:
+	        case SQLTokenizer.TIME:
+	        case SQLTokenizer.TIMESTAMP:
+	        case SQLTokenizer.SMALLDATETIME:
+	            return true;
+	        default:
+	            return false;
+	    }
+	}
+	
+	
+	/**
+	 * Get the position of an index column in the table.
+	 * @param idx the index column
+	 */
+	public final int getTableColumnIdx(int idx){
+	    return columnIdx[idx];
+	}
+	
+	
+	/**
+	 * Estimate the count of different values of the first index columns. Only the row count of the table is known,
+	 * the values are expected to be equally distributed over the index columns.
+	 * @param prefixCount the count of the first index columns
+	 * @param rowCount the estimated count of rows in the table
+	 */
+	public final double getDistinctEstimate(int prefixCount, long rowCount){
+	    if(prefixCount <= 0 || rowCount <= 1){
+	        return 1;
+	    }
+	    int count = columns.size();
+	    if(!isUnique()){
+	        count++; // a value of a not unique index is expected more as once
+	    }
+	    return Math.max(1, Math.pow(rowCount, Math.min(1.0, (double)prefixCount / count)));
+	}
+	
+	
+	/**
+	 * If this index can be used to find rows.
 	 */
-	public final void writeExpression( int columnIdx, Expression valueExpression) {
-		int idx = matrix[columnIdx];
-		if(idx >= 0) //set only if the column part of this index
-			expressions.set(idx, valueExpression);
+	public final boolean isUsable(){
+	    return isSupported;
+	}
+	
+	
+	/**
+	 * If a range of the index column can be searched with this index. This is only possible for numbers and dates.
+	 * @param idx the index column
+	 */
+	public final boolean isRangeUsable(int idx){
+	    return isSupported && Index.getDigitCount(getKeyType(dataTypes[columnIdx[idx]])) > 0;
+	}
+	
+	
+	/**
+	 * Find the rows for the values of the first index columns and the range of the next index column. The result
+	 * include all committed rows that can match but it can include also rows that does not match. The caller need
+	 * to verify the rows. Rows that are changed and not committed can be missing. 
+	 * @param con the current connection
+	 * @param prefix the values of the first index columns
+	 * @param from the inclusive lower bound of the next index column or null
+	 * @param to the inclusive upper bound of the next index column or null
+	 * @return the sorted rowOffsets or null if the index can not be used for this values.
+	 */
+	public final long[] findRows(SsConnection con, Expression[] prefix, Expression from, Expression to) throws Exception{
+	    if(!isSupported){
+	        return null;
+	    }
+	    Expression[] keys = new Expression[prefix.length];
+	    for(int i=0; i<prefix.length; i++){
+	        if(prefix[i].isNull()){
+	            return NO_ROWS; // NULL is never equals
+	        }
+	        keys[i] = createKey(i, prefix[i]);
+	        if(keys[i] == null){
+	            return null;
+	        }
+	    }
+	    Expression fromKey = null;
+	    Expression toKey = null;
+	    if(from != null || to != null){
+	        if(!isRangeUsable(prefix.length)){
+	            return null;
+	        }
+	        if((from != null && from.isNull()) || (to != null && to.isNull())){
+	            return NO_ROWS;
+	        }
+	        if(from != null && (fromKey = createKey(prefix.length, from)) == null){
+	            return null;
+	        }
+	        if(to != null && (toKey = createKey(prefix.length, to)) == null){
+	            return null;
+	        }
+	    }
+	    LongTreeList rows = new LongTreeList();
+	    synchronized(this){
+	        loadIndex(con);
+	        index.findRows(keys, fromKey, toKey, rows);
+	        // rows with a not committed change of the key are not in the index
+	        Iterator<IndexChange> iterator = changes.values().iterator();
+	        while(iterator.hasNext()){
+	            IndexChange change = iterator.next();
+	            if(change.newKey != null && change.row instanceof Long &&
+	                    (change.con == con || con.isolationLevel <= Connection.TRANSACTION_READ_UNCOMMITTED)){
+	                rows.add(change.getRowOffset());
+	            }
+	        }
+	    }
+	    long[] result = new long[16];
+	    int count = 0;
+	    LongTreeListEnum listEnum = new LongTreeListEnum();
+	    long rowOffset;
+	    while((rowOffset = rows.getNext(listEnum)) >= 0){
+	        if(count == result.length){
+	            long[] temp = new long[count * 2 + 1];
+	            System.arraycopy(result, 0, temp, 0, count);
+	            result = temp;
+	        }
+	        result[count++] = rowOffset;
+	    }
+	    if(count != result.length){
+	        long[] temp = new long[count];
+	        System.arraycopy(result, 0, temp, 0, count);
+	        result = temp;
+	    }
+	    return result;
 	}
 
 
 	/**
-	 * This is call if the row is finish written.
+	 * This is call if the row is finish written with an INSERT.
 	 * @param con the connection for a later commit or rollback.
+	 * @param store the new row
 	 */
-	public final void writeFinish(SsConnection con) {
-		//TODO
-		//index.addValues(expressions);		
+	public final void writeFinish(SsConnection con, StoreImpl store) throws Exception{
+	    if(isSupported){
+	        addChange(con, store.getLink(), null, getKey(store));
+	    }
+	}
+	
+	
+	/**
+	 * This is call if a row is updated.
+	 * @param con the connection for a later commit or rollback.
+	 * @param row the rowOffset as Long or the StorePageLink of a not committed row
+	 * @param oldStore the current values of the row
+	 * @param newStore the new values of the row
+	 */
+	public final void updateRow(SsConnection con, Object row, StoreImpl oldStore, StoreImpl newStore) throws Exception{
+	    if(isSupported){
+	        Expressions oldKey = getKey(oldStore);
+	        Expressions newKey = getKey(newStore);
+	        if(!equals(oldKey, newKey)){
+	            addChange(con, row, oldKey, newKey);
+	        }
+	    }
+	}
+	
+	
+	/**
+	 * This is call if a row is deleted.
+	 * @param con the connection for a later commit or rollback.
+	 * @param row the rowOffset as Long or the StorePageLink of a not committed row
+	 * @param oldStore the current values of the row
+	 */
+	public final void deleteRow(SsConnection con, Object row, StoreImpl oldStore) throws Exception{
+	    if(isSupported){
+	        Expressions oldKey = getKey(oldStore);
+	        if(oldKey != null){
+	            addChange(con, row, oldKey, null);
+	        }
+	    }
+	}
+	
+	
+	private static boolean equals(Expressions key1, Expressions key2) throws Exception{
+	    if(key1 == null || key2 == null){
+	        return key1 == key2;
+	    }
+	    for(int i=0; i<key1.size(); i++){
+	        Expression expr1 = key1.get(i);
+	        Expression expr2 = key2.get(i);
+	        if(expr1.getDataType() == SQLTokenizer.VARBINARY){
+	            if(!java.util.Arrays.equals(expr1.getBytes(), expr2.getBytes())){
+	                return false;
+	            }
+	        }else if(!expr1.getString().equals(expr2.getString())){
+	            return false;
+	        }
+	    }
+	    return true;
+	}
+	
+	
+	/**
+	 * Register a change of a row and add it to the transaction of the connection.
+	 */
+	private void addChange(SsConnection con, Object row, Expressions oldKey, Expressions newKey) throws Exception{
+	    IndexChange change;
+	    synchronized(this){
+	        loadIndex(con);
+	        change = new IndexChange(this, con, row, oldKey, newKey, changes.get(row));
+	        changes.put(row, change);
+	    }
+	    try{
+	        con.add(change);
+	    }catch(SQLException e){
+	        rollback(change);
+	        throw e;
+	    }
+	}
+	
+	
+	/**
+	 * Apply the change to the committed index. It is called after the commit of the row.
+	 */
+	final synchronized void commit(IndexChange change) throws SQLException{
+	    if(change.done){
+	        return;
+	    }
+	    change.done = true;
+	    if(changes.get(change.row) == change){
+	        changes.remove(change.row);
+	    }
+	    if(raFile == null){
+	        return; // the index was closed
+	    }
+	    try{
+	        loadIndex(change.con);
+	        if(isHeaderClean){
+	            // the saved tree is invalid until the next save
+	            writeHeader(raFile, -1, STATUS_DIRTY);
+	            isHeaderClean = false;
+	        }
+	        long rowOffset = change.getRowOffset();
+	        if(change.oldKey != null){
+	            index.removeValue(rowOffset, change.oldKey);
+	        }
+	        if(change.newKey != null){
+	            index.addValues(rowOffset, change.newKey);
+	        }
+	    }catch(Exception e){
+	        throw SmallSQLException.createFromException(e);
+	    }
+	}
+	
+	
+	/**
+	 * Discard a not committed change.
+	 */
+	final synchronized void rollback(IndexChange change) throws SQLException{
+	    if(change.done){
+	        return;
+	    }
+	    change.done = true;
+	    if(changes.get(change.row) == change){
+	        IndexChange previous = change.previous;
+	        if(previous != null && !previous.done){
+	            changes.put(change.row, previous);
+	        }else{
+	            changes.remove(change.row);
+	        }
+	    }
+	}
+	
+	
+	/**
+	 * The file of the table, it is used to discard the changes if the table is dropped.
+	 */
+	final FileChannel getTableFile(){
+	    return table.raFile;
+	}
+	
+	
+	/**
+	 * Create an Index with a FileIndexNode as root.
+	 */
+	private static final class FileIndex extends Index{
+	    
+	    FileIndex(IndexNode rootNode){
+	        super(rootNode);
+	    }
 	}
 	
 	
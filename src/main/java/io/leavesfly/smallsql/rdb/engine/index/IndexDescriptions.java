@@ -125,6 +125,17 @@ public class IndexDescriptions {
 	}
 
 
+	/**
+	 * Bind all indexes to a new file of the table. The indexes are rebuild from the rows of the new file.
+	 * @see IndexDescription#reset
+	 */
+	public void reset(Database database, View tableView) throws Exception{
+		for(int i=0; i<size; i++){
+			data[i].reset(database, tableView);
+		}
+	}
+
+
 	public void drop(Database database) throws Exception {
 		for(int i=0; i<size; i++){
 			data[i].drop(database);
@@ -36,6 +36,7 @@ import io.leavesfly.smallsql.rdb.engine.RowSource;
 import io.leavesfly.smallsql.rdb.sql.expression.ExpressionName;
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.rdb.engine.View;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 
@@ -73,6 +74,15 @@ public abstract class DataSource extends RowSource {
 
 	public abstract byte[] getBytes(int colIdx) throws Exception;
 
+	/**
+	 * Get a reference to a LOB value of a table that can be read as stream.
+	 * 
+	 * @return the reference or null if the value is NULL or not saved as LOB
+	 */
+	public LobLocator getLob(int colIdx) throws Exception {
+		return null;
+	}
+
 	public abstract int getDataType(int colIdx);
 
 	public boolean init(SsConnection con) throws Exception {
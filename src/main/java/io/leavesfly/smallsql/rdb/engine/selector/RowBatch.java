@@ -0,0 +1,338 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * RowBatch.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.selector;
+
+import java.util.Arrays;
+
+import io.leavesfly.smallsql.rdb.sql.expression.Expression;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
+import io.leavesfly.smallsql.util.Utils;
+
+/**
+ * A block of rows that is moved with RowSource.nextBatch() instead of single
+ * rows with next(). The consumer add the expressions that it need as columns.
+ * The values of a column are saved in a primitive vector, integer types as
+ * long and floating point types as double. The NULL values are marked in a
+ * bitmap, the vector value of a NULL is 0 like the value of Store.getLong().
+ * <p>
+ * The selection contains the indexes of the valid rows in ascending order. A
+ * filter like Where remove rows from the selection without moving the values.
+ * <p>
+ * Only the data types of isSupported() can be used in a batch. All other
+ * queries are executed row by row.
+ */
+public final class RowBatch {
+
+	/** The default count of rows in a batch. */
+	public static final int DEFAULT_SIZE = 1024;
+
+	private final int capacity;
+	private Expression[] columns = new Expression[0];
+	private int[] dataTypes = new int[0];
+	private long[][] longs = new long[0][];
+	private double[][] doubles = new double[0][];
+	private long[][] nulls = new long[0][];
+
+	private final int[] selection;
+	private int size;
+	private int selectedCount;
+
+	/**
+	 * Create an empty batch.
+	 *
+	 * @param capacity
+	 *            the max count of rows in the batch
+	 */
+	public RowBatch(int capacity) {
+		this.capacity = capacity;
+		selection = new int[capacity];
+	}
+
+	/**
+	 * Create a new empty batch with the same capacity and the same columns.
+	 * This is used for reading partitions of a RowSource in different threads.
+	 */
+	public RowBatch copyEmpty() {
+		RowBatch copy = new RowBatch(capacity);
+		for (int i = 0; i < columns.length; i++) {
+			copy.addColumn(columns[i]);
+		}
+		return copy;
+	}
+
+	/**
+	 * If values of the data type can be saved in a batch.
+	 */
+	public static boolean isSupported(int dataType) {
+		switch (dataType) {
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+		case SQLTokenizer.BIGINT:
+		case SQLTokenizer.REAL:
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * If the values of the data type are saved in a double vector.
+	 */
+	private static boolean isDoubleType(int dataType) {
+		switch (dataType) {
+		case SQLTokenizer.REAL:
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Add an expression as column. If the expression is already a column then
+	 * its index is returned. The values of new columns are read from the next
+	 * filling of the batch.
+	 *
+	 * @return the index of the column or -1 if the data type is not supported
+	 */
+	public int addColumn(Expression expr) {
+		int idx = indexOf(expr);
+		if (idx >= 0) {
+			return idx;
+		}
+		int dataType = expr.getDataType();
+		if (!isSupported(dataType)) {
+			return -1;
+		}
+		idx = columns.length;
+		columns = Arrays.copyOf(columns, idx + 1);
+		dataTypes = Arrays.copyOf(dataTypes, idx + 1);
+		longs = Arrays.copyOf(longs, idx + 1);
+		doubles = Arrays.copyOf(doubles, idx + 1);
+		nulls = Arrays.copyOf(nulls, idx + 1);
+		columns[idx] = expr;
+		dataTypes[idx] = dataType;
+		if (isDoubleType(dataType)) {
+			doubles[idx] = new double[capacity];
+		} else {
+			longs[idx] = new long[capacity];
+		}
+		nulls[idx] = new long[(capacity + 63) >> 6];
+		return idx;
+	}
+
+	/**
+	 * Get the index of the column for the expression.
+	 *
+	 * @return the index or -1 if the expression is not a column
+	 */
+	public int indexOf(Expression expr) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] == expr) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public Expression getColumn(int col) {
+		return columns[col];
+	}
+
+	public int getDataType(int col) {
+		return dataTypes[col];
+	}
+
+	/**
+	 * If the values of the column are saved in the double vector, else they are
+	 * saved in the long vector.
+	 */
+	public boolean isDouble(int col) {
+		return doubles[col] != null;
+	}
+
+	/**
+	 * Remove all rows. Must be called before the batch is filled again.
+	 */
+	public void clear() {
+		for (int i = 0; i < nulls.length; i++) {
+			Arrays.fill(nulls[i], 0);
+		}
+		size = 0;
+		selectedCount = 0;
+	}
+
+	public boolean isFull() {
+		return size >= capacity;
+	}
+
+	/**
+	 * Get the count of filled rows. This include rows that are removed from
+	 * the selection.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Add a new selected row. The caller must set the values of all columns.
+	 *
+	 * @return the index of the new row
+	 */
+	public int addRow() {
+		selection[selectedCount++] = size;
+		return size++;
+	}
+
+	/**
+	 * Add a new row and read the values of all columns from the current row of
+	 * the RowSource.
+	 */
+	public void readRow() throws Exception {
+		int row = addRow();
+		for (int c = 0; c < columns.length; c++) {
+			readValue(c, row);
+		}
+	}
+
+	/**
+	 * Read the value of a column by evaluating the expression of the column.
+	 */
+	public void readValue(int col, int row) throws Exception {
+		Expression expr = columns[col];
+		if (expr.isNull()) {
+			setNull(col, row);
+		} else if (doubles[col] != null) {
+			doubles[col][row] = expr.getDouble();
+		} else {
+			longs[col][row] = expr.getLong();
+		}
+	}
+
+	public void setLong(int col, int row, long value) {
+		longs[col][row] = value;
+	}
+
+	public void setDouble(int col, int row, double value) {
+		doubles[col][row] = value;
+	}
+
+	public void setNull(int col, int row) {
+		nulls[col][row >> 6] |= 1L << row;
+		if (doubles[col] != null) {
+			doubles[col][row] = 0;
+		} else {
+			longs[col][row] = 0;
+		}
+	}
+
+	public boolean isNull(int col, int row) {
+		return (nulls[col][row >> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * If the column has no NULL value in the filled rows.
+	 */
+	public boolean hasNoNulls(int col) {
+		long[] bits = nulls[col];
+		for (int i = (size + 63) >> 6; --i >= 0;) {
+			if (bits[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the vector of an integer column. The values of NULL rows are 0.
+	 */
+	public long[] getLongs(int col) {
+		return longs[col];
+	}
+
+	/**
+	 * Get the vector of a floating point column. The values of NULL rows are
+	 * 0.
+	 */
+	public double[] getDoubles(int col) {
+		return doubles[col];
+	}
+
+	/**
+	 * Get the value of a row as object. The class is the same as from
+	 * Expression.getObject() of the column expression.
+	 */
+	public Object getObject(int col, int row) {
+		if (isNull(col, row)) {
+			return null;
+		}
+		switch (dataTypes[col]) {
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+			return Utils.getInteger((int) longs[col][row]);
+		case SQLTokenizer.BIGINT:
+			return Long.valueOf(longs[col][row]);
+		case SQLTokenizer.REAL:
+			return Float.valueOf((float) doubles[col][row]);
+		default:
+			return Double.valueOf(doubles[col][row]);
+		}
+	}
+
+	/**
+	 * Get the indexes of the selected rows. Only the first
+	 * getSelectedCount() values are valid.
+	 */
+	public int[] getSelection() {
+		return selection;
+	}
+
+	public int getSelectedCount() {
+		return selectedCount;
+	}
+
+	/**
+	 * Set the count of selected rows after a filter has removed rows from the
+	 * selection.
+	 */
+	public void setSelectedCount(int count) {
+		selectedCount = count;
+	}
+}
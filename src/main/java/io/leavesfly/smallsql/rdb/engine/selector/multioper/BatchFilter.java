@@ -0,0 +1,478 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BatchFilter.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.selector.multioper;
+
+import io.leavesfly.smallsql.rdb.engine.selector.RowBatch;
+import io.leavesfly.smallsql.rdb.sql.expression.Expression;
+import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionArithmetic;
+import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionInSelect;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
+
+/**
+ * A WHERE condition that is evaluated on the vectors of a RowBatch. The result
+ * for every row is the same as from Expression.getBoolean() on the row.
+ * <p>
+ * Supported are comparisons and BETWEEN of columns and constant values with a
+ * numeric comparison type, IS NULL, IS NOT NULL, AND, OR and NOT. The columns
+ * must be plain column names because all columns are read before the
+ * condition is verified. An expression like a/b can throw an exception for a
+ * row that is removed by another part of the condition.
+ */
+abstract class BatchFilter {
+
+	/**
+	 * Remove the rows that not fulfill the condition.
+	 *
+	 * @param rows
+	 *            the ascending indexes of the rows, the valid rows are moved to
+	 *            the begin
+	 * @param count
+	 *            the count of rows
+	 * @return the count of valid rows
+	 */
+	abstract int filter(RowBatch batch, int[] rows, int count) throws Exception;
+
+	/**
+	 * Create a filter for the condition. The needed columns are added to the
+	 * batch. The comparison types are taken from the current values of the
+	 * parameters, a filter is valid for one execute only.
+	 *
+	 * @return the filter or null if the condition can not evaluated on a batch
+	 */
+	static BatchFilter create(Expression expr, RowBatch batch) throws Exception {
+		if (!(expr instanceof ExpressionArithmetic) || expr instanceof ExpressionInSelect) {
+			return null;
+		}
+		int operation = ((ExpressionArithmetic) expr).getOperation();
+		Expression[] params = expr.getParams();
+		switch (operation) {
+		case ExpressionArithmetic.AND:
+		case ExpressionArithmetic.OR: {
+			BatchFilter left = create(params[0], batch);
+			BatchFilter right = left == null ? null : create(params[1], batch);
+			if (right == null) {
+				return null;
+			}
+			return operation == ExpressionArithmetic.AND ? new And(left, right) : new Or(left, right);
+		}
+		case ExpressionArithmetic.NOT: {
+			BatchFilter filter = create(params[0], batch);
+			return filter == null ? null : new Not(filter);
+		}
+		case ExpressionArithmetic.ISNULL:
+		case ExpressionArithmetic.ISNOTNULL: {
+			if (params[0].getType() != Expression.NAME) {
+				return null;
+			}
+			int col = batch.addColumn(params[0]);
+			return col < 0 ? null : new IsNull(col, operation == ExpressionArithmetic.ISNOTNULL);
+		}
+		case ExpressionArithmetic.EQUALS:
+		case ExpressionArithmetic.EQUALS_NULL:
+		case ExpressionArithmetic.UNEQUALS:
+		case ExpressionArithmetic.GREATER:
+		case ExpressionArithmetic.GRE_EQU:
+		case ExpressionArithmetic.LESSER:
+		case ExpressionArithmetic.LES_EQU:
+		case ExpressionArithmetic.BETWEEN:
+			return Compare.create(operation, params, batch);
+		default:
+			return null;
+		}
+	}
+
+	private static final class And extends BatchFilter {
+		private final BatchFilter left, right;
+
+		And(BatchFilter left, BatchFilter right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		int filter(RowBatch batch, int[] rows, int count) throws Exception {
+			count = left.filter(batch, rows, count);
+			return count == 0 ? 0 : right.filter(batch, rows, count);
+		}
+	}
+
+	private static final class Or extends BatchFilter {
+		private final BatchFilter left, right;
+		private int[] leftRows = new int[0];
+		private int[] rightRows = new int[0];
+
+		Or(BatchFilter left, BatchFilter right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		int filter(RowBatch batch, int[] rows, int count) throws Exception {
+			if (leftRows.length < count) {
+				leftRows = new int[rows.length];
+				rightRows = new int[rows.length];
+			}
+			System.arraycopy(rows, 0, leftRows, 0, count);
+			int leftCount = left.filter(batch, leftRows, count);
+
+			// the right side is only verified for the rows that are not valid
+			// for the left side
+			int rightCount = 0;
+			for (int i = 0, l = 0; i < count; i++) {
+				int row = rows[i];
+				if (l < leftCount && leftRows[l] == row) {
+					l++;
+				} else {
+					rightRows[rightCount++] = row;
+				}
+			}
+			rightCount = right.filter(batch, rightRows, rightCount);
+
+			// merge both ascending lists
+			int n = 0;
+			for (int l = 0, r = 0; l < leftCount || r < rightCount;) {
+				if (r >= rightCount || (l < leftCount && leftRows[l] < rightRows[r])) {
+					rows[n++] = leftRows[l++];
+				} else {
+					rows[n++] = rightRows[r++];
+				}
+			}
+			return n;
+		}
+	}
+
+	private static final class Not extends BatchFilter {
+		private final BatchFilter filter;
+		private int[] validRows = new int[0];
+
+		Not(BatchFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		int filter(RowBatch batch, int[] rows, int count) throws Exception {
+			if (validRows.length < count) {
+				validRows = new int[rows.length];
+			}
+			System.arraycopy(rows, 0, validRows, 0, count);
+			int validCount = filter.filter(batch, validRows, count);
+			int n = 0;
+			for (int i = 0, v = 0; i < count; i++) {
+				int row = rows[i];
+				if (v < validCount && validRows[v] == row) {
+					v++;
+				} else {
+					rows[n++] = row;
+				}
+			}
+			return n;
+		}
+	}
+
+	private static final class IsNull extends BatchFilter {
+		private final int col;
+		private final boolean isNot;
+
+		IsNull(int col, boolean isNot) {
+			this.col = col;
+			this.isNot = isNot;
+		}
+
+		@Override
+		int filter(RowBatch batch, int[] rows, int count) {
+			int n = 0;
+			for (int i = 0; i < count; i++) {
+				int row = rows[i];
+				if (batch.isNull(col, row) != isNot) {
+					rows[n++] = row;
+				}
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * A comparison or a BETWEEN. All operands are converted to the comparison
+	 * type like in ExpressionArithmetic.getBoolean(). Values of the types INT
+	 * and BIGINT are compared as long, values of the types REAL and DOUBLE as
+	 * double.
+	 */
+	private static final class Compare extends BatchFilter {
+		private static final int INT = 1, LONG = 2, FLOAT = 3, DOUBLE = 4;
+
+		private final int operation;
+		private final int compareType;
+		private final Expression[] operands;
+		/** The batch column of every operand or -1 for a constant value. */
+		private final int[] cols;
+		private final long[][] longValues;
+		private final double[][] doubleValues;
+
+		private Compare(int operation, int compareType, Expression[] operands, int[] cols, int capacity) {
+			this.operation = operation;
+			this.compareType = compareType;
+			this.operands = operands;
+			this.cols = cols;
+			longValues = new long[operands.length][];
+			doubleValues = new double[operands.length][];
+			for (int i = 0; i < operands.length; i++) {
+				if (compareType == INT || compareType == LONG) {
+					longValues[i] = new long[capacity];
+				} else {
+					doubleValues[i] = new double[capacity];
+				}
+			}
+		}
+
+		static BatchFilter create(int operation, Expression[] operands, RowBatch batch) throws Exception {
+			int[] cols = new int[operands.length];
+			for (int i = 0; i < operands.length; i++) {
+				Expression operand = operands[i];
+				switch (operand.getType()) {
+				case Expression.VALUE:
+					if (operand.isNull()) {
+						// a NULL value has no data type for the comparison
+						return null;
+					}
+					cols[i] = -1;
+					break;
+				case Expression.NAME:
+					cols[i] = batch.addColumn(operand);
+					if (cols[i] < 0) {
+						return null;
+					}
+					break;
+				default:
+					return null;
+				}
+			}
+			int compareType;
+			switch (ExpressionArithmetic.getDataType(operands[0], operands[1])) {
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+				compareType = INT;
+				break;
+			case SQLTokenizer.BIGINT:
+			case SQLTokenizer.TIMESTAMP:
+			case SQLTokenizer.TIME:
+			case SQLTokenizer.DATE:
+			case SQLTokenizer.SMALLDATETIME:
+				compareType = LONG;
+				break;
+			case SQLTokenizer.REAL:
+				compareType = FLOAT;
+				break;
+			case SQLTokenizer.FLOAT:
+			case SQLTokenizer.DOUBLE:
+				compareType = DOUBLE;
+				break;
+			default:
+				return null;
+			}
+			int capacity = batch.getSelection().length;
+			return new Compare(operation, compareType, operands, cols, capacity);
+		}
+
+		@Override
+		int filter(RowBatch batch, int[] rows, int count) throws Exception {
+			boolean hasNulls = false;
+			for (int i = 0; i < operands.length; i++) {
+				int col = cols[i];
+				if (col < 0 ? operands[i].isNull() : !batch.hasNoNulls(col)) {
+					hasNulls = true;
+				}
+				if (longValues[i] != null) {
+					readLongs(batch, i, rows, count);
+				} else {
+					readDoubles(batch, i, rows, count);
+				}
+			}
+			int n = 0;
+			if (longValues[0] != null) {
+				long[] left = longValues[0];
+				long[] right = longValues[1];
+				long[] right2 = operation == ExpressionArithmetic.BETWEEN ? longValues[2] : right;
+				for (int i = 0; i < count; i++) {
+					int row = rows[i];
+					if (hasNulls ? isValidNull(batch, row) : compare(left[row], right[row], right2[row])) {
+						rows[n++] = row;
+					}
+				}
+			} else {
+				double[] left = doubleValues[0];
+				double[] right = doubleValues[1];
+				double[] right2 = operation == ExpressionArithmetic.BETWEEN ? doubleValues[2] : right;
+				for (int i = 0; i < count; i++) {
+					int row = rows[i];
+					if (hasNulls ? isValidNull(batch, row) : compare(left[row], right[row], right2[row])) {
+						rows[n++] = row;
+					}
+				}
+			}
+			return n;
+		}
+
+		/**
+		 * Verify a row if one of the operands can be NULL. A comparison with
+		 * NULL is false, only EQUALS_NULL is true if both sides are NULL.
+		 */
+		private boolean isValidNull(RowBatch batch, int row) throws Exception {
+			boolean leftIsNull = isNull(batch, 0, row);
+			boolean rightIsNull = isNull(batch, 1, row);
+			if (operation == ExpressionArithmetic.EQUALS_NULL && leftIsNull && rightIsNull) {
+				return true;
+			}
+			if (leftIsNull || rightIsNull) {
+				return false;
+			}
+			int last = operands.length - 1;
+			if (longValues[0] != null) {
+				return compare(longValues[0][row], longValues[1][row], longValues[last][row]);
+			} else {
+				return compare(doubleValues[0][row], doubleValues[1][row], doubleValues[last][row]);
+			}
+		}
+
+		private boolean isNull(RowBatch batch, int operand, int row) throws Exception {
+			int col = cols[operand];
+			return col < 0 ? operands[operand].isNull() : batch.isNull(col, row);
+		}
+
+		/**
+		 * Compare the values of a row.
+		 *
+		 * @param right2
+		 *            the upper bound of a BETWEEN, else not used
+		 */
+		private boolean compare(long left, long right, long right2) {
+			switch (operation) {
+			case ExpressionArithmetic.EQUALS:
+			case ExpressionArithmetic.EQUALS_NULL:
+				return left == right;
+			case ExpressionArithmetic.GREATER:
+				return left > right;
+			case ExpressionArithmetic.GRE_EQU:
+				return left >= right;
+			case ExpressionArithmetic.LESSER:
+				return left < right;
+			case ExpressionArithmetic.LES_EQU:
+				return left <= right;
+			case ExpressionArithmetic.UNEQUALS:
+				return left != right;
+			default: // BETWEEN
+				return left >= right && right2 >= left;
+			}
+		}
+
+		/**
+		 * Compare the values of a row.
+		 *
+		 * @param right2
+		 *            the upper bound of a BETWEEN, else not used
+		 */
+		private boolean compare(double left, double right, double right2) {
+			switch (operation) {
+			case ExpressionArithmetic.EQUALS:
+			case ExpressionArithmetic.EQUALS_NULL:
+				return left == right;
+			case ExpressionArithmetic.GREATER:
+				return left > right;
+			case ExpressionArithmetic.GRE_EQU:
+				return left >= right;
+			case ExpressionArithmetic.LESSER:
+				return left < right;
+			case ExpressionArithmetic.LES_EQU:
+				return left <= right;
+			case ExpressionArithmetic.UNEQUALS:
+				return left != right;
+			default: // BETWEEN
+				return left >= right && right2 >= left;
+			}
+		}
+
+		/**
+		 * Read the values of an operand for the rows as long in the comparison
+		 * type.
+		 */
+		private void readLongs(RowBatch batch, int operand, int[] rows, int count) throws Exception {
+			long[] values = longValues[operand];
+			int col = cols[operand];
+			if (col < 0) {
+				Expression expr = operands[operand];
+				long value = compareType == INT ? expr.getInt() : expr.getLong();
+				for (int i = 0; i < count; i++) {
+					values[rows[i]] = value;
+				}
+			} else if (batch.isDouble(col)) {
+				double[] vector = batch.getDoubles(col);
+				for (int i = 0; i < count; i++) {
+					int row = rows[i];
+					values[row] = compareType == INT ? (int) vector[row] : (long) vector[row];
+				}
+			} else {
+				long[] vector = batch.getLongs(col);
+				for (int i = 0; i < count; i++) {
+					int row = rows[i];
+					values[row] = compareType == INT ? (int) vector[row] : vector[row];
+				}
+			}
+		}
+
+		/**
+		 * Read the values of an operand for the rows as double in the
+		 * comparison type.
+		 */
+		private void readDoubles(RowBatch batch, int operand, int[] rows, int count) throws Exception {
+			double[] values = doubleValues[operand];
+			int col = cols[operand];
+			if (col < 0) {
+				Expression expr = operands[operand];
+				double value = compareType == FLOAT ? expr.getFloat() : expr.getDouble();
+				for (int i = 0; i < count; i++) {
+					values[rows[i]] = value;
+				}
+			} else if (batch.isDouble(col)) {
+				double[] vector = batch.getDoubles(col);
+				for (int i = 0; i < count; i++) {
+					int row = rows[i];
+					values[row] = compareType == FLOAT ? (float) vector[row] : vector[row];
+				}
+			} else {
+				long[] vector = batch.getLongs(col);
+				for (int i = 0; i < count; i++) {
+					int row = rows[i];
+					values[row] = compareType == FLOAT ? (float) vector[row] : (double) vector[row];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,481 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * ExternalSorter.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.selector.multioper;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import io.leavesfly.smallsql.rdb.sql.datatype.DateTime;
+import io.leavesfly.smallsql.rdb.sql.datatype.Money;
+import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
+
+/**
+ * Sort rows (Object[]) that can be larger as the available memory. The sort is
+ * stable, equals rows are returned in the order of adding. The rows
+ * are buffered in memory until the memory limit is reached. Then the buffer is
+ * sorted and written as a sorted run to a temporary file. After all rows are
+ * added the runs are merged. If all rows fit in the memory then no file is
+ * used.
+ * <p>
+ * The values of a row must be immutable. Supported are null, Boolean, Integer,
+ * Long, Float, Double, String, byte[], BigDecimal, ByteBuffer, MutableNumeric,
+ * Money, DateTime and any Serializable.
+ */
+final class ExternalSorter {
+
+	/** max count of runs that are merged in one step */
+	private static final int MAX_MERGE_RUNS = 64;
+
+	private static final int ROW_OVERHEAD = 32;
+
+	private static final int TAG_NULL = 0;
+	private static final int TAG_BOOLEAN = 1;
+	private static final int TAG_INTEGER = 2;
+	private static final int TAG_LONG = 3;
+	private static final int TAG_FLOAT = 4;
+	private static final int TAG_DOUBLE = 5;
+	private static final int TAG_STRING = 6;
+	private static final int TAG_BYTES = 7;
+	private static final int TAG_BIGDECIMAL = 8;
+	private static final int TAG_BYTEBUFFER = 9;
+	private static final int TAG_NUMERIC = 10;
+	private static final int TAG_MONEY = 11;
+	private static final int TAG_DATETIME = 12;
+	private static final int TAG_OBJECT = 13;
+
+	private final Comparator<Object[]> comparator;
+	private final long memoryLimit;
+
+	private List<Object[]> buffer = new ArrayList<Object[]>();
+	private long bufferSize;
+	private final List<Run> runs = new ArrayList<Run>();
+	private long rowCount;
+
+	// state for reading
+	private int bufferIdx;
+	private PriorityQueue<Run> mergeQueue;
+
+	/**
+	 * Create a new sorter.
+	 *
+	 * @param comparator
+	 *            the order of the rows
+	 * @param memoryLimit
+	 *            the max estimated size in bytes of the rows in memory
+	 */
+	ExternalSorter(Comparator<Object[]> comparator, long memoryLimit) {
+		this.comparator = comparator;
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Estimate the memory size of a single value in bytes.
+	 */
+	static long estimateSize(Object value) {
+		if (value instanceof String) {
+			return 40 + 2 * ((String) value).length();
+		}
+		if (value instanceof byte[]) {
+			return 16 + ((byte[]) value).length;
+		}
+		if (value instanceof ByteBuffer) {
+			return 64 + ((ByteBuffer) value).remaining();
+		}
+		if (value instanceof BigDecimal || value instanceof MutableNumeric) {
+			return 48;
+		}
+		return 16;
+	}
+
+	/**
+	 * Estimate the memory size of a row in bytes.
+	 */
+	static long estimateSize(Object[] row) {
+		long size = ROW_OVERHEAD + 4 * row.length;
+		for (int i = 0; i < row.length; i++) {
+			size += estimateSize(row[i]);
+		}
+		return size;
+	}
+
+	/**
+	 * Add a row. If the memory limit is exceeded then the rows in memory are
+	 * written as sorted run to a temporary file.
+	 */
+	void add(Object[] row) throws IOException {
+		buffer.add(row);
+		rowCount++;
+		bufferSize += estimateSize(row);
+		if (bufferSize > memoryLimit) {
+			runs.add(writeRun(buffer));
+			buffer.clear();
+			bufferSize = 0;
+		}
+	}
+
+	/**
+	 * The count of all added rows.
+	 */
+	long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * The count of runs that was written to temporary files.
+	 */
+	int getRunCount() {
+		return runs.size();
+	}
+
+	/**
+	 * Finish the adding of rows. After this call the rows can be read with
+	 * next().
+	 */
+	void sort() throws IOException {
+		Collections.sort(buffer, comparator);
+		bufferIdx = 0;
+		if (runs.size() == 0) {
+			return;
+		}
+		if (buffer.size() > 0) {
+			runs.add(writeRun(buffer));
+		}
+		buffer = new ArrayList<Object[]>();
+		// reduce the count of runs that there not to many open files
+		while (runs.size() > MAX_MERGE_RUNS) {
+			List<Run> part = new ArrayList<Run>(runs.subList(0, MAX_MERGE_RUNS));
+			runs.subList(0, MAX_MERGE_RUNS).clear();
+			// the merged run include the oldest rows and must be the first
+			runs.add(0, mergeRuns(part));
+		}
+		mergeQueue = createQueue(runs);
+	}
+
+	/**
+	 * Get the next row in sort order.
+	 *
+	 * @return the row or null if there are no more rows
+	 */
+	Object[] next() throws IOException {
+		if (mergeQueue == null) {
+			if (bufferIdx < buffer.size()) {
+				return buffer.get(bufferIdx++);
+			}
+			return null;
+		}
+		return nextMerged(mergeQueue);
+	}
+
+	/**
+	 * Delete all temporary files. Can be called more as once.
+	 */
+	void close() {
+		for (int i = 0; i < runs.size(); i++) {
+			runs.get(i).delete();
+		}
+		runs.clear();
+		buffer = new ArrayList<Object[]>();
+		mergeQueue = null;
+	}
+
+	private Run writeRun(List<Object[]> rows) throws IOException {
+		Collections.sort(rows, comparator);
+		File file = File.createTempFile("smallsql", ".sort");
+		file.deleteOnExit();
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			for (int r = 0; r < rows.size(); r++) {
+				writeRow(output, rows.get(r));
+			}
+		} finally {
+			output.close();
+		}
+		return new Run(file, rows.size());
+	}
+
+	private Run mergeRuns(List<Run> part) throws IOException {
+		PriorityQueue<Run> queue = createQueue(part);
+		File file = File.createTempFile("smallsql", ".sort");
+		file.deleteOnExit();
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		long count = 0;
+		try {
+			Object[] row;
+			while ((row = nextMerged(queue)) != null) {
+				writeRow(output, row);
+				count++;
+			}
+		} finally {
+			output.close();
+			for (int i = 0; i < part.size(); i++) {
+				part.get(i).delete();
+			}
+		}
+		return new Run(file, count);
+	}
+
+	private PriorityQueue<Run> createQueue(List<Run> list) throws IOException {
+		// on equals rows the older run wins that the sort is stable
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(1, list.size()), new Comparator<Run>() {
+			public int compare(Run run1, Run run2) {
+				int comp = comparator.compare(run1.current, run2.current);
+				return comp != 0 ? comp : run1.sequence - run2.sequence;
+			}
+		});
+		for (int i = 0; i < list.size(); i++) {
+			Run run = list.get(i);
+			run.sequence = i;
+			run.open();
+			if (run.advance()) {
+				queue.add(run);
+			}
+		}
+		return queue;
+	}
+
+	private static Object[] nextMerged(PriorityQueue<Run> queue) throws IOException {
+		Run run = queue.poll();
+		if (run == null) {
+			return null;
+		}
+		Object[] row = run.current;
+		if (run.advance()) {
+			queue.add(run);
+		}
+		return row;
+	}
+
+	/**
+	 * Write a row to a temporary file. Used also for the partitions of a hash
+	 * join.
+	 */
+	static void writeRow(DataOutputStream output, Object[] row) throws IOException {
+		output.writeShort(row.length);
+		for (int i = 0; i < row.length; i++) {
+			writeValue(output, row[i]);
+		}
+	}
+
+	/**
+	 * Read a row that was written with writeRow().
+	 */
+	static Object[] readRow(DataInputStream input) throws IOException {
+		Object[] row = new Object[input.readShort()];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = readValue(input);
+		}
+		return row;
+	}
+
+	private static void writeValue(DataOutputStream output, Object value) throws IOException {
+		if (value == null) {
+			output.writeByte(TAG_NULL);
+		} else if (value instanceof Boolean) {
+			output.writeByte(TAG_BOOLEAN);
+			output.writeBoolean(((Boolean) value).booleanValue());
+		} else if (value instanceof Integer) {
+			output.writeByte(TAG_INTEGER);
+			output.writeInt(((Integer) value).intValue());
+		} else if (value instanceof Long) {
+			output.writeByte(TAG_LONG);
+			output.writeLong(((Long) value).longValue());
+		} else if (value instanceof Float) {
+			output.writeByte(TAG_FLOAT);
+			output.writeFloat(((Float) value).floatValue());
+		} else if (value instanceof Double) {
+			output.writeByte(TAG_DOUBLE);
+			output.writeDouble(((Double) value).doubleValue());
+		} else if (value instanceof String) {
+			output.writeByte(TAG_STRING);
+			writeString(output, (String) value);
+		} else if (value instanceof byte[]) {
+			output.writeByte(TAG_BYTES);
+			byte[] bytes = (byte[]) value;
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		} else if (value instanceof BigDecimal) {
+			output.writeByte(TAG_BIGDECIMAL);
+			writeString(output, value.toString());
+		} else if (value instanceof ByteBuffer) {
+			output.writeByte(TAG_BYTEBUFFER);
+			ByteBuffer buffer = (ByteBuffer) value;
+			output.writeInt(buffer.remaining());
+			output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		} else if (value instanceof MutableNumeric) {
+			output.writeByte(TAG_NUMERIC);
+			writeString(output, ((MutableNumeric) value).toBigDecimal().toString());
+		} else if (value instanceof Money) {
+			output.writeByte(TAG_MONEY);
+			output.writeLong(((Money) value).unscaledValue());
+		} else if (value instanceof DateTime) {
+			output.writeByte(TAG_DATETIME);
+			output.writeLong(((DateTime) value).getTimeMillis());
+			output.writeInt(((DateTime) value).getDataType());
+		} else {
+			output.writeByte(TAG_OBJECT);
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(value);
+			oos.close();
+			byte[] bytes = baos.toByteArray();
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static Object readValue(DataInputStream input) throws IOException {
+		int tag = input.readByte();
+		switch (tag) {
+		case TAG_NULL:
+			return null;
+		case TAG_BOOLEAN:
+			return input.readBoolean() ? Boolean.TRUE : Boolean.FALSE;
+		case TAG_INTEGER:
+			return Integer.valueOf(input.readInt());
+		case TAG_LONG:
+			return Long.valueOf(input.readLong());
+		case TAG_FLOAT:
+			return Float.valueOf(input.readFloat());
+		case TAG_DOUBLE:
+			return Double.valueOf(input.readDouble());
+		case TAG_STRING:
+			return readString(input);
+		case TAG_BYTES: {
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			return bytes;
+		}
+		case TAG_BIGDECIMAL:
+			return new BigDecimal(readString(input));
+		case TAG_BYTEBUFFER: {
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			return ByteBuffer.wrap(bytes);
+		}
+		case TAG_NUMERIC:
+			return new MutableNumeric(new BigDecimal(readString(input)));
+		case TAG_MONEY:
+			return Money.createFromUnscaledValue(input.readLong());
+		case TAG_DATETIME: {
+			long time = input.readLong();
+			return new DateTime(time, input.readInt());
+		}
+		case TAG_OBJECT: {
+			byte[] bytes = new byte[input.readInt()];
+			input.readFully(bytes);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+			try {
+				return ois.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e.toString());
+			}
+		}
+		default:
+			throw new IOException("Invalid value tag: " + tag);
+		}
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		int length = value.length();
+		output.writeInt(length);
+		for (int i = 0; i < length; i++) {
+			output.writeChar(value.charAt(i));
+		}
+	}
+
+	private static String readString(DataInputStream input) throws IOException {
+		char[] chars = new char[input.readInt()];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = input.readChar();
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * A sorted run in a temporary file.
+	 */
+	private static final class Run {
+		private final File file;
+		private final long count;
+		private DataInputStream input;
+		private long readCount;
+		int sequence;
+		Object[] current;
+
+		Run(File file, long count) {
+			this.file = file;
+			this.count = count;
+		}
+
+		void open() throws IOException {
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			readCount = 0;
+		}
+
+		/**
+		 * Read the next row of this run into current.
+		 *
+		 * @return false if the end of the run is reached
+		 */
+		boolean advance() throws IOException {
+			if (readCount >= count) {
+				current = null;
+				closeInput();
+				return false;
+			}
+			current = readRow(input);
+			readCount++;
+			return true;
+		}
+
+		private void closeInput() {
+			if (input != null) {
+				try {
+					input.close();
+				} catch (IOException e) {
+					// ignore, the file is only temporary
+				}
+				input = null;
+			}
+		}
+
+		void delete() {
+			closeInput();
+			file.delete();
+		}
+	}
+}
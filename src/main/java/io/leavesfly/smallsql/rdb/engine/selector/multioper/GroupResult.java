@@ -32,11 +32,23 @@
  */
 package io.leavesfly.smallsql.rdb.engine.selector.multioper;
 
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.rdb.command.dql.CommandSelect;
 import io.leavesfly.smallsql.rdb.engine.RowSource;
+import io.leavesfly.smallsql.rdb.engine.selector.RowBatch;
 import io.leavesfly.smallsql.rdb.engine.selector.result.MemoryResult;
 import io.leavesfly.smallsql.rdb.engine.table.Column;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
@@ -45,7 +57,10 @@ import io.leavesfly.smallsql.rdb.sql.expression.ExpressionName;
 import io.leavesfly.smallsql.lang.Language;
 import io.leavesfly.smallsql.rdb.sql.expression.ExpressionValue;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
-import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionArithmetic;
+import io.leavesfly.smallsql.rdb.sql.datatype.DateTime;
+import io.leavesfly.smallsql.rdb.sql.datatype.Money;
+import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 
 /**
  * @author Volker Berlin
@@ -53,8 +68,11 @@ import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionArithmetic;
  */
 public class GroupResult extends MemoryResult {
 
-	private Expression currentGroup; // Validate if the current row of cmd is
-										// part of the current group
+	/** estimated memory of a group in the hash table without the key values */
+	private static final int GROUP_OVERHEAD = 96;
+	/** estimated memory of a single aggregate value */
+	private static final int VALUE_OVERHEAD = 48;
+
 	private RowSource from;
 	private Expressions groupBy; // the list of Expressions in the GROUP BY
 									// clause
@@ -69,24 +87,39 @@ public class GroupResult extends MemoryResult {
 																	// GROUP BY
 																	// and
 																	// HAVING
+	private final long memoryLimit; // max size of the hash table before the rows are sorted
+	private final int batchSize; // count of rows in a RowBatch, 0 read row by row
+	private final int parallelism; // max count of partitions that are read at the same time
+	private RowBatch batch; // the rows of from if the aggregates can accumulate batches
+	private int[] batchColumns; // the batch column of every internal expression
+	private int[] batchKeyColumns; // the batch column of every GROUP BY expression
 
 	/**
 	 * Constructor for Grouping a Result from a CommandSelect
+	 * 
+	 * @param memoryLimit
+	 *            the estimated size in bytes of the group hash table. If more
+	 *            groups are found then the rows of the new groups are sorted
+	 *            with a external sort.
+	 * @param batchSize
+	 *            the count of rows that are read at once with
+	 *            RowSource.nextBatch(); 0 if the rows should be read with
+	 *            next()
+	 * @param parallelism
+	 *            the max count of threads that read the rows of from if it can
+	 *            be split into partitions; less than 2 for a sequential read
 	 */
-	public GroupResult(CommandSelect cmd, RowSource from, Expressions groupBy, Expression having, Expressions orderBy)
-			throws SQLException {
+	public GroupResult(CommandSelect cmd, RowSource from, Expressions groupBy, Expression having, Expressions orderBy,
+			long memoryLimit, int batchSize, int parallelism) throws SQLException {
 		this.from = from;
 		this.groupBy = groupBy;
+		this.memoryLimit = memoryLimit;
+		this.batchSize = batchSize;
+		this.parallelism = parallelism;
 
 		if (groupBy != null) {
 			for (int i = 0; i < groupBy.size(); i++) {
-				Expression left = groupBy.get(i);
-				int idx = addInternalExpressionFromGroupBy(left);
-				ExpressionName right = new ExpressionName(null);
-				right.setFrom(this, idx, new ColumnExpression(left));
-				Expression expr = new ExpressionArithmetic(left, right, ExpressionArithmetic.EQUALS_NULL);
-				currentGroup = (currentGroup == null) ? expr : new ExpressionArithmetic(currentGroup, expr,
-						ExpressionArithmetic.AND);
+				addInternalExpressionFromGroupBy(groupBy.get(i));
 			}
 		}
 		expressions = internalExpressions;
@@ -235,28 +268,506 @@ public class GroupResult extends MemoryResult {
 	public final void execute() throws Exception {
 		super.execute();
 		from.execute();
-		NextRow: while (from.next()) {
-			beforeFirst();
-			while (next()) {
-				if (currentGroup == null || currentGroup.getBoolean()) {
-					accumulateRow();
-					continue NextRow;
+		RowBatch batch = getBatch();
+		if (batch == null || parallelism < 2 || !executeParallel(batch)) {
+			if (groupBy == null) {
+				// without GROUP BY there is exactly one group, also for
+				// SELECT count(*) FROM table without any rows
+				addGroupRow();
+				if (batch == null) {
+					while (from.next()) {
+						accumulateRow();
+					}
+				} else {
+					while (from.nextBatch(batch)) {
+						accumulateRow(batch, 0, batch.getSelectedCount());
+					}
 				}
+			} else {
+				executeHashGroups(batch);
 			}
-			// add a new row to the GroupResult
-			addGroupRow();
-			accumulateRow();
-		}
-
-		if (getRowCount() == 0 && groupBy == null) {
-			// special handling for SELECT count(*) FROM table
-			// without GROUP BY and without any rows
-			addGroupRow();
 		}
 		// reset the row counter
 		beforeFirst();
 	}
 
+	/**
+	 * Read the partitions of from at the same time on the ForkJoinPool. Every
+	 * partition accumulate its own groups which are merged after all
+	 * partitions are read. The groups are added in the order of its first row
+	 * like in executeHashGroups().
+	 * 
+	 * @return false if from can not be split or if the groups of a partition
+	 *         need more as its part of the memory limit. Then no group was
+	 *         added and from was not moved.
+	 */
+	private boolean executeParallel(RowBatch batch) throws Exception {
+		RowSource[] partitions = from.createPartitions(batch, parallelism);
+		if (partitions == null) {
+			return false;
+		}
+		PartialGroups[] tasks = new PartialGroups[partitions.length];
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i] = new PartialGroups(partitions[i], batch.copyEmpty(), memoryLimit / tasks.length);
+		}
+		ForkJoinTask.invokeAll(tasks);
+		for (int i = 0; i < tasks.length; i++) {
+			if (tasks[i].error != null) {
+				throw tasks[i].error;
+			}
+			if (tasks[i].isOverflow) {
+				return false;
+			}
+		}
+		HashMap<List<Object>, ExpressionValue[]> groups = new HashMap<List<Object>, ExpressionValue[]>();
+		for (int i = 0; i < tasks.length; i++) {
+			for (Map.Entry<List<Object>, ExpressionValue[]> entry : tasks[i].groups.entrySet()) {
+				ExpressionValue[] partial = entry.getValue();
+				ExpressionValue[] row = groups.get(entry.getKey());
+				if (row == null) {
+					groups.put(entry.getKey(), partial);
+					addRow(partial);
+				} else {
+					for (int c = 0; c < row.length; c++) {
+						row[c].merge(partial[c]);
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The groups of a single partition of a parallel read.
+	 */
+	private final class PartialGroups extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RowSource partition;
+		private final RowBatch batch;
+		private final long memoryLimit;
+		/** The groups in the order of the first row, the key of the single group without GROUP BY is empty. */
+		final LinkedHashMap<List<Object>, ExpressionValue[]> groups = new LinkedHashMap<List<Object>, ExpressionValue[]>();
+		boolean isOverflow;
+		Exception error;
+
+		PartialGroups(RowSource partition, RowBatch batch, long memoryLimit) {
+			this.partition = partition;
+			this.batch = batch;
+			this.memoryLimit = memoryLimit;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				accumulate();
+			} catch (Exception e) {
+				error = e;
+			}
+		}
+
+		private void accumulate() throws Exception {
+			int keyCount = groupBy == null ? 0 : groupBy.size();
+			ExpressionValue[] row = null;
+			if (keyCount == 0) {
+				row = createGroupRow();
+				groups.put(Collections.emptyList(), row);
+			}
+			long usedMemory = 0;
+			while (partition.nextBatch(batch)) {
+				int count = batch.getSelectedCount();
+				if (keyCount == 0) {
+					accumulateRow(row, batch, 0, count);
+					continue;
+				}
+				int[] selection = batch.getSelection();
+				for (int s = 0; s < count; s++) {
+					Object[] keyValues = new Object[keyCount];
+					for (int k = 0; k < keyCount; k++) {
+						keyValues[k] = getKeyValue(batch, batchKeyColumns[k], selection[s]);
+					}
+					List<Object> key = Arrays.asList(keyValues);
+					row = groups.get(key);
+					if (row == null) {
+						usedMemory += GROUP_OVERHEAD + VALUE_OVERHEAD * expressions.size()
+								+ ExternalSorter.estimateSize(keyValues);
+						if (usedMemory > memoryLimit) {
+							isOverflow = true;
+							return;
+						}
+						row = createGroupRow();
+						groups.put(key, row);
+					}
+					accumulateRow(row, batch, s, s + 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the batch for reading the rows of from. A batch can be used if all
+	 * aggregate functions are COUNT, SUM, MIN or MAX and all parameters and
+	 * GROUP BY expressions are columns with a data type of
+	 * RowBatch.isSupported().
+	 * 
+	 * @return the batch or null if the rows must be read with next()
+	 */
+	private RowBatch getBatch() throws Exception {
+		if (batchSize <= 0) {
+			return null;
+		}
+		if (batch == null) {
+			RowBatch newBatch = new RowBatch(batchSize);
+			int[] columns = new int[expressions.size()];
+			for (int i = 0; i < columns.length; i++) {
+				Expression expr = expressions.get(i);
+				Expression src = getAccumulateSource(expr);
+				switch (expr.getType()) {
+				case Expression.COUNT:
+					if (src.getType() == Expression.VALUE) {
+						columns[i] = -1; // COUNT(*)
+						continue;
+					}
+					break; // COUNT of a column need the column like SUM
+				case Expression.SUM:
+				case Expression.MIN:
+				case Expression.MAX:
+					break;
+				default:
+					if (expr.getType() >= Expression.GROUP_BEGIN) {
+						return null;
+					}
+				}
+				// only columns, an expression like a/b can throw an exception
+				// for a row that is removed later by the WHERE
+				columns[i] = src.getType() == Expression.NAME ? newBatch.addColumn(src) : -1;
+				if (columns[i] < 0) {
+					return null;
+				}
+			}
+			int[] keyColumns = new int[groupBy == null ? 0 : groupBy.size()];
+			for (int k = 0; k < keyColumns.length; k++) {
+				Expression expr = groupBy.get(k);
+				keyColumns[k] = expr.getType() == Expression.NAME ? newBatch.addColumn(expr) : -1;
+				if (keyColumns[k] < 0) {
+					return null;
+				}
+			}
+			batch = newBatch;
+			batchColumns = columns;
+			batchKeyColumns = keyColumns;
+		}
+		return batch;
+	}
+
+	/**
+	 * Find the group of every row with a hash table. The key of the hash table
+	 * are the values of the GROUP BY expressions. If the memory limit is
+	 * reached then the existing groups are completed in the hash table and all
+	 * rows of new groups are sorted with a external sort and grouped after it.
+	 */
+	private void executeHashGroups(RowBatch batch) throws Exception {
+		final int keyCount = groupBy.size();
+		int[] keyTypes = new int[keyCount];
+		for (int k = 0; k < keyCount; k++) {
+			keyTypes[k] = groupBy.get(k).getDataType();
+		}
+		HashMap<List<Object>, ExpressionValue[]> groups = new HashMap<List<Object>, ExpressionValue[]>();
+		long usedMemory = 0;
+		ExternalSorter sorter = null;
+		int selected = 0; // index in the selection of the batch
+		int selectedCount = 0;
+		try {
+			while (true) {
+				if (batch == null) {
+					if (!from.next()) {
+						break;
+					}
+				} else if (++selected >= selectedCount) {
+					if (!from.nextBatch(batch)) {
+						break;
+					}
+					selected = 0;
+					selectedCount = batch.getSelectedCount();
+				}
+				Object[] keyValues = new Object[keyCount];
+				for (int k = 0; k < keyCount; k++) {
+					if (batch == null) {
+						keyValues[k] = getKeyValue(groupBy.get(k), keyTypes[k]);
+					} else {
+						keyValues[k] = getKeyValue(batch, batchKeyColumns[k], batch.getSelection()[selected]);
+					}
+				}
+				List<Object> key = Arrays.asList(keyValues);
+				ExpressionValue[] row = groups.get(key);
+				if (row != null) {
+					currentRow = row;
+					accumulateRow(batch, selected, selected + 1);
+					continue;
+				}
+				if (sorter == null) {
+					long size = GROUP_OVERHEAD + VALUE_OVERHEAD * expressions.size() + ExternalSorter.estimateSize(keyValues);
+					if (usedMemory + size <= memoryLimit) {
+						usedMemory += size;
+						addGroupRow();
+						groups.put(key, currentRow);
+						accumulateRow(batch, selected, selected + 1);
+						continue;
+					}
+					sorter = new ExternalSorter(new KeyComparator(keyCount), memoryLimit);
+				}
+				sorter.add(createSortRow(keyValues, batch, selected));
+			}
+			if (sorter != null) {
+				groups = null; // the hash table is not needed anymore
+				executeSortedGroups(sorter, keyCount);
+			}
+		} finally {
+			if (sorter != null) {
+				sorter.close();
+			}
+		}
+	}
+
+	/**
+	 * Create the row for the external sort. It include the key values and the
+	 * input values of all internal expressions.
+	 */
+	private Object[] createSortRow(Object[] keyValues, RowBatch batch, int selected) throws Exception {
+		int keyCount = keyValues.length;
+		Object[] sortRow = new Object[keyCount + expressions.size()];
+		System.arraycopy(keyValues, 0, sortRow, 0, keyCount);
+		for (int i = 0; i < expressions.size(); i++) {
+			Expression src = getAccumulateSource(expressions.get(i));
+			if (batch != null && batchColumns[i] >= 0) {
+				sortRow[keyCount + i] = batch.getObject(batchColumns[i], batch.getSelection()[selected]);
+			} else {
+				// also the constant parameter of COUNT(*) in a batch
+				sortRow[keyCount + i] = getValue(src, src.getDataType());
+			}
+		}
+		return sortRow;
+	}
+
+	/**
+	 * Group the sorted rows. All rows of a group are consecutive.
+	 */
+	private void executeSortedGroups(ExternalSorter sorter, int keyCount) throws Exception {
+		sorter.sort();
+		int size = expressions.size();
+		// the values of the sorted rows are replayed with the follow
+		// expressions to ExpressionValue.accumulate()
+		ExpressionValue[] values = new ExpressionValue[size];
+		Expression[] sources = new Expression[size];
+		int[] dataTypes = new int[size];
+		for (int i = 0; i < size; i++) {
+			Expression expr = expressions.get(i);
+			values[i] = new ExpressionValue();
+			dataTypes[i] = getAccumulateSource(expr).getDataType();
+			if (expr.getType() < Expression.GROUP_BEGIN) {
+				sources[i] = values[i];
+			} else {
+				ExpressionValue aggregate = new ExpressionValue();
+				aggregate.setParams(new Expression[] { values[i] });
+				sources[i] = aggregate;
+			}
+		}
+		KeyComparator comparator = new KeyComparator(keyCount);
+		Object[] previous = null;
+		Object[] sortRow;
+		while ((sortRow = sorter.next()) != null) {
+			if (previous == null || comparator.compare(previous, sortRow) != 0) {
+				addGroupRow();
+			}
+			for (int i = 0; i < size; i++) {
+				values[i].set(sortRow[keyCount + i], dataTypes[i]);
+				currentRow[i].accumulate(sources[i]);
+			}
+			previous = sortRow;
+		}
+	}
+
+	/**
+	 * Get the expression that ExpressionValue.accumulate() evaluate for the
+	 * internal expression.
+	 */
+	private static Expression getAccumulateSource(Expression expr) {
+		return (expr.getType() < Expression.GROUP_BEGIN) ? expr : expr.getParams()[0];
+	}
+
+	/**
+	 * Get the value of a GROUP BY expression as hash key. Two values are equals
+	 * if the EQUALS comparison of SQL are true. For example strings are
+	 * compared case insensitive.
+	 */
+	private static Object getKeyValue(Expression expr, int dataType) throws Exception {
+		if (expr.isNull()) {
+			return null;
+		}
+		switch (dataType) {
+		case SQLTokenizer.BOOLEAN:
+			return expr.getBoolean() ? Boolean.TRUE : Boolean.FALSE;
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+		case SQLTokenizer.BIT:
+			return Integer.valueOf(expr.getInt());
+		case SQLTokenizer.BIGINT:
+		case SQLTokenizer.TIMESTAMP:
+		case SQLTokenizer.TIME:
+		case SQLTokenizer.DATE:
+		case SQLTokenizer.SMALLDATETIME:
+			return Long.valueOf(expr.getLong());
+		case SQLTokenizer.REAL: {
+			float value = expr.getFloat();
+			return Float.valueOf(value == 0 ? 0 : value); // -0.0 = 0.0
+		}
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE: {
+			double value = expr.getDouble();
+			return Double.valueOf(value == 0 ? 0 : value); // -0.0 = 0.0
+		}
+		case SQLTokenizer.MONEY:
+		case SQLTokenizer.SMALLMONEY:
+			return Long.valueOf(expr.getMoney());
+		case SQLTokenizer.DECIMAL:
+		case SQLTokenizer.NUMERIC: {
+			BigDecimal value = expr.getNumeric().toBigDecimal();
+			return value.signum() == 0 ? BigDecimal.ZERO : value.stripTrailingZeros();
+		}
+		case SQLTokenizer.VARCHAR:
+		case SQLTokenizer.NVARCHAR:
+		case SQLTokenizer.CHAR:
+		case SQLTokenizer.NCHAR:
+		case SQLTokenizer.LONGVARCHAR:
+		case SQLTokenizer.LONGNVARCHAR:
+		case SQLTokenizer.CLOB: {
+			// the same as String.CASE_INSENSITIVE_ORDER
+			String value = expr.getString();
+			char[] chars = new char[value.length()];
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+			}
+			return new String(chars);
+		}
+		case SQLTokenizer.BINARY:
+		case SQLTokenizer.VARBINARY:
+		case SQLTokenizer.LONGVARBINARY:
+		case SQLTokenizer.BLOB:
+		case SQLTokenizer.UNIQUEIDENTIFIER:
+			return ByteBuffer.wrap(expr.getBytes());
+		default:
+			return getValue(expr, dataType);
+		}
+	}
+
+	/**
+	 * Get the value of a GROUP BY column of a batch row as hash key like
+	 * getKeyValue(Expression, int).
+	 */
+	private static Object getKeyValue(RowBatch batch, int col, int row) {
+		Object value = batch.getObject(col, row);
+		if (value instanceof Float && ((Float) value).floatValue() == 0) {
+			return Float.valueOf(0f); // -0.0 = 0.0
+		}
+		if (value instanceof Double && ((Double) value).doubleValue() == 0) {
+			return Double.valueOf(0d);
+		}
+		return value;
+	}
+
+	/**
+	 * Get an immutable copy of the current value of the expression.
+	 */
+	private static Object getValue(Expression expr, int dataType) throws Exception {
+		if (expr.isNull()) {
+			return null;
+		}
+		switch (dataType) {
+		case SQLTokenizer.BIT:
+		case SQLTokenizer.BOOLEAN:
+			return expr.getBoolean() ? Boolean.TRUE : Boolean.FALSE;
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+			return Integer.valueOf(expr.getInt());
+		case SQLTokenizer.BIGINT:
+			return Long.valueOf(expr.getLong());
+		case SQLTokenizer.REAL:
+			return Float.valueOf(expr.getFloat());
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE:
+			return Double.valueOf(expr.getDouble());
+		case SQLTokenizer.MONEY:
+		case SQLTokenizer.SMALLMONEY:
+			return Money.createFromUnscaledValue(expr.getMoney());
+		case SQLTokenizer.DECIMAL:
+		case SQLTokenizer.NUMERIC:
+			return new MutableNumeric(expr.getNumeric());
+		case SQLTokenizer.TIMESTAMP:
+		case SQLTokenizer.TIME:
+		case SQLTokenizer.DATE:
+		case SQLTokenizer.SMALLDATETIME:
+			return new DateTime(expr.getLong(), dataType);
+		case SQLTokenizer.BINARY:
+		case SQLTokenizer.VARBINARY:
+		case SQLTokenizer.LONGVARBINARY:
+		case SQLTokenizer.BLOB:
+			return expr.getBytes().clone();
+		case SQLTokenizer.VARCHAR:
+		case SQLTokenizer.NVARCHAR:
+		case SQLTokenizer.CHAR:
+		case SQLTokenizer.NCHAR:
+		case SQLTokenizer.LONGVARCHAR:
+		case SQLTokenizer.LONGNVARCHAR:
+		case SQLTokenizer.CLOB:
+		case SQLTokenizer.UNIQUEIDENTIFIER:
+			return expr.getString();
+		default:
+			return expr.getObject();
+		}
+	}
+
+	/**
+	 * Compare the key values of rows for the external sort. The order is not
+	 * important, only equals keys must be consecutive.
+	 */
+	private static final class KeyComparator implements Comparator<Object[]> {
+		private final int keyCount;
+
+		KeyComparator(int keyCount) {
+			this.keyCount = keyCount;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public int compare(Object[] row1, Object[] row2) {
+			for (int k = 0; k < keyCount; k++) {
+				Object value1 = row1[k];
+				Object value2 = row2[k];
+				if (value1 == value2) {
+					continue;
+				}
+				if (value1 == null) {
+					return -1;
+				}
+				if (value2 == null) {
+					return 1;
+				}
+				int comp;
+				if (value1 instanceof Comparable && value1.getClass() == value2.getClass()) {
+					comp = ((Comparable) value1).compareTo(value2);
+				} else {
+					comp = value1.toString().compareTo(value2.toString());
+				}
+				if (comp != 0) {
+					return comp;
+				}
+			}
+			return 0;
+		}
+	}
+
 	/**
 	 * Add a new Row to the MemoryResult. This occur because the GROUP BY clause
 	 * of the current row not relate to an exists row.
@@ -264,7 +775,15 @@ public class GroupResult extends MemoryResult {
 	 */
 	final private void addGroupRow() {
 		// add a new row to the GroupResult
-		ExpressionValue[] newRow = currentRow = new ExpressionValue[expressions.size()];
+		currentRow = createGroupRow();
+		addRow(currentRow);
+	}
+
+	/**
+	 * Create the values of a new group without adding it.
+	 */
+	final private ExpressionValue[] createGroupRow() {
+		ExpressionValue[] newRow = new ExpressionValue[expressions.size()];
 		for (int i = 0; i < newRow.length; i++) {
 			Expression expr = expressions.get(i);
 			int type = expr.getType();
@@ -272,7 +791,7 @@ public class GroupResult extends MemoryResult {
 				type = Expression.GROUP_BY;
 			newRow[i] = new ExpressionValue(type);
 		}
-		addRow(newRow);
+		return newRow;
 	}
 
 	final private void accumulateRow() throws Exception {
@@ -281,4 +800,36 @@ public class GroupResult extends MemoryResult {
 			currentRow[i].accumulate(src);
 		}
 	}
+
+	/**
+	 * Accumulate some selected rows of the batch to the current group.
+	 * 
+	 * @param batch
+	 *            the batch or null to accumulate the current row of from
+	 * @param from
+	 *            the first index in the selection of the batch
+	 * @param to
+	 *            the index after the last index in the selection
+	 */
+	final private void accumulateRow(RowBatch batch, int from, int to) throws Exception {
+		if (batch == null) {
+			accumulateRow();
+			return;
+		}
+		accumulateRow(currentRow, batch, from, to);
+	}
+
+	/**
+	 * Accumulate some selected rows of the batch to the given group. This can
+	 * be called from different threads for different groups.
+	 */
+	final private void accumulateRow(ExpressionValue[] row, RowBatch batch, int from, int to) throws Exception {
+		for (int i = 0; i < row.length; i++) {
+			int col = batchColumns[i];
+			if (col < 0 && getAccumulateSource(expressions.get(i)).isNull()) {
+				continue; // COUNT(NULL)
+			}
+			row[i].accumulate(batch, col, from, to);
+		}
+	}
 }
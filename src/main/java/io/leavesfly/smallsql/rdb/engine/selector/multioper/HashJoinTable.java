@@ -0,0 +1,218 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * HashJoinTable.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.selector.multioper;
+
+import java.util.Arrays;
+
+/**
+ * The hash table of the build side of a hash join. Every entry is a row of
+ * the build side with the row position and the hash of its key values. The
+ * entries are saved in primitive arrays in the order of adding. A slot of the
+ * open addressing table with linear probing point to the first entry of a
+ * hash, all entries with the same hash are chained in the order of adding.
+ * <p>
+ * If the join has a single integer or floating point key then the key value
+ * itself is used as hash and there are no key objects. Else the key values are
+ * saved as List and compared with equals().
+ * <p>
+ * The entries must be added before finish() is called, after it the table can
+ * be searched.
+ */
+final class HashJoinTable {
+
+	/** estimated memory of an entry without the key values */
+	static final int ENTRY_OVERHEAD = 44;
+
+	private long[] hashes = new long[16];
+	private long[] rowPositions = new long[16];
+	private Object[] keys;
+	private int[] next = new int[16];
+	private long[] matched = new long[1];
+	private int size;
+
+	private int[] slots; // index of the first entry + 1, 0 for an empty slot
+	private int mask;
+
+	/**
+	 * Create an empty table.
+	 * 
+	 * @param withKeys
+	 *            false if the hash is the key value and there are no key
+	 *            objects
+	 */
+	HashJoinTable(boolean withKeys) {
+		if (withKeys) {
+			keys = new Object[16];
+		}
+	}
+
+	/**
+	 * Spread the bits of a hash. The lower bits are used for the slots, the
+	 * highest bits for the partitions of a grace hash join.
+	 */
+	static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Add a row of the build side.
+	 * 
+	 * @param hash
+	 *            the key value or the hash code of the key
+	 * @param key
+	 *            the key values or null if the table has no key objects
+	 */
+	void add(long hash, Object key, long rowPosition) {
+		if (size == hashes.length) {
+			int capacity = size * 2;
+			hashes = Arrays.copyOf(hashes, capacity);
+			rowPositions = Arrays.copyOf(rowPositions, capacity);
+			next = Arrays.copyOf(next, capacity);
+			if (keys != null) {
+				keys = Arrays.copyOf(keys, capacity);
+			}
+		}
+		hashes[size] = hash;
+		rowPositions[size] = rowPosition;
+		if (keys != null) {
+			keys[size] = key;
+		}
+		size++;
+	}
+
+	/**
+	 * Create the slots after all entries are added.
+	 */
+	void finish() {
+		int capacity = 4;
+		while (capacity < size * 2) {
+			capacity <<= 1;
+		}
+		slots = new int[capacity];
+		mask = capacity - 1;
+		matched = new long[(size + 63) >> 6];
+		// the entries are inserted at the head of the chain, backward that the
+		// chain is in the order of adding
+		for (int e = size - 1; e >= 0; e--) {
+			long hash = hashes[e];
+			int idx = (int) mix(hash) & mask;
+			int first;
+			while ((first = slots[idx]) != 0 && hashes[first - 1] != hash) {
+				idx = (idx + 1) & mask;
+			}
+			next[e] = first - 1;
+			slots[idx] = e + 1;
+		}
+	}
+
+	/**
+	 * Find the first entry with the key.
+	 * 
+	 * @return the index of the entry or -1 if there is no entry
+	 */
+	int find(long hash, Object key) {
+		int idx = (int) mix(hash) & mask;
+		int first;
+		while ((first = slots[idx]) != 0) {
+			if (hashes[first - 1] == hash) {
+				return keys == null ? first - 1 : findKey(first - 1, key);
+			}
+			idx = (idx + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the next entry with the same key as the given entry.
+	 * 
+	 * @return the index of the entry or -1 if there is no more entry
+	 */
+	int findNext(int entry, Object key) {
+		return keys == null ? next[entry] : findKey(next[entry], key);
+	}
+
+	private int findKey(int entry, Object key) {
+		while (entry >= 0 && !key.equals(keys[entry])) {
+			entry = next[entry];
+		}
+		return entry;
+	}
+
+	long getHash(int entry) {
+		return hashes[entry];
+	}
+
+	Object getKey(int entry) {
+		return keys == null ? null : keys[entry];
+	}
+
+	long getRowPosition(int entry) {
+		return rowPositions[entry];
+	}
+
+	/**
+	 * Mark that the entry has found a row of the probe side. Needed for the
+	 * outer join on the build side.
+	 */
+	void setMatched(int entry) {
+		matched[entry >> 6] |= 1L << entry;
+	}
+
+	boolean isMatched(int entry) {
+		return (matched[entry >> 6] & (1L << entry)) != 0;
+	}
+
+	/**
+	 * Reset all marks of setMatched() for a new run over the probe side.
+	 */
+	void clearMatched() {
+		Arrays.fill(matched, 0);
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	void clear() {
+		size = 0;
+		slots = null;
+		if (keys != null) {
+			Arrays.fill(keys, null);
+		}
+	}
+}
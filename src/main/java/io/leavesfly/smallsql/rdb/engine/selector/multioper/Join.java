@@ -32,15 +32,25 @@
  */
 package io.leavesfly.smallsql.rdb.engine.selector.multioper;
 
-import io.leavesfly.smallsql.rdb.engine.Index;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.rdb.engine.RowSource;
+import io.leavesfly.smallsql.rdb.engine.Table;
+import io.leavesfly.smallsql.rdb.engine.View;
+import io.leavesfly.smallsql.rdb.engine.selector.result.TableResult;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
-import io.leavesfly.smallsql.util.datastruct.LongTreeListEnum;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
+import io.leavesfly.smallsql.rdb.sql.expression.operator.Evaluator;
 import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionArithmetic;
+import io.leavesfly.smallsql.rdb.sql.expression.operator.ExpressionInSelect;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.util.Utils;
+import io.leavesfly.smallsql.util.datastruct.LongList;
 import io.leavesfly.smallsql.util.datastruct.LongLongList;
-import io.leavesfly.smallsql.util.datastruct.LongTreeList;
 
 public final class Join extends RowSource {
 
@@ -50,6 +60,8 @@ public final class Join extends RowSource {
 	public RowSource right;
 	private boolean isAfterLast;
 
+	private long memoryLimit = SsConnection.DEFAULT_WORK_MEMORY;
+
 	private LongLongList rowPositions; // needed for getRowPosition() and
 										// setRowPosition()
 	private int row; // current row number
@@ -63,6 +75,22 @@ public final class Join extends RowSource {
 		this.right = right;
 	}
 
+	/**
+	 * Set the max estimated size in bytes of the hash table of a hash join. If
+	 * the build side is larger then the rows are split into partitions in
+	 * temporary files.
+	 */
+	public void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * Get the type of the join like INNER_JOIN or LEFT_JOIN.
+	 */
+	public final int getType() {
+		return type;
+	}
+
 	public final boolean isScrollable() {
 		return false; // TODO performance, if left and right are scrollable then
 						// this should also scrollable
@@ -138,11 +166,16 @@ public final class Join extends RowSource {
 	public void execute() throws Exception {
 		left.execute();
 		right.execute();
+		if (scroll != null) {
+			scroll.close();
+		}
 		// create the best join algorithm
-		if (!createJoinScrollIndex()) {
+		if (!createJoinScrollHash()) {
 			// Use the default join algorithm with a loop as fallback
 			scroll = new JoinScroll(type, left, right, condition);
 		}
+		// reset the end flag of a previous execute of a PreparedStatement
+		beforeFirst();
 	}
 
 	/**
@@ -172,145 +205,595 @@ public final class Join extends RowSource {
 	}
 
 	/**
-	 * Create a ScrollJoin that based on a index. There must not exist a index
-	 * on a table. If there is no index then a index will be created.
+	 * Create a hash join if the ON condition include equals comparisons between
+	 * an expression of the left and an expression of the right side. All other
+	 * parts of the condition are verified for every pair of rows with equals
+	 * keys. The rows of the smaller side are saved in the hash table.
 	 * 
-	 * @return null if it is not possible to create a ScrollJoin based on a
-	 *         Index
+	 * @return false if it is not possible to create a hash join
 	 */
-	private boolean createJoinScrollIndex() throws Exception {
-		if (type == CROSS_JOIN) {
+	private boolean createJoinScrollHash() throws Exception {
+		if (type == CROSS_JOIN || condition == null) {
 			return false;
 		}
-		if (type != INNER_JOIN) {
-			// TODO currently only INNER JOIN are implemented
+		ArrayList<Expression> conditions = new ArrayList<Expression>();
+		splitConjunction(condition, conditions);
+		Expressions leftEx = new Expressions();
+		Expressions rightEx = new Expressions();
+		int[] compareTypes = new int[conditions.size()];
+		boolean hasResidual = false;
+		for (int i = 0; i < conditions.size(); i++) {
+			int compareType = addJoinKey(conditions.get(i), leftEx, rightEx);
+			if (compareType == 0) {
+				hasResidual = true;
+			} else {
+				compareTypes[leftEx.size() - 1] = compareType;
+			}
+		}
+		if (leftEx.size() == 0) {
 			return false;
 		}
-		if (condition instanceof ExpressionArithmetic) {
-			ExpressionArithmetic cond = (ExpressionArithmetic) condition;
-			Expressions leftEx = new Expressions();
-			Expressions rightEx = new Expressions();
-			int operation = createJoinScrollIndex(cond, leftEx, rightEx, 0);
-			if (operation != 0) {
-				scroll = new JoinScrollIndex(type, left, right, leftEx, rightEx, operation);
-				return true;
-			}
+		compareTypes = Arrays.copyOf(compareTypes, leftEx.size());
+
+		long leftCount = estimateRowCount(left);
+		long rightCount = estimateRowCount(right);
+		boolean isBuildLeft = leftCount >= 0 && rightCount >= 0 && leftCount < rightCount;
+		boolean isLeftOuter = type == LEFT_JOIN || type == FULL_JOIN;
+		boolean isRightOuter = type == RIGHT_JOIN || type == FULL_JOIN;
+		if (isBuildLeft) {
+			scroll = new JoinScrollHash(type, left, right, right, left, rightEx, leftEx, compareTypes, isRightOuter,
+					isLeftOuter, hasResidual ? condition : null, memoryLimit, leftCount);
+		} else {
+			scroll = new JoinScrollHash(type, left, right, left, right, leftEx, rightEx, compareTypes, isLeftOuter,
+					isRightOuter, hasResidual ? condition : null, memoryLimit, rightCount);
 		}
-		return false;
+		return true;
 	}
 
-	private static class JoinScrollIndex extends JoinScroll {
-
-		private final int compare;
-
-		Expressions leftEx;
-		Expressions rightEx;
-
-		private Index index;
+	/**
+	 * Split the AND operations of a condition.
+	 */
+	private static void splitConjunction(Expression expr, List<Expression> conditions) {
+		if (expr instanceof ExpressionArithmetic
+				&& ((ExpressionArithmetic) expr).getOperation() == ExpressionArithmetic.AND) {
+			Expression[] params = expr.getParams();
+			splitConjunction(params[0], conditions);
+			splitConjunction(params[1], conditions);
+		} else {
+			conditions.add(expr);
+		}
+	}
 
-		private LongTreeList rowList;
+	/**
+	 * Add the expressions of an equals comparison between the left and the
+	 * right side to the keys of a hash join.
+	 * 
+	 * @return the compare type of Evaluator.getCompareType() or 0 if the
+	 *         condition can not be used as key
+	 */
+	private int addJoinKey(Expression cond, Expressions leftEx, Expressions rightEx) throws Exception {
+		if (!(cond instanceof ExpressionArithmetic) || cond instanceof ExpressionInSelect
+				|| ((ExpressionArithmetic) cond).getOperation() != ExpressionArithmetic.EQUALS) {
+			return 0;
+		}
+		Expression[] params = cond.getParams();
+		Expression param0 = params[0];
+		Expression param1 = params[1];
+		if (param0 instanceof ExpressionInSelect || param1 instanceof ExpressionInSelect) {
+			return 0;
+		}
+		int compareType = Evaluator.getCompareType(param0, param1);
+		if (compareType == 0) {
+			return 0;
+		}
+		// scan all column that are include in the expression
+		Expressions columns0 = Utils.getExpressionNameFromTree(param0);
+		Expressions columns1 = Utils.getExpressionNameFromTree(param1);
+		if (columns0.size() == 0 || columns1.size() == 0) {
+			return 0;
+		}
+		if (left.isExpressionsFromThisRowSource(columns0) && right.isExpressionsFromThisRowSource(columns1)) {
+			leftEx.add(param0);
+			rightEx.add(param1);
+		} else if (left.isExpressionsFromThisRowSource(columns1) && right.isExpressionsFromThisRowSource(columns0)) {
+			leftEx.add(param1);
+			rightEx.add(param0);
+		} else {
+			return 0;
+		}
+		return compareType;
+	}
 
-		private final LongTreeListEnum longListEnum = new LongTreeListEnum();
+	/**
+	 * Estimate the count of rows of a RowSource for the choice of the build side
+	 * of a hash join.
+	 * 
+	 * @return the estimated count or -1 if it is unknown
+	 */
+	private static long estimateRowCount(RowSource source) {
+		if (source instanceof Where) {
+			return estimateRowCount(((Where) source).getFrom());
+		}
+		if (source instanceof TableResult) {
+			View view = ((TableResult) source).getTableView();
+			return view instanceof Table ? ((Table) view).getRowCountEstimate() : -1;
+		}
+		if (source instanceof Join) {
+			long leftCount = estimateRowCount(((Join) source).left);
+			long rightCount = estimateRowCount(((Join) source).right);
+			return leftCount < 0 || rightCount < 0 ? -1 : Math.max(leftCount, rightCount);
+		}
+		return -1;
+	}
 
-		JoinScrollIndex(int joinType, RowSource left, RowSource right, Expressions leftEx, Expressions rightEx,
-				int compare) throws Exception {
+	/**
+	 * A hash join. The rows of the build side are saved in a HashJoinTable, then
+	 * every row of the probe side search the rows with equals keys. Only the row
+	 * positions and the keys are saved, the values are read with
+	 * setRowPosition().
+	 * <p>
+	 * If the hash table is larger as the memory limit then the rows of both
+	 * sides are split into partitions by the hash of the key and written to
+	 * temporary files. The partitions are joined one after the other (grace hash
+	 * join). The order of the rows is then the order of the partitions.
+	 * <p>
+	 * On an outer join the probe rows without a match are returned directly, the
+	 * build rows without a match after the probe side of the hash table is
+	 * finished.
+	 */
+	private static class JoinScrollHash extends JoinScroll {
+
+		private static final int MAX_PARTITIONS = 64;
+
+		private static final int PHASE_PROBE = 0;
+		private static final int PHASE_BUILD_OUTER = 1;
+		private static final int PHASE_NULL_KEYS = 2;
+		private static final int PHASE_END = 3;
+
+		private final RowSource probe;
+		private final RowSource build;
+		private final Expression[] probeKeys;
+		private final Expression[] buildKeys;
+		private final int[] compareTypes;
+		private final boolean withKeys; // false if the hash is the value of a single key
+		private final boolean isProbeOuter;
+		private final boolean isBuildOuter;
+		private final Expression residual; // the condition if it include more as the keys
+		private Evaluator evaluator;
+		private final long memoryLimit;
+		private final long buildCountEstimate;
+
+		private final HashJoinTable table;
+		private long usedMemory;
+		private final LongList nullKeyRows = new LongList(); // build rows with a NULL key on an outer join
+		private Partition[] buildPartitions;
+		private Partition[] probePartitions;
+		private int partitionIdx;
+		private boolean isBuilt;
+
+		// the key of the last readKey()
+		private long keyHash;
+		private Object[] keyArray;
+		private List<Object> keyValues;
+
+		// the current state of the iteration
+		private int phase;
+		private boolean hasProbeRow;
+		private boolean isProbeMatched;
+		private List<Object> probeKey;
+		private int entry;
+		private int outerIdx;
+
+		JoinScrollHash(int joinType, RowSource left, RowSource right, RowSource probe, RowSource build,
+				Expressions probeEx, Expressions buildEx, int[] compareTypes, boolean isProbeOuter,
+				boolean isBuildOuter, Expression residual, long memoryLimit, long buildCountEstimate) {
 			super(joinType, left, right, null);
-			this.leftEx = leftEx;
-			this.rightEx = rightEx;
-			this.compare = compare;
-			createIndex(rightEx);
+			this.probe = probe;
+			this.build = build;
+			this.probeKeys = probeEx.toArray();
+			this.buildKeys = buildEx.toArray();
+			this.compareTypes = compareTypes;
+			this.withKeys = compareTypes.length > 1 || compareTypes[0] == SQLTokenizer.VARCHAR;
+			this.isProbeOuter = isProbeOuter;
+			this.isBuildOuter = isBuildOuter;
+			this.residual = residual;
+			this.memoryLimit = memoryLimit;
+			this.buildCountEstimate = buildCountEstimate;
+			table = new HashJoinTable(withKeys);
 		}
 
-		private void createIndex(Expressions rightEx) throws Exception {
-			index = new Index(false);
-			right.beforeFirst();
-			while (right.next()) {
-				index.addValues(right.getRowPosition(), rightEx);
+		void beforeFirst() throws Exception {
+			if (!isBuilt) {
+				build();
+				isBuilt = true;
+			}
+			phase = PHASE_PROBE;
+			hasProbeRow = false;
+			if (buildPartitions == null) {
+				probe.beforeFirst();
+				table.clearMatched();
+			} else {
+				partitionIdx = -1;
+				loadNextPartition();
 			}
 		}
 
 		boolean next() throws Exception {
-			switch (compare) {
-			case ExpressionArithmetic.EQUALS:
-				return nextEquals();
-			default:
-				throw new Error("Compare operation not supported:" + compare);
+			while (true) {
+				switch (phase) {
+				case PHASE_PROBE:
+					if (hasProbeRow) {
+						while (entry >= 0) {
+							int current = entry;
+							entry = table.findNext(current, probeKey);
+							build.setRowPosition(table.getRowPosition(current));
+							if (isResidualTrue()) {
+								isProbeMatched = true;
+								table.setMatched(current);
+								return true;
+							}
+						}
+						if (isProbeOuter && !isProbeMatched) {
+							isProbeMatched = true;
+							build.nullRow();
+							return true;
+						}
+					}
+					hasProbeRow = nextProbeRow();
+					if (!hasProbeRow) {
+						phase = PHASE_BUILD_OUTER;
+						outerIdx = 0;
+					}
+					break;
+				case PHASE_BUILD_OUTER:
+					if (isBuildOuter) {
+						while (outerIdx < table.size()) {
+							int current = outerIdx++;
+							if (!table.isMatched(current)) {
+								probe.nullRow();
+								build.setRowPosition(table.getRowPosition(current));
+								return true;
+							}
+						}
+					}
+					if (loadNextPartition()) {
+						phase = PHASE_PROBE;
+					} else {
+						phase = PHASE_NULL_KEYS;
+						outerIdx = 0;
+					}
+					break;
+				case PHASE_NULL_KEYS:
+					if (outerIdx < nullKeyRows.size()) {
+						probe.nullRow();
+						build.setRowPosition(nullKeyRows.get(outerIdx++));
+						return true;
+					}
+					phase = PHASE_END;
+					return false;
+				default:
+					return false;
+				}
 			}
+		}
 
+		void close() {
+			deletePartitions(buildPartitions);
+			deletePartitions(probePartitions);
 		}
 
-		private boolean nextEquals() throws Exception {
-			if (rowList != null) {
-				long rowPosition = rowList.getNext(longListEnum);
-				if (rowPosition != -1) {
-					right.setRowPosition(rowPosition);
+		/**
+		 * Move to the next row of the probe side that has a matching entry in
+		 * the hash table or that must be returned by an outer join.
+		 * 
+		 * @return false if there are no more rows
+		 */
+		private boolean nextProbeRow() throws Exception {
+			while (true) {
+				boolean hasKey;
+				if (probePartitions == null) {
+					if (!probe.next()) {
+						return false;
+					}
+					hasKey = readKey(probeKeys);
+				} else {
+					Partition partition = probePartitions[partitionIdx];
+					if (!partition.read()) {
+						partition.closeInput();
+						return false;
+					}
+					probe.setRowPosition(partition.rowPosition);
+					hasKey = partition.hasKey;
+					keyHash = partition.hash;
+					keyValues = (withKeys && hasKey) ? Arrays.asList(partition.key) : null;
+				}
+				entry = hasKey ? table.find(keyHash, keyValues) : -1;
+				if (entry >= 0 || isProbeOuter) {
+					probeKey = keyValues;
+					isProbeMatched = false;
 					return true;
 				}
-				rowList = null;
 			}
-			Object rows;
-			do {
-				if (!left.next()) {
-					return false;
+		}
+
+		private boolean isResidualTrue() throws Exception {
+			if (residual == null) {
+				return true;
+			}
+			if (evaluator == null) {
+				evaluator = Evaluator.compile(residual);
+			}
+			return evaluator.getBoolean();
+		}
+
+		/**
+		 * Read all rows of the build side into the hash table. If the memory
+		 * limit is exceeded then the rows of both sides are written to
+		 * partitions.
+		 */
+		private void build() throws Exception {
+			build.beforeFirst();
+			while (build.next()) {
+				long rowPosition = build.getRowPosition();
+				if (!readKey(buildKeys)) {
+					// a NULL is never equals
+					if (isBuildOuter) {
+						nullKeyRows.add(rowPosition);
+					}
+					continue;
+				}
+				if (buildPartitions != null) {
+					write(buildPartitions, keyHash, keyArray, rowPosition);
+					continue;
+				}
+				table.add(keyHash, keyValues, rowPosition);
+				usedMemory += HashJoinTable.ENTRY_OVERHEAD + (withKeys ? ExternalSorter.estimateSize(keyArray) : 0);
+				if (usedMemory > memoryLimit) {
+					spill();
+				}
+			}
+			if (buildPartitions == null) {
+				table.finish();
+				return;
+			}
+			probePartitions = createPartitions(buildPartitions.length);
+			probe.beforeFirst();
+			while (probe.next()) {
+				long rowPosition = probe.getRowPosition();
+				if (readKey(probeKeys)) {
+					write(probePartitions, keyHash, keyArray, rowPosition);
+				} else if (isProbeOuter) {
+					probePartitions[0].write(false, 0, null, rowPosition);
 				}
-				rows = index.findRows(leftEx, false, null);
-			} while (rows == null);
+			}
+			for (int i = 0; i < buildPartitions.length; i++) {
+				buildPartitions[i].finishWriting();
+				probePartitions[i].finishWriting();
+			}
+		}
 
-			if (rows instanceof Long) {
-				right.setRowPosition(((Long) rows).longValue());
-			} else {
-				rowList = (LongTreeList) rows;
-				longListEnum.reset();
-				right.setRowPosition(rowList.getNext(longListEnum));
+		/**
+		 * Move the entries of the hash table to partitions. The count of
+		 * partitions is calculated from the estimated size of the build side.
+		 */
+		private void spill() throws IOException {
+			long estimate = Math.max(usedMemory * 2, buildCountEstimate * (usedMemory / table.size()));
+			int count = 2;
+			while (count < MAX_PARTITIONS && estimate / count > memoryLimit) {
+				count <<= 1;
+			}
+			buildPartitions = createPartitions(count);
+			for (int e = 0; e < table.size(); e++) {
+				Object key = table.getKey(e);
+				write(buildPartitions, table.getHash(e), key == null ? null : ((List<?>) key).toArray(),
+						table.getRowPosition(e));
+			}
+			table.clear();
+			usedMemory = 0;
+		}
+
+		/**
+		 * Load the next partition of the build side into the hash table.
+		 * 
+		 * @return false if there is no more partition
+		 */
+		private boolean loadNextPartition() throws IOException {
+			if (buildPartitions == null || ++partitionIdx >= buildPartitions.length) {
+				return false;
 			}
+			table.clear();
+			Partition partition = buildPartitions[partitionIdx];
+			partition.openInput();
+			while (partition.read()) {
+				table.add(partition.hash, withKeys ? Arrays.asList(partition.key) : null, partition.rowPosition);
+			}
+			partition.closeInput();
+			table.finish();
+			probePartitions[partitionIdx].openInput();
 			return true;
 		}
 
-	}
+		/**
+		 * Evaluate the key expressions of the current row. The result is saved
+		 * in keyHash, keyArray and keyValues.
+		 * 
+		 * @return false if a value of the key is NULL
+		 */
+		private boolean readKey(Expression[] exprs) throws Exception {
+			if (!withKeys) {
+				Expression expr = exprs[0];
+				if (expr.isNull()) {
+					return false;
+				}
+				keyHash = getLongKey(expr, compareTypes[0]);
+				return true;
+			}
+			Object[] values = new Object[exprs.length];
+			for (int i = 0; i < values.length; i++) {
+				Expression expr = exprs[i];
+				if (expr.isNull()) {
+					return false;
+				}
+				values[i] = getKeyValue(expr, compareTypes[i]);
+			}
+			keyArray = values;
+			keyValues = Arrays.asList(values);
+			keyHash = keyValues.hashCode();
+			return true;
+		}
 
-	private int createJoinScrollIndex(ExpressionArithmetic cond, Expressions leftEx, Expressions rightEx, int operation)
-			throws Exception {
-		Expression[] params = cond.getParams();
-		int op = cond.getOperation();
-		if (op == ExpressionArithmetic.AND) {
-			Expression param0 = params[0];
-			Expression param1 = params[1];
-			if (param0 instanceof ExpressionArithmetic && param1 instanceof ExpressionArithmetic) {
-				op = createJoinScrollIndex((ExpressionArithmetic) param0, leftEx, rightEx, operation);
-				if (op == 0) {
-					return 0;
+		/**
+		 * Get the value of a single numeric key as long. Two keys are equals if
+		 * the values are equals in the compare type.
+		 */
+		private static long getLongKey(Expression expr, int compareType) throws Exception {
+			switch (compareType) {
+			case SQLTokenizer.REAL: {
+				float value = expr.getFloat();
+				return Float.floatToIntBits(value == 0 ? 0 : value); // -0.0 = 0.0
+			}
+			case SQLTokenizer.DOUBLE: {
+				double value = expr.getDouble();
+				return Double.doubleToLongBits(value == 0 ? 0 : value);
+			}
+			default:
+				return expr.getLong();
+			}
+		}
+
+		/**
+		 * Get the value of a key as hash key. Two keys are equals if the EQUALS
+		 * comparison is true, for example strings are compared case
+		 * insensitive.
+		 */
+		private static Object getKeyValue(Expression expr, int compareType) throws Exception {
+			switch (compareType) {
+			case SQLTokenizer.REAL: {
+				float value = expr.getFloat();
+				return Float.valueOf(value == 0 ? 0 : value); // -0.0 = 0.0
+			}
+			case SQLTokenizer.DOUBLE: {
+				double value = expr.getDouble();
+				return Double.valueOf(value == 0 ? 0 : value);
+			}
+			case SQLTokenizer.VARCHAR: {
+				// the same as String.CASE_INSENSITIVE_ORDER
+				String value = expr.getString();
+				char[] chars = new char[value.length()];
+				for (int i = 0; i < chars.length; i++) {
+					chars[i] = Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
 				}
-				return createJoinScrollIndex((ExpressionArithmetic) param1, leftEx, rightEx, operation);
+				return new String(chars);
+			}
+			default:
+				return Long.valueOf(expr.getLong());
 			}
-			return 0;
 		}
-		if (operation == 0) {
-			operation = op;
+
+		private static Partition[] createPartitions(int count) throws IOException {
+			Partition[] partitions = new Partition[count];
+			for (int i = 0; i < count; i++) {
+				partitions[i] = new Partition();
+			}
+			return partitions;
 		}
-		if (operation != op) {
-			return 0;
+
+		private static void write(Partition[] partitions, long hash, Object[] key, long rowPosition)
+				throws IOException {
+			int idx = (int) (HashJoinTable.mix(hash) >>> 58) & (partitions.length - 1);
+			partitions[idx].write(true, hash, key, rowPosition);
 		}
-		if (operation == ExpressionArithmetic.EQUALS) {
-			Expression param0 = params[0];
-			Expression param1 = params[1];
-			// scan all column that are include in the expression
-			Expressions columns0 = Utils.getExpressionNameFromTree(param0);
-			Expressions columns1 = Utils.getExpressionNameFromTree(param1);
-			if (left.isExpressionsFromThisRowSource(columns0) && right.isExpressionsFromThisRowSource(columns1)) {
-				leftEx.add(param0);
-				rightEx.add(param1);
-			} else {
-				if (left.isExpressionsFromThisRowSource(columns1) && right.isExpressionsFromThisRowSource(columns0)) {
-					leftEx.add(param1);
-					rightEx.add(param0);
-				} else {
-					return 0;
+
+		private static void deletePartitions(Partition[] partitions) {
+			if (partitions != null) {
+				for (int i = 0; i < partitions.length; i++) {
+					partitions[i].delete();
 				}
 			}
+		}
+	}
+
+	/**
+	 * A temporary file with the rows of a partition of a grace hash join. A row
+	 * is saved with the hash, the row position and the key values.
+	 */
+	private static final class Partition {
+
+		private final File file;
+		private DataOutputStream output;
+		private DataInputStream input;
+		private int count;
+		private int readCount;
+
+		// the values of the last read()
+		boolean hasKey;
+		long hash;
+		Object[] key;
+		long rowPosition;
+
+		Partition() throws IOException {
+			file = File.createTempFile("smallsql", ".join");
+			file.deleteOnExit();
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 13));
+		}
 
-			return operation;
+		void write(boolean hasKey, long hash, Object[] key, long rowPosition) throws IOException {
+			output.writeBoolean(hasKey);
+			output.writeLong(hash);
+			output.writeLong(rowPosition);
+			output.writeBoolean(key != null);
+			if (key != null) {
+				ExternalSorter.writeRow(output, key);
+			}
+			count++;
+		}
+
+		void finishWriting() throws IOException {
+			output.close();
+			output = null;
+		}
+
+		void openInput() throws IOException {
+			closeInput();
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 13));
+			readCount = 0;
+		}
+
+		/**
+		 * Read the next row.
+		 * 
+		 * @return false if there are no more rows
+		 */
+		boolean read() throws IOException {
+			if (readCount >= count) {
+				return false;
+			}
+			readCount++;
+			hasKey = input.readBoolean();
+			hash = input.readLong();
+			rowPosition = input.readLong();
+			key = input.readBoolean() ? ExternalSorter.readRow(input) : null;
+			return true;
+		}
+
+		void closeInput() throws IOException {
+			if (input != null) {
+				input.close();
+				input = null;
+			}
+		}
+
+		void delete() {
+			try {
+				if (output != null) {
+					output.close();
+				}
+				closeInput();
+			} catch (IOException e) {
+				// ignore, the file is deleted
+			}
+			file.delete();
 		}
-		return 0;
 	}
 
 	public static final int CROSS_JOIN = 1;
@@ -325,6 +808,8 @@ public final class Join extends RowSource {
 		// after
 		// the ON
 		private final Expression condition;
+		// the compiled condition, a JoinScroll is created on every execute
+		private Evaluator evaluator;
 		final int type;
 		final RowSource left; // the left table, view or rowsource of the join
 		final RowSource right;
@@ -348,6 +833,13 @@ public final class Join extends RowSource {
 			}
 		}
 
+		/**
+		 * Release the resources of the join algorithm like temporary files.
+		 */
+		void close() {
+			// nothing to release for the nested loop
+		}
+
 		void beforeFirst() throws Exception {
 			left.beforeFirst();
 			right.beforeFirst();
@@ -365,7 +857,7 @@ public final class Join extends RowSource {
 						return false;
 					}
 					right.next();
-				} while (isFullNotValid[fullReturnCounter++]);
+				} while (isFullMatched(fullReturnCounter++));
 				return true;
 			}
 			do {
@@ -432,7 +924,7 @@ public final class Join extends RowSource {
 			if (type == Join.FULL_JOIN) {
 				if (fullRightRowCounter >= isFullNotValid.length) {
 					boolean[] temp = new boolean[fullRightRowCounter << 1];
-					System.arraycopy(isFullNotValid, 0, temp, 0, fullRightRowCounter);
+					System.arraycopy(isFullNotValid, 0, temp, 0, isFullNotValid.length);
 					isFullNotValid = temp;
 				}
 				if (!result) {
@@ -444,7 +936,7 @@ public final class Join extends RowSource {
 						right.first();
 						left.nullRow();
 					}
-					while (isFullNotValid[fullReturnCounter++]) {
+					while (isFullMatched(fullReturnCounter++)) {
 						if (fullReturnCounter >= fullRowCount) {
 							return false;
 						}
@@ -457,8 +949,22 @@ public final class Join extends RowSource {
 			return result;
 		}
 
+		/**
+		 * If the right row with the index has found a left row on a FULL JOIN.
+		 * The array is only enlarged for matched rows.
+		 */
+		private boolean isFullMatched(int idx) {
+			return idx < isFullNotValid.length && isFullNotValid[idx];
+		}
+
 		private boolean getBoolean() throws Exception {
-			return type == Join.CROSS_JOIN || condition.getBoolean();
+			if (type == Join.CROSS_JOIN) {
+				return true;
+			}
+			if (evaluator == null) {
+				evaluator = Evaluator.compile(condition);
+			}
+			return evaluator.getBoolean();
 		}
 	}
 }
\ No newline at end of file
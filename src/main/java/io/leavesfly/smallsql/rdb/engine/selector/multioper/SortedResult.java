@@ -32,16 +32,26 @@
  */
 package io.leavesfly.smallsql.rdb.engine.selector.multioper;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
+import io.leavesfly.smallsql.rdb.command.dql.CommandSelect;
 import io.leavesfly.smallsql.rdb.engine.Index;
-import io.leavesfly.smallsql.rdb.engine.IndexScrollStatus;
 import io.leavesfly.smallsql.rdb.engine.RowSource;
 import io.leavesfly.smallsql.util.datastruct.LongList;
 import io.leavesfly.smallsql.lang.Language;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 
 /**
- * Is used to implements the ORDER BY clause.
+ * Is used to implements the ORDER BY clause. The sort keys of all rows are
+ * sorted on execute, after it only the sorted row positions are hold in memory.
+ * If the max rows of the command are set then only the first rows are hold in
+ * a bounded heap (Top-N). If the keys need more as the work memory then sorted
+ * runs are written to temporary files and merged.
  * 
  * @author Volker Berlin
  */
@@ -53,9 +63,17 @@ public final class SortedResult extends RowSource {
 	 */
 	final private RowSource rowSource;
 	/**
-	 * Scroll pointer to the index.
+	 * The command for the max rows of the current execute.
+	 */
+	final private CommandSelect cmd;
+	/**
+	 * The max estimated size in bytes of the sort keys in memory.
 	 */
-	private IndexScrollStatus scrollStatus;
+	final private long memoryLimit;
+	/**
+	 * The row positions of the rowSource in sorted order.
+	 */
+	private final LongList sortedRows = new LongList();
 	/**
 	 * The current row number. It is used for getRow().
 	 */
@@ -77,9 +95,20 @@ public final class SortedResult extends RowSource {
 	 */
 	private long lastRowOffset;
 
-	public SortedResult(RowSource rowSource, Expressions orderBy) {
+	/**
+	 * Create a sorted result.
+	 * 
+	 * @param cmd
+	 *            the command with the max rows. If set then not more rows are
+	 *            sorted.
+	 * @param memoryLimit
+	 *            the estimated size in bytes of the sort keys in memory
+	 */
+	public SortedResult(CommandSelect cmd, RowSource rowSource, Expressions orderBy, long memoryLimit) {
+		this.cmd = cmd;
 		this.rowSource = rowSource;
 		this.orderBy = orderBy;
+		this.memoryLimit = memoryLimit;
 	}
 
 	public final boolean isScrollable() {
@@ -88,17 +117,86 @@ public final class SortedResult extends RowSource {
 
 	public final void execute() throws Exception {
 		rowSource.execute();
-		Index index = new Index(false);
+		sortedRows.clear();
+		insertedRows.clear();
+		row = 0;
 		lastRowOffset = -1;
-		while (rowSource.next()) {
-			lastRowOffset = rowSource.getRowPosition();
-			index.addValues(lastRowOffset, orderBy);
-			sortedRowCount++;
+		int limit = cmd.getMaxRows();
+		Comparator<Object[]> comparator = new KeyComparator(orderBy);
+		// the largest row of the heap is on top that it can be replaced
+		PriorityQueue<Object[]> heap = limit >= 0
+				? new PriorityQueue<Object[]>(Math.min(limit, 1024) + 1, Collections.reverseOrder(comparator)) : null;
+		long heapSize = 0;
+		ExternalSorter sorter = null;
+		try {
+			while (rowSource.next()) {
+				lastRowOffset = rowSource.getRowPosition();
+				Object[] sortRow = createSortRow(lastRowOffset);
+				if (heap != null) {
+					if (heap.size() < limit) {
+						heap.add(sortRow);
+						heapSize += ExternalSorter.estimateSize(sortRow);
+					} else if (limit > 0 && comparator.compare(sortRow, heap.peek()) < 0) {
+						heapSize -= ExternalSorter.estimateSize(heap.poll());
+						heap.add(sortRow);
+						heapSize += ExternalSorter.estimateSize(sortRow);
+					}
+					if (heapSize > memoryLimit) {
+						// the limit is too large for the memory, sort all rows
+						sorter = new ExternalSorter(comparator, memoryLimit);
+						for (Object[] heapRow : heap) {
+							sorter.add(heapRow);
+						}
+						heap = null;
+					}
+					continue;
+				}
+				if (sorter == null) {
+					sorter = new ExternalSorter(comparator, memoryLimit);
+				}
+				sorter.add(sortRow);
+			}
+			if (heap != null) {
+				Object[][] rows = heap.toArray(new Object[heap.size()][]);
+				heap = null;
+				Arrays.sort(rows, comparator);
+				for (int i = 0; i < rows.length; i++) {
+					sortedRows.add(getRowPosition(rows[i]));
+				}
+			} else if (sorter != null) {
+				sorter.sort();
+				Object[] sortRow;
+				while ((limit < 0 || sortedRows.size() < limit) && (sortRow = sorter.next()) != null) {
+					sortedRows.add(getRowPosition(sortRow));
+				}
+			}
+		} finally {
+			if (sorter != null) {
+				sorter.close();
+			}
 		}
-		scrollStatus = index.createScrollStatus(orderBy);
+		sortedRowCount = sortedRows.size();
 		useSetRowPosition = false;
 	}
 
+	/**
+	 * Create the row for sorting from the current row of the rowSource. It
+	 * include the sort keys of the ORDER BY expressions and the row position.
+	 */
+	private Object[] createSortRow(long rowPosition) throws Exception {
+		int count = orderBy.size();
+		Object[] sortRow = new Object[count + 1];
+		for (int i = 0; i < count; i++) {
+			sortRow[i] = Index.getSortKey(orderBy.get(i));
+		}
+		sortRow[count] = Long.valueOf(rowPosition);
+		return sortRow;
+	}
+
+	private static long getRowPosition(Object[] sortRow) {
+		return ((Long) sortRow[sortRow.length - 1]).longValue();
+	}
+
 	public final boolean isBeforeFirst() {
 		return row == 0;
 	}
@@ -108,7 +206,6 @@ public final class SortedResult extends RowSource {
 	}
 
 	public void beforeFirst() throws Exception {
-		scrollStatus.reset();
 		row = 0;
 		useSetRowPosition = false;
 	}
@@ -121,17 +218,13 @@ public final class SortedResult extends RowSource {
 	public boolean previous() throws Exception {
 		if (useSetRowPosition)
 			throw SmallSQLException.create(Language.ORDERBY_INTERNAL);
-		if (currentInsertedRow() == 0) {
-			scrollStatus.afterLast();
-		}
 		row--;
 		if (currentInsertedRow() >= 0) {
 			rowSource.setRowPosition(insertedRows.get(currentInsertedRow()));
 			return true;
 		}
-		long rowPosition = scrollStatus.getRowOffset(false);
-		if (rowPosition >= 0) {
-			rowSource.setRowPosition(rowPosition);
+		if (row > 0) {
+			rowSource.setRowPosition(sortedRows.get(row - 1));
 			return true;
 		} else {
 			rowSource.noRow();
@@ -143,13 +236,10 @@ public final class SortedResult extends RowSource {
 	public boolean next() throws Exception {
 		if (useSetRowPosition)
 			throw SmallSQLException.create(Language.ORDERBY_INTERNAL);
-		if (currentInsertedRow() < 0) {
-			long rowPosition = scrollStatus.getRowOffset(true);
-			if (rowPosition >= 0) {
-				row++;
-				rowSource.setRowPosition(rowPosition);
-				return true;
-			}
+		if (row < sortedRowCount) {
+			row++;
+			rowSource.setRowPosition(sortedRows.get(row - 1));
+			return true;
 		}
 		if (currentInsertedRow() < insertedRows.size() - 1) {
 			row++;
@@ -196,10 +286,7 @@ public final class SortedResult extends RowSource {
 
 	public void afterLast() throws Exception {
 		useSetRowPosition = false;
-		if (sortedRowCount > 0) {
-			scrollStatus.afterLast();
-			scrollStatus.getRowOffset(false); // previous position
-		} else {
+		if (sortedRowCount == 0) {
 			rowSource.beforeFirst();
 		}
 		row = sortedRowCount;
@@ -211,6 +298,12 @@ public final class SortedResult extends RowSource {
 	public boolean absolute(int newRow) throws Exception {
 		if (newRow == 0)
 			throw SmallSQLException.create(Language.ROW_0_ABSOLUTE);
+		if (newRow > 0 && newRow <= sortedRowCount) {
+			useSetRowPosition = false;
+			row = newRow;
+			rowSource.setRowPosition(sortedRows.get(row - 1));
+			return true;
+		}
 		if (newRow > 0) {
 			beforeFirst();
 			while (newRow-- > 0) {
@@ -304,4 +397,42 @@ public final class SortedResult extends RowSource {
 		return row - sortedRowCount - 1;
 	}
 
+	/**
+	 * Compare the sort rows in the same order as an Index that is scrolled
+	 * with the ORDER BY expressions. NULL values are first, DESC reverse the
+	 * order of a column. Equals keys are sorted by the row position.
+	 */
+	private static final class KeyComparator implements Comparator<Object[]> {
+		private final boolean[] desc;
+
+		KeyComparator(Expressions orderBy) {
+			desc = new boolean[orderBy.size()];
+			for (int i = 0; i < desc.length; i++) {
+				desc[i] = orderBy.get(i).getAlias() == SQLTokenizer.DESC_STR;
+			}
+		}
+
+		public int compare(Object[] row1, Object[] row2) {
+			for (int k = 0; k < desc.length; k++) {
+				Object value1 = row1[k];
+				Object value2 = row2[k];
+				int comp;
+				if (value1 == null) {
+					comp = value2 == null ? 0 : -1;
+				} else if (value2 == null) {
+					comp = 1;
+				} else if (value1 instanceof Long) {
+					comp = Long.compareUnsigned(((Long) value1).longValue(), ((Long) value2).longValue());
+				} else {
+					comp = ((String) value1).compareTo((String) value2);
+				}
+				if (comp != 0) {
+					return desc[k] ? -comp : comp;
+				}
+			}
+			long pos1 = getRowPosition(row1);
+			long pos2 = getRowPosition(row2);
+			return pos1 < pos2 ? -1 : (pos1 == pos2 ? 0 : 1);
+		}
+	}
 }
@@ -37,6 +37,7 @@ import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.rdb.engine.View;
 import io.leavesfly.smallsql.rdb.engine.selector.DataSource;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.lang.Language;
 import io.leavesfly.smallsql.rdb.engine.selector.DataSources;
@@ -124,6 +125,10 @@ public final class UnionAll extends DataSource {
 		return currentDS.getBytes(colIdx);
 	}
 
+	public final LobLocator getLob(int colIdx) throws Exception {
+		return currentDS.getLob(colIdx);
+	}
+
 	public final int getDataType(int colIdx) {
 		return currentDS.getDataType(colIdx);
 	}
@@ -34,8 +34,10 @@
 package io.leavesfly.smallsql.rdb.engine.selector.multioper;
 
 import io.leavesfly.smallsql.rdb.engine.RowSource;
+import io.leavesfly.smallsql.rdb.engine.selector.RowBatch;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
+import io.leavesfly.smallsql.rdb.sql.expression.operator.Evaluator;
 
 public class Where extends RowSource {
 
@@ -43,6 +45,12 @@ public class Where extends RowSource {
 	final private Expression where;
 	private int row = 0;
 	private boolean isCurrentRow;
+	/** The batch for which the filter was created. */
+	private RowBatch filterBatch;
+	/** The WHERE condition for batches or null if it is verified row by row. */
+	private BatchFilter filter;
+	/** The compiled WHERE condition of the current execute. */
+	private Evaluator evaluator;
 
 	public Where(RowSource rowSource, Expression where) {
 		this.rowSource = rowSource;
@@ -60,7 +68,13 @@ public class Where extends RowSource {
 	 * @return
 	 */
 	final private boolean isValidRow() throws Exception {
-		return where == null || rowSource.rowInserted() || where.getBoolean();
+		if (where == null || rowSource.rowInserted()) {
+			return true;
+		}
+		if (evaluator == null) {
+			evaluator = Evaluator.compile(where);
+		}
+		return evaluator.getBoolean();
 	}
 
 	public final boolean isScrollable() {
@@ -122,6 +136,60 @@ public class Where extends RowSource {
 		return isCurrentRow;
 	}
 
+	/**
+	 * Read the next batch of rows with at least one valid row. If the condition
+	 * can be evaluated on the vectors of the batch then the batches of the
+	 * underlying RowSource are filtered, else the rows are read with next().
+	 * Batches are never read from an updatable ResultSet, the own inserted rows
+	 * are verified like all other rows.
+	 */
+	@Override
+	public final boolean nextBatch(RowBatch batch) throws Exception {
+		if (where == null) {
+			return rowSource.nextBatch(batch);
+		}
+		if (batch != filterBatch) {
+			filter = BatchFilter.create(where, batch);
+			filterBatch = batch;
+		}
+		if (filter == null) {
+			return super.nextBatch(batch);
+		}
+		while (rowSource.nextBatch(batch)) {
+			int count = filter.filter(batch, batch.getSelection(), batch.getSelectedCount());
+			batch.setSelectedCount(count);
+			if (count > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Split the underlying RowSource and filter every partition with the same
+	 * condition. This is only possible if the condition can be evaluated on
+	 * the vectors of a batch because the expressions of the condition can not
+	 * be evaluated from different threads.
+	 */
+	@Override
+	public RowSource[] createPartitions(RowBatch batch, int count) throws Exception {
+		RowBatch probe = batch;
+		if (where != null) {
+			// the columns of the filter must also be readable from the partitions
+			probe = batch.copyEmpty();
+			if (BatchFilter.create(where, probe) == null) {
+				return null;
+			}
+		}
+		RowSource[] partitions = rowSource.createPartitions(probe, count);
+		if (partitions != null) {
+			for (int i = 0; i < partitions.length; i++) {
+				partitions[i] = new Where(partitions[i], where);
+			}
+		}
+		return partitions;
+	}
+
 	public final boolean last() throws Exception {
 		while (next()) {/* scroll after the end */
 		}
@@ -165,6 +233,9 @@ public class Where extends RowSource {
 
 	public final void execute() throws Exception {
 		rowSource.execute();
+		// the data types of the parameters can be changed
+		filterBatch = null;
+		evaluator = null;
 	}
 
 	/**
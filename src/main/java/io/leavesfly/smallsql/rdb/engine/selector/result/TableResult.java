@@ -33,23 +33,44 @@
 package io.leavesfly.smallsql.rdb.engine.selector.result;
 
 import java.sql.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.jdbc.SmallSQLException;
+import io.leavesfly.smallsql.rdb.engine.RowSource;
 import io.leavesfly.smallsql.rdb.engine.Store;
 import io.leavesfly.smallsql.rdb.engine.Table;
 import io.leavesfly.smallsql.rdb.engine.View;
+import io.leavesfly.smallsql.rdb.engine.index.IndexDescription;
+import io.leavesfly.smallsql.rdb.engine.index.IndexDescriptions;
+import io.leavesfly.smallsql.rdb.engine.selector.RowBatch;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.rdb.engine.store.StoreImpl;
 import io.leavesfly.smallsql.rdb.engine.store.StoreNull;
 import io.leavesfly.smallsql.rdb.engine.store.StorePageLink;
+import io.leavesfly.smallsql.rdb.engine.store.VersionStore;
 import io.leavesfly.smallsql.rdb.engine.table.Column;
 import io.leavesfly.smallsql.rdb.engine.table.Columns;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
+import io.leavesfly.smallsql.rdb.sql.expression.ExpressionName;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 
 public final class TableResult extends TableViewResult {
 
+	/** The min size of the pages of a partition for a parallel scan. */
+	private static final long MIN_PARTITION_SIZE = 256 * 1024;
+
 	final private Table table;
+	/**
+	 * The TableResult that is the DataSource of the column expressions. This
+	 * is the owner of a partition or else this.
+	 */
+	final private TableResult source;
+	/** The first row of a partition or 0 if all rows of the table are read. */
+	private long partitionStart;
 	/**
 	 * A List of rows that was inserted. The rows can be uncommited in memory or
 	 * commited on harddisk. The WHERE condition does not need to be valid.
@@ -65,9 +86,58 @@ public final class TableResult extends TableViewResult {
 	 * are not not counted.
 	 */
 	private long maxFileOffset;
+	/**
+	 * The snapshot of the rows for a read without page locks or null if the
+	 * rows are read with locks.
+	 */
+	private VersionStore.Snapshot snapshot;
+
+	/** The changed columns of the last update of a row. */
+	private boolean[] inPlaceColumns;
+	/**
+	 * The count of columns to scan for an in place update of the changed
+	 * columns or -1 if the row must be rewritten.
+	 */
+	private int inPlaceScanCount;
+	/** The buffer for the new values of an in place update. */
+	private StoreImpl valueBuffer;
+	/** The index for an index scan or null for a full table scan. */
+	private IndexDescription scanIndex;
+	private Expression[] scanPrefix;
+	private Expression scanFrom;
+	private Expression scanTo;
+	/**
+	 * The sorted rowOffsets of the index scan or null for a full table scan.
+	 */
+	private long[] scanRows;
+	/** The position of the current row in scanRows. */
+	private int scanPos;
 
 	TableResult(Table table) {
 		this.table = table;
+		this.source = this;
+	}
+
+	/**
+	 * Create a partition of a full table scan that read the rows from start to
+	 * end. The partition use the compiled state of the source and is read only
+	 * with nextBatch().
+	 */
+	private TableResult(TableResult source, long start, long end) {
+		this.table = source.table;
+		this.source = source;
+		con = source.con;
+		lock = source.lock;
+		snapshot = source.snapshot;
+		offsets = new int[source.offsets.length];
+		dataTypes = source.dataTypes;
+		fixedOffsets = source.fixedOffsets;
+		charSizes = source.charSizes;
+		scanCount = source.scanCount;
+		insertStorePages = Collections.emptyList();
+		firstOwnInsert = 0x4000000000000000L;
+		partitionStart = start;
+		maxFileOffset = end;
 	}
 
 	/**
@@ -83,19 +153,112 @@ public final class TableResult extends TableViewResult {
 			Columns columns = table.columns;
 			offsets = new int[columns.size()];
 			dataTypes = new int[columns.size()];
+			charSizes = null;
 			for (int i = 0; i < columns.size(); i++) {
-				dataTypes[i] = columns.get(i).getDataType();
+				Column column = columns.get(i);
+				int dataType = dataTypes[i] = column.getDataType();
+				if (table.isCompactStrings() && (dataType == SQLTokenizer.CHAR || dataType == SQLTokenizer.NCHAR)) {
+					if (charSizes == null) {
+						charSizes = new int[columns.size()];
+					}
+					charSizes[i] = column.getDisplaySize();
+				}
 			}
+			fixedOffsets = table.getFixedOffsets();
+			scanCount = 0;
+			scannedCount = 0;
 			return true;
 		}
 		return false;
 	}
 
+	/**
+	 * Mark a column as needed from the compiled command. The offsets of the
+	 * needed columns are calculated on every move to a row. The offsets of
+	 * other columns are calculated only if they are accessed.
+	 * 
+	 * @param colIdx
+	 *            the index of the column in the table
+	 */
+	public final void requireColumn(int colIdx) {
+		scanCount = Math.max(scanCount, colIdx + 1);
+	}
+
+	/**
+	 * Read only the rows that are found with an index. The values are evaluated on every execute. The rows must be
+	 * verified with the WHERE condition because the index can return more rows as needed.
+	 * 
+	 * @param index
+	 *            the index of this table
+	 * @param prefix
+	 *            the values of the first columns of the index
+	 * @param from
+	 *            the inclusive lower bound of the next index column or null
+	 * @param to
+	 *            the inclusive upper bound of the next index column or null
+	 */
+	public final void setIndexScan(IndexDescription index, Expression[] prefix, Expression from, Expression to) {
+		scanIndex = index;
+		scanPrefix = prefix;
+		scanFrom = from;
+		scanTo = to;
+	}
+
+	/**
+	 * Split a full table scan into ranges of pages with nearly the same size.
+	 * This is only possible if there are no own inserts, no index scan and no
+	 * page locks must be hold for the transaction. The batch may only contain
+	 * columns of this table.
+	 */
+	@Override
+	public final RowSource[] createPartitions(RowBatch batch, int count) throws Exception {
+		if (scanRows != null || insertStorePages.size() > 0 || lock != SQLTokenizer.SELECT
+				|| con.isolationLevel > Connection.TRANSACTION_READ_COMMITTED) {
+			return null;
+		}
+		for (int c = 0; c < batch.getColumnCount(); c++) {
+			Expression expr = batch.getColumn(c);
+			if (expr.getType() != Expression.NAME || ((ExpressionName) expr).getDataSource() != this) {
+				return null;
+			}
+		}
+		long start = table.getFirstPage();
+		count = (int) Math.min(count, (maxFileOffset - start) / MIN_PARTITION_SIZE);
+		if (count < 2) {
+			return null;
+		}
+		long[] bounds = StoreImpl.splitPages(table.raFile, start, maxFileOffset, count);
+		RowSource[] partitions = new RowSource[count];
+		for (int i = 0; i < count; i++) {
+			partitions[i] = new TableResult(this, bounds[i], bounds[i + 1]);
+		}
+		return partitions;
+	}
+
 	@Override
 	public final void execute() throws Exception {
+		snapshot = readSnapshot && lock == SQLTokenizer.SELECT ? con.getSnapshot() : null;
+		if (snapshot != null && !snapshot.isLatest()) {
+			// the snapshot of a transaction prevent a change of the table
+			table.requestLock(con, SQLTokenizer.REPEATABLE, -1);
+		}
 		insertStorePages = table.getInserts(con);
 		firstOwnInsert = 0x4000000000000000L | insertStorePages.size();
-		maxFileOffset = table.raFile.size();
+		maxFileOffset = StoreImpl.getWrittenSize(table.raFile);
+		scanRows = null;
+		// the index include only the current rows, the snapshot of a
+		// transaction must scan the table to find its versions of the rows
+		if (scanIndex != null && (snapshot == null || snapshot.isLatest())) {
+			long[] rows = scanIndex.findRows(con, scanPrefix, scanFrom, scanTo);
+			if (rows != null) {
+				// rows that are committed after the start are not visible like on a full scan
+				int count = rows.length;
+				while (count > 0 && rows[count - 1] >= maxFileOffset) {
+					count--;
+				}
+				scanRows = count == rows.length ? rows : Arrays.copyOf(rows, count);
+			}
+		}
 		beforeFirst();
 	}
 
@@ -116,10 +279,33 @@ public final class TableResult extends TableViewResult {
 
 	@Override
 	public final void deleteRow() throws SQLException {
+		IndexDescriptions indexes = table.indexes;
+		for (int i = 0; i < indexes.size(); i++) {
+			try {
+				indexes.get(i).deleteRow(con, getRowId(), (StoreImpl) store);
+			} catch (Exception e) {
+				throw SmallSQLException.createFromException(e);
+			}
+		}
 		store.deleteRow(con);
 		store = new StoreNull(store.getNextPagePos());
 	}
 
+	/**
+	 * Get the identity of the current row for the indexes. This is the rowOffset as Long or the StorePageLink of a
+	 * not committed insert.
+	 */
+	private Object getRowId() {
+		if (filePos >= 0x4000000000000000L) {
+			StorePageLink link = insertStorePages.get((int) (filePos & 0x3FFFFFFFFFFFFFFFL));
+			if (link.page != null) {
+				return link;
+			}
+			return Long.valueOf(link.filePos);
+		}
+		return Long.valueOf(filePos);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -128,6 +314,19 @@ public final class TableResult extends TableViewResult {
 		Columns tableColumns = table.columns;
 		int count = tableColumns.size();
 
+		int inPlaceCount = getInPlaceScanCount(updateValues);
+		if (inPlaceCount >= 0 && ((StoreImpl) this.store).isInPlaceUpdatable()) {
+			// only values with a fixed size are changed, the bytes of the
+			// values are overwritten in the page of the row
+			synchronized (con.getMonitor()) {
+				StoreImpl store = (StoreImpl) this.store;
+				store.createWriteLock();
+				scanOffsets(inPlaceCount);
+				store.updateInPlace(con, updateValues, tableColumns, offsets, valueBuffer);
+			}
+			return;
+		}
+
 		StoreImpl newStore = table.getStoreTemp(con);
 
 		// the write lock only prevent access from other connections
@@ -135,6 +334,7 @@ public final class TableResult extends TableViewResult {
 		// This can produce NPE if another thread commit pages of this thread
 		synchronized (con.getMonitor()) {
 			((StoreImpl) this.store).createWriteLock();
+			scanOffsets(count);
 
 			for (int i = 0; i < count; i++) {
 				Expression src = updateValues[i];
@@ -145,10 +345,57 @@ public final class TableResult extends TableViewResult {
 					copyValueInto(i, newStore);
 				}
 			}
+			IndexDescriptions indexes = table.indexes;
+			for (int i = 0; i < indexes.size(); i++) {
+				indexes.get(i).updateRow(con, getRowId(), (StoreImpl) this.store, newStore);
+			}
 			((StoreImpl) this.store).updateFinsh(con, newStore);
 		}
 	}
 
+	/**
+	 * Get the count of columns that must be scanned to overwrite the changed
+	 * values in the page of the row. The result is calculated again only if
+	 * other columns are changed as on the last call.
+	 * 
+	 * @return -1 if a changed column has not a fixed size or is part of an
+	 *         index
+	 */
+	private int getInPlaceScanCount(Expression[] updateValues) {
+		if (inPlaceColumns != null) {
+			boolean isSame = true;
+			for (int i = 0; i < updateValues.length; i++) {
+				if (inPlaceColumns[i] != (updateValues[i] != null)) {
+					isSame = false;
+					break;
+				}
+			}
+			if (isSame) {
+				return inPlaceScanCount;
+			}
+		} else {
+			inPlaceColumns = new boolean[updateValues.length];
+		}
+		IndexDescriptions indexes = table.indexes;
+		int scanCount = 0;
+		for (int i = 0; i < updateValues.length; i++) {
+			inPlaceColumns[i] = updateValues[i] != null;
+			if (!inPlaceColumns[i] || scanCount < 0) {
+				continue;
+			}
+			boolean isFixed = StoreImpl.isInPlaceType(dataTypes[i]);
+			for (int k = 0; isFixed && k < indexes.size(); k++) {
+				isFixed = !indexes.get(k).containsColumn(i);
+			}
+			scanCount = isFixed ? i + 1 : -1;
+		}
+		if (scanCount >= 0 && valueBuffer == null) {
+			valueBuffer = StoreImpl.createValueBuffer(table);
+		}
+		inPlaceScanCount = scanCount;
+		return scanCount;
+	}
+
 	@Override
 	public final void insertRow(Expression[] updateValues) throws Exception {
 		Columns tableColumns = table.columns;
@@ -165,6 +412,10 @@ public final class TableResult extends TableViewResult {
 
 		}
 		store.writeFinsh(con);
+		IndexDescriptions indexes = table.indexes;
+		for (int i = 0; i < indexes.size(); i++) {
+			indexes.get(i).writeFinish(con, store);
+		}
 		insertStorePages.add(store.getLink());
 	}
 
@@ -183,21 +434,49 @@ public final class TableResult extends TableViewResult {
 	private long filePos;
 	private int[] offsets;
 	private int[] dataTypes;
+	/** The offsets of the leading columns with a fixed size. */
+	private int[] fixedOffsets;
+	/**
+	 * The length of the CHAR columns for which the padding is not saved or
+	 * null if the table has no such column.
+	 */
+	private int[] charSizes;
+	/** The count of columns that are scanned on every move to a row. */
+	private int scanCount;
+	/** The count of columns with valid offsets for the current row. */
+	private int scannedCount;
 	private int row;
 
 	/** save the file offset after the last valid row (not deleted) */
 	private long afterLastValidFilePos;
 
+	/** The batch of the last nextBatch() call. */
+	private RowBatch batch;
+	/** The column index in this table for every batch column or -1. */
+	private int[] batchColumns;
+
 	/**
 	 * Move to the row in the filePos. A value of -1 for filePos is invalid at
 	 * this call point.
 	 */
 	final private boolean moveToRow() throws Exception {
+		scannedCount = 0;
 		if (filePos >= 0x4000000000000000L) {
 			store = ((StorePageLink) insertStorePages.get((int) (filePos & 0x3FFFFFFFFFFFFFFFL))).getStore(table, con,
 					lock);
 		} else {
-			store = (filePos < maxFileOffset) ? table.getStore(con, filePos, lock) : null;
+			if (filePos >= maxFileOffset) {
+				store = null;
+			} else if (snapshot != null && lock == SQLTokenizer.SELECT) {
+				// an UPDATE change the lock after the execute
+				store = table.getStore(con, filePos, snapshot);
+			} else {
+				store = table.getStore(con, filePos, lock);
+			}
+			if (store == null && scanRows != null) {
+				// a row of the index that was removed by a compact of the file
+				return false;
+			}
 			if (store == null) {
 				if (insertStorePages.size() > 0) {
 					filePos = 0x4000000000000000L;
@@ -210,7 +489,7 @@ public final class TableResult extends TableViewResult {
 			if (!store.isValidPage()) {
 				return false;
 			}
-			store.scanObjectOffsets(offsets, dataTypes);
+			scanOffsets(scanCount);
 			afterLastValidFilePos = store.getNextPagePos();
 			return true;
 		} else {
@@ -220,6 +499,27 @@ public final class TableResult extends TableViewResult {
 		}
 	}
 
+	/**
+	 * Calculate the offsets of the columns of the current row up to the column
+	 * count. The offsets of already scanned columns are not calculated again.
+	 */
+	private void scanOffsets(int count) {
+		if (count > scannedCount) {
+			store.scanObjectOffsets(offsets, dataTypes, scannedCount, count, fixedOffsets);
+			scannedCount = count;
+		}
+	}
+
+	/**
+	 * Get the offset of a column value in the current row.
+	 */
+	private int getOffset(int colIdx) {
+		if (colIdx >= scannedCount) {
+			scanOffsets(colIdx + 1);
+		}
+		return offsets[colIdx];
+	}
+
 	/**
 	 * Move to the next valid row. A valid row is a normal row or an pointer to
 	 * an updated row value. A invalid row is a deleted row or an updated value
@@ -244,11 +544,36 @@ public final class TableResult extends TableViewResult {
 
 	@Override
 	public final boolean first() throws Exception {
-		filePos = table.getFirstPage();
+		if (scanRows != null) {
+			scanPos = 0;
+			filePos = getScanFilePos();
+		} else {
+			filePos = getFirstPage();
+		}
 		row = 1;
 		return moveToValidRow();
 	}
 
+	/**
+	 * Get the file position of the first row of a full scan.
+	 */
+	private long getFirstPage() {
+		return partitionStart > 0 ? partitionStart : table.getFirstPage();
+	}
+
+	/**
+	 * Get the filePos for the scanPos of an index scan. After the rows of the index follow the inserted rows.
+	 */
+	private long getScanFilePos() {
+		if (scanPos < scanRows.length) {
+			return scanRows[scanPos];
+		}
+		if (insertStorePages.size() > 0) {
+			return 0x4000000000000000L;
+		}
+		return -1;
+	}
+
 	/**
 	 * A negative filePos means no more rows.
 	 * <p>
@@ -264,8 +589,16 @@ public final class TableResult extends TableViewResult {
 	final private void setNextFilePos() {
 		if (filePos < 0)
 			return; // end of rows
-		if (store == Store.NOROW)
-			filePos = table.getFirstPage(); // can point at the end of file
+		if (filePos < 0x4000000000000000L && scanRows != null) {
+			if (store == Store.NOROW && filePos == 0)
+				scanPos = 0; // beforeFirst
+			else
+				scanPos++;
+			filePos = getScanFilePos();
+			if (filePos < 0)
+				noRow();
+		} else if (store == Store.NOROW)
+			filePos = getFirstPage(); // can point at the end of file
 		else if (filePos >= 0x4000000000000000L) {
 			filePos++;
 			if ((filePos & 0x3FFFFFFFFFFFFFFFL) >= insertStorePages.size()) {
@@ -285,6 +618,46 @@ public final class TableResult extends TableViewResult {
 		return moveToValidRow();
 	}
 
+	/**
+	 * Read the next rows into the batch. The columns of this table are read
+	 * direct from the page of the row, all other column expressions are
+	 * evaluated.
+	 */
+	@Override
+	public final boolean nextBatch(RowBatch batch) throws Exception {
+		int count = batch.getColumnCount();
+		if (batch != this.batch || batchColumns.length != count) {
+			// bind the columns of the batch to the columns of this table
+			batchColumns = new int[count];
+			for (int c = 0; c < count; c++) {
+				Expression expr = batch.getColumn(c);
+				boolean isOwn = expr.getType() == Expression.NAME && ((ExpressionName) expr).getDataSource() == source;
+				batchColumns[c] = isOwn ? ((ExpressionName) expr).getColumnIndex() : -1;
+			}
+			this.batch = batch;
+		}
+		batch.clear();
+		while (!batch.isFull() && next()) {
+			int row = batch.addRow();
+			for (int c = 0; c < count; c++) {
+				int colIdx = batchColumns[c];
+				if (colIdx < 0) {
+					batch.readValue(c, row);
+					continue;
+				}
+				int offset = getOffset(colIdx);
+				if (store.isNull(offset)) {
+					batch.setNull(c, row);
+				} else if (batch.isDouble(c)) {
+					batch.setDouble(c, row, store.getDouble(offset, dataTypes[colIdx]));
+				} else {
+					batch.setLong(c, row, store.getLong(offset, dataTypes[colIdx]));
+				}
+			}
+		}
+		return batch.size() > 0;
+	}
+
 	@Override
 	public final void afterLast() {
 		filePos = -1;
@@ -307,8 +680,13 @@ public final class TableResult extends TableViewResult {
 	@Override
 	public final void setRowPosition(long rowPosition) throws Exception {
 		filePos = rowPosition;
+		if (scanRows != null && filePos >= 0 && filePos < 0x4000000000000000L) {
+			int idx = Arrays.binarySearch(scanRows, filePos);
+			scanPos = idx >= 0 ? idx : -idx - 1;
+		}
 		if (filePos < 0 || !moveToRow()) {
 			store = new StoreNull(store.getNextPagePos());
+			scannedCount = 0;
 		}
 	}
 
@@ -330,16 +708,24 @@ public final class TableResult extends TableViewResult {
 		return false;
 	}
 
+	/**
+	 * Set all columns to NULL for an outer join. The row position is also
+	 * invalid that a later setRowPosition() with the value of
+	 * getRowPosition() restore the NULL row.
+	 */
 	@Override
 	public final void nullRow() {
 		row = 0;
+		filePos = -1;
 		store = Store.NULL;
+		scannedCount = 0;
 	}
 
 	@Override
 	public final void noRow() {
 		row = 0;
 		store = Store.NOROW;
+		scannedCount = 0;
 	}
 
 	/*
@@ -352,57 +738,88 @@ public final class TableResult extends TableViewResult {
 
 	@Override
 	public final boolean isNull(int colIdx) throws Exception {
-		return store.isNull(offsets[colIdx]);
+		return store.isNull(getOffset(colIdx));
 	}
 
 	@Override
 	public final boolean getBoolean(int colIdx) throws Exception {
-		return store.getBoolean(offsets[colIdx], dataTypes[colIdx]);
+		return store.getBoolean(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final int getInt(int colIdx) throws Exception {
-		return store.getInt(offsets[colIdx], dataTypes[colIdx]);
+		return store.getInt(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final long getLong(int colIdx) throws Exception {
-		return store.getLong(offsets[colIdx], dataTypes[colIdx]);
+		return store.getLong(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final float getFloat(int colIdx) throws Exception {
-		return store.getFloat(offsets[colIdx], dataTypes[colIdx]);
+		return store.getFloat(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final double getDouble(int colIdx) throws Exception {
-		return store.getDouble(offsets[colIdx], dataTypes[colIdx]);
+		return store.getDouble(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final long getMoney(int colIdx) throws Exception {
-		return store.getMoney(offsets[colIdx], dataTypes[colIdx]);
+		return store.getMoney(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final MutableNumeric getNumeric(int colIdx) throws Exception {
-		return store.getNumeric(offsets[colIdx], dataTypes[colIdx]);
+		return store.getNumeric(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final Object getObject(int colIdx) throws Exception {
-		return store.getObject(offsets[colIdx], dataTypes[colIdx]);
+		if (charSizes != null && charSizes[colIdx] > 0) {
+			return getString(colIdx);
+		}
+		return store.getObject(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
 	public final String getString(int colIdx) throws Exception {
-		return store.getString(offsets[colIdx], dataTypes[colIdx]);
+		String value = store.getString(getOffset(colIdx), dataTypes[colIdx]);
+		if (charSizes != null && value != null) {
+			value = padChar(value, charSizes[colIdx]);
+		}
+		return value;
 	}
 
 	@Override
 	public final byte[] getBytes(int colIdx) throws Exception {
-		return store.getBytes(offsets[colIdx], dataTypes[colIdx]);
+		if (charSizes != null && charSizes[colIdx] > 0) {
+			String value = getString(colIdx);
+			return value == null ? null : value.getBytes();
+		}
+		return store.getBytes(getOffset(colIdx), dataTypes[colIdx]);
+	}
+
+	/**
+	 * Add the spaces of a CHAR value that are not saved in the compact string
+	 * format.
+	 */
+	private static String padChar(String value, int size) {
+		int length = value.length();
+		if (length >= size) {
+			return value;
+		}
+		char[] chars = new char[size];
+		value.getChars(0, length, chars, 0);
+		Arrays.fill(chars, length, size, ' ');
+		return new String(chars);
+	}
+
+	@Override
+	public final LobLocator getLob(int colIdx) throws Exception {
+		return store.getLob(getOffset(colIdx), dataTypes[colIdx]);
 	}
 
 	@Override
@@ -410,6 +827,10 @@ public final class TableResult extends TableViewResult {
 		return dataTypes[colIdx];
 	}
 
+	/**
+	 * Copy the value of a column to a new row. The offsets of all columns must
+	 * be scanned.
+	 */
 	final private void copyValueInto(int colIdx, StoreImpl dst) {
 		int offset = offsets[colIdx++];
 		int length = (colIdx < offsets.length ? offsets[colIdx] : store.getUsedSize()) - offset;
@@ -56,6 +56,11 @@ public abstract class TableViewResult extends DataSource {
 	private String alias;
 	private long tableTimestamp;
 	public int lock = SQLTokenizer.SELECT;
+	/**
+	 * If the rows are read from the snapshot of the connection. This is false
+	 * if the read rows are changed.
+	 */
+	public boolean readSnapshot = true;
 
 	public static TableViewResult createResult(View tableView) {
 		if (tableView instanceof Table)
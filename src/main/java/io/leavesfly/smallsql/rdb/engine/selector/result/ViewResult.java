@@ -41,6 +41,7 @@ import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.rdb.command.dql.CommandSelect;
 import io.leavesfly.smallsql.rdb.engine.View;
 import io.leavesfly.smallsql.rdb.engine.ViewTable;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 
@@ -165,6 +166,10 @@ public class ViewResult extends TableViewResult {
 		return columnExpressions.get(colIdx).getBytes();
 	}
 
+	public LobLocator getLob(int colIdx) throws Exception {
+		return columnExpressions.get(colIdx).getLob();
+	}
+
 	public int getDataType(int colIdx) {
 		return columnExpressions.get(colIdx).getDataType();
 	}
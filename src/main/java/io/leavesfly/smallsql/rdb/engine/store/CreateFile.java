@@ -75,12 +75,15 @@ public class CreateFile extends TransactionStep {
 			return;
 		}
 		raFile = null;
+		database.getPageCache().invalidate(currentRaFile);
 		try {
 			currentRaFile.close();
 		} catch (Throwable ex) {
 			// ignore it
 		}
 		con.rollbackFile(currentRaFile);
+		// logged pages of the file must not be replayed into a new file
+		database.checkpoint();
 		if (!file.delete()) {
 			file.deleteOnExit();
 			throw SmallSQLException.create(Language.FILE_CANT_DELETE,
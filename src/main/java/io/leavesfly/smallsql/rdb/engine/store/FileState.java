@@ -0,0 +1,112 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * FileState.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of an open file that is shared from all readers and writers of the
+ * file. The writers change it with the lock of the file, the readers use it
+ * without a lock. The state is removed if the FileChannel is garbage
+ * collected.
+ */
+final class FileState {
+
+	private static final Map<FileChannel, FileState> states = Collections
+			.synchronizedMap(new WeakHashMap<FileChannel, FileState>());
+
+	/**
+	 * The end of the pages that are completely written. The file can be
+	 * larger while pages are appended.
+	 */
+	private volatile long size;
+
+	/** The count of all writes to the file, it is increment after a write. */
+	private final AtomicLong writeCount = new AtomicLong();
+
+	private FileState(long size) {
+		this.size = size;
+	}
+
+	/**
+	 * Get the state of a file, it is created on the first call.
+	 */
+	static FileState get(FileChannel raFile) throws IOException {
+		FileState state = states.get(raFile);
+		if (state == null) {
+			// the size is valid only if no write is running
+			synchronized (raFile) {
+				state = states.get(raFile);
+				if (state == null) {
+					state = new FileState(raFile.size());
+					states.put(raFile, state);
+				}
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Get the end of the pages that was completely written. A reader does not
+	 * see parts of pages that are written at the moment if it reads only up
+	 * to this position.
+	 */
+	long getSize() {
+		return size;
+	}
+
+	/**
+	 * Publish the end of written pages. Must be called with the lock of the
+	 * file after the pages was written.
+	 */
+	void written(long end) {
+		if (end > size) {
+			size = end;
+		}
+	}
+
+	/**
+	 * Return the count of all writes to the file. Data that was read from the
+	 * file is still valid if the count was not changed since before the read.
+	 */
+	long getWriteCount() {
+		return writeCount.get();
+	}
+
+	void incrementWriteCount() {
+		writeCount.incrementAndGet();
+	}
+}
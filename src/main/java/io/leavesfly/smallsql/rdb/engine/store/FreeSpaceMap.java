@@ -0,0 +1,121 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * FreeSpaceMap.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.util.Iterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The free pages of a table file. A page is free if its row was deleted and the
+ * delete was committed, or if it was the old version of a relocated row. A new
+ * page is written in the first free page of the file that is large enough. So
+ * rows that are inserted again after a delete have the same order in the file
+ * like before. The free pages are grouped by its physical size.
+ * <p>
+ * The map is only held in memory. It is filled by the commits while the table
+ * is loaded. The dead pages of an older session are removed with COMPACT
+ * TABLE.
+ */
+public final class FreeSpaceMap {
+
+	private final TreeMap<Integer, TreeSet<Long>> pages = new TreeMap<Integer, TreeSet<Long>>();
+	private int count;
+	private long freeSize;
+
+	/**
+	 * Add a page that is not used anymore.
+	 * 
+	 * @param fileOffset
+	 *            the position of the page in the file
+	 * @param size
+	 *            the physical size of the page
+	 */
+	public synchronized void add(long fileOffset, int size) {
+		Integer key = Integer.valueOf(size);
+		TreeSet<Long> offsets = pages.get(key);
+		if (offsets == null) {
+			offsets = new TreeSet<Long>();
+			pages.put(key, offsets);
+		}
+		offsets.add(Long.valueOf(fileOffset));
+		count++;
+		freeSize += size;
+	}
+
+	/**
+	 * Set the position of a new page to a free page. The physical size in the
+	 * control block of the page is set to the size of the free page so that
+	 * the next page can be found.
+	 * 
+	 * @return false if there is no free page that is large enough
+	 */
+	synchronized boolean allocate(StorePage storePage) {
+		Integer size = null;
+		Long fileOffset = null;
+		Iterator<Integer> sizes = pages.tailMap(Integer.valueOf(storePage.pageSize)).keySet().iterator();
+		while (sizes.hasNext()) {
+			Integer key = sizes.next();
+			Long first = pages.get(key).first();
+			if (fileOffset == null || first.longValue() < fileOffset.longValue()) {
+				size = key;
+				fileOffset = first;
+			}
+		}
+		if (fileOffset == null) {
+			return false;
+		}
+		TreeSet<Long> offsets = pages.get(size);
+		offsets.remove(fileOffset);
+		if (offsets.isEmpty()) {
+			pages.remove(size);
+		}
+		count--;
+		freeSize -= size.intValue();
+		storePage.fileOffset = fileOffset.longValue();
+		StoreImpl.setPhysicalSize(storePage.page, size.intValue());
+		return true;
+	}
+
+	/**
+	 * The count of free pages.
+	 */
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * The sum of the physical sizes of all free pages in bytes.
+	 */
+	public synchronized long getFreeSize() {
+		return freeSize;
+	}
+}
@@ -0,0 +1,169 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * GroupCommit.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Share the sync of the files between the concurrent commits of a database.
+ * A committing thread request a ticket after its pages are written. One thread
+ * is the leader and force all files of the waiting commits with one
+ * FileChannel.force() per file. The other threads wait until a sync that was
+ * started after its ticket has finished.
+ * <p>
+ * If other commits are writing its pages then the leader waits a short time
+ * window that they can join the same sync.
+ * 
+ * @see io.leavesfly.smallsql.jdbc.SsConnection#commit()
+ */
+public final class GroupCommit {
+
+	/** The maximum time in nanoseconds that a leader waits for running commits. */
+	private static final long WINDOW = 1000000;
+
+	/** Count of commits that write its pages and has not request a sync. */
+	private int writing;
+	/** The last ticket that was given. */
+	private long requested;
+	/** All tickets up to this value are synced. */
+	private long synced;
+	/** If there is a leader that currently force the files. */
+	private boolean isSyncing;
+	/** The files of the tickets that are not synced yet. */
+	private IdentityHashMap<FileChannel, FileChannel> pending = new IdentityHashMap<FileChannel, FileChannel>();
+
+	/**
+	 * Mark the start of writing of a commit. A leader that is waiting for
+	 * other commits wait also for this commit.
+	 */
+	public synchronized void startWrite() {
+		writing++;
+	}
+
+	/**
+	 * Must be called after {@link #startWrite()} if the pages are written or
+	 * the writing has failed.
+	 */
+	public synchronized void endWrite() {
+		writing--;
+		notifyAll();
+	}
+
+	/**
+	 * Make the written data of the files durable. The method returns if a
+	 * sync of all files was finished that has started after the call.
+	 * 
+	 * @param files
+	 *            the files that the commit has written
+	 * @throws IOException
+	 *             if the leader can not force a file
+	 */
+	public void sync(List<FileChannel> files) throws IOException {
+		List<FileChannel> syncFiles;
+		long syncTicket;
+		synchronized (this) {
+			for (int i = 0; i < files.size(); i++) {
+				FileChannel file = files.get(i);
+				pending.put(file, file);
+			}
+			long ticket = ++requested;
+			notifyAll();
+			while (true) {
+				if (synced >= ticket) {
+					return;
+				}
+				if (!isSyncing) {
+					isSyncing = true;
+					break;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e.toString());
+				}
+			}
+			// the leader wait for other commits that are writing currently
+			long deadline = System.nanoTime() + WINDOW;
+			long remaining = WINDOW;
+			try {
+				while (writing > 0 && remaining > 0) {
+					wait(remaining / 1000000, (int) (remaining % 1000000));
+					remaining = deadline - System.nanoTime();
+				}
+			} catch (InterruptedException e) {
+				// sync without waiting
+				Thread.currentThread().interrupt();
+			}
+			syncTicket = requested;
+			syncFiles = new ArrayList<FileChannel>(pending.keySet());
+			pending = new IdentityHashMap<FileChannel, FileChannel>();
+		}
+		boolean isSynced = false;
+		try {
+			force(syncFiles);
+			isSynced = true;
+		} finally {
+			synchronized (this) {
+				isSyncing = false;
+				if (isSynced) {
+					synced = syncTicket;
+				} else {
+					// the next leader try it again
+					for (int i = 0; i < syncFiles.size(); i++) {
+						FileChannel file = syncFiles.get(i);
+						pending.put(file, file);
+					}
+				}
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Force the content of the files to the storage device. The file can be
+	 * closed from a DROP TABLE, then there is nothing to sync.
+	 */
+	public static void force(List<FileChannel> files) throws IOException {
+		for (int i = 0; i < files.size(); i++) {
+			try {
+				files.get(i).force(false);
+			} catch (ClosedChannelException e) {
+				// the table was dropped
+			}
+		}
+	}
+}
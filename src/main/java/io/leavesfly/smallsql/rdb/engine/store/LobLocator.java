@@ -0,0 +1,481 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * LobLocator.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+
+import io.leavesfly.smallsql.jdbc.SmallSQLException;
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.lang.Language;
+import io.leavesfly.smallsql.rdb.engine.Table;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
+
+/**
+ * The reference to a LOB value in the lob file of a table. The data are read
+ * on demand chunk by chunk, a value is never loaded completely for streaming.
+ * The chunks of large values are read from memory mapped windows of the lob
+ * file.
+ * <p>
+ * A value is saved in one page if it is not larger as LOB_CHUNK_SIZE. A
+ * larger value is saved in chunk pages and a first page with the marker
+ * LOB_CHUNKED, the length in bytes, the count of chunks and the file
+ * positions of the chunks. Characters are saved with 2 bytes.
+ * 
+ * @see StoreImpl#writeLongBinary(byte[])
+ */
+public final class LobLocator {
+
+	/**
+	 * The max size of a LOB value that is saved in one page of the lob file.
+	 * Larger values are saved in chunks of this size.
+	 */
+	static final int LOB_CHUNK_SIZE = 0x10000;
+	/**
+	 * The marker instead of the length in the first page of a LOB value that
+	 * is saved in chunks.
+	 */
+	static final int LOB_CHUNKED = -1;
+	/** The min size of a value in bytes from which the chunks are memory mapped. */
+	private static final long MAP_SIZE = 1024 * 1024;
+	/**
+	 * The size of a memory mapped window of the lob file. The chunks of a value
+	 * are written one after the other, one window includes many chunks. A
+	 * mapping is only released by the garbage collector.
+	 */
+	private static final long MAP_WINDOW_SIZE = 16 * 1024 * 1024;
+
+	private final Table table;
+	private final SsConnection con;
+	private final long filePos;
+	private final boolean chars;
+
+	/** The first page of the value or null if not read yet. */
+	private StoreImpl head;
+	/** The offset of the data in the first page of a value without chunks. */
+	private int dataOffset;
+	private long byteLength;
+	/** The file positions of the chunks or null if the value has no chunks. */
+	private long[] chunks;
+	/** The last memory mapped window of the lob file or null. */
+	private ByteBuffer window;
+	/** The file position of the window. */
+	private long windowPos;
+
+	/**
+	 * Create a reference to a LOB value.
+	 * 
+	 * @param table
+	 *            the table of the value
+	 * @param filePos
+	 *            the position of the first page in the lob file
+	 * @param chars
+	 *            true for CLOB values with characters, false for binary values
+	 */
+	LobLocator(Table table, SsConnection con, long filePos, boolean chars) {
+		this.table = table;
+		this.con = con;
+		this.filePos = filePos;
+		this.chars = chars;
+	}
+
+	/**
+	 * Read the first page of the value.
+	 */
+	private void readHead() throws SQLException {
+		if (head != null) {
+			return;
+		}
+		StoreImpl store;
+		try {
+			store = table.getLobStore(con, filePos, SQLTokenizer.SELECT);
+		} catch (Exception e) {
+			throw SmallSQLException.createFromException(e);
+		}
+		if (store == null || !store.isValidPage()) {
+			throw SmallSQLException.create(Language.LOB_DELETED);
+		}
+		int length = store.readInt();
+		if (length == LOB_CHUNKED) {
+			byteLength = store.readLong();
+			chunks = new long[store.readInt()];
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = store.readLong();
+			}
+		} else {
+			byteLength = chars ? 2L * length : length;
+			dataOffset = store.getCurrentOffsetInPage();
+		}
+		head = store;
+	}
+
+	/**
+	 * Get the length of the value.
+	 * 
+	 * @return the count of characters for a CLOB or the count of bytes
+	 */
+	public long length() throws SQLException {
+		readHead();
+		return chars ? byteLength / 2 : byteLength;
+	}
+
+	/**
+	 * Get the data of a chunk. The position of the buffer is the start of the
+	 * chunk.
+	 */
+	private ByteBuffer getChunk(int idx) throws Exception {
+		ByteBuffer buffer;
+		if (chunks == null) {
+			buffer = head.getDataBuffer(dataOffset, (int) byteLength);
+		} else {
+			int size = (int) Math.min(LOB_CHUNK_SIZE, byteLength - (long) idx * LOB_CHUNK_SIZE);
+			if (byteLength >= MAP_SIZE) {
+				buffer = getMappedChunk(chunks[idx], size);
+			} else {
+				StoreImpl store = table.getLobStore(con, chunks[idx], SQLTokenizer.SELECT);
+				if (store == null || !store.isValidPage()) {
+					throw SmallSQLException.create(Language.LOB_DELETED);
+				}
+				if (store.getCurrentOffsetInPage() + size > store.getUsedSize()) {
+					throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { Long.valueOf(chunks[idx]) });
+				}
+				buffer = store.getDataBuffer(store.getCurrentOffsetInPage(), size);
+			}
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	/**
+	 * Get the data of a chunk page from the memory mapped window. A new window
+	 * is mapped only if the page is not in the current window. The control
+	 * block of the page is verified because the page is not read with a
+	 * StoreImpl.
+	 * 
+	 * @param pagePos
+	 *            the file position of the chunk page
+	 * @param size
+	 *            the count of data bytes in the chunk
+	 */
+	private ByteBuffer getMappedChunk(long pagePos, int size) throws Exception {
+		// a chunk page is written with the small control block
+		int pageSize = StoreImpl.PAGE_CONTROL_SIZE + size;
+		if (window == null || pagePos < windowPos || pagePos + pageSize > windowPos + window.capacity()) {
+			FileChannel raFile = table.getLobs().raFile;
+			long length = Math.max(pageSize, Math.min(MAP_WINDOW_SIZE, raFile.size() - pagePos));
+			window = raFile.map(FileChannel.MapMode.READ_ONLY, pagePos, length);
+			windowPos = pagePos;
+		}
+		int offset = (int) (pagePos - windowPos);
+		if (!StoreImpl.isChunkPage(window, offset, size, pagePos)) {
+			throw SmallSQLException.create(Language.LOB_DELETED);
+		}
+		ByteBuffer buffer = window.duplicate();
+		buffer.limit(offset + pageSize);
+		buffer.position(offset + StoreImpl.PAGE_CONTROL_SIZE);
+		return buffer.slice();
+	}
+
+	/**
+	 * Get a stream of the bytes of the value. For a CLOB every character has 2
+	 * bytes.
+	 */
+	public InputStream getInputStream() throws SQLException {
+		readHead();
+		return new LobInputStream(0, byteLength);
+	}
+
+	/**
+	 * Get a stream of a part of the bytes.
+	 * 
+	 * @param pos
+	 *            the offset of the first byte, starting with 0
+	 * @param length
+	 *            the count of bytes
+	 */
+	public InputStream getInputStream(long pos, long length) throws SQLException {
+		readHead();
+		return new LobInputStream(pos, Math.min(byteLength, pos + length));
+	}
+
+	/**
+	 * Get a reader of the characters of a CLOB value.
+	 * 
+	 * @param pos
+	 *            the offset of the first character, starting with 0
+	 * @param length
+	 *            the count of characters
+	 */
+	public Reader getReader(long pos, long length) throws SQLException {
+		readHead();
+		return new LobReader(new LobInputStream(2 * pos, Math.min(byteLength, 2 * (pos + length))));
+	}
+
+	/**
+	 * Read a part of the bytes.
+	 * 
+	 * @param pos
+	 *            the offset of the first byte, starting with 0
+	 */
+	public byte[] getBytes(long pos, int length) throws SQLException {
+		readHead();
+		length = (int) Math.max(0, Math.min(length, byteLength - pos));
+		byte[] bytes = new byte[length];
+		InputStream input = new LobInputStream(pos, pos + length);
+		try {
+			for (int count = 0; count < length;) {
+				count += input.read(bytes, count, length - count);
+			}
+		} catch (IOException e) {
+			throw SmallSQLException.createFromException(e);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Read a part of the characters of a CLOB value.
+	 * 
+	 * @param pos
+	 *            the offset of the first character, starting with 0
+	 */
+	public String getString(long pos, int length) throws SQLException {
+		readHead();
+		length = (int) Math.max(0, Math.min(length, byteLength / 2 - pos));
+		char[] buffer = new char[length];
+		Reader reader = getReader(pos, length);
+		try {
+			for (int count = 0; count < length;) {
+				count += reader.read(buffer, count, length - count);
+			}
+		} catch (IOException e) {
+			throw SmallSQLException.createFromException(e);
+		}
+		return new String(buffer);
+	}
+
+	/**
+	 * Search a byte pattern in a binary value.
+	 * 
+	 * @param start
+	 *            the offset of the first byte of the search, starting with 0
+	 * @return the offset of the first occurrence, starting with 0, or -1 if
+	 *         the pattern was not found
+	 */
+	public long position(byte[] pattern, long start) throws SQLException {
+		int[] values = new int[pattern.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = pattern[i] & 0xFF;
+		}
+		return indexOf(values, start);
+	}
+
+	/**
+	 * Search a string in a CLOB value.
+	 * 
+	 * @param start
+	 *            the offset of the first character of the search, starting
+	 *            with 0
+	 * @return the offset of the first occurrence, starting with 0, or -1 if
+	 *         the string was not found
+	 */
+	public long position(String pattern, long start) throws SQLException {
+		int[] values = new int[pattern.length()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = pattern.charAt(i);
+		}
+		return indexOf(values, start);
+	}
+
+	/**
+	 * Search the bytes or characters of a pattern with one pass over the
+	 * chunks (Knuth-Morris-Pratt). The value is never loaded completely and a
+	 * chunk is never read twice.
+	 */
+	private long indexOf(int[] pattern, long start) throws SQLException {
+		readHead();
+		start = Math.max(0, start);
+		if (pattern.length == 0) {
+			return start <= length() ? start : -1;
+		}
+		// the length of the longest proper prefix that is also a suffix
+		int[] next = new int[pattern.length];
+		for (int i = 1, k = 0; i < pattern.length; i++) {
+			while (k > 0 && pattern[i] != pattern[k]) {
+				k = next[k - 1];
+			}
+			if (pattern[i] == pattern[k]) {
+				k++;
+			}
+			next[i] = k;
+		}
+		int unit = chars ? 2 : 1;
+		InputStream input = new LobInputStream(Math.min(byteLength, unit * start), byteLength);
+		byte[] buffer = new byte[8192];
+		long pos = start;
+		int matched = 0;
+		try {
+			int count;
+			while ((count = input.read(buffer, 0, buffer.length)) > 0) {
+				// the chunks and the buffer have an even size, a character is
+				// never split between two reads
+				for (int i = 0; i < count; i += unit) {
+					int value = chars ? (buffer[i] & 0xFF) | ((buffer[i + 1] & 0xFF) << 8) : buffer[i] & 0xFF;
+					while (matched > 0 && pattern[matched] != value) {
+						matched = next[matched - 1];
+					}
+					if (pattern[matched] == value) {
+						matched++;
+					}
+					pos++;
+					if (matched == pattern.length) {
+						return pos - pattern.length;
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw SmallSQLException.createFromException(e);
+		}
+		return -1;
+	}
+
+	/**
+	 * A stream over the bytes of the chunks. Only the chunk of the current
+	 * position is hold.
+	 */
+	private final class LobInputStream extends InputStream {
+
+		private long pos;
+		private final long end;
+		private ByteBuffer chunk;
+		private int chunkIdx = -1;
+
+		LobInputStream(long pos, long end) {
+			this.pos = pos;
+			this.end = end;
+		}
+
+		/**
+		 * Get the chunk of the current position with the position of the
+		 * buffer set.
+		 */
+		ByteBuffer buffer() throws IOException {
+			int idx = (chunks == null) ? 0 : (int) (pos / LOB_CHUNK_SIZE);
+			if (idx != chunkIdx) {
+				try {
+					chunk = getChunk(idx);
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e.getMessage(), e);
+				}
+				chunkIdx = idx;
+			}
+			chunk.position((int) (pos - (long) idx * LOB_CHUNK_SIZE));
+			return chunk;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (pos >= end) {
+				return -1;
+			}
+			int value = buffer().get() & 0xFF;
+			pos++;
+			return value;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (pos >= end) {
+				return -1;
+			}
+			ByteBuffer buffer = buffer();
+			int count = (int) Math.min(Math.min(len, buffer.remaining()), end - pos);
+			buffer.get(b, off, count);
+			pos += count;
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			n = Math.max(0, Math.min(n, end - pos));
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, end - pos);
+		}
+	}
+
+	/**
+	 * A reader of the characters of a CLOB value with 2 bytes per character.
+	 * The chunks have an even size that a character is never split.
+	 */
+	private static final class LobReader extends Reader {
+
+		private final LobInputStream input;
+
+		LobReader(LobInputStream input) {
+			this.input = input;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (input.pos >= input.end) {
+				return -1;
+			}
+			ByteBuffer buffer = input.buffer();
+			int count = (int) Math.min(Math.min(len, buffer.remaining() / 2), (input.end - input.pos) / 2);
+			for (int i = 0; i < count; i++) {
+				cbuf[off + i] = buffer.getChar();
+			}
+			input.pos += 2 * count;
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			return input.skip(2 * n) / 2;
+		}
+
+		@Override
+		public void close() {
+			// nothing to release, the chunks are not hold by a file handle
+		}
+	}
+}
@@ -0,0 +1,436 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * PageCache.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * A memory bounded cache of page images that is shared by all tables, lob
+ * files and index files of one database. A page is identified by its file
+ * handle and its offset in the file. The cached byte arrays are never modified;
+ * a new version of a page replaces the array.
+ * <p>
+ * The cache is split into segments with its own monitor that concurrent
+ * readers of different pages does not block. Every segment evict with the
+ * CLOCK (second chance) algorithm. Dirty pages are never evicted. A page that
+ * is used by a reader needs no pin because the cached arrays are never
+ * modified, the reader hold its own reference of the array.
+ *
+ * @see StorePage#commit()
+ * @see StoreImpl#createStore(io.leavesfly.smallsql.rdb.engine.Table, StorePage,
+ *      int, long)
+ */
+public final class PageCache {
+
+	/** The default size in bytes if nothing is set on the connection URL. */
+	public static final long DEFAULT_SIZE = 16L * 1024 * 1024;
+
+	/** Estimated memory of an entry without the page data. */
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private final Segment[] segments;
+
+	private final long maxSize;
+
+	/**
+	 * Create a new cache.
+	 *
+	 * @param maxSize
+	 *            the maximum memory in bytes that the cached pages can use. A
+	 *            value of 0 disable the cache.
+	 */
+	public PageCache(long maxSize) {
+		this.maxSize = Math.max(0, maxSize);
+		segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment(this.maxSize / SEGMENT_COUNT);
+		}
+	}
+
+	private static int hash(FileChannel file, long offset) {
+		int h = System.identityHashCode(file) * 31 + (int) (offset ^ (offset >>> 32));
+		h ^= (h >>> 16);
+		return h * 0x85EBCA6B;
+	}
+
+	private Segment segmentFor(int hash) {
+		return segments[(hash >>> 28) & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * Return the cached image of a page.
+	 *
+	 * @return the page data or null if the page is not cached.
+	 */
+	public byte[] get(FileChannel file, long offset) {
+		if (maxSize == 0) {
+			return null;
+		}
+		int hash = hash(file, offset);
+		return segmentFor(hash).get(file, offset, hash);
+	}
+
+	/**
+	 * Return a stamp that must be pass to {@link #putLoaded} after the page
+	 * was read from the file. With the stamp the cache detect if the page was
+	 * written between the read and the put.
+	 */
+	public long getLoadStamp(FileChannel file, long offset) {
+		return segmentFor(hash(file, offset)).getWriteCount();
+	}
+
+	/**
+	 * Add a page that was read from the file. The page is not added if any page
+	 * in the same segment was written since the stamp was requested or if the
+	 * page is already cached.
+	 */
+	public void putLoaded(FileChannel file, long offset, byte[] data, long stamp) {
+		if (maxSize == 0) {
+			return;
+		}
+		int hash = hash(file, offset);
+		segmentFor(hash).putLoaded(file, offset, hash, data, stamp);
+	}
+
+	/**
+	 * Set the new image of a page before it is written to the file. The page
+	 * is marked dirty and can not be evicted until {@link #written} is called.
+	 *
+	 * @param data
+	 *            the new page data, the array is copied
+	 * @param size
+	 *            the valid size of data
+	 */
+	public void write(FileChannel file, long offset, byte[] data, int size) {
+		if (maxSize == 0) {
+			return;
+		}
+		byte[] copy = new byte[size];
+		System.arraycopy(data, 0, copy, 0, size);
+		int hash = hash(file, offset);
+		segmentFor(hash).write(file, offset, hash, copy);
+	}
+
+	/**
+	 * Mark a page that was set with {@link #write} as clean after it was saved
+	 * in the file.
+	 */
+	public void written(FileChannel file, long offset) {
+		if (maxSize == 0) {
+			return;
+		}
+		int hash = hash(file, offset);
+		segmentFor(hash).written(file, offset, hash);
+	}
+
+	/**
+	 * Remove a single page from the cache, for example if writing of the page
+	 * has failed.
+	 */
+	public void discard(FileChannel file, long offset) {
+		int hash = hash(file, offset);
+		segmentFor(hash).discard(file, offset, hash);
+	}
+
+	/**
+	 * Remove all pages of a file from the cache. This must be call before the
+	 * file is closed.
+	 */
+	public void invalidate(FileChannel file) {
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i].invalidate(file);
+		}
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/** The count of requests that was answered from the cache. */
+	public long getHitCount() {
+		return sum(HITS);
+	}
+
+	/** The count of requests that need to read the file. */
+	public long getMissCount() {
+		return sum(MISSES);
+	}
+
+	/** The count of pages that was removed to make room for other pages. */
+	public long getEvictionCount() {
+		return sum(EVICTIONS);
+	}
+
+	/** The memory in bytes that is currently used from cached pages. */
+	public long getUsedSize() {
+		return sum(USED_SIZE);
+	}
+
+	private static final int HITS = 0;
+	private static final int MISSES = 1;
+	private static final int EVICTIONS = 2;
+	private static final int USED_SIZE = 3;
+
+	/**
+	 * Sum a counter of all segments. Every segment is read with its monitor,
+	 * the sum is not an atomic snapshot of all segments.
+	 */
+	private long sum(int counter) {
+		long sum = 0;
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			sum += segments[i].getCounter(counter);
+		}
+		return sum;
+	}
+
+	private static final class Entry {
+		final FileChannel file;
+		final long offset;
+		final int hash;
+		byte[] data;
+		boolean referenced;
+		boolean dirty;
+
+		/** the next entry in the same hash bucket */
+		Entry nextInBucket;
+		/** the ring of the clock */
+		Entry prev, next;
+
+		Entry(FileChannel file, long offset, int hash, byte[] data) {
+			this.file = file;
+			this.offset = offset;
+			this.hash = hash;
+			this.data = data;
+		}
+
+		final int memorySize() {
+			return data.length + ENTRY_OVERHEAD;
+		}
+	}
+
+	private static final class Segment {
+		private final long maxSize;
+		private Entry[] buckets = new Entry[64];
+		private int count;
+		/** the hand of the clock, null if the segment is empty */
+		private Entry hand;
+
+		private long usedSize;
+		private long writeCount;
+		private long hits;
+		private long misses;
+		private long evictions;
+
+		Segment(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		private Entry find(FileChannel file, long offset, int hash) {
+			Entry entry = buckets[hash & (buckets.length - 1)];
+			while (entry != null) {
+				if (entry.offset == offset && entry.file == file) {
+					return entry;
+				}
+				entry = entry.nextInBucket;
+			}
+			return null;
+		}
+
+		synchronized byte[] get(FileChannel file, long offset, int hash) {
+			Entry entry = find(file, offset, hash);
+			if (entry == null) {
+				misses++;
+				return null;
+			}
+			hits++;
+			entry.referenced = true;
+			return entry.data;
+		}
+
+		synchronized long getWriteCount() {
+			return writeCount;
+		}
+
+		synchronized void putLoaded(FileChannel file, long offset, int hash, byte[] data, long stamp) {
+			if (stamp != writeCount || find(file, offset, hash) != null) {
+				return;
+			}
+			add(new Entry(file, offset, hash, data));
+		}
+
+		synchronized void write(FileChannel file, long offset, int hash, byte[] data) {
+			writeCount++;
+			Entry entry = find(file, offset, hash);
+			if (entry == null) {
+				entry = new Entry(file, offset, hash, data);
+				entry.dirty = true;
+				add(entry);
+			} else {
+				usedSize += data.length - entry.data.length;
+				entry.data = data;
+				entry.dirty = true;
+				entry.referenced = true;
+			}
+		}
+
+		synchronized void written(FileChannel file, long offset, int hash) {
+			Entry entry = find(file, offset, hash);
+			if (entry != null) {
+				entry.dirty = false;
+				evict();
+			}
+		}
+
+		synchronized void discard(FileChannel file, long offset, int hash) {
+			writeCount++;
+			Entry entry = find(file, offset, hash);
+			if (entry != null) {
+				remove(entry);
+			}
+		}
+
+		synchronized long getCounter(int counter) {
+			switch (counter) {
+			case HITS:
+				return hits;
+			case MISSES:
+				return misses;
+			case EVICTIONS:
+				return evictions;
+			default:
+				return usedSize;
+			}
+		}
+
+		synchronized void invalidate(FileChannel file) {
+			writeCount++;
+			for (int i = 0; i < buckets.length; i++) {
+				Entry entry = buckets[i];
+				while (entry != null) {
+					Entry nextEntry = entry.nextInBucket;
+					if (entry.file == file) {
+						remove(entry);
+					}
+					entry = nextEntry;
+				}
+			}
+		}
+
+		private void add(Entry entry) {
+			if (entry.memorySize() > maxSize) {
+				return; // larger as the complete segment
+			}
+			if (count >= buckets.length * 3 / 4) {
+				rehash();
+			}
+			int idx = entry.hash & (buckets.length - 1);
+			entry.nextInBucket = buckets[idx];
+			buckets[idx] = entry;
+			if (hand == null) {
+				entry.prev = entry.next = entry;
+				hand = entry;
+			} else {
+				// insert before the hand, this is the last position of the clock
+				entry.next = hand;
+				entry.prev = hand.prev;
+				hand.prev.next = entry;
+				hand.prev = entry;
+			}
+			count++;
+			usedSize += entry.memorySize();
+			evict();
+		}
+
+		private void remove(Entry entry) {
+			int idx = entry.hash & (buckets.length - 1);
+			Entry bucket = buckets[idx];
+			if (bucket == entry) {
+				buckets[idx] = entry.nextInBucket;
+			} else {
+				while (bucket.nextInBucket != entry) {
+					bucket = bucket.nextInBucket;
+				}
+				bucket.nextInBucket = entry.nextInBucket;
+			}
+			if (entry.next == entry) {
+				hand = null;
+			} else {
+				entry.prev.next = entry.next;
+				entry.next.prev = entry.prev;
+				if (hand == entry) {
+					hand = entry.next;
+				}
+			}
+			entry.prev = entry.next = entry.nextInBucket = null;
+			count--;
+			usedSize -= entry.memorySize();
+		}
+
+		/**
+		 * Remove pages with the clock algorithm until the segment is in its
+		 * limit. If all pages are dirty then the limit can be exceeded
+		 * temporary.
+		 */
+		private void evict() {
+			int steps = count * 2;
+			while (usedSize > maxSize && hand != null && steps-- > 0) {
+				Entry entry = hand;
+				hand = entry.next;
+				if (entry.dirty) {
+					continue;
+				}
+				if (entry.referenced) {
+					entry.referenced = false;
+					continue;
+				}
+				remove(entry);
+				evictions++;
+			}
+		}
+
+		private void rehash() {
+			Entry[] oldBuckets = buckets;
+			buckets = new Entry[oldBuckets.length * 2];
+			for (int i = 0; i < oldBuckets.length; i++) {
+				Entry entry = oldBuckets[i];
+				while (entry != null) {
+					Entry nextEntry = entry.nextInBucket;
+					int idx = entry.hash & (buckets.length - 1);
+					entry.nextInBucket = buckets[idx];
+					buckets[idx] = entry;
+					entry = nextEntry;
+				}
+			}
+		}
+	}
+}
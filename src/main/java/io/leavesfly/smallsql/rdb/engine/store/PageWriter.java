@@ -0,0 +1,331 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * PageWriter.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Collect the pages of a commit and write it grouped by file. The pages of a
+ * file are sorted by its offset. Every run of contiguous pages is written with
+ * a single gathering write. The space of all new pages of a file is reserved
+ * with one request of the file size, so that all appends of a commit are one
+ * contiguous run at the end of the file. A new page that fits in a free page
+ * of the file is written there instead.
+ * <p>
+ * The position of a new page is unknown until {@link #flush()} was called.
+ * Links to new pages are updated after the flush.
+ * <p>
+ * With a {@link WriteAheadLog} all files of the commit are locked, the final
+ * positions of the pages are logged and then the pages are written. So the
+ * log contains the complete commit before any file is changed.
+ * <p>
+ * With a {@link VersionStore.Commit} the old versions of the pages are saved
+ * after the allocation, while the lock of the file is hold.
+ * 
+ * @see io.leavesfly.smallsql.jdbc.SsConnection#commit()
+ */
+public final class PageWriter {
+
+	private static final Comparator<StorePage> OFFSET_ORDER = new Comparator<StorePage>() {
+		public int compare(StorePage page1, StorePage page2) {
+			return page1.fileOffset < page2.fileOffset ? -1 : (page1.fileOffset == page2.fileOffset ? 0 : 1);
+		}
+	};
+
+	/** The order in which the files of a commit are locked. */
+	private static final Comparator<FileChannel> LOCK_ORDER = new Comparator<FileChannel>() {
+		public int compare(FileChannel file1, FileChannel file2) {
+			int hash1 = System.identityHashCode(file1);
+			int hash2 = System.identityHashCode(file2);
+			return hash1 < hash2 ? -1 : (hash1 == hash2 ? 0 : 1);
+		}
+	};
+
+	/** Lock for commits with files that has the same identity hash code. */
+	private static final Object TIE_LOCK = new Object();
+
+	/** The maximum size of one gathering write, spilled pages are loaded for it. */
+	private static final int MAX_RUN_SIZE = 1024 * 1024;
+
+	private final IdentityHashMap<FileChannel, List<StorePage>> files = new IdentityHashMap<FileChannel, List<StorePage>>();
+	private final List<StorePageLink> links = new ArrayList<StorePageLink>();
+	private final List<StorePage> linkPages = new ArrayList<StorePage>();
+	/** The commit that save the old versions of the pages or null. */
+	private final VersionStore.Commit versions;
+
+	public PageWriter() {
+		this(null);
+	}
+
+	/**
+	 * Create a writer that save the committed data of every overwritten row
+	 * page and the range of the appended pages before the pages are written.
+	 * 
+	 * @param versions
+	 *            the commit in the VersionStore or null
+	 */
+	public PageWriter(VersionStore.Commit versions) {
+		this.versions = versions;
+	}
+
+	/**
+	 * Add a page that should be written on flush. A page that is already added
+	 * is ignored. The order of the pages with the same offset is kept, the
+	 * last added version is written last.
+	 */
+	void add(StorePage page) {
+		if (page.writer == this) {
+			return;
+		}
+		page.writer = this;
+		List<StorePage> pages = files.get(page.raFile);
+		if (pages == null) {
+			pages = new ArrayList<StorePage>();
+			files.put(page.raFile, pages);
+		}
+		pages.add(page);
+	}
+
+	/**
+	 * Set the file position of the link to the position of the page after the
+	 * flush.
+	 */
+	void addLink(StorePageLink link, StorePage page) {
+		links.add(link);
+		linkPages.add(page);
+	}
+
+	/**
+	 * Write all added pages and update the links.
+	 * 
+	 * @return the written files
+	 */
+	public List<FileChannel> flush() throws IOException {
+		List<FileChannel> written = new ArrayList<FileChannel>(files.keySet());
+		Iterator<List<StorePage>> iterator = files.values().iterator();
+		while (iterator.hasNext()) {
+			List<StorePage> pages = iterator.next();
+			FileChannel raFile = pages.get(0).raFile;
+			synchronized (raFile) {
+				allocate(raFile, pages);
+				write(raFile, pages);
+			}
+		}
+		files.clear();
+		updateLinks();
+		return written;
+	}
+
+	/**
+	 * Log all added pages as one record, write the pages and update the links.
+	 * The files of the pages are not synchronized, this is done later from
+	 * the checkpointer of the log.
+	 * 
+	 * @param log
+	 *            the log of the database
+	 * @param force
+	 *            if the log record should be synchronized before the pages
+	 *            are written
+	 * @return the files that must be synchronized to make the commit durable,
+	 *         this is the log if it was not forced and files that are not
+	 *         logged
+	 */
+	public List<FileChannel> flush(WriteAheadLog log, boolean force) throws IOException {
+		List<FileChannel> order = new ArrayList<FileChannel>(files.keySet());
+		Collections.sort(order, LOCK_ORDER);
+		boolean isTie = false;
+		for (int i = 1; i < order.size(); i++) {
+			isTie |= LOCK_ORDER.compare(order.get(i - 1), order.get(i)) == 0;
+		}
+		boolean logged;
+		if (isTie) {
+			synchronized (TIE_LOCK) {
+				logged = write(order, 0, log, force);
+			}
+		} else {
+			logged = write(order, 0, log, force);
+		}
+		files.clear();
+		updateLinks();
+		List<FileChannel> sync = new ArrayList<FileChannel>();
+		for (int i = 0; i < order.size(); i++) {
+			FileChannel file = order.get(i);
+			if (WriteAheadLog.getLog(file) != log) {
+				sync.add(file);
+			}
+		}
+		if (logged && !force) {
+			sync.addAll(log.getChannels());
+		}
+		return sync;
+	}
+
+	/**
+	 * Lock the files recursive in the given order and then log and write the
+	 * pages of all files.
+	 * 
+	 * @return true if a log record was appended
+	 */
+	private boolean write(List<FileChannel> order, int idx, WriteAheadLog log, boolean force) throws IOException {
+		if (idx < order.size()) {
+			synchronized (order.get(idx)) {
+				return write(order, idx + 1, log, force);
+			}
+		}
+		List<StorePage> all = new ArrayList<StorePage>();
+		for (int i = 0; i < order.size(); i++) {
+			List<StorePage> pages = files.get(order.get(i));
+			allocate(order.get(i), pages);
+			all.addAll(pages);
+		}
+		boolean logged = log.append(all, force);
+		try {
+			for (int i = 0; i < order.size(); i++) {
+				write(order.get(i), files.get(order.get(i)));
+			}
+		} finally {
+			if (logged) {
+				log.written(order);
+			}
+		}
+		return logged;
+	}
+
+	private void updateLinks() {
+		for (int i = 0; i < links.size(); i++) {
+			StorePageLink link = links.get(i);
+			link.filePos = linkPages.get(i).fileOffset;
+			link.page = null;
+		}
+		links.clear();
+		linkPages.clear();
+	}
+
+	/**
+	 * Reserve the space of all new pages of a file at once, a new page can
+	 * also reuse a free page of the file. The caller hold the lock of the
+	 * file.
+	 */
+	private void allocate(FileChannel raFile, List<StorePage> pages) throws IOException {
+		long fileSize = raFile.size();
+		long endOffset = fileSize;
+		for (int i = 0; i < pages.size(); i++) {
+			StorePage page = pages.get(i);
+			if (page.fileOffset < 0 && page.allocate(endOffset)) {
+				endOffset += page.pageSize;
+			}
+		}
+		if (versions != null) {
+			versions.add(raFile, pages, fileSize);
+		}
+	}
+
+	/**
+	 * Write the pages of one file. The caller hold the lock of the file.
+	 */
+	private static void write(FileChannel raFile, List<StorePage> pages) throws IOException {
+		// the sort is stable, a page that was added twice is written in
+		// the order of adding
+		Collections.sort(pages, OFFSET_ORDER);
+		try {
+			int start = 0;
+			while (start < pages.size()) {
+				start = writeRun(raFile, pages, start);
+			}
+		} finally {
+			StorePage.incrementWriteCount(raFile);
+			for (int i = 0; i < pages.size(); i++) {
+				pages.get(i).writer = null;
+			}
+		}
+		// the pages are sorted, the last page is at the end
+		StorePage last = pages.get(pages.size() - 1);
+		FileState.get(raFile).written(last.fileOffset + last.pageSize);
+	}
+
+	/**
+	 * Write the pages that follow contiguous in the file with one gathering
+	 * write. The pages are written through the page cache.
+	 * 
+	 * @param start
+	 *            the index of the first page of the run
+	 * @return the index of the first page after the run
+	 */
+	private static int writeRun(FileChannel raFile, List<StorePage> pages, int start) throws IOException {
+		StorePage first = pages.get(start);
+		long endOffset = first.fileOffset + first.pageSize;
+		int end = start + 1;
+		while (end < pages.size() && pages.get(end).fileOffset == endOffset
+				&& endOffset - first.fileOffset < MAX_RUN_SIZE) {
+			endOffset += pages.get(end++).pageSize;
+		}
+		ByteBuffer[] buffers = new ByteBuffer[end - start];
+		for (int i = 0; i < buffers.length; i++) {
+			StorePage page = pages.get(start + i);
+			byte[] data = page.getPage();
+			if (page.cache != null) {
+				// write through, readers of this page see the new data
+				page.cache.write(raFile, page.fileOffset, data, page.pageSize);
+			}
+			buffers[i] = ByteBuffer.wrap(data, 0, page.pageSize);
+		}
+		try {
+			raFile.position(first.fileOffset);
+			long remaining = endOffset - first.fileOffset;
+			while (remaining > 0) {
+				remaining -= raFile.write(buffers);
+			}
+		} catch (IOException e) {
+			for (int i = start; i < end; i++) {
+				StorePage page = pages.get(i);
+				if (page.cache != null) {
+					page.cache.discard(raFile, page.fileOffset);
+				}
+			}
+			throw e;
+		}
+		for (int i = start; i < end; i++) {
+			StorePage page = pages.get(i);
+			if (page.cache != null) {
+				page.cache.written(raFile, page.fileOffset);
+			}
+		}
+		return end;
+	}
+}
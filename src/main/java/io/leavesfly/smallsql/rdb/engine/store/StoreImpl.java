@@ -33,11 +33,13 @@
 package io.leavesfly.smallsql.rdb.engine.store;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.sql.SQLException;
 
 import io.leavesfly.smallsql.rdb.engine.table.Column;
+import io.leavesfly.smallsql.rdb.engine.table.Columns;
 import io.leavesfly.smallsql.rdb.sql.expression.Expression;
 import io.leavesfly.smallsql.rdb.sql.SQLParser;
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
@@ -52,21 +54,53 @@ import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.expression.ExpressionValue;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.util.Utils;
+import io.leavesfly.smallsql.util.datastruct.LongList;
+import io.leavesfly.smallsql.util.datastruct.LongObjectMap;
 
 public class StoreImpl extends Store {
 
 	private static final int DEFAULT_PAGE_SIZE = 1024 * 8; // 8 Kb
-	private static final int PAGE_MAGIC = 0x12DD13DE; // are used for repairing
-														// a table
+	private static final int OLD_PAGE_MAGIC = 0x12DD13DE; // are used for
+															// repairing a table
+	private static final int PAGE_MAGIC = 0x5C; // first byte of a page with the
+												// small control block
 	/**
-	 * The structure of the Page Control Block is: 4 byte - page magic 4 Byte -
-	 * Status 0:normal; 1:deleted; 2:Pointer to an update; 3: updated page 4
-	 * Byte - used size of the page 4 byte - physical size of the page 4 byte -
-	 * offset to the next page 8 byte - position of an updated page
+	 * The structure of the Page Control Block of the table format version 2
+	 * is: 4 byte - page magic 4 Byte - Status 0:normal; 1:deleted; 2:Pointer
+	 * to an update; 3: updated page 4 Byte - used size of the page 4 byte -
+	 * physical size of the page 4 byte - offset to the next page 8 byte -
+	 * position of an updated page
+	 * <p>
+	 * Pages of this format are only read. Every written page use the small
+	 * control block.
 	 */
-	private static final int PAGE_CONTROL_SIZE = 28;
-	private static final byte[] page_control = new byte[PAGE_CONTROL_SIZE];
-	private static final ByteBuffer pageControlBuffer = ByteBuffer.wrap(page_control);
+	private static final int OLD_PAGE_CONTROL_SIZE = 28;
+	/**
+	 * The structure of the small Page Control Block since table format version
+	 * 3 is: 1 byte - page magic 1 byte - Status 4 byte - used size of the page
+	 * 4 byte - physical size of the page. Only an UPDATE_POINTER has 8
+	 * additional bytes with the position of the updated page.
+	 */
+	public static final int PAGE_CONTROL_SIZE = 10;
+	/**
+	 * The minimum physical size of a page. Every page must be large enough
+	 * that it can be changed to an UPDATE_POINTER.
+	 */
+	private static final int MIN_PAGE_SIZE = PAGE_CONTROL_SIZE + 8;
+	private static final int READ_BUFFER_SIZE = 1024 * 16; // 16 Kb
+	/**
+	 * Read block of the current thread. The pages are read with a single
+	 * positional read of a large block into this buffer. The following pages
+	 * of a scan are taken from the block without I/O. No lock is needed
+	 * because every thread has its own buffer and a positional read does not
+	 * change the position of the FileChannel.
+	 */
+	private static final ThreadLocal<ReadBlock> readBlock = new ThreadLocal<ReadBlock>() {
+		@Override
+		protected ReadBlock initialValue() {
+			return new ReadBlock();
+		}
+	};
 	private int status; // valid value are follow:
 	private static final int NORMAL = 0;
 	private static final int DELETED = 1;
@@ -80,7 +114,16 @@ public class StoreImpl extends Store {
 	private static final int UPDATE_POINTER = 2;
 	private static final int UPDATED_PAGE = 3;
 
+	/**
+	 * The flag in the length header of a compact string for a string that is
+	 * not Latin-1. After the header follow the byte count as int and the
+	 * UTF-8 bytes.
+	 */
+	private static final int COMPACT_UTF8 = 0x8000;
+
 	final private Table table;
+	/** If the CHAR and VARCHAR values of rows are saved in the compact format */
+	final private boolean compactStrings;
 	/** Data of one page */
 	private byte[] page;
 	/**
@@ -95,11 +138,16 @@ public class StoreImpl extends Store {
 	private int nextPageOffset;
 	private long filePosUpdated;
 	private int type;
+	private int controlSize = PAGE_CONTROL_SIZE; // the size of the control
+													// block of the read page
 
 	private StoreImpl updatePointer;
+	/** The snapshot of a read without lock or null. */
+	private VersionStore.Snapshot snapshot;
 
 	private StoreImpl(Table table, StorePage storePage, int type, long filePos) {
 		this.table = table;
+		this.compactStrings = table != null && table.isCompactStrings();
 		this.storePage = storePage;
 		this.filePos = filePos;
 		this.type = type;
@@ -128,56 +176,253 @@ public class StoreImpl extends Store {
 			case SQLTokenizer.SELECT:
 			case SQLTokenizer.UPDATE:
 			case SQLTokenizer.DELETE:
-				if (storePage.page == null) {
-					FileChannel raFile = storePage.raFile;
-					synchronized (raFile) {
-						if (filePos >= raFile.size() - PAGE_CONTROL_SIZE) {
-							return null;
-						}
-						raFile.position(filePos);
-						synchronized (page_control) {
-							pageControlBuffer.position(0);
-							raFile.read(pageControlBuffer);
-							store.page = page_control;
-							store.readPageHeader();
-						}
-						store.page = new byte[store.sizeUsed];
-						raFile.position(filePos);
-						ByteBuffer buffer = ByteBuffer.wrap(store.page);
-						raFile.read(buffer);
-					}
-				} else {
-					store.page = storePage.page;
-					store.sharedPageData = true;
-					store.readPageHeader();
+				if (!store.loadPage()) {
+					return null;
 				}
 				store = store.loadUpdatedStore();
 				break;
 			default:
 				throw new Error();
 			}
-			store.offset = PAGE_CONTROL_SIZE;
+			store.offset = store.controlSize;
+			return store;
+		} catch (Throwable th) {
+			throw SmallSQLException.createFromException(th);
+		}
+	}
+
+	/**
+	 * Create a StoreImpl of a row for a snapshot read. The page is read like
+	 * for SELECT but without a lock. If a commit that the snapshot does not see
+	 * has changed the page then the old data of the page is used. The not
+	 * committed data of an own lock are used without a check.
+	 * 
+	 * @return the store or null if there is no page at filePos (end of file)
+	 */
+	public static StoreImpl createSnapshotStore(Table table, TableStorePage storePage, long filePos,
+			VersionStore.Snapshot snapshot) throws SQLException {
+		try {
+			StoreImpl store = new StoreImpl(table, storePage, SQLTokenizer.SELECT, filePos);
+			store.snapshot = snapshot;
+			if (!store.loadSnapshotPage()) {
+				return null;
+			}
+			store = store.loadUpdatedStore();
+			store.offset = store.controlSize;
 			return store;
 		} catch (Throwable th) {
 			throw SmallSQLException.createFromException(th);
 		}
 	}
 
+	/**
+	 * Load the page data of the current StorePage. The not committed data of
+	 * the StorePage are used if there are any, else the page is read from the
+	 * cache or the file.
+	 * 
+	 * @return false if there is no page at filePos (end of file)
+	 */
+	private boolean loadPage() throws Exception {
+		byte[] uncommitted = storePage.getPage();
+		if (uncommitted == null) {
+			FileChannel raFile = storePage.raFile;
+			PageCache cache = storePage.cache;
+			byte[] cached = (cache != null) ? cache.get(raFile, filePos) : null;
+			if (cached != null) {
+				page = cached;
+				sharedPageData = true;
+				readPageHeader();
+			} else {
+				long stamp = (cache != null) ? cache.getLoadStamp(raFile, filePos) : 0;
+				if (!readPage(raFile)) {
+					return false;
+				}
+				if (cache != null) {
+					cache.putLoaded(raFile, filePos, page, stamp);
+					sharedPageData = true;
+				}
+			}
+		} else {
+			page = uncommitted;
+			sharedPageData = true;
+			readPageHeader();
+		}
+		return true;
+	}
+
+	/**
+	 * Load the page data that the snapshot see. The current data are read
+	 * first and then the versions are searched. A commit save its versions
+	 * before it write the pages, so new data are never used without its
+	 * version.
+	 * 
+	 * @return false if there is no page at filePos (end of file)
+	 */
+	private boolean loadSnapshotPage() throws Exception {
+		if (storePage.hasPage()) {
+			// the not committed data of the own transaction
+			return loadPage();
+		}
+		VersionStore versions = snapshot.getVersionStore();
+		while (true) {
+			long stamp = snapshot.getStamp();
+			boolean exists;
+			Exception error = null;
+			try {
+				exists = loadPage();
+			} catch (Exception e) {
+				// a page that is written at the moment can be invalid
+				exists = false;
+				error = e;
+			}
+			VersionStore.Version version = versions.find(storePage.raFile, filePos, stamp);
+			if (version == null) {
+				if (snapshot.isLatest() && stamp != snapshot.getStamp()) {
+					// a commit was ended, its versions can be removed already
+					continue;
+				}
+				if (error != null) {
+					throw error;
+				}
+				return exists;
+			}
+			if (version.isAppended()) {
+				// the page was appended from a commit that the snapshot does
+				// not see, the scan continue after the range of the commit
+				status = DELETED;
+				updatePointer = null;
+				nextPageOffset = (int) Math.min(version.end - filePos, Integer.MAX_VALUE);
+				return true;
+			}
+			byte[] data = versions.getData(version);
+			if (data == null) {
+				// the spilled version was removed while the read, the commit
+				// of it is ended and visible now
+				continue;
+			}
+			page = data;
+			sharedPageData = true;
+			offset = 0;
+			readPageHeader();
+			return true;
+		}
+	}
+
+	/**
+	 * Read the data of a page from the file for a version.
+	 * 
+	 * @return the data or null if there is no page at filePos
+	 */
+	static byte[] readPageData(FileChannel raFile, long filePos) throws IOException {
+		StoreImpl store = new StoreImpl(null, null, SQLTokenizer.SELECT, filePos);
+		try {
+			return store.readPage(raFile) ? store.page : null;
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
 	/**
 	 * Recreate a StoreImpl from an uncommitted StorePage.
 	 */
 	public static StoreImpl recreateStore(Table table, StorePage storePage, int type) throws Exception {
 		StoreImpl store = new StoreImpl(table, storePage, type, -1);
-		store.page = storePage.page;
+		store.page = storePage.getPage();
 		store.sharedPageData = true;
 		store.readPageHeader();
 		store = store.loadUpdatedStore();
-		store.offset = PAGE_CONTROL_SIZE;
+		store.offset = store.controlSize;
 		return store;
 	}
 
+	/**
+	 * Read the page at filePos from the file. If the page is not in the read
+	 * block of the current thread then the block is read from filePos with one
+	 * positional read. Only if the page is larger as the block a second read
+	 * for the rest of the page is needed.
+	 * 
+	 * @return false if there is no page at filePos (end of file)
+	 */
+	private boolean readPage(FileChannel raFile) throws Exception {
+		ReadBlock block = readBlock.get();
+		int start = block.find(raFile, filePos);
+		if (start < 0) {
+			block.read(raFile, filePos);
+			start = 0;
+		}
+		int count = block.length - start;
+		if (count < PAGE_CONTROL_SIZE) {
+			return false;
+		}
+		page = block.buffer.array();
+		offset = start;
+		if (page[start] != PAGE_MAGIC && count <= OLD_PAGE_CONTROL_SIZE) {
+			return false;
+		}
+		readPageHeader();
+		page = new byte[sizeUsed];
+		if (sizeUsed <= count) {
+			System.arraycopy(block.buffer.array(), start, page, 0, sizeUsed);
+		} else {
+			System.arraycopy(block.buffer.array(), start, page, 0, count);
+			ByteBuffer rest = ByteBuffer.wrap(page, count, sizeUsed - count);
+			if (!readFully(raFile, rest, filePos)) {
+				// the page can be appended at the moment, the lock of the file
+				// wait until the running write is finished
+				synchronized (raFile) {
+					if (!readFully(raFile, rest, filePos)) {
+						throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { Long.valueOf(filePos) });
+					}
+				}
+			}
+		}
+		offset = 0;
+		return true;
+	}
+
+	/**
+	 * Read the remaining bytes of the buffer, the position of the buffer is
+	 * relative to filePos.
+	 * 
+	 * @return false if the end of the file was reached before
+	 */
+	private static boolean readFully(FileChannel raFile, ByteBuffer buffer, long filePos) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (raFile.read(buffer, filePos + buffer.position()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the end of the pages of a file that was completely written. A scan
+	 * that read only up to this position does not see pages that are appended
+	 * at the moment.
+	 */
+	public static long getWrittenSize(FileChannel raFile) throws IOException {
+		return FileState.get(raFile).getSize();
+	}
+
+	/**
+	 * Read the control block of the page at the current offset. The format is
+	 * detected from the first byte, a table file can include pages of both
+	 * formats.
+	 */
 	private final void readPageHeader() throws SQLException {
-		if (readInt() != PAGE_MAGIC) {
+		if (page[offset] == PAGE_MAGIC) {
+			offset++;
+			status = readByte();
+			sizeUsed = readInt();
+			sizePhysical = readInt();
+			nextPageOffset = 0;
+			filePosUpdated = (status == UPDATE_POINTER) ? readLong() : 0;
+			controlSize = PAGE_CONTROL_SIZE;
+			return;
+		}
+		if (readInt() != OLD_PAGE_MAGIC) {
 			throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { new Long(filePos) });
 		}
 		status = readInt();
@@ -185,6 +430,141 @@ public class StoreImpl extends Store {
 		sizePhysical = readInt();
 		nextPageOffset = readInt();
 		filePosUpdated = readLong();
+		controlSize = OLD_PAGE_CONTROL_SIZE;
+	}
+
+	/**
+	 * Read the control blocks of all pages from filePos to the end of the file
+	 * and count the dead pages. A page is dead if it is deleted or if it is an
+	 * UPDATED_PAGE without an UPDATE_POINTER, for example the old version of a
+	 * relocated row or the new version of a rollback.
+	 * 
+	 * @return the count of pages, the count of dead pages and the size of the
+	 *         dead pages in bytes
+	 */
+	public static long[] countPages(FileChannel raFile, long filePos) throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(OLD_PAGE_CONTROL_SIZE);
+		LongObjectMap<Integer> updatedPages = new LongObjectMap<Integer>();
+		LongList pointers = new LongList();
+		long pageCount = 0;
+		long deadCount = 0;
+		long deadSize = 0;
+		while (true) {
+			buffer.clear();
+			while (buffer.hasRemaining()) {
+				if (raFile.read(buffer, filePos + buffer.position()) < 0) {
+					break;
+				}
+			}
+			int count = buffer.position();
+			int status;
+			int sizePhysical;
+			long filePosUpdated = 0;
+			if (count >= PAGE_CONTROL_SIZE && buffer.get(0) == PAGE_MAGIC) {
+				status = buffer.get(1);
+				sizePhysical = buffer.getInt(6);
+				if (status == UPDATE_POINTER) {
+					filePosUpdated = buffer.getLong(PAGE_CONTROL_SIZE);
+				}
+			} else if (count == OLD_PAGE_CONTROL_SIZE) {
+				if (buffer.getInt(0) != OLD_PAGE_MAGIC) {
+					throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { Long.valueOf(filePos) });
+				}
+				status = buffer.getInt(4);
+				sizePhysical = buffer.getInt(12);
+				int nextPageOffset = buffer.getInt(16);
+				if (nextPageOffset > 0) {
+					sizePhysical = nextPageOffset;
+				}
+				filePosUpdated = buffer.getLong(20);
+			} else {
+				break; // end of file
+			}
+			pageCount++;
+			switch (status) {
+			case DELETED:
+				deadCount++;
+				deadSize += sizePhysical;
+				break;
+			case UPDATE_POINTER:
+				pointers.add(filePosUpdated);
+				break;
+			case UPDATED_PAGE:
+				updatedPages.put(filePos, Integer.valueOf(sizePhysical));
+				break;
+			}
+			filePos += sizePhysical;
+		}
+		for (int i = 0; i < pointers.size(); i++) {
+			updatedPages.remove(pointers.get(i));
+		}
+		for (int i = 0; i < updatedPages.capacity(); i++) {
+			Integer size = updatedPages.valueAt(i);
+			if (size != null) {
+				deadCount++;
+				deadSize += size.intValue();
+			}
+		}
+		return new long[] { pageCount, deadCount, deadSize };
+	}
+
+	/**
+	 * Split the pages from filePos to endPos into ranges of nearly the same
+	 * size. Only the control blocks of the pages are read, in blocks of
+	 * READ_BUFFER_SIZE. Every range starts on the start of a page.
+	 *
+	 * @param count
+	 *            the count of ranges
+	 * @return count + 1 file positions, range i is from value i to value i+1;
+	 *         empty ranges are possible
+	 */
+	public static long[] splitPages(FileChannel raFile, long filePos, long endPos, int count) throws Exception {
+		long[] bounds = new long[count + 1];
+		bounds[0] = filePos;
+		long partSize = (endPos - filePos) / count;
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		long bufferPos = filePos;
+		buffer.limit(0);
+		int part = 1;
+		while (part < count && filePos < endPos) {
+			int offset = (int) (filePos - bufferPos);
+			if (offset + OLD_PAGE_CONTROL_SIZE > buffer.limit()) {
+				// read the next block that starts with the control block of this page
+				buffer.clear();
+				bufferPos = filePos;
+				offset = 0;
+				while (buffer.hasRemaining() && raFile.read(buffer, bufferPos + buffer.position()) > 0) {
+					// read until full or end of file
+				}
+				buffer.flip();
+			}
+			int sizePhysical;
+			if (buffer.limit() - offset >= PAGE_CONTROL_SIZE && buffer.get(offset) == PAGE_MAGIC) {
+				sizePhysical = buffer.getInt(offset + 6);
+			} else if (buffer.limit() - offset >= OLD_PAGE_CONTROL_SIZE) {
+				if (buffer.getInt(offset) != OLD_PAGE_MAGIC) {
+					throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { Long.valueOf(filePos) });
+				}
+				sizePhysical = buffer.getInt(offset + 12);
+				int nextPageOffset = buffer.getInt(offset + 16);
+				if (nextPageOffset > 0) {
+					sizePhysical = nextPageOffset;
+				}
+			} else {
+				break; // end of file
+			}
+			if (sizePhysical <= 0) {
+				throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { Long.valueOf(filePos) });
+			}
+			filePos += sizePhysical;
+			while (part < count && filePos >= bounds[0] + part * partSize) {
+				bounds[part++] = Math.min(filePos, endPos);
+			}
+		}
+		while (part <= count) {
+			bounds[part++] = endPos;
+		}
+		return bounds;
 	}
 
 	/**
@@ -197,7 +577,9 @@ public class StoreImpl extends Store {
 	final private StoreImpl loadUpdatedStore() throws Exception {
 		if (status != UPDATE_POINTER)
 			return this;
-		StoreImpl storeTemp = table.getStore(((TableStorePage) storePage).con, filePosUpdated, type);
+		SsConnection con = ((TableStorePage) storePage).con;
+		StoreImpl storeTemp = snapshot != null ? table.getStore(con, filePosUpdated, snapshot) : table.getStore(con,
+				filePosUpdated, type);
 		storeTemp.updatePointer = this;
 		return storeTemp;
 	}
@@ -242,13 +624,16 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.LONGVARBINARY:
 		case SQLTokenizer.INSERT:
 		case SQLTokenizer.CREATE:
-			sizeUsed = sizePhysical = offset;
+			sizeUsed = offset;
+			sizePhysical = Math.max(offset, MIN_PAGE_SIZE);
 			break;
 		case SQLTokenizer.UPDATE:
 			if (status != UPDATE_POINTER) {
 				sizeUsed = offset;
 				break;
 			}
+			sizeUsed = MIN_PAGE_SIZE; // only the position of the updated page
+			break;
 		case SQLTokenizer.DELETE:
 			sizeUsed = PAGE_CONTROL_SIZE;
 			break;
@@ -256,14 +641,26 @@ public class StoreImpl extends Store {
 		default:
 			throw new Error("" + type);
 		}
+		// a page that is not in the file yet is appended with its physical
+		// size, else the next page can not be found if the row was shrunk
+		int writeSize = storePage.fileOffset < 0 ? Math.max(sizeUsed, sizePhysical) : sizeUsed;
+		if (sharedPageData || page.length < writeSize) {
+			// the page data can be shared with the PageCache or an uncommitted
+			// StorePage, we need our own copy for writing
+			byte[] newPage = new byte[Math.max(page.length, writeSize)];
+			System.arraycopy(page, 0, newPage, 0, page.length);
+			page = newPage;
+			sharedPageData = false;
+		}
 		offset = 0;
-		writeInt(PAGE_MAGIC); // for repair
-		writeInt(status);
+		writeByte(PAGE_MAGIC); // for repair
+		writeByte(status);
 		writeInt(sizeUsed);
 		writeInt(sizePhysical);
-		writeInt(0); // nextPageOffset
-		writeLong(filePosUpdated); // Pointer of an updated page
-		storePage.setPageData(page, sizeUsed); // TODO page sollte eigentlich
+		if (status == UPDATE_POINTER) {
+			writeLong(filePosUpdated); // Pointer of an updated page
+		}
+		storePage.setPageData(page, writeSize); // TODO page sollte eigentlich
 												// beim einlesen gesetzt sein
 		if (con == null) {
 			// the pointer is needed to safe in another page
@@ -274,6 +671,52 @@ public class StoreImpl extends Store {
 		}
 	}
 
+	/**
+	 * Create a StoreImpl for a batch of new rows. The page buffer is reused for
+	 * all rows of the batch, every row is started with
+	 * {@link #startBatchRow()} and finished with {@link #finishBatchRow()}.
+	 */
+	public static StoreImpl createBatchStore(TableStorePageBatch batch) {
+		StoreImpl store = new StoreImpl(batch.table, batch, SQLTokenizer.INSERT, -1);
+		store.page = new byte[DEFAULT_PAGE_SIZE];
+		return store;
+	}
+
+	/**
+	 * Start a new row in the page buffer of a batch store.
+	 */
+	public void startBatchRow() {
+		offset = controlSize;
+	}
+
+	/**
+	 * Finish the current row of a batch store. The row is copied from the page
+	 * buffer into a new page of its exact size and added to the batch. The
+	 * values of the row can be read from this store until the next row is
+	 * started, this is needed for the keys of the indexes.
+	 *
+	 * @return the page of the new row
+	 */
+	public TableStorePageInsert finishBatchRow() {
+		sizeUsed = offset;
+		sizePhysical = Math.max(offset, MIN_PAGE_SIZE);
+		if (page.length < sizePhysical) {
+			resizePage(sizePhysical);
+		}
+		offset = 0;
+		writeByte(PAGE_MAGIC);
+		writeByte(status);
+		writeInt(sizeUsed);
+		writeInt(sizePhysical);
+		byte[] data = new byte[sizePhysical];
+		System.arraycopy(page, 0, data, 0, sizeUsed);
+		TableStorePageInsert row = new TableStorePageInsert(((TableStorePage) storePage).con, table,
+				View.LOCK_INSERT);
+		row.setPageData(data, sizePhysical);
+		storePage = row;
+		return row;
+	}
+
 	/**
 	 * Request a write lock for the current read page. It add the resulting
 	 * StorePage to the list of commits.
@@ -300,6 +743,7 @@ public class StoreImpl extends Store {
 		if (newData.offset <= sizePhysical || filePos == -1) {
 			// the old page can be overwrite because it it large enough
 			page = newData.page; // newData is only a temp StoreImpl
+			sharedPageData = false;
 			offset = newData.offset;
 			if (sizePhysical < offset)
 				sizePhysical = offset; // occur only on updates of not committed
@@ -322,18 +766,111 @@ public class StoreImpl extends Store {
 				updatePointer.type = SQLTokenizer.UPDATE;
 				updatePointer.createWriteLock();
 				if (updatePointer.sharedPageData) {
-					updatePointer.page = new byte[PAGE_CONTROL_SIZE];
+					updatePointer.page = new byte[MIN_PAGE_SIZE];
 				}
 				updatePointer.writeFinsh(con);
 				status = DELETED;
+				// the old UPDATED_PAGE is not referenced anymore
+				setFreeSize();
 				if (sharedPageData) {
-					page = new byte[PAGE_CONTROL_SIZE];
+					page = new byte[MIN_PAGE_SIZE];
 				}
 			}
 			writeFinsh(con);
 		}
 	}
 
+	/**
+	 * Create a buffer for the new values of in place updates. The buffer is
+	 * reused for all rows of an update.
+	 * 
+	 * @see #updateInPlace(SsConnection, Expression[], Columns, int[], StoreImpl)
+	 */
+	public static StoreImpl createValueBuffer(Table table) {
+		StoreImpl store = new StoreImpl(table, null, SQLTokenizer.UPDATE, -1);
+		store.page = new byte[MIN_PAGE_SIZE];
+		return store;
+	}
+
+	/**
+	 * Get if the values of a data type have a fixed size and are saved inside
+	 * the row. Such a value can be overwritten without a change of the row
+	 * size.
+	 */
+	public static boolean isInPlaceType(int dataType) {
+		switch (dataType) {
+		case SQLTokenizer.BIT:
+		case SQLTokenizer.BOOLEAN:
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+		case SQLTokenizer.BIGINT:
+		case SQLTokenizer.REAL:
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE:
+		case SQLTokenizer.MONEY:
+		case SQLTokenizer.SMALLMONEY:
+		case SQLTokenizer.TIMESTAMP:
+		case SQLTokenizer.TIME:
+		case SQLTokenizer.DATE:
+		case SQLTokenizer.SMALLDATETIME:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Get if the values of the current row can be overwritten in its page. A
+	 * page with the old large control block must be rewritten completely.
+	 */
+	public boolean isInPlaceUpdatable() {
+		return controlSize == PAGE_CONTROL_SIZE && (status == NORMAL || status == UPDATED_PAGE);
+	}
+
+	/**
+	 * Is call from updateRow() if all changed values have a fixed size. The
+	 * new values are written to the buffer first, so the expressions read the
+	 * old values of the row. Then only the bytes of the changed values are
+	 * overwritten in the page of the row. The caller hold the write lock of
+	 * the row.
+	 * 
+	 * @param updateValues
+	 *            the new values, null for a column that is not changed
+	 * @param offsets
+	 *            the offsets of the values in the page of the row
+	 * @param buffer
+	 *            the buffer from createValueBuffer()
+	 */
+	public void updateInPlace(SsConnection con, Expression[] updateValues, Columns columns, int[] offsets,
+			StoreImpl buffer) throws Exception {
+		buffer.offset = 0;
+		for (int i = 0; i < updateValues.length; i++) {
+			if (updateValues[i] != null) {
+				buffer.writeExpression(updateValues[i], columns.get(i));
+			}
+		}
+		if (sharedPageData) {
+			// the page can be the committed row of the PageCache and of the
+			// snapshots, only a copy of it can be changed
+			byte[] newPage = new byte[page.length];
+			System.arraycopy(page, 0, newPage, 0, page.length);
+			page = newPage;
+			sharedPageData = false;
+		}
+		int valueOffset = 0;
+		for (int i = 0; i < updateValues.length; i++) {
+			if (updateValues[i] != null) {
+				int size = getFixedSize(columns.get(i).getDataType());
+				System.arraycopy(buffer.page, valueOffset, page, offsets[i], size);
+				valueOffset += size;
+			}
+		}
+		type = SQLTokenizer.UPDATE;
+		offset = sizeUsed;
+		writeFinsh(con);
+	}
+
 	/*
 	 * ==========================================================================
 	 * ====
@@ -530,6 +1067,125 @@ public class StoreImpl extends Store {
 		return new String(readChars(length));
 	}
 
+	/**
+	 * Write a CHAR or VARCHAR value in the compact format. A string with only
+	 * Latin-1 characters is saved with one byte per character after a short
+	 * with the length. All other strings are saved as UTF-8 after the header
+	 * COMPACT_UTF8 and the byte count. The trailing spaces of a CHAR value are
+	 * not saved, TableResult pad it on reading.
+	 */
+	private void writeCompactString(String value, int lengthColumn, boolean varchar) throws SQLException {
+		int length = value.length();
+		if (lengthColumn < length) {
+			throw SmallSQLException.create(Language.VALUE_STR_TOOLARGE);
+		}
+		if (!varchar) {
+			while (length > 0 && value.charAt(length - 1) == ' ')
+				length--;
+		}
+		int utf8Count = length;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c > 0xFF) {
+				utf8Count = getUtf8Count(value, length);
+				break;
+			}
+		}
+		if (utf8Count == length) {
+			int newSize = offset + 2 + length;
+			if (newSize > page.length)
+				resizePage(newSize);
+			writeShort(length);
+			for (int i = 0; i < length; i++) {
+				page[offset++] = (byte) value.charAt(i);
+			}
+			return;
+		}
+		int newSize = offset + 6 + utf8Count;
+		if (newSize > page.length)
+			resizePage(newSize);
+		writeShort(COMPACT_UTF8);
+		writeInt(utf8Count);
+		for (int i = 0; i < length; i++) {
+			// every char is encoded for its own like DataOutput.writeUTF()
+			// that also single surrogates are saved without loss
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				page[offset++] = (byte) c;
+			} else if (c < 0x800) {
+				page[offset++] = (byte) (0xC0 | (c >> 6));
+				page[offset++] = (byte) (0x80 | (c & 0x3F));
+			} else {
+				page[offset++] = (byte) (0xE0 | (c >> 12));
+				page[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				page[offset++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Get the count of UTF-8 bytes of the first length characters.
+	 */
+	private static int getUtf8Count(String value, int length) {
+		int count = length;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x800) {
+				count += 2;
+			} else if (c >= 0x80) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Read a CHAR or VARCHAR value that was written with writeCompactString().
+	 */
+	private String readCompactString() {
+		int length = readShort() & 0xFFFF;
+		if (length != COMPACT_UTF8) {
+			char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = (char) (page[offset++] & 0xFF);
+			}
+			return new String(chars);
+		}
+		int end = readInt();
+		end += offset;
+		char[] chars = new char[end - offset];
+		int count = 0;
+		while (offset < end) {
+			int b = page[offset++] & 0xFF;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+			} else if (b < 0xE0) {
+				chars[count++] = (char) (((b & 0x1F) << 6) | (page[offset++] & 0x3F));
+			} else {
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((page[offset++] & 0x3F) << 6) | (page[offset++] & 0x3F));
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	/**
+	 * Write a CHAR or VARCHAR value of a row in the format of the table.
+	 */
+	private void writeStringValue(String value, int lengthColumn, boolean varchar) throws SQLException {
+		if (compactStrings) {
+			writeCompactString(value, lengthColumn, varchar);
+		} else {
+			writeString(value, lengthColumn, varchar);
+		}
+	}
+
+	/**
+	 * Read a CHAR or VARCHAR value of a row in the format of the table.
+	 */
+	private String readStringValue() {
+		return compactStrings ? readCompactString() : readString();
+	}
+
 	void writeBytes(byte[] daten) {
 		int newSize = offset + daten.length;
 		if (newSize > page.length)
@@ -582,6 +1238,10 @@ public class StoreImpl extends Store {
 	}
 
 	void writeLongBinary(byte[] daten) throws Exception {
+		if (daten.length > LobLocator.LOB_CHUNK_SIZE) {
+			writeLong(writeLobChunks(new ByteArrayInputStream(daten), daten.length));
+			return;
+		}
 		StoreImpl store = table.getLobStore(((TableStorePage) storePage).con, daten.length + 4,
 				SQLTokenizer.LONGVARBINARY);
 		store.writeInt(daten.length);
@@ -592,7 +1252,185 @@ public class StoreImpl extends Store {
 	byte[] readLongBinary() throws Exception {
 		long lobFilePos = readLong();
 		StoreImpl store = table.getLobStore(((TableStorePage) storePage).con, lobFilePos, SQLTokenizer.SELECT);
-		return store.readBytes(store.readInt());
+		int length = store.readInt();
+		if (length == LobLocator.LOB_CHUNKED) {
+			LobLocator lob = new LobLocator(table, ((TableStorePage) storePage).con, lobFilePos, false);
+			return lob.getBytes(0, getLobArrayLength(lob.length()));
+		}
+		return store.readBytes(length);
+	}
+
+	/**
+	 * Write the value of a LONGVARBINARY or BLOB column. A stream parameter
+	 * is saved chunk by chunk without reading it completely.
+	 */
+	private void writeLongBinary(Expression expr) throws Exception {
+		if (expr instanceof ExpressionValue) {
+			ExpressionValue value = (ExpressionValue) expr;
+			Object stream = value.getStream();
+			if (stream instanceof InputStream) {
+				writeLong(writeLobChunks((InputStream) stream, value.getStreamLength()));
+				return;
+			}
+		}
+		writeLongBinary(expr.getBytes());
+	}
+
+	/**
+	 * Write the value of a LONGVARCHAR or CLOB column. A stream parameter is
+	 * saved chunk by chunk without reading it completely.
+	 */
+	private void writeLongString(Expression expr) throws Exception {
+		if (expr instanceof ExpressionValue) {
+			ExpressionValue value = (ExpressionValue) expr;
+			Object stream = value.getStream();
+			if (stream != null) {
+				// an InputStream for characters is an ASCII stream
+				Reader reader = (stream instanceof Reader) ? (Reader) stream : new InputStreamReader(
+						(InputStream) stream, "ISO-8859-1");
+				writeLong(writeLobChunks(reader, value.getStreamLength()));
+				return;
+			}
+		}
+		writeLongString(expr.getString());
+	}
+
+	/**
+	 * Write a LOB value in chunks to the lob file.
+	 * 
+	 * @param length
+	 *            the count of bytes to read or -1 to read to the end of the
+	 *            stream
+	 * @return the file position of the first page of the value
+	 * @see LobLocator
+	 */
+	private long writeLobChunks(InputStream input, long length) throws Exception {
+		byte[] buffer = new byte[LobLocator.LOB_CHUNK_SIZE];
+		LongList chunks = new LongList();
+		long size = 0;
+		while (length < 0 || size < length) {
+			int max = (length < 0) ? buffer.length : (int) Math.min(buffer.length, length - size);
+			int count = 0;
+			for (int n; count < max && (n = input.read(buffer, count, max - count)) >= 0;) {
+				count += n;
+			}
+			if (count > 0) {
+				chunks.add(writeLobChunk(buffer, count));
+				size += count;
+			}
+			if (count < max) {
+				break;
+			}
+		}
+		return writeLobHead(chunks, size);
+	}
+
+	/**
+	 * Write the characters of a reader with 2 bytes per character in chunks
+	 * to the lob file.
+	 * 
+	 * @param length
+	 *            the count of characters to read or -1 to read to the end of
+	 *            the reader
+	 * @return the file position of the first page of the value
+	 */
+	private long writeLobChunks(Reader reader, long length) throws Exception {
+		char[] chars = new char[LobLocator.LOB_CHUNK_SIZE / 2];
+		byte[] buffer = new byte[LobLocator.LOB_CHUNK_SIZE];
+		LongList chunks = new LongList();
+		long size = 0;
+		while (length < 0 || size < length) {
+			int max = (length < 0) ? chars.length : (int) Math.min(chars.length, length - size);
+			int count = 0;
+			for (int n; count < max && (n = reader.read(chars, count, max - count)) >= 0;) {
+				count += n;
+			}
+			if (count > 0) {
+				for (int i = 0, b = 0; i < count; i++) {
+					char c = chars[i];
+					buffer[b++] = (byte) (c);
+					buffer[b++] = (byte) (c >> 8);
+				}
+				chunks.add(writeLobChunk(buffer, 2 * count));
+				size += count;
+			}
+			if (count < max) {
+				break;
+			}
+		}
+		return writeLobHead(chunks, 2 * size);
+	}
+
+	/**
+	 * Write one chunk of a LOB value as page without a header.
+	 * 
+	 * @return the file position of the chunk page
+	 */
+	private long writeLobChunk(byte[] buffer, int count) throws Exception {
+		StoreImpl store = table.getLobStore(((TableStorePage) storePage).con, count, SQLTokenizer.LONGVARBINARY);
+		store.writeBytes(buffer, 0, count);
+		return store.writeFinsh(null);
+	}
+
+	/**
+	 * Write the first page of a LOB value that is saved in chunks.
+	 * 
+	 * @param byteLength
+	 *            the size of the value in bytes
+	 * @return the file position of the first page
+	 */
+	private long writeLobHead(LongList chunks, long byteLength) throws Exception {
+		int count = chunks.size();
+		StoreImpl store = table.getLobStore(((TableStorePage) storePage).con, 16 + 8L * count,
+				SQLTokenizer.LONGVARBINARY);
+		store.writeInt(LobLocator.LOB_CHUNKED);
+		store.writeLong(byteLength);
+		store.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			store.writeLong(chunks.get(i));
+		}
+		return store.writeFinsh(null);
+	}
+
+	/**
+	 * Verify that a chunked LOB value can be read into one array.
+	 */
+	private static int getLobArrayLength(long length) throws SQLException {
+		if (length > Integer.MAX_VALUE) {
+			throw SmallSQLException.create(Language.VALUE_STR_TOOLARGE);
+		}
+		return (int) length;
+	}
+
+	/**
+	 * Verify the control block of a chunk page of a LOB value that is read
+	 * from a memory mapped buffer and not with a StoreImpl.
+	 * 
+	 * @param offset
+	 *            the offset of the page in the buffer
+	 * @param size
+	 *            the count of data bytes of the chunk
+	 * @return false if the page was deleted
+	 * @throws SQLException
+	 *             if there is no chunk page of this size
+	 */
+	static boolean isChunkPage(ByteBuffer buffer, int offset, int size, long filePos) throws SQLException {
+		if (buffer.get(offset) != PAGE_MAGIC || buffer.getInt(offset + 2) != PAGE_CONTROL_SIZE + size) {
+			throw SmallSQLException.create(Language.TABLE_CORRUPT_PAGE, new Object[] { Long.valueOf(filePos) });
+		}
+		return buffer.get(offset + 1) == NORMAL;
+	}
+
+	/**
+	 * Get a buffer with a part of the page data of this store.
+	 * 
+	 * @param dataOffset
+	 *            the offset in the page
+	 * @param length
+	 *            the count of bytes
+	 */
+	ByteBuffer getDataBuffer(int dataOffset, int length) {
+		return ByteBuffer.wrap(page, dataOffset, length).slice();
 	}
 
 	public void writeChars(char[] daten) {
@@ -616,6 +1454,10 @@ public class StoreImpl extends Store {
 	}
 
 	void writeLongString(String daten) throws Exception {
+		if (daten.length() > LobLocator.LOB_CHUNK_SIZE / 2) {
+			writeLong(writeLobChunks(new StringReader(daten), daten.length()));
+			return;
+		}
 		char[] chars = daten.toCharArray();
 		StoreImpl store = table.getLobStore(((TableStorePage) storePage).con, chars.length * 2L + 4,
 				SQLTokenizer.LONGVARBINARY);
@@ -629,7 +1471,42 @@ public class StoreImpl extends Store {
 		StoreImpl store = table.getLobStore(((TableStorePage) storePage).con, lobFilePos, SQLTokenizer.SELECT);
 		if (store == null)
 			throw SmallSQLException.create(Language.LOB_DELETED);
-		return new String(store.readChars(store.readInt()));
+		int length = store.readInt();
+		if (length == LobLocator.LOB_CHUNKED) {
+			LobLocator lob = new LobLocator(table, ((TableStorePage) storePage).con, lobFilePos, true);
+			return lob.getString(0, getLobArrayLength(lob.length()));
+		}
+		return new String(store.readChars(length));
+	}
+
+	/**
+	 * Get a reference to the value of a LOB column that read the value on
+	 * demand.
+	 * 
+	 * @return the reference or null if the value is NULL or the column is not
+	 *         a LOB column
+	 */
+	@Override
+	public LobLocator getLob(int valueOffset, int dataType) throws Exception {
+		boolean chars;
+		switch (dataType) {
+		case SQLTokenizer.LONGVARBINARY:
+		case SQLTokenizer.BLOB:
+			chars = false;
+			break;
+		case SQLTokenizer.CLOB:
+		case SQLTokenizer.NCLOB:
+		case SQLTokenizer.LONGNVARCHAR:
+		case SQLTokenizer.LONGVARCHAR:
+			chars = true;
+			break;
+		default:
+			return null;
+		}
+		this.offset = valueOffset;
+		if (readBoolean())
+			return null;
+		return new LobLocator(table, ((TableStorePage) storePage).con, readLong(), chars);
 	}
 
 	public void writeColumn(Column column) throws Exception {
@@ -796,17 +1673,17 @@ public class StoreImpl extends Store {
 			break;
 		case SQLTokenizer.CHAR:
 		case SQLTokenizer.NCHAR:
-			writeString(expr.getString(), column.getDisplaySize(), false);
+			writeStringValue(expr.getString(), column.getDisplaySize(), false);
 			break;
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			writeString(expr.getString(), column.getDisplaySize(), true);
+			writeStringValue(expr.getString(), column.getDisplaySize(), true);
 			break;
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
 		case SQLTokenizer.LONGVARCHAR:
-			writeLongString(expr.getString());
+			writeLongString(expr);
 			break;
 		case SQLTokenizer.JAVA_OBJECT:
 			// FIXME a MemoryStream can be faster because there are no
@@ -818,7 +1695,7 @@ public class StoreImpl extends Store {
 			break;
 		case SQLTokenizer.LONGVARBINARY:
 		case SQLTokenizer.BLOB:
-			writeLongBinary(expr.getBytes());
+			writeLongBinary(expr);
 			break;
 		case SQLTokenizer.TIMESTAMP:
 			writeTimestamp(expr.getLong());
@@ -896,7 +1773,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return Utils.string2boolean(readString());
+			return Utils.string2boolean(readStringValue());
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -965,7 +1842,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return Integer.parseInt(readString());
+			return Integer.parseInt(readStringValue());
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1031,7 +1908,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return Long.parseLong(readString());
+			return Long.parseLong(readStringValue());
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1097,7 +1974,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return Float.parseFloat(readString());
+			return Float.parseFloat(readStringValue());
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1163,7 +2040,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return Double.parseDouble(readString());
+			return Double.parseDouble(readStringValue());
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1227,7 +2104,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return Money.parseMoney(readString());
+			return Money.parseMoney(readStringValue());
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1290,7 +2167,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return new MutableNumeric(readString());
+			return new MutableNumeric(readStringValue());
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1355,7 +2232,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return readString();
+			return readStringValue();
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1423,7 +2300,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return readString();
+			return readStringValue();
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1497,7 +2374,7 @@ public class StoreImpl extends Store {
 		case SQLTokenizer.NCHAR:
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.NVARCHAR:
-			return readString().getBytes();
+			return readStringValue().getBytes();
 		case SQLTokenizer.CLOB:
 		case SQLTokenizer.NCLOB:
 		case SQLTokenizer.LONGNVARCHAR:
@@ -1518,8 +2395,70 @@ public class StoreImpl extends Store {
 
 	@Override
 	public void scanObjectOffsets(int[] offsets, int dataTypes[]) {
-		offset = PAGE_CONTROL_SIZE;
-		for (int i = 0; i < offsets.length; i++) {
+		scanObjectOffsets(offsets, dataTypes, 0, offsets.length, null);
+	}
+
+	/**
+	 * Get the size of a column value in the row if the size does not depend on
+	 * the value.
+	 * 
+	 * @return the size in bytes including the NULL flag or -1 if the size is
+	 *         variable
+	 */
+	public static int getFixedSize(int dataType) {
+		switch (dataType) {
+		case SQLTokenizer.BIT:
+		case SQLTokenizer.BOOLEAN:
+		case SQLTokenizer.TINYINT:
+			return 2;
+		case SQLTokenizer.SMALLINT:
+			return 3;
+		case SQLTokenizer.INT:
+		case SQLTokenizer.REAL:
+		case SQLTokenizer.SMALLMONEY:
+		case SQLTokenizer.TIME:
+		case SQLTokenizer.DATE:
+		case SQLTokenizer.SMALLDATETIME:
+			return 5;
+		case SQLTokenizer.BIGINT:
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE:
+		case SQLTokenizer.MONEY:
+		case SQLTokenizer.JAVA_OBJECT:
+		case SQLTokenizer.LONGVARBINARY:
+		case SQLTokenizer.BLOB:
+		case SQLTokenizer.CLOB:
+		case SQLTokenizer.NCLOB:
+		case SQLTokenizer.LONGNVARCHAR:
+		case SQLTokenizer.LONGVARCHAR:
+		case SQLTokenizer.TIMESTAMP:
+			return 9;
+		case SQLTokenizer.UNIQUEIDENTIFIER:
+			return 17;
+		default:
+			return -1;
+		}
+	}
+
+	@Override
+	public void scanObjectOffsets(int[] offsets, int dataTypes[], int from, int to, int[] fixedOffsets) {
+		int i = from;
+		if (i == 0) {
+			offset = controlSize;
+			if (fixedOffsets != null) {
+				// the leading columns with a fixed size have ever the same offsets
+				int fixedCount = Math.min(to, fixedOffsets.length - 1);
+				for (; i < fixedCount; i++) {
+					offsets[i] = controlSize + fixedOffsets[i];
+				}
+				offset = controlSize + fixedOffsets[i];
+			}
+		} else {
+			// continue with the last scanned column to find the end of it
+			i--;
+			offset = offsets[i];
+		}
+		for (; i < to; i++) {
 			offsets[i] = offset;
 			boolean isNull = readBoolean(); // for isNull
 			switch (dataTypes[i]) {
@@ -1572,9 +2511,17 @@ public class StoreImpl extends Store {
 			case SQLTokenizer.VARCHAR:
 			case SQLTokenizer.NVARCHAR:
 				count = readShort() & 0xFFFF;
-				if (!isNull)
+				if (isNull)
+					break;
+				if (!compactStrings)
 					offset += count << 1; // not use += directly because
 											// readShort change the offset
+				else if (count != COMPACT_UTF8)
+					offset += count;
+				else {
+					count = readInt();
+					offset += count;
+				}
 				break;
 			case SQLTokenizer.UNIQUEIDENTIFIER:
 				offset += 16;
@@ -1590,9 +2537,34 @@ public class StoreImpl extends Store {
 		status = DELETED;
 		type = SQLTokenizer.DELETE;
 		createWriteLock();
+		if (updatePointer == null) {
+			// an UPDATED_PAGE is still referenced from its UPDATE_POINTER
+			setFreeSize();
+		}
 		writeFinsh(con);
 	}
 
+	/**
+	 * Mark the page of this store as free after the commit of the write lock.
+	 */
+	private void setFreeSize() {
+		if (filePos >= 0) {
+			((TableStorePage) storePage).freeSize = sizePhysical;
+		}
+	}
+
+	/**
+	 * Set the physical size in the control block of a page that is written
+	 * to a larger free page.
+	 */
+	static void setPhysicalSize(byte[] page, int size) {
+		// a written page has ever the small control block
+		page[6] = (byte) (size >> 24);
+		page[7] = (byte) (size >> 16);
+		page[8] = (byte) (size >> 8);
+		page[9] = (byte) (size);
+	}
+
 	public StorePageLink getLink() {
 		return ((TableStorePageInsert) storePage).getLink();
 	}
@@ -1603,4 +2575,57 @@ public class StoreImpl extends Store {
 	public boolean isRollback() {
 		return storePage.raFile == null;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * A block of a file that was read with one positional read. The block is
+	 * valid as long as nothing was written to the file after the read. The
+	 * file is referenced weak that a closed file can be garbage collected.
+	 * 
+	 * @see FileState#getWriteCount()
+	 */
+	private static final class ReadBlock {
+		final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private WeakReference<FileChannel> file;
+		private FileState state;
+		private long position;
+		private int length;
+		private long writeCount;
+
+		/**
+		 * Find the page in the block. The block must include the largest
+		 * control block of the page or the end of the file.
+		 * 
+		 * @return the offset of the page in the buffer or -1 if the block must
+		 *         be read
+		 */
+		int find(FileChannel raFile, long filePos) {
+			if (file == null || raFile != file.get() || filePos < position || writeCount != state.getWriteCount()) {
+				return -1;
+			}
+			long start = filePos - position;
+			if (start + OLD_PAGE_CONTROL_SIZE > length && (length == buffer.capacity() || start >= length)) {
+				return -1;
+			}
+			return (int) start;
+		}
+
+		/**
+		 * Read the block that start at filePos.
+		 */
+		void read(FileChannel raFile, long filePos) throws IOException {
+			// the counter is requested before the read, a write during the read
+			// invalidate the block
+			state = FileState.get(raFile);
+			writeCount = state.getWriteCount();
+			file = new WeakReference<FileChannel>(raFile);
+			position = filePos;
+			buffer.clear();
+			while (buffer.hasRemaining()) {
+				if (raFile.read(buffer, filePos + buffer.position()) < 0) {
+					break;
+				}
+			}
+			length = buffer.position();
+		}
+	}
+}
@@ -100,6 +100,10 @@ public class StoreNoCurrentRow extends Store {
 
 	}
 
+	public void scanObjectOffsets(int[] offsets, int[] dataTypes, int from, int to, int[] fixedOffsets) {
+		// there is no row to scan
+	}
+
 	public int getUsedSize() {
 		// TODO Auto-generated method stub
 		return 0;
@@ -110,6 +110,12 @@ public class StoreNull extends Store {
 		 */
 	}
 
+	public final void scanObjectOffsets(int[] offsets, int[] dataTypes, int from, int to, int[] fixedOffsets) {
+		/*
+		 * there is nothing to scan
+		 */
+	}
+
 	public final int getUsedSize() {
 		return 0;
 	}
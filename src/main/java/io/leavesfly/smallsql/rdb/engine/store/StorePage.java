@@ -33,9 +33,12 @@
  */
 package io.leavesfly.smallsql.rdb.engine.store;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
 
 import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.rdb.engine.TransactionStep;
@@ -47,33 +50,165 @@ public class StorePage extends TransactionStep {
 	protected byte[] page; // data of one page
 	int pageSize;
 	public long fileOffset; // position in file
+	final PageCache cache; // can be null if the file is not cached
+	PageWriter writer; // the writer of the running commit, null if not added
+	/** The position of the spilled data in the WriteAheadLog, -1 if the data is in memory. */
+	long spillPos = -1;
 
 	public StorePage(byte[] page, int pageSize, FileChannel raFile, long fileOffset) {
+		this(page, pageSize, raFile, fileOffset, null);
+	}
+
+	public StorePage(byte[] page, int pageSize, FileChannel raFile, long fileOffset, PageCache cache) {
 		super(raFile);
 		this.page = page;
 		this.pageSize = pageSize;
 		this.fileOffset = fileOffset;
+		this.cache = cache;
+	}
+
+	/**
+	 * Must be called after bytes was written to a file, also if the bytes was
+	 * not written with a StorePage. Blocks that was read from the file before
+	 * are invalid after it.
+	 */
+	public static void incrementWriteCount(FileChannel raFile) throws IOException {
+		FileState.get(raFile).incrementWriteCount();
 	}
 
 	final void setPageData(byte[] data, int size) {
 		page = data;
 		pageSize = size;
+		spillPos = -1;
+	}
+
+	/**
+	 * Return the data of this page. The data of a spilled page is read back
+	 * from the log.
+	 * 
+	 * @return the data or null if this page has no data
+	 */
+	final byte[] getPage() throws IOException {
+		if (spillPos < 0) {
+			return page;
+		}
+		return WriteAheadLog.getLog(raFile).read(spillPos, pageSize);
+	}
+
+	/**
+	 * If this page has data, in memory or spilled.
+	 */
+	final boolean hasPage() {
+		return page != null || spillPos >= 0;
+	}
+
+	/**
+	 * Return the heap size of the data of this page.
+	 */
+	public int getMemorySize() {
+		return page == null ? 0 : page.length;
+	}
+
+	/**
+	 * Add this page to the list if its data can be spilled into the log of its
+	 * file.
+	 */
+	void collectSpill(List<StorePage> pages) {
+		if (page != null && raFile != null && WriteAheadLog.getLog(raFile) != null) {
+			pages.add(this);
+		}
+	}
+
+	/**
+	 * Remove the data from the heap after it was written to the log.
+	 */
+	final void setSpilled(long pos) {
+		spillPos = pos;
+		page = null;
+	}
+
+	/**
+	 * Return the free pages of the file that can be used for a new page.
+	 * 
+	 * @return the map or null if new pages are always appended
+	 */
+	FreeSpaceMap getFreeSpace() {
+		return null;
+	}
+
+	/**
+	 * Set the position of a new page. A free page of the file is used if there
+	 * is one that is large enough, else the page is appended.
+	 * 
+	 * @param fileSize
+	 *            the current end of the file
+	 * @return true if the page was appended at fileSize
+	 */
+	final boolean allocate(long fileSize) {
+		FreeSpaceMap freeSpace = getFreeSpace();
+		// a spilled page is not loaded for the resize to a free page
+		if (freeSpace != null && page != null && freeSpace.allocate(this)) {
+			return false;
+		}
+		fileOffset = fileSize;
+		return true;
 	}
 
 	@Override
 	public long commit() throws SQLException {
+		return commit(null);
+	}
+
+	/**
+	 * Commit this page with the writer of the transaction. The page is only
+	 * added to the writer and saved with {@link PageWriter#flush()}. A new
+	 * page has no position before the flush.
+	 * 
+	 * @param writer
+	 *            the writer of the commit or null to write the page directly
+	 */
+	public long commit(PageWriter writer) throws SQLException {
+		if (writer != null) {
+			if (raFile != null && hasPage()) {
+				writer.add(this);
+			}
+			return fileOffset;
+		}
 		try {
 			// rsFile == null --> rollback()
 			// page == null --> only a write lock, no data
-			if (raFile != null && page != null) {
+			if (raFile != null && hasPage()) {
+				byte[] data = getPage();
 				// if new page then append at end of file
-				ByteBuffer buffer = ByteBuffer.wrap(page, 0, pageSize);
+				ByteBuffer buffer = ByteBuffer.wrap(data, 0, pageSize);
 				synchronized (raFile) {
 					if (fileOffset < 0) {
-						fileOffset = raFile.size();
+						allocate(raFile.size());
 					}
-					raFile.position(fileOffset);
-					raFile.write(buffer);
+					WriteAheadLog log = WriteAheadLog.getLog(raFile);
+					boolean logged = log != null && log.append(Collections.singletonList(this), false);
+					if (cache != null) {
+						// write through, readers of this page see the new data
+						cache.write(raFile, fileOffset, data, pageSize);
+					}
+					try {
+						raFile.position(fileOffset);
+						raFile.write(buffer);
+					} catch (Exception e) {
+						if (cache != null) {
+							cache.discard(raFile, fileOffset);
+						}
+						throw e;
+					} finally {
+						incrementWriteCount(raFile);
+						if (logged) {
+							log.written(Collections.singletonList(raFile));
+						}
+					}
+					FileState.get(raFile).written(fileOffset + pageSize);
+				}
+				if (cache != null) {
+					cache.written(raFile, fileOffset);
 				}
 				// raFile.getFD().sync();
 			}
@@ -84,7 +219,7 @@ public class StorePage extends TransactionStep {
 	}
 
 	@Override
-	public final void rollback() {
+	public void rollback() {
 		raFile = null;
 	}
 }
@@ -45,9 +45,14 @@ public class TableStorePage extends StorePage {
 	public int lockType;
 	public SsConnection con;
 	public TableStorePage nextLock;
+	/**
+	 * The physical size of the page if this lock delete the page. The page is
+	 * free for new rows after the commit.
+	 */
+	int freeSize;
 
 	public TableStorePage(SsConnection con, Table table, int lockType, long fileOffset) {
-		super(null, 0, table.raFile, fileOffset);
+		super(null, 0, table.raFile, fileOffset, table.database.getPageCache());
 		this.con = con;
 		this.table = table;
 		this.lockType = lockType;
@@ -61,19 +66,34 @@ public class TableStorePage extends StorePage {
 	 * Returns the final position of the page back.
 	 */
 	public long commit() throws SQLException {
+		return commit(null);
+	}
+
+	@Override
+	public long commit(PageWriter writer) throws SQLException {
 		if (nextLock != null) {
 			// save only the last version of this page
-			fileOffset = nextLock.commit();
+			fileOffset = nextLock.commit(writer);
 			nextLock = null;
 			rollback();
 			return fileOffset;
 		}
 		if (lockType == View.LOCK_READ)
 			return fileOffset;
-		return super.commit();
+		return super.commit(writer);
+	}
+
+	@Override
+	FreeSpaceMap getFreeSpace() {
+		return table.getFreeSpace();
 	}
 
 	public final void freeLock() {
+		// raFile == null --> rollback() or an older version of the page
+		if (freeSize > 0 && raFile != null && fileOffset >= 0) {
+			table.getFreeSpace().add(fileOffset, freeSize);
+			freeSize = 0;
+		}
 		table.freeLock(this);
 	}
 }
\ No newline at end of file
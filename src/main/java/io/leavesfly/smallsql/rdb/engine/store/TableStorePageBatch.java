@@ -0,0 +1,147 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TableStorePageBatch.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.leavesfly.smallsql.jdbc.SmallSQLException;
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.rdb.engine.Table;
+import io.leavesfly.smallsql.rdb.engine.View;
+
+/**
+ * A LOCK_INSERT for all rows of a batch insert. The lock is requested once for
+ * the batch and is a single step of the transaction. The rows are not
+ * registered as locks or steps of their own, they are committed, rolled back
+ * and found as not committed inserts via this page.
+ */
+public class TableStorePageBatch extends TableStorePage {
+
+	/** The count of rows after which the connection verify if it should spill its pages. */
+	private static final int SPILL_CHECK_COUNT = 1024;
+
+	final private ArrayList<TableStorePageInsert> rows = new ArrayList<TableStorePageInsert>();
+	/** The count of rows whose data was already spilled into the log. */
+	private int spilledRows;
+	/** The heap size of the data of the rows that are not spilled. */
+	private long memorySize;
+
+	public TableStorePageBatch(SsConnection con, Table table) {
+		super(con, table, View.LOCK_INSERT, -1);
+	}
+
+	/**
+	 * Add a new row to the batch. The row is visible as not committed insert
+	 * after this call.
+	 */
+	public void add(TableStorePageInsert row) throws SQLException {
+		int count;
+		synchronized (this) {
+			rows.add(row);
+			memorySize += row.getMemorySize();
+			count = rows.size();
+		}
+		if (count % SPILL_CHECK_COUNT == 0) {
+			con.spillIfNeeded();
+		}
+	}
+
+	@Override
+	public synchronized int getMemorySize() {
+		return (int) Math.min(memorySize, Integer.MAX_VALUE);
+	}
+
+	@Override
+	synchronized void collectSpill(List<StorePage> pages) {
+		for (int i = spilledRows; i < rows.size(); i++) {
+			rows.get(i).collectSpill(pages);
+		}
+		spilledRows = rows.size();
+		memorySize = 0;
+	}
+
+	/**
+	 * Add the links of all rows of this batch to the list.
+	 */
+	public synchronized void addLinks(List<StorePageLink> links) {
+		for (int i = 0; i < rows.size(); i++) {
+			links.add(rows.get(i).getLink());
+		}
+	}
+
+	/**
+	 * Commit all rows of the batch. The page of the batch has no data itself.
+	 */
+	@Override
+	public long commit(PageWriter writer) throws SQLException {
+		for (int i = 0; i < rows.size(); i++) {
+			rows.get(i).commit(writer);
+		}
+		return fileOffset;
+	}
+
+	/**
+	 * Write the rows directly to the file and remove them from this batch. The
+	 * rows of the file are appended with large gathering writes. This is used
+	 * for a load without a transaction, the written rows can not be rolled
+	 * back. The rows are appended as a commit that running snapshots does not
+	 * see.
+	 */
+	public void flush() throws SQLException {
+		VersionStore versionStore = table.database.getVersionStore();
+		VersionStore.Commit version = versionStore.beginCommit(con.getWorkMemory());
+		PageWriter writer = new PageWriter(version);
+		commit(writer);
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw SmallSQLException.createFromException(e);
+		} finally {
+			versionStore.endCommit(version);
+		}
+		synchronized (this) {
+			rows.clear();
+			spilledRows = 0;
+			memorySize = 0;
+		}
+	}
+
+	@Override
+	public void rollback() {
+		super.rollback();
+		for (int i = 0; i < rows.size(); i++) {
+			rows.get(i).rollback();
+		}
+	}
+}
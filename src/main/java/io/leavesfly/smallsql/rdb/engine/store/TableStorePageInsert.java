@@ -57,12 +57,21 @@ public class TableStorePageInsert extends TableStorePage {
 	}
 
 	/**
-	 * Call supper.commit() and update the link.
+	 * Call supper.commit() and update the link. With a writer the position of
+	 * the page is known after the flush, the writer update the link.
 	 */
-	public final long commit() throws SQLException {
-		long result = super.commit();
-		link.filePos = fileOffset;
-		link.page = null;
+	public final long commit(PageWriter writer) throws SQLException {
+		TableStorePage lastLock = this;
+		while (lastLock.nextLock != null) {
+			lastLock = lastLock.nextLock;
+		}
+		long result = super.commit(writer);
+		if (writer != null) {
+			writer.addLink(link, lastLock);
+		} else {
+			link.filePos = fileOffset;
+			link.page = null;
+		}
 		return result;
 	}
 
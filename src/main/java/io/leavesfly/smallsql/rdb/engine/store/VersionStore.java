@@ -0,0 +1,554 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * VersionStore.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The old versions of the row pages that are needed for the snapshot reads.
+ * Before a commit overwrite a page of a table, the committed data of the page
+ * is saved as a version of the commit. The pages that a commit append to a
+ * file are saved as one range of the file without data.
+ * <p>
+ * A snapshot read a page from the cache or the file without a lock and then
+ * search for a version of a commit that it does not see. If there is one then
+ * the data of the oldest such version is used instead. The versions are saved
+ * before the pages are written, a reader that read the new data of a page find
+ * also the version of it.
+ * <p>
+ * Every commit get a stamp when it ends. A snapshot see all commits with a
+ * stamp up to its own stamp. The versions of a commit are removed if all
+ * registered snapshots see the commit.
+ * <p>
+ * If the data of the versions in memory exceed the work memory of the
+ * committing connection then the data of the oldest versions are written to
+ * a temporary file. The file is deleted if there are no more versions.
+ * 
+ * @see PageWriter
+ * @see StoreImpl#createSnapshotStore
+ */
+public final class VersionStore {
+
+	private final ConcurrentHashMap<FileChannel, FileVersions> files = new ConcurrentHashMap<FileChannel, FileVersions>();
+	/** The commits with versions in the order of its first version. */
+	private final LinkedList<Commit> commits = new LinkedList<Commit>();
+	/** The snapshots of the running transactions. */
+	private final ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>();
+	/** The snapshot that see ever all ended commits, it is not registered. */
+	private final Snapshot latest = new Snapshot(this, -1);
+	/** The stamp of the last ended commit with versions. */
+	private volatile long endStamp;
+	/** The count of saved versions, only for statistics. */
+	private int versionCount;
+	/** The size of the data of the versions that are hold in memory. */
+	private long memorySize;
+	/** The file with the data of the spilled versions or null. */
+	private File spillFile;
+	private FileChannel spillChannel;
+	private long spillSize;
+
+	/**
+	 * Start a commit. The versions of the commit are saved from the
+	 * {@link PageWriter}.
+	 * 
+	 * @param memoryLimit
+	 *            the size of the version data that can be hold in memory
+	 *            before the oldest versions are spilled, this is the work
+	 *            memory of the connection
+	 */
+	public Commit beginCommit(long memoryLimit) {
+		return new Commit(this, memoryLimit);
+	}
+
+	/**
+	 * End a commit after all its pages was written. New snapshots see the
+	 * commit, the versions are removed if no registered snapshot need it. This
+	 * can be called more as once.
+	 */
+	public void endCommit(Commit commit) {
+		if (commit.versions == null || commit.endStamp != 0) {
+			// a commit without versions is never needed from a snapshot
+			return;
+		}
+		synchronized (this) {
+			commit.endStamp = endStamp + 1;
+			endStamp = commit.endStamp;
+			removeVersions();
+		}
+	}
+
+	/**
+	 * Register a snapshot of all ended commits. The snapshot must be closed at
+	 * the end of the transaction.
+	 */
+	public synchronized Snapshot beginSnapshot() {
+		Snapshot snapshot = new Snapshot(this, endStamp);
+		snapshots.add(snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Get the snapshot for READ_COMMITTED. It see every commit that was ended
+	 * before the read of a page and need no registration.
+	 */
+	public Snapshot getLatest() {
+		return latest;
+	}
+
+	private synchronized void endSnapshot(Snapshot snapshot) {
+		if (snapshots.remove(snapshot)) {
+			removeVersions();
+		}
+	}
+
+	/**
+	 * Get the count of versions that are saved for snapshots.
+	 */
+	public synchronized int getVersionCount() {
+		return versionCount;
+	}
+
+	/**
+	 * Get the size of the version data that is hold in memory.
+	 */
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * Get the data of a page version. The data of a spilled version are read
+	 * from the spill file.
+	 * 
+	 * @return the data or null if the version was removed while the read
+	 */
+	byte[] getData(Version version) throws IOException {
+		byte[] data = version.data;
+		if (data != null) {
+			return data;
+		}
+		data = new byte[version.length];
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		try {
+			while (buffer.hasRemaining()) {
+				if (version.spillChannel.read(buffer, version.spillPos + buffer.position()) < 0) {
+					return null;
+				}
+			}
+		} catch (ClosedChannelException e) {
+			// all versions was removed and the spill file was deleted
+			return null;
+		}
+		return data;
+	}
+
+	/**
+	 * Save the versions of a commit. Must be called with the lock of the file.
+	 */
+	private synchronized void add(Commit commit, FileChannel raFile, List<Version> added) throws IOException {
+		FileVersions file = files.get(raFile);
+		if (file == null) {
+			file = new FileVersions(raFile);
+			files.put(raFile, file);
+		}
+		if (commit.versions == null) {
+			commit.versions = new ArrayList<Version>();
+			commits.add(commit);
+		}
+		for (int i = 0; i < added.size(); i++) {
+			Version version = added.get(i);
+			version.file = file;
+			file.add(version);
+			commit.versions.add(version);
+			if (version.data != null) {
+				memorySize += version.length;
+			}
+		}
+		versionCount += added.size();
+		if (memorySize > commit.memoryLimit) {
+			spill(commit.memoryLimit / 2);
+		}
+	}
+
+	/**
+	 * Write the data of the oldest versions to the spill file until the data
+	 * in memory are not larger as the limit.
+	 */
+	private void spill(long limit) throws IOException {
+		if (spillChannel == null) {
+			spillFile = File.createTempFile("smallsql", ".version");
+			spillFile.deleteOnExit();
+			spillChannel = new RandomAccessFile(spillFile, "rw").getChannel();
+			spillSize = 0;
+		}
+		Iterator<Commit> iterator = commits.iterator();
+		while (memorySize > limit && iterator.hasNext()) {
+			ArrayList<Version> versions = iterator.next().versions;
+			for (int i = 0; i < versions.size() && memorySize > limit; i++) {
+				Version version = versions.get(i);
+				byte[] data = version.data;
+				if (data == null) {
+					continue;
+				}
+				ByteBuffer buffer = ByteBuffer.wrap(data);
+				while (buffer.hasRemaining()) {
+					spillChannel.write(buffer, spillSize + buffer.position());
+				}
+				version.spillChannel = spillChannel;
+				version.spillPos = spillSize;
+				// a reader that see no data find the position of the spilled data
+				version.data = null;
+				spillSize += data.length;
+				memorySize -= data.length;
+			}
+		}
+	}
+
+	/**
+	 * Remove the versions of the ended commits that all registered snapshots
+	 * see. The search stop on the first commit that is needed, the later
+	 * commits are removed with it.
+	 */
+	private void removeVersions() {
+		long horizon = endStamp;
+		for (int i = 0; i < snapshots.size(); i++) {
+			horizon = Math.min(horizon, snapshots.get(i).stamp);
+		}
+		Iterator<Commit> iterator = commits.iterator();
+		while (iterator.hasNext()) {
+			Commit commit = iterator.next();
+			long stamp = commit.endStamp;
+			if (stamp == 0) {
+				// the commit is running, its versions are removed at its end
+				continue;
+			}
+			if (stamp > horizon) {
+				break;
+			}
+			for (int i = 0; i < commit.versions.size(); i++) {
+				Version version = commit.versions.get(i);
+				FileVersions file = version.file;
+				if (file.remove(version)) {
+					files.remove(file.raFile);
+				}
+				if (version.data != null) {
+					memorySize -= version.length;
+				}
+			}
+			versionCount -= commit.versions.size();
+			iterator.remove();
+		}
+		if (versionCount == 0 && spillChannel != null) {
+			try {
+				spillChannel.close();
+			} catch (IOException e) {
+				// ignore, the file is deleted
+			}
+			spillFile.delete();
+			spillChannel = null;
+			spillFile = null;
+		}
+	}
+
+	/**
+	 * Find the oldest version of a page that a snapshot does not see.
+	 * 
+	 * @param stamp
+	 *            the stamp of the snapshot
+	 * @return the version or null if the snapshot see the current data of the
+	 *         page
+	 */
+	Version find(FileChannel raFile, long filePos, long stamp) {
+		if (files.isEmpty()) {
+			return null;
+		}
+		FileVersions file = files.get(raFile);
+		return file == null ? null : file.find(filePos, stamp);
+	}
+
+	/**
+	 * A commit of a transaction with the versions of the pages that it has
+	 * overwritten.
+	 */
+	public static final class Commit {
+		private final VersionStore store;
+		private final long memoryLimit;
+		/** The saved versions or null if there are no versions. */
+		private ArrayList<Version> versions;
+		/** The stamp on the end of the commit, 0 while it is running. */
+		private volatile long endStamp;
+
+		private Commit(VersionStore store, long memoryLimit) {
+			this.store = store;
+			this.memoryLimit = memoryLimit;
+		}
+
+		/**
+		 * If a snapshot with the stamp see this commit.
+		 */
+		boolean isVisible(long stamp) {
+			long end = endStamp;
+			return end != 0 && end <= stamp;
+		}
+
+		/**
+		 * Save the current data of the row pages that are overwritten and the
+		 * range of the appended pages. The caller hold the lock of the file and
+		 * has already allocated the positions of the new pages.
+		 * 
+		 * @param fileSize
+		 *            the size of the file before the pages are written
+		 */
+		void add(FileChannel raFile, List<StorePage> pages, long fileSize) throws IOException {
+			ArrayList<Version> added = new ArrayList<Version>();
+			long appendEnd = fileSize;
+			for (int i = 0; i < pages.size(); i++) {
+				StorePage page = pages.get(i);
+				if (!(page instanceof TableStorePage)) {
+					// only rows are read with snapshots, the counter of an
+					// identity is saved with a plain page in the table header
+					continue;
+				}
+				long filePos = page.fileOffset;
+				if (filePos >= fileSize) {
+					appendEnd = Math.max(appendEnd, filePos + page.pageSize);
+					continue;
+				}
+				byte[] data = page.cache != null ? page.cache.get(raFile, filePos) : null;
+				if (data == null) {
+					data = StoreImpl.readPageData(raFile, filePos);
+				}
+				if (data != null) {
+					added.add(new Version(this, data, filePos, -1));
+				}
+			}
+			if (appendEnd > fileSize) {
+				added.add(new Version(this, null, fileSize, appendEnd));
+			}
+			if (added.size() > 0) {
+				store.add(this, raFile, added);
+			}
+		}
+	}
+
+	/**
+	 * The view of a transaction or a statement on the committed data.
+	 */
+	public static final class Snapshot {
+		private final VersionStore store;
+		/** The stamp of the last visible commit or -1 for the latest snapshot. */
+		private final long stamp;
+
+		private Snapshot(VersionStore store, long stamp) {
+			this.store = store;
+			this.stamp = stamp;
+		}
+
+		VersionStore getVersionStore() {
+			return store;
+		}
+
+		/**
+		 * Get the stamp of the last commit that is visible for a read that
+		 * start now.
+		 */
+		long getStamp() {
+			return stamp < 0 ? store.endStamp : stamp;
+		}
+
+		/**
+		 * If this snapshot see ever the last ended commits. A read of it must
+		 * be repeated if a commit was ended while the read, because the
+		 * versions of this commit can be removed already.
+		 */
+		public boolean isLatest() {
+			return stamp < 0;
+		}
+
+		/**
+		 * Free this snapshot, the versions that only it need can be removed.
+		 */
+		public void close() {
+			if (stamp >= 0) {
+				store.endSnapshot(this);
+			}
+		}
+	}
+
+	/**
+	 * An old version of a page or a range of appended pages.
+	 */
+	static final class Version {
+		final Commit commit;
+		/**
+		 * The data of the page or null for a range of appended pages and for
+		 * a spilled page.
+		 */
+		volatile byte[] data;
+		/** The size of the data of a page. */
+		final int length;
+		/** The file and the position of the data of a spilled page. */
+		FileChannel spillChannel;
+		long spillPos;
+		/** The position of the page or the start of the range. */
+		final long start;
+		/** The end of the range or -1 for a page. */
+		final long end;
+		/** The next older version of the same page. */
+		volatile Version older;
+		FileVersions file;
+
+		Version(Commit commit, byte[] data, long start, long end) {
+			this.commit = commit;
+			this.data = data;
+			this.length = data == null ? 0 : data.length;
+			this.start = start;
+			this.end = end;
+		}
+
+		boolean isAppended() {
+			return end >= 0;
+		}
+	}
+
+	/**
+	 * The versions of one file. The versions of a page can be read without a
+	 * lock, the ranges of appended pages only with the monitor of this object.
+	 */
+	private static final class FileVersions {
+		final FileChannel raFile;
+		private final ConcurrentHashMap<Long, Version> pages = new ConcurrentHashMap<Long, Version>();
+		/** The ranges of appended pages, sorted by its start. */
+		private final ArrayList<Version> appends = new ArrayList<Version>();
+		/** The start of the first range, a page before it is not in a range. */
+		private volatile long appendStart = Long.MAX_VALUE;
+		private int count;
+
+		FileVersions(FileChannel raFile) {
+			this.raFile = raFile;
+		}
+
+		synchronized void add(Version version) {
+			if (version.isAppended()) {
+				int idx = appends.size();
+				while (idx > 0 && appends.get(idx - 1).start > version.start) {
+					idx--;
+				}
+				appends.add(idx, version);
+				appendStart = appends.get(0).start;
+			} else {
+				Long key = Long.valueOf(version.start);
+				version.older = pages.get(key);
+				pages.put(key, version);
+			}
+			count++;
+		}
+
+		/**
+		 * Remove a version.
+		 * 
+		 * @return true if there are no more versions of this file
+		 */
+		synchronized boolean remove(Version version) {
+			if (version.isAppended()) {
+				appends.remove(version);
+				appendStart = appends.isEmpty() ? Long.MAX_VALUE : appends.get(0).start;
+			} else {
+				Long key = Long.valueOf(version.start);
+				Version head = pages.get(key);
+				if (head == version) {
+					if (version.older == null) {
+						pages.remove(key);
+					} else {
+						pages.put(key, version.older);
+					}
+				} else {
+					for (Version newer = head; newer != null; newer = newer.older) {
+						if (newer.older == version) {
+							newer.older = version.older;
+							break;
+						}
+					}
+				}
+			}
+			return --count == 0;
+		}
+
+		Version find(long filePos, long stamp) {
+			if (filePos >= appendStart) {
+				synchronized (this) {
+					Version range = findAppend(filePos);
+					if (range != null && !range.commit.isVisible(stamp)) {
+						// the page does not exist for the snapshot
+						return range;
+					}
+				}
+			}
+			Version found = null;
+			for (Version version = pages.get(Long.valueOf(filePos)); version != null; version = version.older) {
+				if (!version.commit.isVisible(stamp)) {
+					found = version;
+				}
+			}
+			return found;
+		}
+
+		/**
+		 * Find the range that include the position. Must be called with the
+		 * monitor.
+		 */
+		private Version findAppend(long filePos) {
+			int low = 0;
+			int high = appends.size() - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				Version range = appends.get(mid);
+				if (filePos < range.start) {
+					high = mid - 1;
+				} else if (filePos >= range.end) {
+					low = mid + 1;
+				} else {
+					return range;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,616 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * WriteAheadLog.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.engine.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+import io.leavesfly.smallsql.jdbc.SmallSQLException;
+import io.leavesfly.smallsql.rdb.engine.TransactionStep;
+import io.leavesfly.smallsql.util.Utils;
+
+/**
+ * The sequential log of all page writes of a database. A commit append the
+ * images of all its pages as one record to the log before the pages are
+ * written to the table files. The table files are only synchronized from the
+ * checkpointer, after that the log can be truncated. On opening of the
+ * database the records after the last checkpoint are replayed, a record that
+ * was not written completely is ignored. This makes a commit atomic also if
+ * the process stops while the table files are written.
+ * <p>
+ * A transaction with many changes can spill the data of its pages into the
+ * log before the commit. The record of the commit refers then to the spilled
+ * data and the heap holds only the positions.
+ * <p>
+ * Only the files of tables and LOBs are logged. An index file is marked as
+ * dirty until it is closed and is rebuilt after a crash.
+ */
+public final class WriteAheadLog {
+
+	/** The default count of logged bytes after which the checkpointer runs. */
+	public static final long DEFAULT_CHECKPOINT_SIZE = 16L * 1024 * 1024;
+
+	/** The images of the pages of a commit or of a single page write. */
+	private static final int PAGES = 1;
+	/** The data of a spilled page, it is referenced from a PAGES record. */
+	private static final int DATA = 2;
+	/** The records before a checkpoint are already saved in the table files. */
+	private static final int CHECKPOINT = 3;
+
+	/** The size of the type and the length of a record. */
+	private static final int HEADER_SIZE = 5;
+	/** The size of the checksum at the end of a record. */
+	private static final int TRAILER_SIZE = 4;
+
+	/** The maximum size of one write of spilled pages. */
+	private static final int SPILL_BUFFER_SIZE = 1024 * 1024;
+
+	/** The logged files of all open databases. */
+	private static final Map<FileChannel, LoggedFile> loggedFiles = Collections
+			.synchronizedMap(new WeakHashMap<FileChannel, LoggedFile>());
+
+	private final String name;
+	private final FileChannel channel;
+	private final List<FileChannel> channels;
+	private final long checkpointSize;
+	/** The position of the next record. */
+	private long end;
+	/** The end of the log after the last checkpoint. */
+	private long checkpointEnd;
+	/** The logged files that was written since the last checkpoint. */
+	private final IdentityHashMap<FileChannel, FileChannel> dirtyFiles = new IdentityHashMap<FileChannel, FileChannel>();
+	/** Count of records whose pages are not written to the files yet. */
+	private int writing;
+	/** Count of running transactions with spilled pages. */
+	private int spilling;
+	private Thread checkpointer;
+	private boolean closed;
+
+	private WriteAheadLog(String name, FileChannel channel, long checkpointSize) {
+		this.name = name;
+		this.channel = channel;
+		this.channels = Collections.singletonList(channel);
+		this.checkpointSize = checkpointSize;
+	}
+
+	/**
+	 * Open the log of a database and replay the committed records of a
+	 * previous run that was not finished with a checkpoint.
+	 * 
+	 * @param directory
+	 *            the directory of the database
+	 * @param checkpointSize
+	 *            the count of logged bytes after which the table files are
+	 *            synchronized and the log is truncated
+	 */
+	public static WriteAheadLog open(File directory, long checkpointSize) throws Exception {
+		FileChannel channel = Utils.openRaFile(new File(directory, Utils.LOG_FILENAME), false);
+		WriteAheadLog log = new WriteAheadLog(directory.getName(), channel, checkpointSize);
+		try {
+			log.recover(directory);
+		} catch (Exception e) {
+			channel.close();
+			throw e;
+		}
+		return log;
+	}
+
+	/**
+	 * Register a table or LOB file of the database. All writes of pages of a
+	 * registered file are logged.
+	 */
+	public void register(FileChannel raFile, File file) {
+		loggedFiles.put(raFile, new LoggedFile(this, file.getName()));
+	}
+
+	/**
+	 * Return the log of a registered file.
+	 * 
+	 * @return the log or null if the file is not logged
+	 */
+	static WriteAheadLog getLog(FileChannel raFile) {
+		LoggedFile loggedFile = loggedFiles.get(raFile);
+		return loggedFile == null ? null : loggedFile.log;
+	}
+
+	/**
+	 * The channel of the log as list, for the sync of a commit.
+	 */
+	List<FileChannel> getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Append a record with the images of the pages. The caller hold the locks
+	 * of all files of the pages and write the pages after this call. Pages of
+	 * not registered files are not logged. If a record was appended then
+	 * {@link #written(List)} must be called after the pages are written.
+	 * 
+	 * @param pages
+	 *            the pages with its final file offsets
+	 * @param force
+	 *            if the record should be synchronized before the call returns
+	 * @return true if a record was appended
+	 */
+	boolean append(List<StorePage> pages, boolean force) throws IOException {
+		IdentityHashMap<FileChannel, Integer> fileIds = new IdentityHashMap<FileChannel, Integer>();
+		List<String> fileNames = new ArrayList<String>();
+		List<StorePage> logged = new ArrayList<StorePage>(pages.size());
+		for (int i = 0; i < pages.size(); i++) {
+			StorePage page = pages.get(i);
+			if (fileIds.containsKey(page.raFile)) {
+				logged.add(page);
+				continue;
+			}
+			LoggedFile loggedFile = loggedFiles.get(page.raFile);
+			if (loggedFile != null && loggedFile.log == this) {
+				fileIds.put(page.raFile, Integer.valueOf(fileNames.size()));
+				fileNames.add(loggedFile.name);
+				logged.add(page);
+			}
+		}
+		if (logged.isEmpty()) {
+			return false;
+		}
+		RecordBuffer record = new RecordBuffer(PAGES);
+		DataOutputStream out = new DataOutputStream(record);
+		out.writeInt(fileNames.size());
+		for (int i = 0; i < fileNames.size(); i++) {
+			out.writeUTF(fileNames.get(i));
+		}
+		out.writeInt(logged.size());
+		for (int i = 0; i < logged.size(); i++) {
+			StorePage page = logged.get(i);
+			out.writeInt(fileIds.get(page.raFile).intValue());
+			out.writeLong(page.fileOffset);
+			out.writeInt(page.pageSize);
+			if (page.spillPos >= 0) {
+				out.writeBoolean(true);
+				out.writeLong(page.spillPos);
+			} else {
+				out.writeBoolean(false);
+				out.write(page.page, 0, page.pageSize);
+			}
+		}
+		record.finish();
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			write(record.toBuffer());
+			writing++;
+		}
+		if (force) {
+			channel.force(false);
+		}
+		return true;
+	}
+
+	/**
+	 * Must be called after the pages of an appended record are written to the
+	 * files or the writing has failed.
+	 * 
+	 * @param files
+	 *            the written files
+	 */
+	synchronized void written(List<FileChannel> files) {
+		for (int i = 0; i < files.size(); i++) {
+			FileChannel file = files.get(i);
+			if (loggedFiles.containsKey(file)) {
+				dirtyFiles.put(file, file);
+			}
+		}
+		writing--;
+		notifyAll();
+		if (end - checkpointEnd > checkpointSize && checkpointer == null && !closed) {
+			checkpointer = new Thread(new Checkpointer(), "SmallSQL checkpoint " + name);
+			checkpointer.setDaemon(true);
+			checkpointer.start();
+		}
+	}
+
+	/**
+	 * Write the data of the pages of the transaction steps into the log and
+	 * remove it from the heap. {@link #beginSpill()} must be called before the
+	 * first spill of a transaction.
+	 */
+	public void spill(List<TransactionStep> steps) throws SQLException {
+		List<StorePage> pages = new ArrayList<StorePage>();
+		for (int i = 0; i < steps.size(); i++) {
+			TransactionStep step = steps.get(i);
+			if (step instanceof StorePage) {
+				((StorePage) step).collectSpill(pages);
+			}
+		}
+		try {
+			RecordBuffer buffer = new RecordBuffer();
+			int start = 0;
+			for (int i = 0; i < pages.size(); i++) {
+				StorePage page = pages.get(i);
+				buffer.startRecord(DATA);
+				buffer.write(page.page, 0, page.pageSize);
+				buffer.finish();
+				if (buffer.size() >= SPILL_BUFFER_SIZE || i == pages.size() - 1) {
+					long pos;
+					synchronized (this) {
+						pos = end;
+						write(buffer.toBuffer());
+					}
+					// the data of the records follow its header
+					pos += HEADER_SIZE;
+					for (int p = start; p <= i; p++) {
+						StorePage spilled = pages.get(p);
+						spilled.setSpilled(pos);
+						pos += spilled.pageSize + TRAILER_SIZE + HEADER_SIZE;
+					}
+					buffer.reset();
+					start = i + 1;
+				}
+			}
+		} catch (IOException e) {
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+
+	/**
+	 * Mark the start of a transaction that spill its pages. The log is not
+	 * truncated until {@link #endSpill()} is called.
+	 */
+	public synchronized void beginSpill() {
+		spilling++;
+	}
+
+	/**
+	 * Mark the end of a transaction with spilled pages, after the commit or
+	 * rollback.
+	 */
+	public synchronized void endSpill() {
+		spilling--;
+	}
+
+	/**
+	 * Read the data of a spilled page.
+	 */
+	byte[] read(long pos, int size) throws IOException {
+		byte[] data = new byte[size];
+		readFully(channel, ByteBuffer.wrap(data), pos);
+		return data;
+	}
+
+	/**
+	 * Synchronize all files that was written since the last checkpoint and
+	 * truncate the log. If there are running transactions with spilled pages
+	 * then only a checkpoint record is appended.
+	 */
+	public void checkpoint() throws SQLException {
+		try {
+			synchronized (this) {
+				while (writing > 0) {
+					wait();
+				}
+				if (end == checkpointEnd || !channel.isOpen()) {
+					return;
+				}
+				List<FileChannel> files = new ArrayList<FileChannel>(dirtyFiles.keySet());
+				GroupCommit.force(files);
+				dirtyFiles.clear();
+				if (spilling == 0) {
+					channel.truncate(0);
+					end = 0;
+				} else {
+					write(new RecordBuffer(CHECKPOINT).finish().toBuffer());
+				}
+				channel.force(true);
+				checkpointEnd = end;
+			}
+		} catch (Exception e) {
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+
+	/**
+	 * Stop the checkpointer, synchronize all files and close the log. This is
+	 * called before the files of the database are closed.
+	 */
+	public void close() throws SQLException {
+		Thread thread;
+		synchronized (this) {
+			thread = checkpointer;
+			closed = true;
+			notifyAll();
+		}
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		checkpoint();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw SmallSQLException.createFromException(e);
+		}
+	}
+
+	/**
+	 * Append a buffer with complete records at the end of the log.
+	 */
+	private void write(ByteBuffer buffer) throws IOException {
+		long pos = end;
+		while (buffer.hasRemaining()) {
+			pos += channel.write(buffer, pos);
+		}
+		end = pos;
+	}
+
+	/**
+	 * Replay all complete PAGES records after the last checkpoint and truncate
+	 * the log.
+	 */
+	private void recover(File directory) throws IOException {
+		long size = channel.size();
+		if (size == 0) {
+			return;
+		}
+		List<Long> records = new ArrayList<Long>();
+		long pos = 0;
+		while (true) {
+			int type = readRecordType(pos, size);
+			if (type < 0) {
+				break; // the end or a torn record of a crash
+			}
+			if (type == PAGES) {
+				records.add(Long.valueOf(pos));
+			} else if (type == CHECKPOINT) {
+				records.clear();
+			}
+			pos += HEADER_SIZE + readLength(pos) + TRAILER_SIZE;
+		}
+		HashMap<String, FileChannel> files = new HashMap<String, FileChannel>();
+		try {
+			for (int i = 0; i < records.size(); i++) {
+				long recordPos = records.get(i).longValue();
+				byte[] payload = new byte[readLength(recordPos)];
+				readFully(channel, ByteBuffer.wrap(payload), recordPos + HEADER_SIZE);
+				replay(directory, payload, files);
+			}
+			Iterator<FileChannel> iterator = files.values().iterator();
+			while (iterator.hasNext()) {
+				FileChannel file = iterator.next();
+				if (file != null) {
+					file.force(false);
+				}
+			}
+		} finally {
+			Iterator<FileChannel> iterator = files.values().iterator();
+			while (iterator.hasNext()) {
+				FileChannel file = iterator.next();
+				if (file != null) {
+					try {
+						file.close();
+					} catch (IOException e) {
+						DriverManager.println(e.toString());
+					}
+				}
+			}
+		}
+		channel.truncate(0);
+		channel.force(true);
+	}
+
+	/**
+	 * Write the pages of one PAGES record to the files. A page of a file that
+	 * does not exist anymore is ignored.
+	 */
+	private void replay(File directory, byte[] payload, HashMap<String, FileChannel> files) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		FileChannel[] fileChannels = new FileChannel[in.readInt()];
+		for (int i = 0; i < fileChannels.length; i++) {
+			String fileName = in.readUTF();
+			if (!files.containsKey(fileName)) {
+				File file = new File(directory, fileName);
+				files.put(fileName, file.exists() ? new RandomAccessFile(file, "rw").getChannel() : null);
+			}
+			fileChannels[i] = files.get(fileName);
+		}
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			FileChannel file = fileChannels[in.readInt()];
+			long offset = in.readLong();
+			int pageSize = in.readInt();
+			byte[] data;
+			if (in.readBoolean()) {
+				data = read(in.readLong(), pageSize);
+			} else {
+				data = new byte[pageSize];
+				in.readFully(data);
+			}
+			if (file != null) {
+				ByteBuffer buffer = ByteBuffer.wrap(data);
+				while (buffer.hasRemaining()) {
+					file.write(buffer, offset + buffer.position());
+				}
+				StorePage.incrementWriteCount(file);
+			}
+		}
+	}
+
+	/**
+	 * Read and verify the record at the position.
+	 * 
+	 * @return the type of the record or -1 if there is no complete record
+	 */
+	private int readRecordType(long pos, long size) throws IOException {
+		if (pos + HEADER_SIZE + TRAILER_SIZE > size) {
+			return -1;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		readFully(channel, header, pos);
+		int type = header.get(0);
+		int length = header.getInt(1);
+		if (type < PAGES || type > CHECKPOINT || length < 0 || pos + HEADER_SIZE + length + TRAILER_SIZE > size) {
+			return -1;
+		}
+		ByteBuffer record = ByteBuffer.allocate(length + TRAILER_SIZE);
+		readFully(channel, record, pos + HEADER_SIZE);
+		CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(record.array(), 0, length);
+		return record.getInt(length) == (int) crc.getValue() ? type : -1;
+	}
+
+	private int readLength(long pos) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		readFully(channel, buffer, pos + 1);
+		return buffer.getInt(0);
+	}
+
+	private static void readFully(FileChannel file, ByteBuffer buffer, long pos) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (file.read(buffer, pos + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the write ahead log");
+			}
+		}
+	}
+
+	/**
+	 * A buffer for one or more records. Every record start with its type and
+	 * length and end with a checksum of the type and the data.
+	 */
+	private static final class RecordBuffer extends ByteArrayOutputStream {
+		private int recordStart;
+
+		RecordBuffer() {
+			super(SPILL_BUFFER_SIZE / 16);
+		}
+
+		RecordBuffer(int type) {
+			startRecord(type);
+		}
+
+		void startRecord(int type) {
+			recordStart = count;
+			write(type);
+			// place holder for the length
+			write(0);
+			write(0);
+			write(0);
+			write(0);
+		}
+
+		RecordBuffer finish() {
+			int length = count - recordStart - HEADER_SIZE;
+			ByteBuffer.wrap(buf, recordStart + 1, 4).putInt(length);
+			CRC32 crc = new CRC32();
+			crc.update(buf[recordStart]);
+			crc.update(buf, recordStart + HEADER_SIZE, length);
+			int value = (int) crc.getValue();
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+			return this;
+		}
+
+		ByteBuffer toBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	/**
+	 * The log and the name of a registered file.
+	 */
+	private static final class LoggedFile {
+		final WriteAheadLog log;
+		final String name;
+
+		LoggedFile(WriteAheadLog log, String name) {
+			this.log = log;
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Run a checkpoint every time the log has grown by the checkpoint size.
+	 */
+	private final class Checkpointer implements Runnable {
+
+		public void run() {
+			while (true) {
+				synchronized (WriteAheadLog.this) {
+					try {
+						while (!closed && end - checkpointEnd <= checkpointSize) {
+							WriteAheadLog.this.wait();
+						}
+					} catch (InterruptedException e) {
+						return;
+					}
+					if (closed) {
+						return;
+					}
+				}
+				try {
+					checkpoint();
+				} catch (SQLException e) {
+					DriverManager.println(e.toString());
+					synchronized (WriteAheadLog.this) {
+						try {
+							// try it again later
+							WriteAheadLog.this.wait(1000);
+						} catch (InterruptedException ie) {
+							return;
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -47,6 +47,7 @@ public class Lobs extends Table {
 	public Lobs(Table table) throws Exception {
 		super(table.database, table.name);
 		raFile = Utils.openRaFile(getFile(database), database.isReadOnly());
+		database.registerFile(raFile, getFile(database));
 	}
 
 	/**
@@ -34,16 +34,22 @@
 package io.leavesfly.smallsql.rdb.engine.table;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.leavesfly.smallsql.rdb.engine.View;
 
 /**
+ * The loaded tables and views of a database. Reading is possible without
+ * synchronization. Changes are synchronized on this object by the Database.
+ * 
  * @author Volker Berlin
  */
 public final class TableViewMap {
-	private final HashMap<Object, View> map = new HashMap<Object, View>();
+	private final ConcurrentHashMap<Object, View> map = new ConcurrentHashMap<Object, View>();
+
+	/** The monitors of the names that are currently loading. */
+	private final ConcurrentHashMap<Object, Object> loadLocks = new ConcurrentHashMap<Object, Object>();
 
 	/**
 	 * We save table and vies in a file with the same name. Some OS (like
@@ -76,4 +82,23 @@ public final class TableViewMap {
 	public Collection<View> values() {
 		return map.values();
 	}
+
+	/**
+	 * Get the monitor that must be hold while the table or view with the name
+	 * is loading. Threads that load different names does not block each
+	 * other.
+	 */
+	public Object getLoadLock(String name) {
+		Object key = getUniqueKey(name);
+		Object lock = new Object();
+		Object current = loadLocks.putIfAbsent(key, lock);
+		return current == null ? lock : current;
+	}
+
+	/**
+	 * Remove the monitor after loading if it is not replaced.
+	 */
+	public void removeLoadLock(String name, Object lock) {
+		loadLocks.remove(getUniqueKey(name), lock);
+	}
 }
@@ -32,11 +32,13 @@
  */
 package io.leavesfly.smallsql.rdb.sql;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.sql.*;
 
 import io.leavesfly.smallsql.rdb.command.ddl.CommandCreateDatabase;
 import io.leavesfly.smallsql.rdb.command.ddl.CommandSet;
+import io.leavesfly.smallsql.rdb.command.dml.CommandCopy;
 import io.leavesfly.smallsql.rdb.command.dml.CommandInsert;
 import io.leavesfly.smallsql.rdb.command.dml.CommandUpdate;
 import io.leavesfly.smallsql.rdb.engine.RowSource;
@@ -57,6 +59,7 @@ import io.leavesfly.smallsql.rdb.command.ddl.CommandTable;
 import io.leavesfly.smallsql.rdb.command.dml.CommandDelete;
 import io.leavesfly.smallsql.rdb.command.dql.CommandSelect;
 import io.leavesfly.smallsql.rdb.engine.Database;
+import io.leavesfly.smallsql.rdb.command.StatementCache;
 import io.leavesfly.smallsql.rdb.engine.View;
 import io.leavesfly.smallsql.rdb.engine.index.IndexDescription;
 import io.leavesfly.smallsql.rdb.engine.selector.DataSources;
@@ -157,6 +160,16 @@ public final class SQLParser {
      */
     protected int tokenIdx;
 
+    /**
+     * 语句使用的表和视图，用于判断缓存的命令是否仍然有效
+     */
+    private List<StatementCache.Dependency> dependencies;
+
+    /**
+     * 解析后的命令是否可以放入语句缓存
+     */
+    private boolean cacheable;
+
     /**
      * 解析SQL语句并返回对应的命令对象
      * 
@@ -168,6 +181,8 @@ public final class SQLParser {
     public Command parse(SsConnection con, String sqlString)
             throws SQLException {
         this.con = con;
+        dependencies = new ArrayList<StatementCache.Dependency>();
+        cacheable = false;
         Command cmd = parse(sqlString.toCharArray());
         SQLToken token = nextToken();
         if (token != null) {
@@ -176,6 +191,44 @@ public final class SQLParser {
         return cmd;
     }
 
+    /**
+     * 判断上一次解析的命令是否可以放入语句缓存。只有 SELECT、INSERT、UPDATE 和
+     * DELETE 可以缓存，DDL 语句每次都需要重新解析。
+     *
+     * @return 如果可以缓存则返回 true
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * 获取上一次解析的命令所使用的表和视图
+     *
+     * @return 依赖的表和视图
+     */
+    public StatementCache.Dependency[] getDependencies() {
+        return dependencies.toArray(new StatementCache.Dependency[dependencies.size()]);
+    }
+
+    /**
+     * 记录命令所使用的表。INSERT 在执行时才解析表名，如果表不存在则命令不放入缓存，
+     * 错误在执行时报告。
+     *
+     * @param catalog 数据库名，可以为 null
+     * @param name 表名
+     */
+    private void addDependency(String catalog, String name) {
+        if (dependencies == null) {
+            return;
+        }
+        try {
+            View tableView = Database.getTableView(con, catalog, name);
+            dependencies.add(new StatementCache.Dependency(catalog, name, tableView));
+        } catch (SQLException e) {
+            cacheable = false;
+        }
+    }
+
     /**
      * 解析SQL语句字符数组并返回对应的命令对象
      * 
@@ -191,12 +244,16 @@ public final class SQLParser {
         SQLToken token = nextToken(COMMANDS);
         switch (token.value) {
             case SQLTokenizer.SELECT:
+                cacheable = true;
                 return select();
             case SQLTokenizer.DELETE:
+                cacheable = true;
                 return delete();
             case SQLTokenizer.INSERT:
+                cacheable = true;
                 return insert();
             case SQLTokenizer.UPDATE:
+                cacheable = true;
                 return update();
             case SQLTokenizer.CREATE:
                 return create();
@@ -217,6 +274,10 @@ public final class SQLParser {
                 return execute();
             case SQLTokenizer.TRUNCATE:
                 return truncate();
+            case SQLTokenizer.COMPACT:
+                return compact();
+            case SQLTokenizer.COPY:
+                return copy();
             default:
                 throw new Error();
         }
@@ -646,6 +707,79 @@ public final class SQLParser {
         return cmd;
     }
 
+    /**
+     * 解析COMPACT TABLE语句，重写表文件并移除已删除的行
+     * 
+     * @return CommandTable对象
+     * @throws SQLException SQL异常
+     */
+    private Command compact() throws SQLException {
+        nextToken(MISSING_TABLE);
+        String catalog;
+        String tableName = catalog = nextIdentifier();
+        tableName = nextIdentiferPart(tableName);
+        if (tableName == catalog)
+            catalog = null;
+        return new CommandTable(con.log, catalog, tableName, SQLTokenizer.COMPACT);
+    }
+
+    /**
+     * 解析COPY语句，把CSV或二进制文件的行批量加载到表中：
+     * COPY table [(column, ...)] FROM 'file' [CSV | BINARY] [DELIMITER 'char'] [HEADER] [MINIMAL_LOGGING]
+     * 
+     * @return CommandCopy对象
+     * @throws SQLException SQL异常
+     */
+    private Command copy() throws SQLException {
+        String catalog;
+        String tableName = catalog = nextIdentifier();
+        tableName = nextIdentiferPart(tableName);
+        if (tableName == catalog)
+            catalog = null;
+        Strings columns = null;
+        SQLToken token = nextToken(MISSING_PARENTHESIS_L_FROM);
+        if (token.value == SQLTokenizer.PARENTHESIS_L) {
+            columns = new Strings();
+            do {
+                columns.add(nextIdentifier());
+                token = nextToken(MISSING_COMMA_PARENTHESIS);
+            } while (token.value == SQLTokenizer.COMMA);
+            nextToken(MISSING_FROM);
+        }
+        token = nextToken(MISSING_EXPRESSION);
+        if (token.value != SQLTokenizer.STRING) {
+            throw createSyntaxError(token, MISSING_EXPRESSION);
+        }
+        CommandCopy cmd = new CommandCopy(con.log, catalog, tableName, token.getName(null));
+        cmd.columns = columns;
+        // 选项可以按任意顺序出现
+        while ((token = nextToken()) != null) {
+            if (token.value == SQLTokenizer.BINARY) {
+                cmd.binary = true;
+                continue;
+            }
+            String option = token.value == SQLTokenizer.IDENTIFIER || token.value == SQLTokenizer.VALUE ? token
+                    .getName(sql) : "";
+            if ("CSV".equalsIgnoreCase(option)) {
+                cmd.binary = false;
+            } else if ("HEADER".equalsIgnoreCase(option)) {
+                cmd.header = true;
+            } else if ("MINIMAL_LOGGING".equalsIgnoreCase(option)) {
+                cmd.minimalLogging = true;
+            } else if ("DELIMITER".equalsIgnoreCase(option)) {
+                token = nextToken(MISSING_EXPRESSION);
+                if (token.value != SQLTokenizer.STRING || token.getName(null).length() != 1) {
+                    throw createSyntaxError(token, MISSING_EXPRESSION);
+                }
+                cmd.delimiter = token.getName(null).charAt(0);
+            } else {
+                previousToken();
+                break;
+            }
+        }
+        return cmd;
+    }
+
     /**
      * 解析INSERT语句
      * 
@@ -655,6 +789,7 @@ public final class SQLParser {
     private Command insert() throws SQLException {
         SQLToken token = nextToken(MISSING_INTO);
         CommandInsert cmd = new CommandInsert(con.log, nextIdentifier());
+        addDependency(null, cmd.name);
 
         int parthesisCount = 0;
 
@@ -2196,6 +2331,9 @@ public final class SQLParser {
         // TableResult table = new TableResult();
         // table.setName( catalog, name );
         View tableView = Database.getTableView(con, catalog, name);
+        if (dependencies != null) {
+            dependencies.add(new StatementCache.Dependency(catalog, name, tableView));
+        }
         TableViewResult table = TableViewResult.createResult(tableView);
         tables.add(table);
 
@@ -2418,7 +2556,7 @@ public final class SQLParser {
             SQLTokenizer.DELETE, SQLTokenizer.INSERT, SQLTokenizer.UPDATE,
             SQLTokenizer.CREATE, SQLTokenizer.DROP, SQLTokenizer.ALTER,
             SQLTokenizer.SET, SQLTokenizer.USE, SQLTokenizer.EXECUTE,
-            SQLTokenizer.TRUNCATE};
+            SQLTokenizer.TRUNCATE, SQLTokenizer.COMPACT, SQLTokenizer.COPY};
     private static final int[] COMMANDS_ESCAPE = {SQLTokenizer.D,
             SQLTokenizer.T, SQLTokenizer.TS, SQLTokenizer.FN, SQLTokenizer.CALL};
     private static final int[] COMMANDS_ALTER = {SQLTokenizer.DATABASE,
@@ -2480,6 +2618,8 @@ public final class SQLParser {
             SQLTokenizer.FROM, SQLTokenizer.GROUP, SQLTokenizer.HAVING,
             SQLTokenizer.ORDER};
     private static final int[] MISSING_FROM = {SQLTokenizer.FROM};
+    private static final int[] MISSING_PARENTHESIS_L_FROM = {
+            SQLTokenizer.PARENTHESIS_L, SQLTokenizer.FROM};
     private static final int[] MISSING_SET = {SQLTokenizer.SET};
     private static final int[] MISSING_EQUALS = {SQLTokenizer.EQUALS};
     private static final int[] MISSING_WHERE = {SQLTokenizer.WHERE};
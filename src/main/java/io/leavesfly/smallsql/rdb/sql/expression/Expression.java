@@ -35,6 +35,7 @@ package io.leavesfly.smallsql.rdb.sql.expression;
 import java.sql.SQLException;
 
 import io.leavesfly.smallsql.jdbc.metadata.SsResultSetMetaData;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.rdb.sql.datatype.Mutable;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
@@ -171,6 +172,17 @@ public abstract class Expression implements Cloneable {
 
     public abstract byte[] getBytes() throws Exception;
 
+    /**
+     * Get a reference to a LOB value of a table that can be read as stream
+     * without loading the complete value.
+     *
+     * @return the reference or null if the value is NULL or not a LOB column
+     *         of a table
+     */
+    public LobLocator getLob() throws Exception {
+        return null;
+    }
+
     public abstract int getDataType();
 
     public final int getType() {
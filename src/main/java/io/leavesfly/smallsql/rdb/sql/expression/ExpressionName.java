@@ -35,6 +35,7 @@ package io.leavesfly.smallsql.rdb.sql.expression;
 import io.leavesfly.smallsql.rdb.engine.table.Column;
 import io.leavesfly.smallsql.rdb.engine.View;
 import io.leavesfly.smallsql.rdb.engine.selector.DataSource;
+import io.leavesfly.smallsql.rdb.engine.store.LobLocator;
 import io.leavesfly.smallsql.rdb.sql.datatype.MutableNumeric;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 
@@ -125,6 +126,10 @@ public class ExpressionName extends Expression {
 		return fromEntry.getBytes(colIdx);
 	}
 
+	public LobLocator getLob() throws Exception {
+		return fromEntry.getLob(colIdx);
+	}
+
 	public int getDataType() {
 		switch (getType()) {
 		case NAME:
@@ -32,6 +32,10 @@
  */
 package io.leavesfly.smallsql.rdb.sql.expression;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.sql.*;
 
@@ -39,6 +43,7 @@ import io.leavesfly.smallsql.jdbc.SmallSQLException;
 import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
 import io.leavesfly.smallsql.util.Utils;
 import io.leavesfly.smallsql.lang.Language;
+import io.leavesfly.smallsql.rdb.engine.selector.RowBatch;
 import io.leavesfly.smallsql.rdb.sql.datatype.DateTime;
 import io.leavesfly.smallsql.rdb.sql.datatype.Identity;
 import io.leavesfly.smallsql.rdb.sql.datatype.Money;
@@ -52,7 +57,8 @@ public class ExpressionValue extends Expression {
 
 	private Object value;
 	private int dataType;
-	private int length;
+	/** The length of a stream parameter or -1 if the stream is read to its end. */
+	private long length = -1;
 
 	/**
 	 * Constructor is used from PreparedStatement parameters ( '?' in sql
@@ -290,6 +296,268 @@ public class ExpressionValue extends Expression {
 		}
 	}
 
+	/**
+	 * Accumulate the values of some selected rows of a batch. The result is the
+	 * same as a call of accumulate(Expression) on every row. The batch column
+	 * must contain the values of the parameter of the aggregate function or
+	 * the value of the GROUP BY expression.
+	 * 
+	 * @param batch
+	 *            the values of the rows
+	 * @param col
+	 *            the column in the batch or -1 for a constant that is not NULL
+	 *            as parameter of COUNT
+	 * @param from
+	 *            the first index in the selection of the batch
+	 * @param to
+	 *            the index after the last index in the selection
+	 */
+	public void accumulate(RowBatch batch, int col, int from, int to) throws Exception {
+		if (from >= to) {
+			return;
+		}
+		int[] rows = batch.getSelection();
+		switch (getType()) {
+		case GROUP_BY:
+			if (isEmpty())
+				set(batch.getObject(col, rows[from]), batch.getDataType(col));
+			break;
+		case COUNT: {
+			int count = to - from;
+			if (col >= 0 && !batch.hasNoNulls(col)) {
+				for (int i = from; i < to; i++) {
+					if (batch.isNull(col, rows[i]))
+						count--;
+				}
+			}
+			((MutableInteger) value).value += count;
+			break;
+		}
+		case SUM:
+			if (isEmpty()) {
+				initValue(batch, col, rows[from++]);
+			}
+			switch (dataType) {
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT: {
+				long[] values = batch.getLongs(col);
+				int sum = ((MutableInteger) value).value;
+				for (int i = from; i < to; i++)
+					sum += (int) values[rows[i]];
+				((MutableInteger) value).value = sum;
+				break;
+			}
+			case SQLTokenizer.BIGINT: {
+				long[] values = batch.getLongs(col);
+				long sum = ((MutableLong) value).value;
+				for (int i = from; i < to; i++)
+					sum += values[rows[i]];
+				((MutableLong) value).value = sum;
+				break;
+			}
+			case SQLTokenizer.REAL: {
+				double[] values = batch.getDoubles(col);
+				float sum = ((MutableFloat) value).value;
+				for (int i = from; i < to; i++)
+					sum += (float) values[rows[i]];
+				((MutableFloat) value).value = sum;
+				break;
+			}
+			default: {
+				double[] values = batch.getDoubles(col);
+				double sum = ((MutableDouble) value).value;
+				for (int i = from; i < to; i++)
+					sum += values[rows[i]];
+				((MutableDouble) value).value = sum;
+			}
+			}
+			break;
+		case MAX:
+		case MIN: {
+			boolean isMax = getType() == MAX;
+			if (value == null) {
+				while (from < to && batch.isNull(col, rows[from]))
+					from++;
+				if (from == to) {
+					dataType = batch.getDataType(col);
+					break;
+				}
+				initValue(batch, col, rows[from++]);
+			}
+			boolean hasNulls = !batch.hasNoNulls(col);
+			switch (dataType) {
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT: {
+				long[] values = batch.getLongs(col);
+				int result = ((MutableInteger) value).value;
+				for (int i = from; i < to; i++) {
+					int row = rows[i];
+					if (hasNulls && batch.isNull(col, row))
+						continue;
+					int v = (int) values[row];
+					result = isMax ? Math.max(result, v) : Math.min(result, v);
+				}
+				((MutableInteger) value).value = result;
+				break;
+			}
+			case SQLTokenizer.BIGINT: {
+				long[] values = batch.getLongs(col);
+				long result = ((MutableLong) value).value;
+				for (int i = from; i < to; i++) {
+					int row = rows[i];
+					if (hasNulls && batch.isNull(col, row))
+						continue;
+					long v = values[row];
+					result = isMax ? Math.max(result, v) : Math.min(result, v);
+				}
+				((MutableLong) value).value = result;
+				break;
+			}
+			case SQLTokenizer.REAL: {
+				double[] values = batch.getDoubles(col);
+				float result = ((MutableFloat) value).value;
+				for (int i = from; i < to; i++) {
+					int row = rows[i];
+					if (hasNulls && batch.isNull(col, row))
+						continue;
+					float v = (float) values[row];
+					result = isMax ? Math.max(result, v) : Math.min(result, v);
+				}
+				((MutableFloat) value).value = result;
+				break;
+			}
+			default: {
+				double[] values = batch.getDoubles(col);
+				double result = ((MutableDouble) value).value;
+				for (int i = from; i < to; i++) {
+					int row = rows[i];
+					if (hasNulls && batch.isNull(col, row))
+						continue;
+					double v = values[row];
+					result = isMax ? Math.max(result, v) : Math.min(result, v);
+				}
+				((MutableDouble) value).value = result;
+			}
+			}
+			break;
+		}
+		default:
+			throw new Error();
+		}
+	}
+
+	/**
+	 * Merge the partial result of the same aggregate function over other rows
+	 * into this value. This is used for the partitions of a parallel scan. Only
+	 * the value types of accumulate(RowBatch, int, int, int) are supported.
+	 * The value of the partial result can be taken over.
+	 */
+	public void merge(ExpressionValue partial) {
+		switch (getType()) {
+		case GROUP_BY:
+			if (isEmpty()) {
+				value = partial.value;
+				dataType = partial.dataType;
+			}
+			break;
+		case COUNT:
+			((MutableInteger) value).value += ((MutableInteger) partial.value).value;
+			break;
+		case SUM:
+			if (partial.isEmpty())
+				break;
+			if (isEmpty()) {
+				value = partial.value;
+				dataType = partial.dataType;
+				break;
+			}
+			switch (dataType) {
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT:
+				((MutableInteger) value).value += ((MutableInteger) partial.value).value;
+				break;
+			case SQLTokenizer.BIGINT:
+				((MutableLong) value).value += ((MutableLong) partial.value).value;
+				break;
+			case SQLTokenizer.REAL:
+				((MutableFloat) value).value += ((MutableFloat) partial.value).value;
+				break;
+			default:
+				((MutableDouble) value).value += ((MutableDouble) partial.value).value;
+			}
+			break;
+		case MAX:
+		case MIN: {
+			if (partial.value == null) {
+				if (value == null && partial.dataType != 0)
+					dataType = partial.dataType; // only NULL values
+				break;
+			}
+			if (value == null) {
+				value = partial.value;
+				dataType = partial.dataType;
+				break;
+			}
+			boolean isMax = getType() == MAX;
+			switch (dataType) {
+			case SQLTokenizer.TINYINT:
+			case SQLTokenizer.SMALLINT:
+			case SQLTokenizer.INT: {
+				int v = ((MutableInteger) partial.value).value;
+				MutableInteger result = (MutableInteger) value;
+				result.value = isMax ? Math.max(result.value, v) : Math.min(result.value, v);
+				break;
+			}
+			case SQLTokenizer.BIGINT: {
+				long v = ((MutableLong) partial.value).value;
+				MutableLong result = (MutableLong) value;
+				result.value = isMax ? Math.max(result.value, v) : Math.min(result.value, v);
+				break;
+			}
+			case SQLTokenizer.REAL: {
+				float v = ((MutableFloat) partial.value).value;
+				MutableFloat result = (MutableFloat) value;
+				result.value = isMax ? Math.max(result.value, v) : Math.min(result.value, v);
+				break;
+			}
+			default: {
+				double v = ((MutableDouble) partial.value).value;
+				MutableDouble result = (MutableDouble) value;
+				result.value = isMax ? Math.max(result.value, v) : Math.min(result.value, v);
+			}
+			}
+			break;
+		}
+		default:
+			throw new Error();
+		}
+	}
+
+	/**
+	 * Init a summary field with a Mutable from the value of a batch row.
+	 */
+	private void initValue(RowBatch batch, int col, int row) {
+		dataType = batch.getDataType(col);
+		switch (dataType) {
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+			value = new MutableInteger((int) batch.getLongs(col)[row]);
+			break;
+		case SQLTokenizer.BIGINT:
+			value = new MutableLong(batch.getLongs(col)[row]);
+			break;
+		case SQLTokenizer.REAL:
+			value = new MutableFloat((float) batch.getDoubles(col)[row]);
+			break;
+		default:
+			value = new MutableDouble(batch.getDoubles(col)[row]);
+		}
+	}
+
 	/**
 	 * Init a summary field with a Mutable
 	 * 
@@ -351,11 +619,36 @@ public class ExpressionValue extends Expression {
 		value = EMPTY;
 	}
 
-	public final void set(Object value, int _dataType, int length) throws SQLException {
+	/**
+	 * Set the value of a stream parameter. The value is an InputStream or a
+	 * Reader that is read on saving to a LOB column or if the value is needed.
+	 * 
+	 * @param length
+	 *            the count of bytes or characters of the stream or -1 to read
+	 *            the stream to its end
+	 */
+	public final void set(Object value, int _dataType, long length) throws SQLException {
 		set(value, _dataType);
 		this.length = length;
 	}
 
+	/**
+	 * Get the unread stream of a stream parameter.
+	 * 
+	 * @return the InputStream or Reader or null if the value is not a stream
+	 * @see #getStreamLength()
+	 */
+	public final Object getStream() {
+		return (value instanceof InputStream || value instanceof Reader) ? value : null;
+	}
+
+	/**
+	 * The length of the stream of getStream() or -1 if it is unknown.
+	 */
+	public final long getStreamLength() {
+		return length;
+	}
+
 	/**
 	 * 
 	 * @param newValue
@@ -370,6 +663,7 @@ public class ExpressionValue extends Expression {
 	public final void set(Object newValue, int newDataType) throws SQLException {
 		this.value = newValue;
 		this.dataType = newDataType;
+		this.length = -1;
 		if (dataType < 0) {
 			if (newValue == null)
 				this.dataType = SQLTokenizer.NULL;
@@ -399,6 +693,10 @@ public class ExpressionValue extends Expression {
 				this.dataType = SQLTokenizer.BOOLEAN;
 			else if (newValue instanceof Money)
 				this.dataType = SQLTokenizer.MONEY;
+			else if (newValue instanceof InputStream)
+				this.dataType = SQLTokenizer.LONGVARBINARY;
+			else if (newValue instanceof Reader)
+				this.dataType = SQLTokenizer.LONGVARCHAR;
 			else
 				throw SmallSQLException.create(Language.PARAM_CLASS_UNKNOWN, newValue.getClass().getName());
 		}
@@ -418,7 +716,8 @@ public class ExpressionValue extends Expression {
 	 */
 
 	public boolean isNull() {
-		return getObject() == null;
+		// does not use getObject() that a stream is not read
+		return value == EMPTY || value == null;
 	}
 
 	public boolean getBoolean() throws Exception {
@@ -600,7 +899,7 @@ public class ExpressionValue extends Expression {
 		}
 	}
 
-	public MutableNumeric getNumeric() {
+	public MutableNumeric getNumeric() throws Exception {
 		return getNumeric(getObject(), dataType);
 	}
 
@@ -638,14 +937,67 @@ public class ExpressionValue extends Expression {
 		}
 	}
 
-	public Object getObject() {
+	public Object getObject() throws Exception {
 		if (isEmpty()) {
 			return null;
 		}
+		if (getStream() != null) {
+			readStream();
+		}
 		return value;
 	}
 
-	public String getString() {
+	/**
+	 * Replace the stream of a stream parameter with its content as String or
+	 * byte array.
+	 */
+	private void readStream() throws IOException {
+		boolean binary;
+		switch (dataType) {
+		case SQLTokenizer.BINARY:
+		case SQLTokenizer.VARBINARY:
+		case SQLTokenizer.LONGVARBINARY:
+		case SQLTokenizer.BLOB:
+			binary = true;
+			break;
+		default:
+			binary = false;
+		}
+		if (value instanceof Reader) {
+			Reader reader = (Reader) value;
+			StringBuilder builder = new StringBuilder();
+			char[] buffer = new char[8192];
+			long rest = length;
+			while (rest != 0) {
+				int count = reader.read(buffer, 0, rest < 0 ? buffer.length : (int) Math.min(buffer.length, rest));
+				if (count < 0) {
+					break;
+				}
+				builder.append(buffer, 0, count);
+				rest -= count;
+			}
+			String str = builder.toString();
+			value = binary ? str.getBytes() : str;
+		} else {
+			InputStream input = (InputStream) value;
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			long rest = length;
+			while (rest != 0) {
+				int count = input.read(buffer, 0, rest < 0 ? buffer.length : (int) Math.min(buffer.length, rest));
+				if (count < 0) {
+					break;
+				}
+				bytes.write(buffer, 0, count);
+				rest -= count;
+			}
+			// a stream for a character type is an ASCII stream
+			value = binary ? bytes.toByteArray() : new String(bytes.toByteArray(), "ISO-8859-1");
+		}
+		length = -1;
+	}
+
+	public String getString() throws Exception {
 		Object obj = getObject();
 		if (obj == null)
 			return null;
@@ -666,11 +1018,16 @@ public class ExpressionValue extends Expression {
 		case SQLTokenizer.BINARY:
 		case SQLTokenizer.VARBINARY:
 		case SQLTokenizer.LONGVARBINARY:
+		case SQLTokenizer.BLOB:
 			return (byte[]) obj;
 		case SQLTokenizer.VARCHAR:
 		case SQLTokenizer.CHAR:
 		case SQLTokenizer.NVARCHAR:
 		case SQLTokenizer.NCHAR:
+		case SQLTokenizer.LONGVARCHAR:
+		case SQLTokenizer.LONGNVARCHAR:
+		case SQLTokenizer.CLOB:
+		case SQLTokenizer.NCLOB:
 			return ((String) obj).getBytes();
 		case SQLTokenizer.UNIQUEIDENTIFIER:
 			return Utils.unique2bytes((String) obj);
@@ -718,7 +1075,7 @@ public class ExpressionValue extends Expression {
 		switch (dataType) {
 		case SQLTokenizer.DECIMAL:
 		case SQLTokenizer.NUMERIC:
-			MutableNumeric obj = getNumeric();
+			MutableNumeric obj = getNumeric(isEmpty() ? null : value, dataType);
 			return (obj == null) ? 0 : obj.getScale();
 		default:
 			return getScale(dataType);
@@ -0,0 +1,848 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * Evaluator.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.rdb.sql.expression.operator;
+
+import io.leavesfly.smallsql.rdb.engine.selector.DataSource;
+import io.leavesfly.smallsql.rdb.sql.expression.Expression;
+import io.leavesfly.smallsql.rdb.sql.expression.ExpressionName;
+import io.leavesfly.smallsql.rdb.sql.parser.SQLTokenizer;
+
+/**
+ * The compiled form of a condition. The data types of the arithmetic and
+ * comparison nodes are resolved once on compile and every node is replaced
+ * with an evaluator that is specialized for its data type. A node calculate
+ * its value and its NULL flag in one pass. There is no switch over the data
+ * type and no second walk over the subtree for isNull() on every row.
+ * <p>
+ * Nodes of other data types, functions and sub queries are wrapped and
+ * evaluated with the methods of Expression. The result of getBoolean() is the
+ * same as from Expression.getBoolean() of the condition.
+ * <p>
+ * The data types of parameters can change with every execute. An Evaluator
+ * must be compiled again for every execute.
+ */
+public abstract class Evaluator {
+
+	/**
+	 * Verify the condition for the current row.
+	 */
+	public abstract boolean getBoolean() throws Exception;
+
+	/**
+	 * Compile a condition.
+	 *
+	 * @param expr
+	 *            a linked condition, the parameters must be set
+	 * @return the evaluator, never null
+	 */
+	public static Evaluator compile(Expression expr) {
+		if (!isArithmetic(expr)) {
+			return compileValue(expr);
+		}
+		int operation = ((ExpressionArithmetic) expr).getOperation();
+		Expression[] params = expr.getParams();
+		switch (operation) {
+		case ExpressionArithmetic.AND:
+			return new And(compile(params[0]), compile(params[1]));
+		case ExpressionArithmetic.OR:
+			return new Or(compile(params[0]), compile(params[1]));
+		case ExpressionArithmetic.NOT:
+			return new Not(compile(params[0]));
+		case ExpressionArithmetic.ISNULL:
+		case ExpressionArithmetic.ISNOTNULL:
+			return new IsNull(compileLeaf(params[0]), operation == ExpressionArithmetic.ISNOTNULL);
+		case ExpressionArithmetic.EQUALS:
+		case ExpressionArithmetic.EQUALS_NULL:
+		case ExpressionArithmetic.UNEQUALS:
+		case ExpressionArithmetic.GREATER:
+		case ExpressionArithmetic.GRE_EQU:
+		case ExpressionArithmetic.LESSER:
+		case ExpressionArithmetic.LES_EQU:
+		case ExpressionArithmetic.BETWEEN: {
+			int compareType = getCompareType(params[0], params[1]);
+			if (compareType == 0) {
+				break;
+			}
+			Value right2 = operation == ExpressionArithmetic.BETWEEN ? compileValue(params[2]) : null;
+			return new Compare(operation, compareType, compileValue(params[0]), compileValue(params[1]), right2);
+		}
+		case ExpressionArithmetic.IN: {
+			if (params.length < 2) {
+				break;
+			}
+			// all values of the list must be compared with the same data type
+			int compareType = getCompareType(params[0], params[1]);
+			Value[] list = new Value[params.length - 1];
+			for (int i = 1; i < params.length && compareType != 0; i++) {
+				if (getCompareType(params[0], params[i]) != compareType) {
+					compareType = 0;
+				}
+				list[i - 1] = compileValue(params[i]);
+			}
+			if (compareType == 0) {
+				break;
+			}
+			return new In(compareType, compileValue(params[0]), list);
+		}
+		default:
+			return compileValue(expr);
+		}
+		return new Leaf(expr);
+	}
+
+	/**
+	 * Compile an expression that return a value. Only arithmetic of numeric
+	 * data types is compiled.
+	 */
+	static Value compileValue(Expression expr) {
+		if (!isArithmetic(expr)) {
+			return compileLeaf(expr);
+		}
+		int operation = ((ExpressionArithmetic) expr).getOperation();
+		Expression[] params = expr.getParams();
+		switch (operation) {
+		case ExpressionArithmetic.ADD:
+		case ExpressionArithmetic.SUB:
+		case ExpressionArithmetic.MUL:
+		case ExpressionArithmetic.DIV:
+		case ExpressionArithmetic.MOD:
+			if (!isNumeric(params[0].getDataType()) || !isNumeric(params[1].getDataType())) {
+				break;
+			}
+			return createArithmetic(expr.getDataType(), operation, compileValue(params[0]), compileValue(params[1]));
+		case ExpressionArithmetic.NEGATIVE:
+			if (!isNumeric(params[0].getDataType())) {
+				break;
+			}
+			return createArithmetic(expr.getDataType(), operation, compileValue(params[0]), null);
+		}
+		return new Leaf(expr);
+	}
+
+	/**
+	 * Compile an expression without looking into its parameters.
+	 */
+	private static Value compileLeaf(Expression expr) {
+		if (expr.getType() == Expression.NAME && expr instanceof ExpressionName) {
+			ExpressionName name = (ExpressionName) expr;
+			return new Column(name.getDataSource(), name.getColumnIndex());
+		}
+		return new Leaf(expr);
+	}
+
+	private static boolean isArithmetic(Expression expr) {
+		return expr instanceof ExpressionArithmetic && !(expr instanceof ExpressionInSelect);
+	}
+
+	private static Value createArithmetic(int dataType, int operation, Value left, Value right) {
+		switch (dataType) {
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+			return new IntArithmetic(operation, left, right);
+		case SQLTokenizer.BIGINT:
+			return new LongArithmetic(operation, left, right);
+		case SQLTokenizer.REAL:
+			return new FloatArithmetic(operation, left, right);
+		default:
+			return new DoubleArithmetic(operation, left, right);
+		}
+	}
+
+	private static boolean isNumeric(int dataType) {
+		switch (dataType) {
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+		case SQLTokenizer.BIGINT:
+		case SQLTokenizer.REAL:
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Get the data type that is used to compare two values like in
+	 * ExpressionArithmetic.getBoolean().
+	 *
+	 * Also used for the keys of a hash join.
+	 *
+	 * @return INT, BIGINT, REAL, DOUBLE, VARCHAR or 0 if the comparison is not
+	 *         compiled
+	 */
+	public static int getCompareType(Expression left, Expression right) {
+		int typeLeft = left.getDataType();
+		int typeRight = right.getDataType();
+		if (typeLeft == SQLTokenizer.NULL || typeRight == SQLTokenizer.NULL) {
+			return 0;
+		}
+		switch (ExpressionArithmetic.getDataType(typeLeft, typeRight)) {
+		case SQLTokenizer.TINYINT:
+		case SQLTokenizer.SMALLINT:
+		case SQLTokenizer.INT:
+			return SQLTokenizer.INT;
+		case SQLTokenizer.BIGINT:
+		case SQLTokenizer.TIMESTAMP:
+		case SQLTokenizer.TIME:
+		case SQLTokenizer.DATE:
+		case SQLTokenizer.SMALLDATETIME:
+			return SQLTokenizer.BIGINT;
+		case SQLTokenizer.REAL:
+			return SQLTokenizer.REAL;
+		case SQLTokenizer.FLOAT:
+		case SQLTokenizer.DOUBLE:
+			return SQLTokenizer.DOUBLE;
+		case SQLTokenizer.VARCHAR:
+		case SQLTokenizer.NVARCHAR:
+		case SQLTokenizer.CHAR:
+		case SQLTokenizer.NCHAR:
+		case SQLTokenizer.LONGVARCHAR:
+		case SQLTokenizer.LONGNVARCHAR:
+		case SQLTokenizer.CLOB:
+			return SQLTokenizer.VARCHAR;
+		default:
+			return 0;
+		}
+	}
+
+	/**
+	 * An evaluator that return a value. The getter methods set the flag isNull.
+	 * The value of NULL is 0 or null. The conversions between the numeric
+	 * types are the same as in ExpressionArithmetic.
+	 */
+	static abstract class Value extends Evaluator {
+
+		/** If the value of the last getter call was NULL. */
+		boolean isNull;
+
+		abstract int getInt() throws Exception;
+
+		abstract long getLong() throws Exception;
+
+		abstract float getFloat() throws Exception;
+
+		abstract double getDouble() throws Exception;
+
+		String getString() throws Exception {
+			throw new Error();
+		}
+
+		/**
+		 * Verify if the value is NULL without calculating it.
+		 */
+		abstract boolean isNullValue() throws Exception;
+	}
+
+	/**
+	 * A not compiled expression.
+	 */
+	private static final class Leaf extends Value {
+
+		private final Expression expr;
+
+		Leaf(Expression expr) {
+			this.expr = expr;
+		}
+
+		public boolean getBoolean() throws Exception {
+			return expr.getBoolean();
+		}
+
+		int getInt() throws Exception {
+			return (isNull = expr.isNull()) ? 0 : expr.getInt();
+		}
+
+		long getLong() throws Exception {
+			return (isNull = expr.isNull()) ? 0 : expr.getLong();
+		}
+
+		float getFloat() throws Exception {
+			return (isNull = expr.isNull()) ? 0 : expr.getFloat();
+		}
+
+		double getDouble() throws Exception {
+			return (isNull = expr.isNull()) ? 0 : expr.getDouble();
+		}
+
+		String getString() throws Exception {
+			return (isNull = expr.isNull()) ? null : expr.getString();
+		}
+
+		boolean isNullValue() throws Exception {
+			return expr.isNull();
+		}
+	}
+
+	/**
+	 * A column that is read direct from its DataSource.
+	 */
+	private static final class Column extends Value {
+
+		private final DataSource source;
+		private final int colIdx;
+
+		Column(DataSource source, int colIdx) {
+			this.source = source;
+			this.colIdx = colIdx;
+		}
+
+		public boolean getBoolean() throws Exception {
+			return source.getBoolean(colIdx);
+		}
+
+		int getInt() throws Exception {
+			return (isNull = source.isNull(colIdx)) ? 0 : source.getInt(colIdx);
+		}
+
+		long getLong() throws Exception {
+			return (isNull = source.isNull(colIdx)) ? 0 : source.getLong(colIdx);
+		}
+
+		float getFloat() throws Exception {
+			return (isNull = source.isNull(colIdx)) ? 0 : source.getFloat(colIdx);
+		}
+
+		double getDouble() throws Exception {
+			return (isNull = source.isNull(colIdx)) ? 0 : source.getDouble(colIdx);
+		}
+
+		String getString() throws Exception {
+			return (isNull = source.isNull(colIdx)) ? null : source.getString(colIdx);
+		}
+
+		boolean isNullValue() throws Exception {
+			return source.isNull(colIdx);
+		}
+	}
+
+	/**
+	 * Base of the arithmetic operations. The right operand is null for
+	 * NEGATIVE. If an operand is NULL then the following operands are not
+	 * calculated.
+	 */
+	private static abstract class Arithmetic extends Value {
+
+		final int operation;
+		final Value left;
+		final Value right;
+
+		Arithmetic(int operation, Value left, Value right) {
+			this.operation = operation;
+			this.left = left;
+			this.right = right;
+		}
+
+		boolean isNullValue() throws Exception {
+			return left.isNullValue() || (right != null && right.isNullValue());
+		}
+	}
+
+	private static final class IntArithmetic extends Arithmetic {
+
+		IntArithmetic(int operation, Value left, Value right) {
+			super(operation, left, right);
+		}
+
+		public boolean getBoolean() throws Exception {
+			return getInt() != 0;
+		}
+
+		int getInt() throws Exception {
+			int lVal = left.getInt();
+			if (isNull = left.isNull) {
+				return 0;
+			}
+			if (operation == ExpressionArithmetic.NEGATIVE) {
+				isNull = false;
+				return -lVal;
+			}
+			int rVal = right.getInt();
+			if (isNull = right.isNull) {
+				return 0;
+			}
+			switch (operation) {
+			case ExpressionArithmetic.ADD:
+				return lVal + rVal;
+			case ExpressionArithmetic.SUB:
+				return lVal - rVal;
+			case ExpressionArithmetic.MUL:
+				return lVal * rVal;
+			case ExpressionArithmetic.DIV:
+				return lVal / rVal;
+			default:
+				return lVal % rVal;
+			}
+		}
+
+		long getLong() throws Exception {
+			return getInt();
+		}
+
+		float getFloat() throws Exception {
+			return getInt();
+		}
+
+		double getDouble() throws Exception {
+			return getInt();
+		}
+	}
+
+	private static final class LongArithmetic extends Arithmetic {
+
+		LongArithmetic(int operation, Value left, Value right) {
+			super(operation, left, right);
+		}
+
+		public boolean getBoolean() throws Exception {
+			return getLong() != 0;
+		}
+
+		int getInt() throws Exception {
+			return (int) getLong();
+		}
+
+		long getLong() throws Exception {
+			long lVal = left.getLong();
+			if (isNull = left.isNull) {
+				return 0;
+			}
+			if (operation == ExpressionArithmetic.NEGATIVE) {
+				isNull = false;
+				return -lVal;
+			}
+			long rVal = right.getLong();
+			if (isNull = right.isNull) {
+				return 0;
+			}
+			switch (operation) {
+			case ExpressionArithmetic.ADD:
+				return lVal + rVal;
+			case ExpressionArithmetic.SUB:
+				return lVal - rVal;
+			case ExpressionArithmetic.MUL:
+				return lVal * rVal;
+			case ExpressionArithmetic.DIV:
+				return lVal / rVal;
+			default:
+				return lVal % rVal;
+			}
+		}
+
+		float getFloat() throws Exception {
+			return getLong();
+		}
+
+		double getDouble() throws Exception {
+			return getLong();
+		}
+	}
+
+	private static final class FloatArithmetic extends Arithmetic {
+
+		FloatArithmetic(int operation, Value left, Value right) {
+			super(operation, left, right);
+		}
+
+		public boolean getBoolean() throws Exception {
+			return getFloat() != 0;
+		}
+
+		int getInt() throws Exception {
+			return (int) getFloat();
+		}
+
+		long getLong() throws Exception {
+			return (long) getFloat();
+		}
+
+		float getFloat() throws Exception {
+			float lVal = left.getFloat();
+			if (isNull = left.isNull) {
+				return 0;
+			}
+			if (operation == ExpressionArithmetic.NEGATIVE) {
+				isNull = false;
+				return -lVal;
+			}
+			float rVal = right.getFloat();
+			if (isNull = right.isNull) {
+				return 0;
+			}
+			switch (operation) {
+			case ExpressionArithmetic.ADD:
+				return lVal + rVal;
+			case ExpressionArithmetic.SUB:
+				return lVal - rVal;
+			case ExpressionArithmetic.MUL:
+				return lVal * rVal;
+			case ExpressionArithmetic.DIV:
+				return lVal / rVal;
+			default:
+				return lVal % rVal;
+			}
+		}
+
+		double getDouble() throws Exception {
+			return getFloat();
+		}
+	}
+
+	private static final class DoubleArithmetic extends Arithmetic {
+
+		DoubleArithmetic(int operation, Value left, Value right) {
+			super(operation, left, right);
+		}
+
+		public boolean getBoolean() throws Exception {
+			return getDouble() != 0;
+		}
+
+		int getInt() throws Exception {
+			return (int) getDouble();
+		}
+
+		long getLong() throws Exception {
+			return (long) getDouble();
+		}
+
+		float getFloat() throws Exception {
+			return (float) getDouble();
+		}
+
+		double getDouble() throws Exception {
+			double lVal = left.getDouble();
+			if (isNull = left.isNull) {
+				return 0;
+			}
+			if (operation == ExpressionArithmetic.NEGATIVE) {
+				isNull = false;
+				return -lVal;
+			}
+			double rVal = right.getDouble();
+			if (isNull = right.isNull) {
+				return 0;
+			}
+			switch (operation) {
+			case ExpressionArithmetic.ADD:
+				return lVal + rVal;
+			case ExpressionArithmetic.SUB:
+				return lVal - rVal;
+			case ExpressionArithmetic.MUL:
+				return lVal * rVal;
+			case ExpressionArithmetic.DIV:
+				return lVal / rVal;
+			default:
+				return lVal % rVal;
+			}
+		}
+	}
+
+	/**
+	 * A comparison of two values with a fix data type. The third value is the
+	 * upper bound of BETWEEN. Like in ExpressionArithmetic only the first two
+	 * values are checked for NULL.
+	 */
+	private static final class Compare extends Evaluator {
+
+		private final int operation;
+		private final int compareType;
+		private final Value left;
+		private final Value right;
+		private final Value right2;
+
+		Compare(int operation, int compareType, Value left, Value right, Value right2) {
+			this.operation = operation;
+			this.compareType = compareType;
+			this.left = left;
+			this.right = right;
+			this.right2 = right2;
+		}
+
+		public boolean getBoolean() throws Exception {
+			switch (compareType) {
+			case SQLTokenizer.INT: {
+				int lVal = left.getInt();
+				int rVal = right.getInt();
+				if (left.isNull || right.isNull) {
+					return operation == ExpressionArithmetic.EQUALS_NULL && left.isNull && right.isNull;
+				}
+				switch (operation) {
+				case ExpressionArithmetic.EQUALS:
+				case ExpressionArithmetic.EQUALS_NULL:
+					return lVal == rVal;
+				case ExpressionArithmetic.GREATER:
+					return lVal > rVal;
+				case ExpressionArithmetic.GRE_EQU:
+					return lVal >= rVal;
+				case ExpressionArithmetic.LESSER:
+					return lVal < rVal;
+				case ExpressionArithmetic.LES_EQU:
+					return lVal <= rVal;
+				case ExpressionArithmetic.UNEQUALS:
+					return lVal != rVal;
+				default:
+					return lVal >= rVal && right2.getInt() >= lVal;
+				}
+			}
+			case SQLTokenizer.BIGINT: {
+				long lVal = left.getLong();
+				long rVal = right.getLong();
+				if (left.isNull || right.isNull) {
+					return operation == ExpressionArithmetic.EQUALS_NULL && left.isNull && right.isNull;
+				}
+				switch (operation) {
+				case ExpressionArithmetic.EQUALS:
+				case ExpressionArithmetic.EQUALS_NULL:
+					return lVal == rVal;
+				case ExpressionArithmetic.GREATER:
+					return lVal > rVal;
+				case ExpressionArithmetic.GRE_EQU:
+					return lVal >= rVal;
+				case ExpressionArithmetic.LESSER:
+					return lVal < rVal;
+				case ExpressionArithmetic.LES_EQU:
+					return lVal <= rVal;
+				case ExpressionArithmetic.UNEQUALS:
+					return lVal != rVal;
+				default:
+					return lVal >= rVal && right2.getLong() >= lVal;
+				}
+			}
+			case SQLTokenizer.REAL: {
+				float lVal = left.getFloat();
+				float rVal = right.getFloat();
+				if (left.isNull || right.isNull) {
+					return operation == ExpressionArithmetic.EQUALS_NULL && left.isNull && right.isNull;
+				}
+				switch (operation) {
+				case ExpressionArithmetic.EQUALS:
+				case ExpressionArithmetic.EQUALS_NULL:
+					return lVal == rVal;
+				case ExpressionArithmetic.GREATER:
+					return lVal > rVal;
+				case ExpressionArithmetic.GRE_EQU:
+					return lVal >= rVal;
+				case ExpressionArithmetic.LESSER:
+					return lVal < rVal;
+				case ExpressionArithmetic.LES_EQU:
+					return lVal <= rVal;
+				case ExpressionArithmetic.UNEQUALS:
+					return lVal != rVal;
+				default:
+					return lVal >= rVal && right2.getFloat() >= lVal;
+				}
+			}
+			case SQLTokenizer.DOUBLE: {
+				double lVal = left.getDouble();
+				double rVal = right.getDouble();
+				if (left.isNull || right.isNull) {
+					return operation == ExpressionArithmetic.EQUALS_NULL && left.isNull && right.isNull;
+				}
+				switch (operation) {
+				case ExpressionArithmetic.EQUALS:
+				case ExpressionArithmetic.EQUALS_NULL:
+					return lVal == rVal;
+				case ExpressionArithmetic.GREATER:
+					return lVal > rVal;
+				case ExpressionArithmetic.GRE_EQU:
+					return lVal >= rVal;
+				case ExpressionArithmetic.LESSER:
+					return lVal < rVal;
+				case ExpressionArithmetic.LES_EQU:
+					return lVal <= rVal;
+				case ExpressionArithmetic.UNEQUALS:
+					return lVal != rVal;
+				default:
+					return lVal >= rVal && right2.getDouble() >= lVal;
+				}
+			}
+			default: {
+				String lVal = left.getString();
+				String rVal = right.getString();
+				if (left.isNull || right.isNull) {
+					return operation == ExpressionArithmetic.EQUALS_NULL && left.isNull && right.isNull;
+				}
+				int comp = String.CASE_INSENSITIVE_ORDER.compare(lVal, rVal);
+				switch (operation) {
+				case ExpressionArithmetic.EQUALS:
+				case ExpressionArithmetic.EQUALS_NULL:
+					return comp == 0;
+				case ExpressionArithmetic.GREATER:
+					return comp > 0;
+				case ExpressionArithmetic.GRE_EQU:
+					return comp >= 0;
+				case ExpressionArithmetic.LESSER:
+					return comp < 0;
+				case ExpressionArithmetic.LES_EQU:
+					return comp <= 0;
+				case ExpressionArithmetic.UNEQUALS:
+					return comp != 0;
+				default:
+					return comp >= 0 && 0 >= String.CASE_INSENSITIVE_ORDER.compare(lVal, right2.getString());
+				}
+			}
+			}
+		}
+	}
+
+	/**
+	 * IN with a list of values. The left value is calculated only once.
+	 */
+	private static final class In extends Evaluator {
+
+		private final int compareType;
+		private final Value left;
+		private final Value[] list;
+
+		In(int compareType, Value left, Value[] list) {
+			this.compareType = compareType;
+			this.left = left;
+			this.list = list;
+		}
+
+		public boolean getBoolean() throws Exception {
+			switch (compareType) {
+			case SQLTokenizer.INT: {
+				int lVal = left.getInt();
+				for (int i = 0; i < list.length && !left.isNull; i++) {
+					Value value = list[i];
+					if (value.getInt() == lVal && !value.isNull) {
+						return true;
+					}
+				}
+				return false;
+			}
+			case SQLTokenizer.BIGINT: {
+				long lVal = left.getLong();
+				for (int i = 0; i < list.length && !left.isNull; i++) {
+					Value value = list[i];
+					if (value.getLong() == lVal && !value.isNull) {
+						return true;
+					}
+				}
+				return false;
+			}
+			case SQLTokenizer.REAL: {
+				float lVal = left.getFloat();
+				for (int i = 0; i < list.length && !left.isNull; i++) {
+					Value value = list[i];
+					if (value.getFloat() == lVal && !value.isNull) {
+						return true;
+					}
+				}
+				return false;
+			}
+			case SQLTokenizer.DOUBLE: {
+				double lVal = left.getDouble();
+				for (int i = 0; i < list.length && !left.isNull; i++) {
+					Value value = list[i];
+					if (value.getDouble() == lVal && !value.isNull) {
+						return true;
+					}
+				}
+				return false;
+			}
+			default: {
+				String lVal = left.getString();
+				for (int i = 0; i < list.length && !left.isNull; i++) {
+					Value value = list[i];
+					String rVal = value.getString();
+					if (!value.isNull && String.CASE_INSENSITIVE_ORDER.compare(lVal, rVal) == 0) {
+						return true;
+					}
+				}
+				return false;
+			}
+			}
+		}
+	}
+
+	private static final class And extends Evaluator {
+
+		private final Evaluator left;
+		private final Evaluator right;
+
+		And(Evaluator left, Evaluator right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		public boolean getBoolean() throws Exception {
+			return left.getBoolean() && right.getBoolean();
+		}
+	}
+
+	private static final class Or extends Evaluator {
+
+		private final Evaluator left;
+		private final Evaluator right;
+
+		Or(Evaluator left, Evaluator right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		public boolean getBoolean() throws Exception {
+			return left.getBoolean() || right.getBoolean();
+		}
+	}
+
+	private static final class Not extends Evaluator {
+
+		private final Evaluator expr;
+
+		Not(Evaluator expr) {
+			this.expr = expr;
+		}
+
+		public boolean getBoolean() throws Exception {
+			return !expr.getBoolean();
+		}
+	}
+
+	private static final class IsNull extends Evaluator {
+
+		private final Value expr;
+		private final boolean isNot;
+
+		IsNull(Value expr, boolean isNot) {
+			this.expr = expr;
+			this.isNot = isNot;
+		}
+
+		public boolean getBoolean() throws Exception {
+			return expr.isNullValue() != isNot;
+		}
+	}
+}
@@ -838,6 +838,7 @@ public class ExpressionArithmetic extends Expression {
 		case LES_EQU:
 		case UNEQUALS:
 		case BETWEEN:
+		case IN:
 		case OR:
 		case AND:
 		case NOT:
@@ -440,6 +440,8 @@ public class SQLTokenizer {
 	public static final int TOP = 229;
 	public static final int ADD = 230;
 	public static final int LIMIT = 231;
+	public static final int COMPACT = 232;
+	public static final int COPY = 233;
 
 	public static final int DATABASE = 235;
 	public static final int TABLE = 236;
@@ -516,6 +518,8 @@ public class SQLTokenizer {
 		addKeyWord("TOP", TOP);
 		addKeyWord("ADD", ADD);
 		addKeyWord("LIMIT", LIMIT);
+		addKeyWord("COMPACT", COMPACT);
+		addKeyWord("COPY", COPY);
 
 		addKeyWord("DATABASE", DATABASE);
 		addKeyWord("TABLE", TABLE);
@@ -55,6 +55,7 @@ import io.leavesfly.smallsql.rdb.sql.expression.Expressions;
 public class Utils {
 
 	public static final String MASTER_FILENAME = "smallsql.master";
+	public static final String LOG_FILENAME = "smallsql.wal";
 	public static final String TABLE_VIEW_EXTENTION = ".sdb";
 	private static final String LOB_EXTENTION = ".lob";
 	public static final String IDX_EXTENTION = ".idx";
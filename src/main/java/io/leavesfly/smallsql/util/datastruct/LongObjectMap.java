@@ -0,0 +1,202 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2006, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it 
+ * under the terms of the GNU Lesser General Public License as published by 
+ * the Free Software Foundation; either version 2.1 of the License, or 
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY 
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public 
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, 
+ * USA.  
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc. 
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * ---------------
+ * LongObjectMap.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.util.datastruct;
+
+/**
+ * A hash map with primitive long keys. The entries are saved with open
+ * addressing and linear probing in two arrays, there are no objects for the
+ * entries and no boxing of the keys. A null value is not supported, a removed
+ * entry is deleted with backward shifting without tombstones.
+ * <p>
+ * The map is not synchronized.
+ */
+public final class LongObjectMap<V> {
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+
+	public LongObjectMap() {
+		this(16);
+	}
+
+	/**
+	 * @param initialCapacity
+	 *            the count of entries without a resize
+	 */
+	public LongObjectMap(int initialCapacity) {
+		int capacity = 4;
+		while (capacity < initialCapacity * 2) {
+			capacity <<= 1;
+		}
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	public final int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public final V get(long key) {
+		int idx = index(key);
+		Object value;
+		while ((value = values[idx]) != null) {
+			if (keys[idx] == key) {
+				return (V) value;
+			}
+			idx = (idx + 1) & mask;
+		}
+		return null;
+	}
+
+	/**
+	 * Set the value of a key.
+	 * 
+	 * @param value
+	 *            the new value, can not be null
+	 * @return the previous value or null
+	 */
+	@SuppressWarnings("unchecked")
+	public final V put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		int idx = index(key);
+		Object oldValue;
+		while ((oldValue = values[idx]) != null) {
+			if (keys[idx] == key) {
+				values[idx] = value;
+				return (V) oldValue;
+			}
+			idx = (idx + 1) & mask;
+		}
+		keys[idx] = key;
+		values[idx] = value;
+		if (++size * 2 > values.length) {
+			resize(values.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Remove the entry of the key.
+	 * 
+	 * @return the removed value or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public final V remove(long key) {
+		int idx = index(key);
+		Object value;
+		while ((value = values[idx]) != null) {
+			if (keys[idx] == key) {
+				deleteSlot(idx);
+				size--;
+				return (V) value;
+			}
+			idx = (idx + 1) & mask;
+		}
+		return null;
+	}
+
+	public final void clear() {
+		java.util.Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * The count of slots for the iteration with {@link #valueAt(int)}.
+	 */
+	public final int capacity() {
+		return values.length;
+	}
+
+	/**
+	 * Get the value of a slot. This can be used to iterate over all values
+	 * from 0 to capacity() - 1.
+	 * 
+	 * @return the value or null if the slot is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public final V valueAt(int slot) {
+		return (V) values[slot];
+	}
+
+	/**
+	 * Move the following entries of the probe sequence into the free slot.
+	 */
+	private void deleteSlot(int free) {
+		int idx = free;
+		while (true) {
+			idx = (idx + 1) & mask;
+			Object value = values[idx];
+			if (value == null) {
+				break;
+			}
+			int home = index(keys[idx]);
+			// move the entry if its home is not between the free slot and its
+			// current slot
+			if (((idx - home) & mask) >= ((idx - free) & mask)) {
+				keys[free] = keys[idx];
+				values[free] = value;
+				free = idx;
+			}
+		}
+		values[free] = null;
+	}
+
+	private void resize(int newCapacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[newCapacity];
+		values = new Object[newCapacity];
+		mask = newCapacity - 1;
+		for (int i = 0; i < oldValues.length; i++) {
+			Object value = oldValues[i];
+			if (value != null) {
+				int idx = index(oldKeys[i]);
+				while (values[idx] != null) {
+					idx = (idx + 1) & mask;
+				}
+				keys[idx] = oldKeys[i];
+				values[idx] = value;
+			}
+		}
+	}
+
+	private int index(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+}
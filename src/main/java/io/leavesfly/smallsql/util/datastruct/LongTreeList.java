@@ -182,8 +182,9 @@ public final class LongTreeList {
      * Restore a LongTreeList from a MemoryStream.
      */
     public LongTreeList(StoreImpl input) {
-        int readSize = input.readInt();
-        data = input.readBytes(readSize);
+        size = input.readInt();
+        data = new byte[Math.max(25, size)];
+        System.arraycopy(input.readBytes(size), 0, data, 0, size);
     }
 
 
@@ -325,6 +326,7 @@ public final class LongTreeList {
      * @return
      */
     public final long getNext(LongTreeListEnum listEnum) {
+        if (size == 0) return -1; // an empty list has no first node
         int shift = (3 - listEnum.stack) << 4;
         if (shift >= 64) return -1; //a previous call has return -1
         offset = listEnum.offsetStack[listEnum.stack];
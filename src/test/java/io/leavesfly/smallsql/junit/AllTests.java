@@ -53,13 +53,25 @@ import io.leavesfly.smallsql.junit.sql.TestThreads;
 import io.leavesfly.smallsql.junit.sql.ddl.TestAlterTable;
 import io.leavesfly.smallsql.junit.sql.ddl.TestDataTypes;
 import io.leavesfly.smallsql.junit.sql.ddl.TestOther;
+import io.leavesfly.smallsql.junit.sql.ddl.TestStringStorage;
+import io.leavesfly.smallsql.junit.sql.dml.TestBatchInsert;
+import io.leavesfly.smallsql.junit.sql.dml.TestBulkLoad;
+import io.leavesfly.smallsql.junit.sql.dml.TestLobs;
+import io.leavesfly.smallsql.junit.sql.dql.TestConditions;
 import io.leavesfly.smallsql.junit.sql.dql.TestExceptions;
 import io.leavesfly.smallsql.junit.sql.dql.TestFunctions;
+import io.leavesfly.smallsql.junit.sql.dql.TestHashJoin;
+import io.leavesfly.smallsql.junit.sql.dql.TestIndexLookup;
 import io.leavesfly.smallsql.junit.sql.dql.TestJoins;
 import io.leavesfly.smallsql.junit.sql.dql.TestOperatoren;
 import io.leavesfly.smallsql.junit.sql.dql.TestOrderBy;
+import io.leavesfly.smallsql.junit.sql.dql.TestPageCache;
+import io.leavesfly.smallsql.junit.sql.dql.TestParallelScan;
 import io.leavesfly.smallsql.junit.sql.dql.TestResultSet;
+import io.leavesfly.smallsql.junit.sql.dql.TestStatementCache;
+import io.leavesfly.smallsql.junit.sql.tpl.TestSnapshotRead;
 import io.leavesfly.smallsql.junit.sql.tpl.TestTransactions;
+import io.leavesfly.smallsql.junit.sql.tpl.TestWriteAheadLog;
 
 /**
  * 测试套件主类，用于运行SmallSQL数据库的所有单元测试。
@@ -73,7 +85,7 @@ public class AllTests extends TestCase {
 	
 	static {
 		try {
-			Class.forName("smallsql.jdbc.SSDriver");
+			Class.forName("io.leavesfly.smallsql.SsDriver");
 		} catch (ClassNotFoundException e) {
 			throw new RuntimeException("Failed to load SmallSQL driver", e);
 		}
@@ -153,6 +165,9 @@ public class AllTests extends TestCase {
 
 		theSuite.addTestSuite(TestAlterTable.class);
 		theSuite.addTestSuite(TestAlterTable2.class);
+		theSuite.addTestSuite(TestBatchInsert.class);
+		theSuite.addTestSuite(TestBulkLoad.class);
+		theSuite.addTestSuite(TestConditions.class);
 		theSuite.addTest(TestDataTypes.suite());
 		theSuite.addTestSuite(TestDBMetaData.class);
 		theSuite.addTestSuite(TestExceptionMethods.class);
@@ -160,18 +175,27 @@ public class AllTests extends TestCase {
 		theSuite.addTestSuite(TestDeleteUpdate.class);
 		theSuite.addTest(TestFunctions.suite());
 		theSuite.addTestSuite(TestGroupBy.class);
+		theSuite.addTestSuite(TestHashJoin.class);
 		theSuite.addTestSuite(TestIdentifer.class);
+		theSuite.addTestSuite(TestIndexLookup.class);
 		theSuite.addTest(TestJoins.suite());
 		theSuite.addTestSuite(TestLanguage.class);
+		theSuite.addTestSuite(TestLobs.class);
 		theSuite.addTestSuite(TestMoneyRounding.class);
 		theSuite.addTest(TestOperatoren.suite());
 		theSuite.addTestSuite(TestOrderBy.class);
+		theSuite.addTestSuite(TestPageCache.class);
+		theSuite.addTestSuite(TestParallelScan.class);
 		theSuite.addTestSuite(TestResultSet.class);
 		theSuite.addTestSuite(TestScrollable.class);
+		theSuite.addTestSuite(TestSnapshotRead.class);
 		theSuite.addTestSuite(TestStatement.class);
+		theSuite.addTestSuite(TestStatementCache.class);
+		theSuite.addTestSuite(TestStringStorage.class);
 		theSuite.addTestSuite(TestThreads.class);
 		theSuite.addTestSuite(TestTokenizer.class);
 		theSuite.addTestSuite(TestTransactions.class);
+		theSuite.addTestSuite(TestWriteAheadLog.class);
 		return theSuite;
 	}
 
@@ -0,0 +1,198 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BenchBatchScan.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Benchmark for analytical queries that aggregate all rows of a table. Every
+ * query is run row by row (batchsize=0) and with batches of rows. The results
+ * of both runs must be equals. Run it with:<br>
+ * <code>java io.leavesfly.smallsql.junit.sql.BenchBatchScan -rowcount 200000 -warmups 3 -loops 5</code>
+ * <p>
+ * This is not a JMH benchmark. The build has only JUnit as dependency and
+ * must work without a network, like the other Bench classes. The measuring is
+ * done like JMH does it: warm-up iterations of both variants are run first and
+ * are not measured, then both variants are measured alternately in every
+ * iteration that none profits from the order. The average and the best time
+ * of an iteration are reported.
+ */
+public class BenchBatchScan extends BasicTestCase {
+
+    static final String JDBC_URL = "jdbc:smallsql:" + AllTests.CATALOG + "Batch?create=true;locale=en;batchsize=";
+    static final String TABLE = "BenchBatch";
+    static final String[] QUERIES = {
+        "SELECT count(*), sum(i), min(d), max(d) FROM " + TABLE,
+        "SELECT count(*), sum(d) FROM " + TABLE + " WHERE i > 1000 AND grp < 50",
+        "SELECT count(*), avg(d) FROM " + TABLE + " WHERE i BETWEEN 10 AND 100000 OR d < 10",
+        "SELECT grp, count(*), sum(i), max(d) FROM " + TABLE + " GROUP BY grp",
+    };
+    static int rowCount = 100000;
+    static int warmupCount = 2;
+    static int loopCount = 3;
+
+    static{
+        try{
+            Class.forName("io.leavesfly.smallsql.SsDriver");
+        }catch(ClassNotFoundException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    public static void main(String[] args) throws Throwable{
+        for(int i = 0; i < args.length;){
+            String option = args[i++];
+            if      (option.equals("-rowcount")) rowCount = Integer.parseInt(args[i++]);
+            else if (option.equals("-warmups") ) warmupCount = Integer.parseInt(args[i++]);
+            else if (option.equals("-loops")   ) loopCount = Integer.parseInt(args[i++]);
+            else{
+                System.out.println("Valid options are :\n\t-rowcount\n\t-warmups\n\t-loops");
+                System.exit(0);
+            }
+        }
+        new BenchBatchScan().testBatchScan();
+    }
+
+
+    public void testBatchScan() throws Exception{
+        Connection rowCon = DriverManager.getConnection(JDBC_URL + "0");
+        Connection batchCon = DriverManager.getConnection(JDBC_URL + "1024");
+        try{
+            createTable(rowCon);
+            for(int q = 0; q < QUERIES.length; q++){
+                String sql = QUERIES[q];
+                // verify
+                assertEquals(sql, query(rowCon, sql), query(batchCon, sql));
+                for(int w = 0; w < warmupCount; w++){
+                    query(rowCon, sql);
+                    query(batchCon, sql);
+                }
+
+                long[] rowTimes = new long[loopCount];
+                long[] batchTimes = new long[loopCount];
+                for(int l = 0; l < loopCount; l++){
+                    if(l % 2 == 0){
+                        rowTimes[l] = runQuery(rowCon, sql);
+                        batchTimes[l] = runQuery(batchCon, sql);
+                    }else{
+                        batchTimes[l] = runQuery(batchCon, sql);
+                        rowTimes[l] = runQuery(rowCon, sql);
+                    }
+                }
+                System.out.println(sql);
+                print("  row by row:", rowTimes);
+                print("  batches:   ", batchTimes);
+                System.out.println("  Speedup:   \t" + ((double)average(rowTimes) / Math.max(1, average(batchTimes))));
+            }
+        }finally{
+            dropTable(rowCon, TABLE);
+            rowCon.close();
+            batchCon.close();
+        }
+    }
+
+
+    private void createTable(Connection con) throws SQLException{
+        dropTable(con, TABLE);
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + TABLE + " (i int, grp int, d double, v varchar(30))");
+        con.setAutoCommit(false);
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " (i, grp, d, v) VALUES(?,?,?,?)");
+        for(int i = 0; i < rowCount; i++){
+            pr.setInt(1, i);
+            pr.setInt(2, i % 100);
+            if(i % 10 == 0){
+                pr.setNull(3, Types.DOUBLE);
+            }else{
+                pr.setDouble(3, i * 0.25);
+            }
+            pr.setString(4, "Value " + i);
+            pr.execute();
+        }
+        con.commit();
+        con.setAutoCommit(true);
+        pr.close();
+        st.close();
+    }
+
+
+    /**
+     * Run the query once.
+     *
+     * @return the needed time in microseconds
+     */
+    private long runQuery(Connection con, String sql) throws SQLException{
+        long time = System.nanoTime();
+        query(con, sql);
+        return (System.nanoTime() - time) / 1000;
+    }
+
+
+    private static long average(long[] times){
+        long sum = 0;
+        for(int i = 0; i < times.length; i++){
+            sum += times[i];
+        }
+        return sum / Math.max(1, times.length);
+    }
+
+
+    private static void print(String label, long[] times){
+        long min = Long.MAX_VALUE;
+        for(int i = 0; i < times.length; i++){
+            min = Math.min(min, times[i]);
+        }
+        System.out.println(label + "\t" + average(times) / 1000.0 + " ms average, " + min / 1000.0 + " ms best");
+    }
+
+
+    /**
+     * Execute the query and return all values as string.
+     */
+    private String query(Connection con, String sql) throws SQLException{
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery(sql);
+        StringBuilder result = new StringBuilder();
+        int count = rs.getMetaData().getColumnCount();
+        while(rs.next()){
+            for(int c = 1; c <= count; c++){
+                result.append(rs.getObject(c)).append(',');
+            }
+            result.append('\n');
+        }
+        st.close();
+        return result.toString();
+    }
+}
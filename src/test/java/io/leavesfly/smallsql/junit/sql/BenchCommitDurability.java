@@ -0,0 +1,151 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * ---------------
+ * BenchCommitDurability.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Benchmark for small transactions with the different durability levels. Every
+ * thread use its own connection and insert single rows in auto commit mode
+ * into the same table. For every durability level the commits per second are
+ * measured with 1, 8 and 32 committing threads.
+ * <p>
+ * With durability=fsync every commit force the table file. With
+ * durability=group the concurrent commits share one force of the file. Run it
+ * with:<br>
+ * <code>java io.leavesfly.smallsql.junit.sql.BenchCommitDurability -commits 200</code>
+ */
+public class BenchCommitDurability extends BasicTestCase {
+
+    static final String JDBC_URL = "jdbc:smallsql:" + AllTests.CATALOG + "Durability?create=true;locale=en;durability=";
+    static final String[] MODES = {"none", "fsync", "group"};
+    static final int[] THREADS = {1, 8, 32};
+    static final String TABLE = "BenchCommit";
+    static int commitCount = 50;
+
+    volatile Throwable throwable;
+
+    static{
+        try{
+            Class.forName("io.leavesfly.smallsql.SsDriver");
+        }catch(ClassNotFoundException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    public static void main(String[] args) throws Throwable{
+        for(int i = 0; i < args.length;){
+            String option = args[i++];
+            if(option.equals("-commits")) commitCount = Integer.parseInt(args[i++]);
+            else{
+                System.out.println("Valid options are :\n\t-commits");
+                System.exit(0);
+            }
+        }
+        new BenchCommitDurability().testCommitRate();
+    }
+
+
+    public void testCommitRate() throws Throwable{
+        // the first connection holds the database open for all runs
+        Connection con = DriverManager.getConnection(JDBC_URL + "none");
+        try{
+            dropTable(con, TABLE);
+            con.createStatement().execute("CREATE TABLE " + TABLE + " (i int, v varchar(100))");
+            System.out.println("Commits per second with " + commitCount + " commits per thread:");
+            System.out.println("mode\t1 thread\t8 threads\t32 threads");
+            for(int m = 0; m < MODES.length; m++){
+                StringBuffer line = new StringBuffer(MODES[m]);
+                for(int t = 0; t < THREADS.length; t++){
+                    long time = runCommits(MODES[m], THREADS[t]);
+                    long commits = (long)THREADS[t] * commitCount;
+                    line.append('\t').append(commits * 1000 / Math.max(1, time));
+                }
+                System.out.println(line);
+            }
+        }finally{
+            dropTable(con, TABLE);
+            con.close();
+        }
+    }
+
+
+    /**
+     * Insert commitCount rows per thread, every row in its own transaction.
+     *
+     * @return the needed time in milliseconds
+     */
+    private long runCommits(final String mode, int threads) throws Throwable{
+        throwable = null;
+        Thread[] threadList = new Thread[threads];
+        final Connection[] cons = new Connection[threads];
+        for(int t = 0; t < threads; t++){
+            cons[t] = DriverManager.getConnection(JDBC_URL + mode);
+        }
+        long time = System.currentTimeMillis();
+        for(int t = 0; t < threads; t++){
+            final Connection con = cons[t];
+            threadList[t] = new Thread(new Runnable(){
+
+                public void run(){
+                    try{
+                        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " (i, v) VALUES(?,?)");
+                        for(int i = 0; i < commitCount; i++){
+                            pr.setInt(1, i);
+                            pr.setString(2, "Value " + i + " with durability " + mode);
+                            pr.execute();
+                        }
+                        pr.close();
+                    }catch(Throwable ex){
+                        throwable = ex;
+                    }
+                }
+            });
+            threadList[t].start();
+        }
+        for(int t = 0; t < threads; t++){
+            threadList[t].join();
+        }
+        time = System.currentTimeMillis() - time;
+        for(int t = 0; t < threads; t++){
+            cons[t].close();
+        }
+        if(throwable != null){
+            throw throwable;
+        }
+        return time;
+    }
+}
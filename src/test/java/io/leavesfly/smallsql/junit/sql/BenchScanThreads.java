@@ -0,0 +1,189 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BenchScanThreads.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Benchmark for concurrent full table scans. Every thread use its own
+ * connection and scan its own table. The same scans are run first in a single
+ * thread and then in one thread per table. With a lock free read path the
+ * parallel run should scale with the count of cores.
+ * <p>
+ * The page cache is disabled for this database so that every row is read from
+ * the file. Run it with:<br>
+ * <code>java io.leavesfly.smallsql.junit.sql.BenchScanThreads -threads 8 -rowcount 20000</code>
+ */
+public class BenchScanThreads extends BasicTestCase {
+
+    static final String JDBC_URL = "jdbc:smallsql:" + AllTests.CATALOG + "Scan?create=true;locale=en;cachesize=0";
+    static int threadCount = 4;
+    static int rowCount = 5000;
+    static int loopCount = 5;
+
+    volatile Throwable throwable;
+
+    static{
+        try{
+            Class.forName("io.leavesfly.smallsql.SsDriver");
+        }catch(ClassNotFoundException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    public static void main(String[] args) throws Throwable{
+        for(int i = 0; i < args.length;){
+            String option = args[i++];
+            if      (option.equals("-threads") ) threadCount = Integer.parseInt(args[i++]);
+            else if (option.equals("-rowcount")) rowCount = Integer.parseInt(args[i++]);
+            else if (option.equals("-loops")   ) loopCount = Integer.parseInt(args[i++]);
+            else{
+                System.out.println("Valid options are :\n\t-threads\n\t-rowcount\n\t-loops");
+                System.exit(0);
+            }
+        }
+        new BenchScanThreads().testScanScaling();
+    }
+
+
+    public void testScanScaling() throws Throwable{
+        Connection con = DriverManager.getConnection(JDBC_URL);
+        try{
+            for(int t = 0; t < threadCount; t++){
+                createTable(con, "BenchScan" + t);
+            }
+
+            // warm up
+            runScans(1);
+
+            long single = runScans(1);
+            long parallel = runScans(threadCount);
+            System.out.println("Scan of " + threadCount + " tables with " + rowCount + " rows:");
+            System.out.println("  1 thread:  \t" + single + " ms");
+            System.out.println("  " + threadCount + " threads:\t" + parallel + " ms");
+            System.out.println("  Speedup:   \t" + ((double)single / Math.max(1, parallel)));
+        }finally{
+            for(int t = 0; t < threadCount; t++){
+                dropTable(con, "BenchScan" + t);
+            }
+            con.close();
+        }
+    }
+
+
+    private void createTable(Connection con, String name) throws SQLException{
+        dropTable(con, name);
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + name + " (i int, v varchar(100), d double, b varbinary(50))");
+        con.setAutoCommit(false);
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + name + " (i, v, d, b) VALUES(?,?,?,?)");
+        for(int i = 0; i < rowCount; i++){
+            pr.setInt(1, i);
+            pr.setString(2, "Value " + i + " of table " + name);
+            pr.setDouble(3, i * 1.5);
+            pr.setBytes(4, new byte[]{(byte)i, (byte)(i >> 8), 3, 4, 5, 6, 7, 8});
+            pr.execute();
+        }
+        con.commit();
+        con.setAutoCommit(true);
+        pr.close();
+        st.close();
+    }
+
+
+    /**
+     * Scan all tables loopCount times.
+     *
+     * @param threads
+     *            1 - all tables are scanned in the current thread; else one
+     *            thread per table
+     * @return the needed time in milliseconds
+     */
+    private long runScans(int threads) throws Throwable{
+        throwable = null;
+        long time = System.currentTimeMillis();
+        if(threads == 1){
+            Connection con = DriverManager.getConnection(JDBC_URL);
+            for(int t = 0; t < threadCount; t++){
+                scan(con, "BenchScan" + t);
+            }
+            con.close();
+        }else{
+            Thread[] threadList = new Thread[threadCount];
+            for(int t = 0; t < threadCount; t++){
+                final String name = "BenchScan" + t;
+                threadList[t] = new Thread(new Runnable(){
+
+                    public void run(){
+                        try{
+                            Connection con = DriverManager.getConnection(JDBC_URL);
+                            scan(con, name);
+                            con.close();
+                        }catch(Throwable ex){
+                            throwable = ex;
+                        }
+                    }
+                });
+                threadList[t].start();
+            }
+            for(int t = 0; t < threadCount; t++){
+                threadList[t].join();
+            }
+        }
+        if(throwable != null){
+            throw throwable;
+        }
+        return System.currentTimeMillis() - time;
+    }
+
+
+    private void scan(Connection con, String name) throws SQLException{
+        Statement st = con.createStatement();
+        for(int l = 0; l < loopCount; l++){
+            ResultSet rs = st.executeQuery("SELECT * FROM " + name);
+            int count = 0;
+            while(rs.next()){
+                rs.getInt(1);
+                rs.getString(2);
+                rs.getDouble(3);
+                rs.getBytes(4);
+                count++;
+            }
+            rs.close();
+            assertEquals("Row count of " + name, rowCount, count);
+        }
+        st.close();
+    }
+}
@@ -0,0 +1,185 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * BenchUpdateInPlace.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Benchmark for updates of all rows of a table. An update that change only
+ * columns with a fixed size overwrite the values in the page of the row. The
+ * same update that also set a VARCHAR column rewrite the complete row. Run it
+ * with:<br>
+ * <code>java io.leavesfly.smallsql.junit.sql.BenchUpdateInPlace -rowcount 1000000 -warmups 1 -loops 4</code>
+ * <p>
+ * Both updates are run first as warm-up without measuring. Then every
+ * iteration measures both updates, the order is alternated that none profits
+ * from the caches of the other.
+ */
+public class BenchUpdateInPlace extends BasicTestCase {
+
+    static final String JDBC_URL = "jdbc:smallsql:" + AllTests.CATALOG + "Update?create=true;locale=en";
+    static final String TABLE = "BenchUpdate";
+    static final String IN_PLACE = "UPDATE " + TABLE + " SET counter = counter + 1";
+    static final String REWRITE = "UPDATE " + TABLE + " SET counter = counter + 1, v = v";
+    static int rowCount = 1000000;
+    static int warmupCount = 1;
+    static int loopCount = 4;
+
+    static{
+        try{
+            Class.forName("io.leavesfly.smallsql.SsDriver");
+        }catch(ClassNotFoundException e){
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    public static void main(String[] args) throws Throwable{
+        for(int i = 0; i < args.length;){
+            String option = args[i++];
+            if      (option.equals("-rowcount")) rowCount = Integer.parseInt(args[i++]);
+            else if (option.equals("-warmups") ) warmupCount = Integer.parseInt(args[i++]);
+            else if (option.equals("-loops")   ) loopCount = Integer.parseInt(args[i++]);
+            else{
+                System.out.println("Valid options are :\n\t-rowcount\n\t-warmups\n\t-loops");
+                System.exit(0);
+            }
+        }
+        new BenchUpdateInPlace().testUpdate();
+    }
+
+
+    public void testUpdate() throws Exception{
+        Connection con = DriverManager.getConnection(JDBC_URL);
+        try{
+            createTable(con);
+            con.setAutoCommit(false);
+            for(int w = 0; w < warmupCount; w++){
+                runUpdate(con, REWRITE);
+                runUpdate(con, IN_PLACE);
+            }
+            long[] rewriteTimes = new long[loopCount];
+            long[] inPlaceTimes = new long[loopCount];
+            for(int l = 0; l < loopCount; l++){
+                if(l % 2 == 0){
+                    rewriteTimes[l] = runUpdate(con, REWRITE);
+                    inPlaceTimes[l] = runUpdate(con, IN_PLACE);
+                }else{
+                    inPlaceTimes[l] = runUpdate(con, IN_PLACE);
+                    rewriteTimes[l] = runUpdate(con, REWRITE);
+                }
+            }
+            con.setAutoCommit(true);
+            assertEqualsRsValue(Long.valueOf((long)rowCount * 2 * (warmupCount + loopCount)), con,
+                    "SELECT sum(counter - id) FROM " + TABLE);
+
+            System.out.println("Update of " + rowCount + " rows");
+            print("  rewrite:  ", rewriteTimes);
+            print("  in place: ", inPlaceTimes);
+            System.out.println("  Speedup:  \t" + ((double)average(rewriteTimes) / Math.max(1, average(inPlaceTimes))));
+        }finally{
+            con.setAutoCommit(true);
+            dropTable(con, TABLE);
+            con.close();
+        }
+    }
+
+
+    private void createTable(Connection con) throws SQLException{
+        dropTable(con, TABLE);
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + TABLE + " (id int, counter bigint, d double, v varchar(30))");
+        con.setAutoCommit(false);
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " (id, counter, d, v) VALUES(?,?,?,?)");
+        for(int i = 0; i < rowCount; i++){
+            pr.setInt(1, i);
+            pr.setLong(2, i);
+            pr.setDouble(3, i * 0.25);
+            pr.setString(4, "Value " + i);
+            pr.addBatch();
+            if(i % 10000 == 9999){
+                pr.executeBatch();
+            }
+        }
+        pr.executeBatch();
+        con.commit();
+        con.setAutoCommit(true);
+        pr.close();
+        st.close();
+    }
+
+
+    /**
+     * Run the update once and commit it.
+     *
+     * @return the needed time in milliseconds
+     */
+    private long runUpdate(Connection con, String sql) throws SQLException{
+        Statement st = con.createStatement();
+        long time = System.currentTimeMillis();
+        assertEquals(rowCount, st.executeUpdate(sql));
+        con.commit();
+        time = System.currentTimeMillis() - time;
+        st.close();
+        return time;
+    }
+
+
+    private static long average(long[] times){
+        long sum = 0;
+        for(int i = 0; i < times.length; i++){
+            sum += times[i];
+        }
+        return sum / Math.max(1, times.length);
+    }
+
+
+    private void print(String label, long[] times){
+        long min = Long.MAX_VALUE;
+        for(int i = 0; i < times.length; i++){
+            min = Math.min(min, times[i]);
+        }
+        long time = average(times);
+        System.out.println(label + "\t" + time + " ms average, " + min + " ms best\t"
+                + (long)rowCount * 1000 / Math.max(1, time) + " rows/s");
+    }
+
+
+    private void assertEqualsRsValue(Object obj, Connection con, String sql) throws Exception{
+        ResultSet rs = con.createStatement().executeQuery(sql);
+        assertTrue("No row produce", rs.next());
+        assertEquals(obj, rs.getObject(1));
+        rs.close();
+    }
+}
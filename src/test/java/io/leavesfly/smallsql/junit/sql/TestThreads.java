@@ -6,6 +6,7 @@ package io.leavesfly.smallsql.junit.sql;
 import java.sql.*;
 import java.util.ArrayList;
 
+import io.leavesfly.smallsql.jdbc.SsConnection;
 import io.leavesfly.smallsql.junit.AllTests;
 import io.leavesfly.smallsql.junit.BasicTestCase;
 
@@ -177,4 +178,132 @@ public class TestThreads extends BasicTestCase {
         }
     }
 
+
+    /**
+     * A connection with a write lock on a page block the UPDATE of another connection until the commit. The waiting
+     * thread must continue after the lock is freed and not only after the timeout.
+     * 
+     * @throws Throwable
+     *             if an thread problem occur
+     */
+    public void testWaitForPageLock() throws Throwable{
+        throwable = null;
+        Connection con = AllTests.getConnection();
+        Statement st = con.createStatement();
+        try{
+            st.execute("CREATE TABLE ConcurrentWrite( value int)");
+            st.execute("INSERT INTO ConcurrentWrite(value) Values(0)");
+            con.setAutoCommit(false);
+            st.executeUpdate("UPDATE ConcurrentWrite SET value = value + 1");
+
+            Thread thread = new Thread(new Runnable(){
+
+                public void run(){
+                    try{
+                        Connection con2 = AllTests.createConnection();
+                        Statement st2 = con2.createStatement();
+                        int count = st2.executeUpdate("UPDATE ConcurrentWrite SET value = value + 10");
+                        assertEquals("Update Count", 1, count);
+                        con2.close();
+                    }catch(Throwable ex){
+                        throwable = ex;
+                    }
+                }
+
+            });
+            long time = System.currentTimeMillis();
+            thread.start();
+            Thread.sleep(200);
+            assertTrue("Update should wait for the lock", thread.isAlive());
+            con.commit();
+            thread.join(5000);
+            assertTrue("Wake up after the commit", System.currentTimeMillis() - time < 4000);
+
+            // throw the exception if one occur
+            if(throwable != null){
+                throw throwable;
+            }
+
+            assertEqualsRsValue(new Integer(11), "SELECT value FROM ConcurrentWrite");
+        }finally{
+            con.setAutoCommit(true);
+            dropTable(con, "ConcurrentWrite");
+        }
+    }
+
+
+
+    /**
+     * Load the tables of a new opened database in many threads. Every thread must get the same table
+     * objects. The second run use the preload of all tables.
+     * 
+     * @throws Throwable
+     *             if an thread problem occur
+     */
+    public void testConcurrentTableLoad() throws Throwable{
+        final String url = "jdbc:smallsql:" + AllTests.CATALOG + "Load?create=true;locale=en";
+        final int tableCount = 8;
+        Connection con = DriverManager.getConnection(url);
+        Statement st = con.createStatement();
+        for(int t = 0; t < tableCount; t++){
+            dropTable(con, "Load" + t);
+            st.execute("CREATE TABLE Load" + t + " (i int, v varchar(20))");
+            st.execute("INSERT INTO Load" + t + " VALUES(" + t + ", 'value')");
+        }
+        dropView(con, "LoadView");
+        st.execute("CREATE VIEW LoadView AS SELECT * FROM Load0");
+        // the last connection unload the database
+        con.close();
+
+        try{
+            for(int run = 0; run < 2; run++){
+                final Connection con2 = DriverManager.getConnection(run == 0 ? url : url + ";preload=true");
+                final Object[][] results = new Object[20][];
+                ArrayList threadList = new ArrayList();
+                throwable = null;
+                for(int i = 0; i < results.length; i++){
+                    final int idx = i;
+                    Thread thread = new Thread(new Runnable(){
+
+                        public void run(){
+                            try{
+                                SsConnection ssCon = (SsConnection)con2;
+                                Object[] views = new Object[tableCount + 1];
+                                for(int t = 0; t < tableCount; t++){
+                                    views[t] = ssCon.getDatabase(false).getTableView(ssCon, "Load" + t);
+                                }
+                                views[tableCount] = ssCon.getDatabase(false).getTableView(ssCon, "LoadView");
+                                results[idx] = views;
+                            }catch(Throwable ex){
+                                throwable = ex;
+                            }
+                        }
+
+                    });
+                    threadList.add(thread);
+                    thread.start();
+                }
+                for(int i = 0; i < threadList.size(); i++){
+                    ((Thread)threadList.get(i)).join(5000);
+                }
+                if(throwable != null){
+                    throw throwable;
+                }
+                for(int i = 1; i < results.length; i++){
+                    for(int t = 0; t <= tableCount; t++){
+                        assertSame(results[0][t], results[i][t]);
+                    }
+                }
+                assertRowCount(1, con2.createStatement().executeQuery("SELECT * FROM LoadView"));
+                con2.close();
+            }
+        }finally{
+            con = DriverManager.getConnection(url);
+            dropView(con, "LoadView");
+            for(int t = 0; t < tableCount; t++){
+                dropTable(con, "Load" + t);
+            }
+            con.close();
+        }
+    }
 }
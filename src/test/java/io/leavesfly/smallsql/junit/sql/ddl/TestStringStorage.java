@@ -0,0 +1,172 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestStringStorage.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.ddl;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test the CHAR and VARCHAR values of the compact string format and of files
+ * with the older format that save 2 bytes per character.
+ */
+public class TestStringStorage extends BasicTestCase {
+
+    private static final String TABLE = "stringstorage";
+    private static final String URL_ADDITION = "Strings?create=true;locale=en";
+    private static final String[] VALUES = {
+        "abc", "", "Latin-1 äöüß ÿ", "漢字 and Ж", "😀 pair", "\ud800 single", "trailing  ", null,
+    };
+
+
+    public void testCompact() throws Exception{
+        Connection con = AllTests.getConnection();
+        dropTable(con, TABLE);
+        try{
+            createTable(con);
+            insertValues(con);
+            verifyValues(con);
+        }finally{
+            dropTable(con, TABLE);
+        }
+    }
+
+
+    /**
+     * A table of the format version 3 must be read and written further with 2
+     * bytes per character.
+     */
+    public void testWideCharFormat() throws Exception{
+        Connection con = AllTests.createConnection(URL_ADDITION, null);
+        dropTable(con, TABLE);
+        createTable(con);
+        con.close();
+
+        // set the version of the empty table file back
+        RandomAccessFile raFile = new RandomAccessFile(new File(AllTests.CATALOG + "Strings/" + TABLE + ".sdb"), "rw");
+        raFile.seek(4);
+        raFile.writeInt(3);
+        raFile.close();
+
+        con = AllTests.createConnection(URL_ADDITION, null);
+        try{
+            insertValues(con);
+            verifyValues(con);
+        }finally{
+            dropTable(con, TABLE);
+            con.close();
+        }
+    }
+
+
+    public void testCharPadding() throws Exception{
+        Connection con = AllTests.getConnection();
+        dropTable(con, TABLE);
+        try{
+            Statement st = con.createStatement();
+            st.execute("CREATE TABLE " + TABLE + " (c char(5), v varchar(5))");
+            st.execute("INSERT INTO " + TABLE + " VALUES('ab', 'ab ')");
+            ResultSet rs = st.executeQuery("SELECT c, v, c + '|', length(c) FROM " + TABLE + " WHERE c = 'ab'");
+            assertTrue(rs.next());
+            assertEquals("ab   ", rs.getString(1));
+            assertEquals("ab   ", rs.getObject(1));
+            assertEquals(5, rs.getBytes(1).length);
+            assertEquals("ab ", rs.getString(2));
+            assertEquals("ab|", rs.getString(3));
+            try{
+                st.execute("INSERT INTO " + TABLE + " (c) VALUES('abcdef')");
+                fail("value is too large");
+            }catch(SQLException ex){
+                // expected
+            }
+        }finally{
+            dropTable(con, TABLE);
+        }
+    }
+
+
+    private void createTable(Connection con) throws SQLException{
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + TABLE + " (id int, c char(30), v varchar(30) UNIQUE, n nvarchar(30))");
+        st.close();
+    }
+
+
+    private void insertValues(Connection con) throws SQLException{
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?,?)");
+        for(int i = 0; i < VALUES.length; i++){
+            pr.setInt(1, i);
+            pr.setString(2, VALUES[i]);
+            pr.setString(3, VALUES[i]);
+            pr.setString(4, VALUES[i]);
+            pr.execute();
+        }
+        pr.close();
+    }
+
+
+    private void verifyValues(Connection con) throws SQLException{
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery("SELECT id, c, v, n FROM " + TABLE + " ORDER BY id");
+        for(int i = 0; i < VALUES.length; i++){
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            String value = VALUES[i];
+            assertEquals(value == null ? null : pad(value, 30), rs.getString(2));
+            assertEquals(value, rs.getString(3));
+            assertEquals(value, rs.getObject(4));
+        }
+        assertFalse(rs.next());
+
+        // lookup with the index
+        PreparedStatement pr = con.prepareStatement("SELECT id FROM " + TABLE + " WHERE v = ?");
+        for(int i = 0; i < VALUES.length - 1; i++){
+            pr.setString(1, VALUES[i]);
+            rs = pr.executeQuery();
+            assertTrue(VALUES[i], rs.next());
+            assertEquals(i, rs.getInt(1));
+        }
+        pr.close();
+        st.close();
+    }
+
+
+    private static String pad(String value, int length){
+        StringBuilder builder = new StringBuilder(value);
+        while(builder.length() < length){
+            builder.append(' ');
+        }
+        return builder.toString();
+    }
+}
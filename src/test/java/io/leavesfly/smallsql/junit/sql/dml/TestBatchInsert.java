@@ -0,0 +1,157 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestBatchInsert.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dml;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test the batch execute of a prepared INSERT that insert all rows of the
+ * batch with one insert lock.
+ */
+public class TestBatchInsert extends BasicTestCase {
+
+    private static final String TABLE = "batchinsert";
+    private static final int COUNT = 5000;
+
+
+    public void setUp() throws SQLException{
+        Connection con = AllTests.getConnection();
+        dropTable(con, TABLE);
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + TABLE + " (id int PRIMARY KEY, name varchar(30), d double, def int DEFAULT 7)");
+        st.close();
+    }
+
+
+    public void tearDown() throws SQLException{
+        Connection con = AllTests.getConnection();
+        con.setAutoCommit(true);
+        dropTable(con, TABLE);
+    }
+
+
+    public void testAutoCommit() throws Exception{
+        Connection con = AllTests.getConnection();
+        int[] result = insertRows(con, "INSERT INTO " + TABLE + "(id, name, d) VALUES(?, ?, ? * 2)", 0);
+        assertEquals(COUNT, result.length);
+        for(int i = 0; i < result.length; i++){
+            assertEquals(1, result[i]);
+        }
+        assertRowCount(COUNT, "SELECT * FROM " + TABLE);
+        assertEqualsRsValue(new Integer(COUNT * 7), "SELECT SUM(def) FROM " + TABLE);
+        assertEqualsRsValue(new Double(2 * 4321 * 1.5), "SELECT d FROM " + TABLE + " WHERE id = 4321");
+        assertEqualsRsValue("name17", "SELECT name FROM " + TABLE + " WHERE id = 17");
+        assertEqualsRsValue(new Integer(COUNT), "SELECT count(*) FROM " + TABLE + " WHERE id >= 0");
+    }
+
+
+    public void testTransaction() throws Exception{
+        Connection con = AllTests.getConnection();
+        con.setAutoCommit(false);
+        insertRows(con, "INSERT INTO " + TABLE + " VALUES(?, ?, ?, 3)", 0);
+        // the own rows are visible before the commit
+        assertRowCount(COUNT, "SELECT * FROM " + TABLE);
+        assertEqualsRsValue("name4999", "SELECT name FROM " + TABLE + " WHERE id = 4999");
+        con.rollback();
+        assertRowCount(0, "SELECT * FROM " + TABLE);
+
+        insertRows(con, "INSERT INTO " + TABLE + " VALUES(?, ?, ?, 3)", 0);
+        Statement st = con.createStatement();
+        assertEquals(1, st.executeUpdate("UPDATE " + TABLE + " SET name = 'updated' WHERE id = 10"));
+        insertRows(con, "INSERT INTO " + TABLE + " VALUES(?, ?, ?, 3)", COUNT);
+        con.commit();
+        assertRowCount(2 * COUNT, "SELECT * FROM " + TABLE);
+        assertEqualsRsValue("updated", "SELECT name FROM " + TABLE + " WHERE id = 10");
+        assertEqualsRsValue(new Integer(2 * COUNT * 3), "SELECT SUM(def) FROM " + TABLE);
+    }
+
+
+    public void testFailedRow() throws Exception{
+        Connection con = AllTests.getConnection();
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + "(id, name, d) VALUES(?, ?, ?)");
+        for(int i = 0; i < 5; i++){
+            pr.setInt(1, i);
+            pr.setString(2, "name" + i);
+            if(i == 2){
+                pr.setString(3, "no number");
+            }else{
+                pr.setDouble(3, i);
+            }
+            pr.addBatch();
+        }
+        try{
+            pr.executeBatch();
+            fail("BatchUpdateException expected");
+        }catch(BatchUpdateException ex){
+            int[] counts = ex.getUpdateCounts();
+            assertEquals(5, counts.length);
+            assertEquals(1, counts[1]);
+            assertEquals(Statement.EXECUTE_FAILED, counts[2]);
+            assertEquals(1, counts[3]);
+        }
+        pr.close();
+        assertRowCount(4, "SELECT * FROM " + TABLE);
+        assertRowCount(0, "SELECT * FROM " + TABLE + " WHERE id = 2");
+    }
+
+
+    public void testGeneratedKeys() throws Exception{
+        Connection con = AllTests.getConnection();
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + "(id, name) VALUES(?, ?)", Statement.RETURN_GENERATED_KEYS);
+        for(int i = 0; i < 3; i++){
+            pr.setInt(1, i);
+            pr.setString(2, "name" + i);
+            pr.addBatch();
+        }
+        int[] result = pr.executeBatch();
+        assertEquals(3, result.length);
+        assertEquals(1, result[2]);
+        pr.close();
+        assertRowCount(3, "SELECT * FROM " + TABLE);
+    }
+
+
+    private int[] insertRows(Connection con, String sql, int first) throws SQLException{
+        PreparedStatement pr = con.prepareStatement(sql);
+        for(int i = first; i < first + COUNT; i++){
+            pr.setInt(1, i);
+            pr.setString(2, "name" + i);
+            pr.setDouble(3, i * 1.5);
+            pr.addBatch();
+        }
+        int[] result = pr.executeBatch();
+        pr.close();
+        return result;
+    }
+}
@@ -0,0 +1,212 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestBulkLoad.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dml;
+
+import java.io.*;
+import java.sql.*;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+import io.leavesfly.smallsql.rdb.command.dml.BulkLoader;
+
+/**
+ * Test the load of CSV and binary files with COPY and the BulkLoader.
+ */
+public class TestBulkLoad extends BasicTestCase {
+
+    private static final String TABLE = "bulkload";
+
+    private File file;
+
+
+    public void setUp() throws Exception{
+        Connection con = AllTests.getConnection();
+        dropTable(con, TABLE);
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + TABLE + " (id int PRIMARY KEY, name varchar(30), d double, dt date, def int DEFAULT 5)");
+        st.close();
+        file = File.createTempFile("bulkload", ".dat");
+    }
+
+
+    public void tearDown() throws SQLException{
+        Connection con = AllTests.getConnection();
+        con.setAutoCommit(true);
+        dropTable(con, TABLE);
+        file.delete();
+    }
+
+
+    public void testCsv() throws Exception{
+        writeFile("id;name;d;dt\r\n"
+                + "1;abc;1.5;2011-01-01\r\n"
+                + "2;\"with ; and \"\"quotes\"\"\";2.5;2011-01-02\r\n"
+                + "3;\"two\nlines\";;2011-01-03\r\n"
+                + "4;\"\";4.5;\n"
+                + "5;;5.5;2011-01-05\n");
+        Statement st = AllTests.getConnection().createStatement();
+        assertEquals(5, st.executeUpdate("COPY " + TABLE + " (id, name, d, dt) FROM '" + getPath() + "' CSV DELIMITER ';' HEADER"));
+        st.close();
+
+        assertRowCount(5, "SELECT * FROM " + TABLE);
+        assertEqualsRsValue("abc", "SELECT name FROM " + TABLE + " WHERE id = 1");
+        assertEqualsRsValue("with ; and \"quotes\"", "SELECT name FROM " + TABLE + " WHERE id = 2");
+        assertEqualsRsValue("two\nlines", "SELECT name FROM " + TABLE + " WHERE id = 3");
+        assertEqualsRsValue(null, "SELECT d FROM " + TABLE + " WHERE id = 3");
+        assertEqualsRsValue("", "SELECT name FROM " + TABLE + " WHERE id = 4");
+        assertEqualsRsValue(null, "SELECT dt FROM " + TABLE + " WHERE id = 4");
+        assertEqualsRsValue(null, "SELECT name FROM " + TABLE + " WHERE id = 5");
+        assertEquals(Date.valueOf("2011-01-02"), getDate(2));
+        assertEqualsRsValue(new Double(5.5), "SELECT d FROM " + TABLE + " WHERE id = 5");
+        assertEqualsRsValue(new Integer(25), "SELECT SUM(def) FROM " + TABLE);
+    }
+
+
+    public void testBinary() throws Exception{
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        for(int i = 0; i < 1000; i++){
+            out.writeByte(1);
+            out.writeInt(i);
+            if(i % 10 == 0){
+                out.writeByte(0);
+            }else{
+                out.writeByte(1);
+                byte[] name = ("name" + i).getBytes("UTF-8");
+                out.writeInt(name.length);
+                out.write(name);
+            }
+            out.writeByte(1);
+            out.writeDouble(i * 0.5);
+            out.writeByte(1);
+            out.writeLong(Date.valueOf("2011-01-01").getTime());
+            out.writeByte(1);
+            out.writeInt(-i);
+        }
+        out.close();
+
+        BulkLoader loader = ((SsConnection)AllTests.getConnection()).createBulkLoader(TABLE);
+        loader.setBinary(true);
+        InputStream input = new FileInputStream(file);
+        assertEquals(1000, loader.load(input));
+        input.close();
+
+        assertRowCount(1000, "SELECT * FROM " + TABLE);
+        assertRowCount(100, "SELECT * FROM " + TABLE + " WHERE name IS NULL");
+        assertEqualsRsValue("name123", "SELECT name FROM " + TABLE + " WHERE id = 123");
+        assertEqualsRsValue(new Double(61.5), "SELECT d FROM " + TABLE + " WHERE id = 123");
+        assertEqualsRsValue(new Integer(-123), "SELECT def FROM " + TABLE + " WHERE id = 123");
+        assertEquals(Date.valueOf("2011-01-01"), getDate(999));
+    }
+
+
+    public void testMinimalLogging() throws Exception{
+        Connection con = AllTests.getConnection();
+        Statement st = con.createStatement();
+        st.execute("INSERT INTO " + TABLE + "(id, name) VALUES(-1, 'before')");
+        StringBuilder csv = new StringBuilder();
+        int count = 40000;
+        for(int i = 0; i < count; i++){
+            csv.append(i).append(",name").append(i).append(',').append(i).append(",2011-02-03\n");
+        }
+        writeFile(csv.toString());
+        assertEquals(count, st.executeUpdate("COPY " + TABLE + " (id, name, d, dt) FROM '" + getPath() + "' MINIMAL_LOGGING"));
+
+        assertRowCount(count + 1, "SELECT * FROM " + TABLE);
+        // the lookups use the rebuild index
+        assertEqualsRsValue("name31415", "SELECT name FROM " + TABLE + " WHERE id = 31415");
+        assertEqualsRsValue("before", "SELECT name FROM " + TABLE + " WHERE id = -1");
+        assertEquals(1, st.executeUpdate("DELETE FROM " + TABLE + " WHERE id = 17"));
+        assertRowCount(0, "SELECT * FROM " + TABLE + " WHERE id = 17");
+        assertRowCount(count, "SELECT * FROM " + TABLE);
+        st.close();
+    }
+
+
+    public void testInvalidRows() throws Exception{
+        Statement st = AllTests.getConnection().createStatement();
+        writeFile("1,a,1,2011-01-01\n2,b,2\n");
+        try{
+            st.executeUpdate("COPY " + TABLE + " (id, name, d, dt) FROM '" + getPath() + "'");
+            fail("SQLException expected");
+        }catch(SQLException ex){
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("row 2") > 0);
+        }
+        writeFile("1,a,1,2011-01-01\n2,b,xyz,2011-01-01\n");
+        try{
+            st.executeUpdate("COPY " + TABLE + " (id, name, d, dt) FROM '" + getPath() + "'");
+            fail("SQLException expected");
+        }catch(SQLException ex){
+            assertTrue(ex.getMessage(), ex.getMessage().indexOf("row 2") > 0);
+        }
+        st.close();
+        // the valid rows are also rolled back
+        assertRowCount(0, "SELECT * FROM " + TABLE);
+    }
+
+
+    public void testTransaction() throws Exception{
+        Connection con = AllTests.getConnection();
+        writeFile("1,a,1,2011-01-01\n2,b,2,2011-01-02\n");
+        con.setAutoCommit(false);
+        Statement st = con.createStatement();
+        assertEquals(2, st.executeUpdate("COPY " + TABLE + " (id, name, d, dt) FROM '" + getPath() + "'"));
+        assertEqualsRsValue("b", "SELECT name FROM " + TABLE + " WHERE id = 2");
+        con.rollback();
+        assertRowCount(0, "SELECT * FROM " + TABLE);
+        st.executeUpdate("COPY " + TABLE + " (id, name, d, dt) FROM '" + getPath() + "'");
+        con.commit();
+        assertRowCount(2, "SELECT * FROM " + TABLE);
+        st.close();
+    }
+
+
+    private Date getDate(int id) throws SQLException{
+        Statement st = AllTests.getConnection().createStatement();
+        ResultSet rs = st.executeQuery("SELECT dt FROM " + TABLE + " WHERE id = " + id);
+        assertTrue(rs.next());
+        Date date = rs.getDate(1);
+        st.close();
+        return date;
+    }
+
+
+    private void writeFile(String data) throws IOException{
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        writer.write(data);
+        writer.close();
+    }
+
+
+    private String getPath(){
+        return file.getAbsolutePath().replace("'", "''");
+    }
+}
@@ -34,6 +34,7 @@ package io.leavesfly.smallsql.junit.sql.dml;
 
 import java.sql.*;
 
+import io.leavesfly.smallsql.jdbc.metadata.SsDatabaseMetaData;
 import io.leavesfly.smallsql.junit.AllTests;
 import io.leavesfly.smallsql.junit.BasicTestCase;
 
@@ -162,4 +163,156 @@ public class TestDeleteUpdate extends BasicTestCase {
 		dropTable(con,"testUpdate1");
 		dropTable(con,"testUpdate2");
 	}
+
+
+	public void testUpdateInPlace() throws Exception{
+		Connection con = AllTests.getConnection();
+		dropTable(con,"testInPlace");
+		Statement st = con.createStatement();
+		st.execute("create table testInPlace(id int primary key, cnt int, d double, flag bit, value varchar(100))");
+		for(int i=0; i<20; i++){
+			st.execute("Insert into testInPlace Values("+i+","+i+","+(i*10)+",0,'value"+i+"')");
+		}
+
+		// only values with a fixed size are changed, the rows are not moved
+		assertEquals( 20, st.executeUpdate("update testInPlace set cnt=cnt+1, flag=1"));
+		assertEqualsRsValue( new Integer(190+20), "Select sum(cnt) from testInPlace");
+		assertEqualsRsValue( Boolean.TRUE, "Select flag from testInPlace Where id=7");
+		assertEqualsRsValue( "value7", "Select value from testInPlace Where id=7");
+
+		// every new value is calculated from the old values of the row
+		st.execute("update testInPlace set cnt=d, d=cnt Where id=3");
+		assertEqualsRsValue( new Integer(30), "Select cnt from testInPlace Where id=3");
+		assertEqualsRsValue( new Double(4), "Select d from testInPlace Where id=3");
+
+		st.execute("update testInPlace set d=null Where id=5");
+		assertEqualsRsValue( null, "Select d from testInPlace Where id=5");
+		assertEqualsRsValue( new Integer(6), "Select cnt from testInPlace Where id=5");
+
+		// changes of the own transaction and a rollback
+		con.setAutoCommit(false);
+		st.execute("update testInPlace set cnt=cnt+100 Where id<10");
+		st.execute("update testInPlace set cnt=cnt+100 Where id<10");
+		assertEqualsRsValue( new Integer(208), "Select cnt from testInPlace Where id=7");
+		con.rollback();
+		con.setAutoCommit(true);
+		assertEqualsRsValue( new Integer(8), "Select cnt from testInPlace Where id=7");
+
+		ResultSet rs = getPageStatistics(con, "testInPlace");
+		assertEquals( 20, rs.getLong("PAGES"));
+		assertEquals( 0, rs.getLong("DEAD_PAGES"));
+
+		// a column of an index is updated with the index
+		st.execute("update testInPlace set id=id+100 Where id=9");
+		assertEqualsRsValue( new Integer(10), "Select cnt from testInPlace Where id=109");
+		assertRowCount( 0, "Select * from testInPlace Where id=9");
+
+		dropTable(con,"testInPlace");
+	}
+
+
+	public void testReuseDeletedPages() throws Exception{
+		Connection con = AllTests.getConnection();
+		dropTable(con,"testReuse");
+		Statement st = con.createStatement();
+		st.execute("create table testReuse(id int primary key, value varchar(100))");
+		for(int i=0; i<100; i++){
+			st.execute("Insert into testReuse Values("+i+",'value"+(1000+i)+"')");
+		}
+		assertEquals( 100, getPageStatistics(con, "testReuse").getLong("PAGES"));
+
+		// a rollback does not free the pages
+		con.setAutoCommit(false);
+		st.execute("delete from testReuse Where id<50");
+		con.rollback();
+		con.setAutoCommit(true);
+		assertEquals( 0, getPageStatistics(con, "testReuse").getInt("FREE_PAGES"));
+		assertRowCount( 100, "Select * from testReuse");
+
+		st.execute("delete from testReuse Where id<50");
+		ResultSet rs = getPageStatistics(con, "testReuse");
+		assertEquals( 50, rs.getLong("DEAD_PAGES"));
+		assertEquals( 0.5, rs.getDouble("DEAD_PAGE_RATIO"), 0);
+		assertEquals( 50, rs.getInt("FREE_PAGES"));
+
+		// the new rows are written in the deleted pages
+		for(int i=100; i<150; i++){
+			st.execute("Insert into testReuse Values("+i+",'value"+(1000+i)+"')");
+		}
+		rs = getPageStatistics(con, "testReuse");
+		assertEquals( 100, rs.getLong("PAGES"));
+		assertEquals( 0, rs.getLong("DEAD_PAGES"));
+		assertRowCount( 100, "Select * from testReuse");
+		assertRowCount( 0, "Select * from testReuse Where id<50");
+		assertEqualsRsValue( "value1120", "Select value from testReuse Where id=120");
+
+		dropTable(con,"testReuse");
+	}
+
+
+	public void testCompact() throws Exception{
+		Connection con = AllTests.getConnection();
+		dropTable(con,"testCompact");
+		Statement st = con.createStatement();
+		st.execute("create table testCompact(id int primary key, value varchar(100))");
+		for(int i=0; i<50; i++){
+			st.execute("Insert into testCompact Values("+i+",'value"+i+"')");
+		}
+		// the rows are relocated twice, the first new pages are dead
+		st.execute("update testCompact set value=value+' with a longer text' Where id<20");
+		st.execute("update testCompact set value=value+' and a much longer text' Where id<20");
+		st.execute("delete from testCompact Where id>=40");
+		assertTrue( getPageStatistics(con, "testCompact").getLong("DEAD_PAGES") >= 30);
+
+		st.execute("compact table testCompact");
+		ResultSet rs = getPageStatistics(con, "testCompact");
+		assertEquals( 40, rs.getLong("PAGES"));
+		assertEquals( 0, rs.getLong("DEAD_PAGES"));
+		assertEquals( 0, rs.getDouble("DEAD_PAGE_RATIO"), 0);
+		assertRowCount( 40, "Select * from testCompact");
+		assertEqualsRsValue( "value7 with a longer text and a much longer text", "Select value from testCompact Where id=7");
+		assertEqualsRsValue( "value27", "Select value from testCompact Where id=27");
+		assertRowCount( 0, "Select * from testCompact Where id=45");
+
+		// the indexes are valid for the new file
+		st.execute("update testCompact set id=100 Where id=27");
+		assertEqualsRsValue( "value27", "Select value from testCompact Where id=100");
+		assertRowCount( 0, "Select * from testCompact Where id=27");
+
+		dropTable(con,"testCompact");
+	}
+
+
+	public void testCompactLob() throws Exception{
+		String url = "jdbc:smallsql:" + AllTests.CATALOG + "Compact?create=true;locale=en";
+		Connection con = DriverManager.getConnection(url);
+		dropTable(con,"testCompactLob");
+		Statement st = con.createStatement();
+		st.execute("create table testCompactLob(id int primary key, value image)");
+		for(int i=0; i<20; i++){
+			st.execute("Insert into testCompactLob Values("+i+",0x01"+Integer.toHexString(0x10+i)+")");
+		}
+		// the LOB data of the first rows are not copied, all other LOB data move
+		st.execute("delete from testCompactLob Where id<5");
+		st.execute("compact table testCompactLob");
+		con.close();
+
+		con = DriverManager.getConnection(url);
+		st = con.createStatement();
+		ResultSet rs = st.executeQuery("Select value from testCompactLob Where id=12");
+		assertTrue( rs.next() );
+		assertEquals( "0x011C", rs.getString(1));
+		rs = st.executeQuery("Select count(*) from testCompactLob");
+		assertTrue( rs.next() );
+		assertEquals( 15, rs.getInt(1));
+		dropTable(con,"testCompactLob");
+		con.close();
+	}
+
+
+	private ResultSet getPageStatistics(Connection con, String table) throws Exception{
+		ResultSet rs = ((SsDatabaseMetaData)con.getMetaData()).getTableStatistics(null, null, table);
+		assertTrue( rs.next() );
+		return rs;
+	}
 }
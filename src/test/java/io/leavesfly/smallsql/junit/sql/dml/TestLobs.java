@@ -0,0 +1,246 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * ---------------
+ * TestLobs.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dml;
+
+import java.io.*;
+import java.sql.*;
+import java.util.Arrays;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test large binary and character values that are saved in chunks and read as
+ * streams, Blob and Clob.
+ */
+public class TestLobs extends BasicTestCase {
+
+    private static final String TABLE = "lobs";
+    private static final int LARGE = 3 * 1024 * 1024 + 17;
+
+
+    public void setUp() throws SQLException{
+        Connection con = AllTests.getConnection();
+        dropTable(con, TABLE);
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + TABLE + " (id int, b longvarbinary, c longvarchar)");
+        st.close();
+    }
+
+
+    public void tearDown() throws SQLException{
+        dropTable(AllTests.getConnection(), TABLE);
+    }
+
+
+    public void testStreams() throws Exception{
+        Connection con = AllTests.getConnection();
+        byte[][] bytes = { createBytes(LARGE), createBytes(100), createBytes(70000), null };
+        String[] strings = { createString(LARGE / 2), "small", createString(40000), null };
+
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?)");
+        for(int i = 0; i < bytes.length; i++){
+            pr.setInt(1, i);
+            if(bytes[i] == null){
+                pr.setBinaryStream(2, null);
+                pr.setCharacterStream(3, null);
+            }else if(i % 2 == 0){
+                pr.setBinaryStream(2, new ByteArrayInputStream(bytes[i]), bytes[i].length);
+                pr.setCharacterStream(3, new StringReader(strings[i]), strings[i].length());
+            }else{
+                pr.setBinaryStream(2, new ByteArrayInputStream(bytes[i]));
+                pr.setCharacterStream(3, new StringReader(strings[i]));
+            }
+            assertEquals(1, pr.executeUpdate());
+        }
+        pr.close();
+
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery("SELECT id, b, c FROM " + TABLE + " ORDER BY id");
+        for(int i = 0; i < bytes.length; i++){
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            if(bytes[i] == null){
+                assertNull(rs.getBinaryStream(2));
+                assertNull(rs.getCharacterStream(3));
+                assertNull(rs.getBlob(2));
+                assertNull(rs.getClob(3));
+                continue;
+            }
+            assertTrue("stream " + i, Arrays.equals(bytes[i], readAll(rs.getBinaryStream(2))));
+            assertEquals("reader " + i, strings[i], readAll(rs.getCharacterStream(3)));
+            assertTrue("bytes " + i, Arrays.equals(bytes[i], rs.getBytes(2)));
+            assertEquals("string " + i, strings[i], rs.getString(3));
+
+            Blob blob = rs.getBlob(2);
+            assertEquals(bytes[i].length, blob.length());
+            int pos = bytes[i].length / 2;
+            byte[] part = blob.getBytes(pos + 1, 10);
+            assertTrue(Arrays.equals(Arrays.copyOfRange(bytes[i], pos, pos + 10), part));
+            blob.free();
+
+            Clob clob = rs.getClob(3);
+            assertEquals(strings[i].length(), clob.length());
+            pos = strings[i].length() / 2;
+            assertEquals(strings[i].substring(pos, pos + 2), clob.getSubString(pos + 1, 2));
+            clob.free();
+        }
+        assertFalse(rs.next());
+        st.close();
+    }
+
+
+    public void testBlobAsParameter() throws Exception{
+        Connection con = AllTests.getConnection();
+        byte[] bytes = createBytes(LARGE);
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?)");
+        pr.setInt(1, 1);
+        pr.setBytes(2, bytes);
+        pr.setString(3, "abc");
+        pr.executeUpdate();
+
+        // copy the values with a Blob and a Clob of the first row
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery("SELECT b, c FROM " + TABLE);
+        assertTrue(rs.next());
+        pr.setInt(1, 2);
+        pr.setBlob(2, rs.getBlob(1));
+        pr.setClob(3, rs.getClob(2));
+        pr.executeUpdate();
+        pr.close();
+
+        rs = st.executeQuery("SELECT b, c FROM " + TABLE + " WHERE id = 2");
+        assertTrue(rs.next());
+        assertTrue(Arrays.equals(bytes, rs.getBytes(1)));
+        assertEquals("abc", rs.getString(2));
+        st.close();
+    }
+
+
+    public void testPosition() throws Exception{
+        Connection con = AllTests.getConnection();
+        byte[] bytes = createBytes(LARGE);
+        String string = createString(LARGE / 2);
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?)");
+        pr.setInt(1, 1);
+        pr.setBytes(2, bytes);
+        pr.setString(3, string);
+        pr.executeUpdate();
+        pr.setInt(1, 2);
+        pr.setBytes(2, new byte[]{1, 2, 3, 1, 2, 3});
+        pr.setString(3, "abcabc");
+        pr.executeUpdate();
+        pr.close();
+
+        Statement st = con.createStatement();
+        ResultSet rs = st.executeQuery("SELECT b, c FROM " + TABLE + " ORDER BY id");
+        assertTrue(rs.next());
+        Blob blob = rs.getBlob(1);
+        // a pattern over the border of two mapped chunks
+        int pos = 10 * 0x10000 - 3;
+        byte[] pattern = Arrays.copyOfRange(bytes, pos, pos + 7);
+        assertEquals(indexOf(bytes, pattern, 0) + 1, blob.position(pattern, 1));
+        assertEquals(indexOf(bytes, pattern, pos + 1) + 1, blob.position(pattern, pos + 2));
+        assertEquals(-1, blob.position(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, 1));
+        Clob clob = rs.getClob(2);
+        pos = 3 * 0x8000 - 2;
+        String search = string.substring(pos, pos + 5);
+        assertEquals(string.indexOf(search) + 1, clob.position(search, 1));
+        assertEquals(string.indexOf(search, pos + 1) + 1, clob.position(search, pos + 2));
+        assertEquals(-1, clob.position("ba", 1));
+
+        assertTrue(rs.next());
+        blob = rs.getBlob(1);
+        assertEquals(1, blob.position(new byte[]{1, 2}, 1));
+        assertEquals(4, blob.position(new byte[]{1, 2}, 2));
+        assertEquals(3, blob.position(new byte[]{3, 1}, 1));
+        assertEquals(-1, blob.position(new byte[]{3, 3}, 1));
+        clob = rs.getClob(2);
+        assertEquals(4, clob.position("abc", 2));
+        assertEquals(1, clob.position(rs.getClob(2), 1));
+        assertEquals(-1, clob.position("abd", 1));
+        st.close();
+    }
+
+
+    private static int indexOf(byte[] bytes, byte[] pattern, int start){
+        outer: for(int i = start; i <= bytes.length - pattern.length; i++){
+            for(int k = 0; k < pattern.length; k++){
+                if(bytes[i + k] != pattern[k]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+
+    private static byte[] createBytes(int length){
+        byte[] bytes = new byte[length];
+        for(int i = 0; i < length; i++){
+            bytes[i] = (byte)(i * 31 + (i >> 8));
+        }
+        return bytes;
+    }
+
+
+    private static String createString(int length){
+        StringBuilder builder = new StringBuilder(length);
+        for(int i = 0; i < length; i++){
+            builder.append((char)('a' + i % 26 + (i % 1000 == 0 ? 0x4e00 : 0)));
+        }
+        return builder.toString();
+    }
+
+
+    private static byte[] readAll(InputStream in) throws IOException{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while((count = in.read(buffer)) > 0){
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+
+    private static String readAll(Reader in) throws IOException{
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[8192];
+        int count;
+        while((count = in.read(buffer)) > 0){
+            builder.append(buffer, 0, count);
+        }
+        in.close();
+        return builder.toString();
+    }
+}
@@ -0,0 +1,172 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestConditions.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test that the compiled conditions of WHERE and ON select the same rows as
+ * the condition evaluated as column expression.
+ */
+public class TestConditions extends BasicTestCase {
+
+	private static final String TABLE = "Conditions";
+
+	private static final String[] CONDITIONS = {
+		"i > 3",
+		"i + b * 2 >= 20",
+		"i / 2 = 2",
+		"-i < -4",
+		"i % 3 <> 1",
+		"r * 2 > 5",
+		"d - i BETWEEN 0 AND 0.7",
+		"b BETWEEN i AND 8",
+		"i = b",
+		"i IS NULL",
+		"i * 2 IS NOT NULL",
+		"NOT (i > 3 AND d < 8)",
+		"i > 6 OR b < 3",
+		"v = 'Name3'",
+		"v > 'name5' OR v < 'name1'",
+		"i + 2000000000 > 2000000005",
+		"b * 1000000000000 > 5000000000000",
+		"i > 2.5",
+		"dt > '2011-01-15'",
+	};
+
+
+	public void setUp() throws SQLException{
+		Connection con = AllTests.getConnection();
+		dropTable(con, TABLE);
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE " + TABLE + " (id int, i int, b bigint, r real, d double, v varchar(20), dt date)");
+		PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?,?,?,?,?)");
+		for(int n = 0; n < 10; n++){
+			pr.setInt(1, n);
+			if(n % 4 == 2){
+				pr.setNull(2, Types.INTEGER);
+			}else{
+				pr.setInt(2, n);
+			}
+			if(n % 5 == 4){
+				pr.setNull(3, Types.BIGINT);
+			}else{
+				pr.setLong(3, 9 - n);
+			}
+			pr.setFloat(4, n * 0.75f);
+			pr.setDouble(5, n * 1.5);
+			pr.setString(6, n == 7 ? null : "Name" + n);
+			pr.setDate(7, Date.valueOf("2011-01-1" + n));
+			pr.execute();
+		}
+		pr.close();
+		st.close();
+	}
+
+
+	public void tearDown() throws SQLException{
+		dropTable(AllTests.getConnection(), TABLE);
+	}
+
+
+	public void testWhere() throws Exception{
+		for(int c = 0; c < CONDITIONS.length; c++){
+			String condition = CONDITIONS[c];
+			assertEquals(condition, getIdsFromColumn(condition), getIds("SELECT id FROM " + TABLE + " WHERE " + condition + " ORDER BY id"));
+		}
+	}
+
+
+	public void testIn() throws Exception{
+		assertEquals("1,3,7,", getIds("SELECT id FROM " + TABLE + " WHERE i IN (1, 3, null, 7) ORDER BY id"));
+		assertEquals("1,3,", getIds("SELECT id FROM " + TABLE + " WHERE d IN (1.5, 4.5) ORDER BY id"));
+		assertEquals("0,2,6,8,", getIds("SELECT id FROM " + TABLE + " WHERE b IN (1, 3, 7, 9) ORDER BY id"));
+		assertEquals("1,6,8,9,", getIds("SELECT id FROM " + TABLE + " WHERE v > 'name5' OR v IN ('NAME1', 'x') ORDER BY id"));
+		assertEquals("", getIds("SELECT id FROM " + TABLE + " WHERE i IN (null)"));
+	}
+
+
+	public void testJoin() throws Exception{
+		assertEquals(getIdsFromColumn("i = b"), getIds("SELECT a.id FROM " + TABLE + " a INNER JOIN " + TABLE + " x ON a.id=x.id AND a.i=x.b ORDER BY a.id"));
+		assertEquals(getIdsFromColumn("i > 6 OR b < 3"), getIds("SELECT a.id FROM " + TABLE + " a INNER JOIN " + TABLE + " x ON a.id=x.id AND (x.i > 6 OR x.b < 3) ORDER BY a.id"));
+	}
+
+
+	public void testParameterTypes() throws Exception{
+		Connection con = AllTests.getConnection();
+		PreparedStatement pr = con.prepareStatement("SELECT id FROM " + TABLE + " WHERE i + ? > 8 ORDER BY id");
+		pr.setInt(1, 2);
+		assertEquals("7,8,9,", getIds(pr.executeQuery()));
+		// the comparison must be compiled again for the new data type
+		pr.setDouble(1, 2.5);
+		assertEquals("7,8,9,", getIds(pr.executeQuery()));
+		pr.setNull(1, Types.INTEGER);
+		assertEquals("", getIds(pr.executeQuery()));
+		pr.close();
+	}
+
+
+	/**
+	 * Get the ids of all rows for which the condition as column expression is true.
+	 */
+	private String getIdsFromColumn(String condition) throws Exception{
+		Statement st = AllTests.getConnection().createStatement();
+		ResultSet rs = st.executeQuery("SELECT id, " + condition + " FROM " + TABLE + " ORDER BY id");
+		StringBuilder ids = new StringBuilder();
+		while(rs.next()){
+			if(rs.getBoolean(2)){
+				ids.append(rs.getInt(1)).append(',');
+			}
+		}
+		st.close();
+		return ids.toString();
+	}
+
+
+	private String getIds(String sql) throws Exception{
+		Statement st = AllTests.getConnection().createStatement();
+		String ids = getIds(st.executeQuery(sql));
+		st.close();
+		return ids;
+	}
+
+
+	private String getIds(ResultSet rs) throws Exception{
+		StringBuilder ids = new StringBuilder();
+		while(rs.next()){
+			ids.append(rs.getInt(1)).append(',');
+		}
+		return ids.toString();
+	}
+}
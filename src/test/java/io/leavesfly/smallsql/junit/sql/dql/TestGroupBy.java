@@ -378,4 +378,117 @@ public class TestGroupBy extends BasicTestCase {
 		assertEqualsRsValue( new Integer(0), "Select count(*) FROM " + table1);
 	}
 	
+
+	/**
+	 * Many groups with a small memory limit. The groups that not fit in the
+	 * hash table are sorted with temporary files. The result must be equals
+	 * to the result without a memory limit.
+	 */
+	public void testManyGroupsSpill() throws Exception{
+		Connection con = AllTests.getConnection();
+		String table = "table_GroupBySpill";
+		dropTable( con, table );
+		Statement st = con.createStatement();
+		try{
+			st.execute("create table " + table + "(name varchar(30), id int, d decimal(10,2))");
+			PreparedStatement pr = con.prepareStatement("INSERT into " + table + "(name, id, d) Values(?,?,?)");
+			for(int i=0; i<3000; i++){
+				int group = (i * 13) % 700;
+				// different case of the same name must be in the same group
+				pr.setString( 1, (i % 2 == 0 ? "Name" : "NAME") + group);
+				if(i % 11 == 0){
+					pr.setNull( 2, Types.INTEGER );
+				}else{
+					pr.setInt( 2, i );
+				}
+				pr.setBigDecimal( 3, new BigDecimal( i % 13 ).movePointLeft(1) );
+				pr.execute();
+			}
+			pr.close();
+
+			String sql = "Select name, count(*), count(id), sum(id), min(id), max(id), sum(d), first(id), last(id) FROM " + table + " Group By name Order By name";
+			Connection con2 = AllTests.createConnection("?workmemory=1", null);
+			try{
+				ResultSet rs1 = st.executeQuery(sql);
+				ResultSet rs2 = con2.createStatement().executeQuery(sql);
+				int count = 0;
+				while(rs1.next()){
+					assertTrue( "To few rows", rs2.next() );
+					for(int c=1; c<=9; c++){
+						assertEquals( "Row " + count + " col " + c, rs1.getObject(c), rs2.getObject(c) );
+					}
+					count++;
+				}
+				assertFalse( "To many rows", rs2.next() );
+				assertEquals( 700, count );
+			}finally{
+				con2.close();
+			}
+		}finally{
+			dropTable( con, table );
+		}
+	}
+
+
+	public void testBatchEqualsRows() throws Exception{
+		Connection con = AllTests.getConnection();
+		String table = "table_GroupByBatch";
+		dropTable( con, table );
+		Statement st = con.createStatement();
+		try{
+			st.execute("create table " + table + "(grp int, id bigint, r real, d double)");
+			PreparedStatement pr = con.prepareStatement("INSERT into " + table + "(grp, id, r, d) Values(?,?,?,?)");
+			for(int i=0; i<1000; i++){
+				pr.setInt( 1, i % 7 );
+				if(i % 5 == 0){
+					pr.setNull( 2, Types.BIGINT );
+				}else{
+					pr.setLong( 2, i - 300 );
+				}
+				pr.setFloat( 3, i * 0.5f );
+				if(i % 3 == 0){
+					pr.setNull( 4, Types.DOUBLE );
+				}else{
+					pr.setDouble( 4, i == 10 ? -0.0 : i * -0.25 );
+				}
+				pr.execute();
+			}
+			pr.close();
+
+			String[] sqls = {
+				"Select count(*), count(id), sum(id), min(d), max(d), sum(r), avg(d) FROM " + table,
+				"Select count(*), sum(d), max(id) FROM " + table + " WHERE id > 100 AND d <= -50 OR id IS NULL",
+				"Select count(id), min(r) FROM " + table + " WHERE NOT (grp BETWEEN 2 AND 4) AND d IS NOT NULL",
+				"Select count(*), sum(id) FROM " + table + " WHERE id = 5000",
+				"Select count(null), sum(d) FROM " + table + " WHERE grp <> 3",
+				"Select grp, count(*), count(d), sum(id), min(id), max(r) FROM " + table + " WHERE id < 500 Group By grp Order By grp",
+				"Select d, count(*) FROM " + table + " WHERE d > -3 Group By d Order By d",
+			};
+			// a small batch size to test the batch boundaries
+			Connection con1 = AllTests.createConnection("?batchsize=0", null);
+			Connection con2 = AllTests.createConnection("?batchsize=17", null);
+			try{
+				for(int s=0; s<sqls.length; s++){
+					String sql = sqls[s];
+					ResultSet rs1 = con1.createStatement().executeQuery(sql);
+					ResultSet rs2 = con2.createStatement().executeQuery(sql);
+					int colCount = rs1.getMetaData().getColumnCount();
+					int count = 0;
+					while(rs1.next()){
+						assertTrue( sql + ": To few rows", rs2.next() );
+						for(int c=1; c<=colCount; c++){
+							assertEquals( sql + ": Row " + count + " col " + c, rs1.getObject(c), rs2.getObject(c) );
+						}
+						count++;
+					}
+					assertFalse( sql + ": To many rows", rs2.next() );
+				}
+			}finally{
+				con1.close();
+				con2.close();
+			}
+		}finally{
+			dropTable( con, table );
+		}
+	}
 }
@@ -0,0 +1,181 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestHashJoin.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test that a hash join return the same rows as the nested loop join. A
+ * condition like a &gt;= b AND a &lt;= b can not be used as key of a hash join
+ * and is the reference for an equals condition.
+ */
+public class TestHashJoin extends BasicTestCase {
+
+	private static final String LARGE = "HashJoinLarge";
+	private static final String SMALL = "HashJoinSmall";
+
+	private static final String[][] CONDITIONS = {
+		// hash key, the same condition for the nested loop
+		{ "a.k = b.k", "a.k >= b.k AND a.k <= b.k" },
+		{ "b.k = a.k AND a.s = b.s", "a.k >= b.k AND a.k <= b.k AND a.s >= b.s AND a.s <= b.s" },
+		{ "a.s = b.s", "a.s >= b.s AND a.s <= b.s" },
+		{ "a.d = b.k", "a.d >= b.k AND a.d <= b.k" },
+		{ "a.k = b.k AND a.id > b.id", "a.k >= b.k AND a.k <= b.k AND a.id > b.id" },
+		{ "a.k + 1 = b.k * 2", "a.k + 1 >= b.k * 2 AND a.k + 1 <= b.k * 2" },
+	};
+
+	private static final String[] JOINS = { "INNER JOIN", "LEFT JOIN", "RIGHT JOIN", "FULL JOIN" };
+
+
+	public void setUp() throws SQLException{
+		tearDown();
+		Connection con = AllTests.getConnection();
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE " + LARGE + " (id int, k int, s varchar(20), d double)");
+		st.execute("CREATE TABLE " + SMALL + " (id int, k bigint, s varchar(20), d double)");
+		PreparedStatement pr = con.prepareStatement("INSERT INTO " + LARGE + " VALUES(?,?,?,?)");
+		for(int i = 0; i < 400; i++){
+			insert(pr, i, i % 60, (i % 7 == 0) ? null : "Value" + (i % 40), i % 60);
+		}
+		pr.close();
+		pr = con.prepareStatement("INSERT INTO " + SMALL + " VALUES(?,?,?,?)");
+		for(int i = 0; i < 50; i++){
+			insert(pr, i, i + 20, (i % 3 == 0) ? "VALUE" + i : "value" + i, i * 0.5);
+		}
+		pr.close();
+		st.close();
+	}
+
+
+	private static void insert(PreparedStatement pr, int id, int k, String s, double d) throws SQLException{
+		pr.setInt(1, id);
+		if(id % 11 == 5){
+			pr.setNull(2, Types.INTEGER);
+		}else{
+			pr.setInt(2, k);
+		}
+		pr.setString(3, s);
+		pr.setDouble(4, d);
+		pr.execute();
+	}
+
+
+	public void tearDown() throws SQLException{
+		Connection con = AllTests.getConnection();
+		dropTable(con, LARGE);
+		dropTable(con, SMALL);
+	}
+
+
+	public void testJoinTypes() throws Exception{
+		Connection con = AllTests.getConnection();
+		for(int c = 0; c < CONDITIONS.length; c++){
+			for(int j = 0; j < JOINS.length; j++){
+				// the smaller table on both sides to test the choice of the build side
+				assertJoin(con, LARGE, SMALL, JOINS[j], CONDITIONS[c]);
+				assertJoin(con, SMALL, LARGE, JOINS[j], CONDITIONS[c]);
+			}
+		}
+	}
+
+
+	public void testSpill() throws Exception{
+		// with a work memory of 1 KB the hash table is split into partitions
+		Connection con = AllTests.createConnection("?workmemory=1", null);
+		try{
+			for(int c = 0; c < CONDITIONS.length; c++){
+				for(int j = 0; j < JOINS.length; j++){
+					assertJoin(con, LARGE, SMALL, JOINS[j], CONDITIONS[c]);
+					assertJoin(con, SMALL, LARGE, JOINS[j], CONDITIONS[c]);
+				}
+			}
+		}finally{
+			con.close();
+		}
+	}
+
+
+	public void testPreparedStatement() throws Exception{
+		Connection con = AllTests.getConnection();
+		PreparedStatement pr = con.prepareStatement("SELECT count(*), count(b.id) FROM " + LARGE + " a LEFT JOIN " + SMALL + " b ON a.k = b.k AND b.id < ?");
+		pr.setInt(1, 100);
+		ResultSet rs = pr.executeQuery();
+		assertTrue(rs.next());
+		assertEquals(400, rs.getInt(1));
+		int matches = rs.getInt(2);
+		assertTrue(matches > 0);
+		pr.setInt(1, 0);
+		rs = pr.executeQuery();
+		assertTrue(rs.next());
+		assertEquals(400, rs.getInt(1));
+		assertEquals(0, rs.getInt(2));
+		pr.setInt(1, 100);
+		rs = pr.executeQuery();
+		assertTrue(rs.next());
+		assertEquals(matches, rs.getInt(2));
+		pr.close();
+	}
+
+
+	public void testNestedJoin() throws Exception{
+		String sql = "SELECT a.id, b.id, c.id FROM " + LARGE + " a INNER JOIN " + SMALL + " b ON %1 LEFT JOIN " + SMALL + " c ON %2 ORDER BY a.id, b.id, c.id";
+		String hash = sql.replace("%1", "a.k = b.k").replace("%2", "c.id = b.id - 1");
+		String loop = sql.replace("%1", "a.k >= b.k AND a.k <= b.k").replace("%2", "c.id >= b.id - 1 AND c.id <= b.id - 1");
+		Connection con = AllTests.getConnection();
+		assertEquals(getRows(con, loop), getRows(con, hash));
+	}
+
+
+	private void assertJoin(Connection con, String left, String right, String join, String[] condition) throws Exception{
+		String sql = "SELECT a.id, b.id FROM " + left + " a " + join + " " + right + " b ON %1 ORDER BY a.id, b.id";
+		String expected = getRows(con, sql.replace("%1", condition[1]));
+		assertEquals(join + " " + condition[0], expected, getRows(con, sql.replace("%1", condition[0])));
+	}
+
+
+	private static String getRows(Connection con, String sql) throws Exception{
+		Statement st = con.createStatement();
+		ResultSet rs = st.executeQuery(sql);
+		int count = rs.getMetaData().getColumnCount();
+		StringBuilder rows = new StringBuilder();
+		while(rs.next()){
+			for(int c = 1; c <= count; c++){
+				rows.append(rs.getObject(c)).append(',');
+			}
+			rows.append('\n');
+		}
+		st.close();
+		return rows.toString();
+	}
+}
@@ -0,0 +1,218 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestIndexLookup.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test the queries that read the rows with an index and the maintenance of the
+ * index on INSERT, UPDATE, DELETE and rollback.
+ */
+public class TestIndexLookup extends BasicTestCase {
+
+	private static final String TABLE = "IndexLookup";
+
+
+	public void setUp() throws SQLException{
+		Connection con = AllTests.getConnection();
+		dropTable(con, TABLE);
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE " + TABLE + " (id int PRIMARY KEY, grp int, name varchar(30), d double, UNIQUE(grp, d))");
+		PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?,?)");
+		for(int i = 0; i < 200; i++){
+			pr.setInt(1, i);
+			pr.setInt(2, i % 10);
+			pr.setString(3, "Name" + i);
+			pr.setDouble(4, i * 0.5);
+			pr.execute();
+		}
+		pr.close();
+		st.close();
+	}
+
+
+	public void tearDown() throws SQLException{
+		Connection con = AllTests.getConnection();
+		con.setAutoCommit(true);
+		dropTable(con, TABLE);
+	}
+
+
+	public void testEquals() throws Exception{
+		assertEqualsRsValue("Name17", "SELECT name FROM " + TABLE + " WHERE id=17");
+		assertEqualsRsValue("Name17", "SELECT name FROM " + TABLE + " WHERE 17=id");
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id=1000");
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id=null");
+		assertRowCount(20, "SELECT name FROM " + TABLE + " WHERE grp=3");
+		assertRowCount(1, "SELECT name FROM " + TABLE + " WHERE grp=3 AND d=1.5");
+		assertRowCount(1, "SELECT name FROM " + TABLE + " WHERE grp=3 AND id=3");
+
+		Connection con = AllTests.getConnection();
+		PreparedStatement pr = con.prepareStatement("SELECT name FROM " + TABLE + " WHERE id=?");
+		for(int i = 0; i < 200; i += 7){
+			pr.setInt(1, i);
+			ResultSet rs = pr.executeQuery();
+			assertTrue("No row produce", rs.next());
+			assertEqualsRsValue("Name" + i, rs, false);
+			assertFalse(rs.next());
+		}
+		pr.close();
+	}
+
+
+	public void testRange() throws Exception{
+		assertRowCount(10, "SELECT name FROM " + TABLE + " WHERE id>=10 AND id<20");
+		assertRowCount(9, "SELECT name FROM " + TABLE + " WHERE id>10 AND id<20");
+		assertRowCount(11, "SELECT name FROM " + TABLE + " WHERE id BETWEEN 10 AND 20");
+		assertRowCount(5, "SELECT name FROM " + TABLE + " WHERE 5>id");
+		assertRowCount(4, "SELECT name FROM " + TABLE + " WHERE grp=3 AND d>=10 AND d<=30");
+		assertRowCount(2, "SELECT name FROM " + TABLE + " WHERE id>-3 AND id<2");
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id>200");
+	}
+
+
+	public void testJoin() throws Exception{
+		// the conditions of a single table are verified before the join
+		assertRowCount(20, "SELECT a.name FROM " + TABLE + " a INNER JOIN " + TABLE + " b ON a.id=b.grp WHERE a.id=3");
+		assertRowCount(20, "SELECT a.name FROM " + TABLE + " a, " + TABLE + " b WHERE a.id=b.grp AND b.grp=3 AND a.name='Name3'");
+		assertRowCount(2, "SELECT a.name FROM " + TABLE + " a INNER JOIN " + TABLE + " b ON a.id=b.id WHERE a.id>=10 AND b.id<12");
+
+		// the WHERE of the outer side of a LEFT JOIN is verified after the join
+		assertRowCount(1, "SELECT a.name FROM " + TABLE + " a LEFT JOIN " + TABLE + " b ON a.id=b.id+1000 WHERE a.id=5 AND b.id IS NULL");
+		assertRowCount(0, "SELECT a.name FROM " + TABLE + " a LEFT JOIN " + TABLE + " b ON a.id=b.id+1000 WHERE a.id=5 AND b.id=5");
+		assertRowCount(0, "SELECT a.name FROM " + TABLE + " a RIGHT JOIN " + TABLE + " b ON a.id=b.id+1000 WHERE a.id=5");
+
+		Connection con = AllTests.getConnection();
+		PreparedStatement pr = con.prepareStatement("SELECT b.name FROM " + TABLE + " a INNER JOIN " + TABLE + " b ON a.grp=b.id WHERE a.id=?");
+		for(int i = 0; i < 200; i += 13){
+			pr.setInt(1, i);
+			ResultSet rs = pr.executeQuery();
+			assertTrue("No row produce", rs.next());
+			assertEqualsRsValue("Name" + (i % 10), rs, false);
+			assertFalse(rs.next());
+		}
+		pr.close();
+	}
+
+
+	public void testUpdateDelete() throws Exception{
+		Connection con = AllTests.getConnection();
+		Statement st = con.createStatement();
+		assertEquals(1, st.executeUpdate("UPDATE " + TABLE + " SET id=1000 WHERE id=17"));
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id=17");
+		assertEqualsRsValue("Name17", "SELECT name FROM " + TABLE + " WHERE id=1000");
+
+		assertEquals(20, st.executeUpdate("UPDATE " + TABLE + " SET grp=grp+100 WHERE grp=3"));
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE grp=3");
+		assertRowCount(20, "SELECT name FROM " + TABLE + " WHERE grp=103");
+
+		assertEquals(10, st.executeUpdate("DELETE FROM " + TABLE + " WHERE id>=100 AND id<110"));
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id>=100 AND id<110");
+		assertRowCount(190, "SELECT name FROM " + TABLE);
+
+		st.execute("INSERT INTO " + TABLE + " VALUES(105, 5, 'New', 1)");
+		assertEqualsRsValue("New", "SELECT name FROM " + TABLE + " WHERE id=105");
+		st.close();
+	}
+
+
+	public void testTransaction() throws Exception{
+		Connection con = AllTests.getConnection();
+		con.setAutoCommit(false);
+		Statement st = con.createStatement();
+		st.execute("INSERT INTO " + TABLE + " VALUES(500, 5, 'Tx', 1)");
+		st.execute("UPDATE " + TABLE + " SET id=501 WHERE id=5");
+		st.execute("DELETE FROM " + TABLE + " WHERE id=6");
+		assertEqualsRsValue("Tx", "SELECT name FROM " + TABLE + " WHERE id=500");
+		assertEqualsRsValue("Name5", "SELECT name FROM " + TABLE + " WHERE id=501");
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id=5");
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id=6");
+		con.rollback();
+
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id=500");
+		assertRowCount(0, "SELECT name FROM " + TABLE + " WHERE id=501");
+		assertEqualsRsValue("Name5", "SELECT name FROM " + TABLE + " WHERE id=5");
+		assertEqualsRsValue("Name6", "SELECT name FROM " + TABLE + " WHERE id=6");
+
+		// the key of the rollback can be used again
+		st.execute("INSERT INTO " + TABLE + " VALUES(500, 5, 'Tx2', 1)");
+		con.commit();
+		assertEqualsRsValue("Tx2", "SELECT name FROM " + TABLE + " WHERE id=500");
+		st.close();
+	}
+
+
+	public void testSwapKeys() throws Exception{
+		Connection con = AllTests.getConnection();
+		con.setAutoCommit(false);
+		Statement st = con.createStatement();
+		st.execute("UPDATE " + TABLE + " SET id=-1 WHERE id=17");
+		st.execute("UPDATE " + TABLE + " SET id=17 WHERE id=18");
+		st.execute("UPDATE " + TABLE + " SET id=18 WHERE id=-1");
+		con.commit();
+		assertEqualsRsValue("Name18", "SELECT name FROM " + TABLE + " WHERE id=17");
+		assertEqualsRsValue("Name17", "SELECT name FROM " + TABLE + " WHERE id=18");
+		assertRowCount(1, "SELECT name FROM " + TABLE + " WHERE id=17");
+		assertRowCount(1, "SELECT name FROM " + TABLE + " WHERE id=18");
+		st.close();
+	}
+
+
+	public void testReopen() throws Exception{
+		String url = "jdbc:smallsql:" + AllTests.CATALOG + "Index?create=true;locale=en";
+		Connection con = DriverManager.getConnection(url);
+		dropTable(con, TABLE);
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE " + TABLE + " (id int PRIMARY KEY, name varchar(30))");
+		for(int i = 0; i < 50; i++){
+			st.execute("INSERT INTO " + TABLE + " VALUES(" + i + ",'Name" + i + "')");
+		}
+		st.execute("DELETE FROM " + TABLE + " WHERE id=20");
+		con.close();
+
+		con = DriverManager.getConnection(url);
+		st = con.createStatement();
+		ResultSet rs = st.executeQuery("SELECT name FROM " + TABLE + " WHERE id=30");
+		assertTrue(rs.next());
+		assertEquals("Name30", rs.getString(1));
+		rs = st.executeQuery("SELECT name FROM " + TABLE + " WHERE id=20");
+		assertFalse(rs.next());
+		st.execute("UPDATE " + TABLE + " SET id=20 WHERE id=30");
+		rs = st.executeQuery("SELECT name FROM " + TABLE + " WHERE id=20");
+		assertTrue(rs.next());
+		assertEquals("Name30", rs.getString(1));
+		dropTable(con, TABLE);
+		con.close();
+	}
+}
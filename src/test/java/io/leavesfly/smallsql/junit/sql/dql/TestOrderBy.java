@@ -821,4 +821,112 @@ public class TestOrderBy extends BasicTestCase {
 	}
 
 
+	public void testSpillAndTopN() throws Exception{
+		Connection con = AllTests.getConnection();
+		String table = "table_OrderBySpill";
+		dropTable( con, table );
+		Statement st = con.createStatement();
+		try{
+			st.execute("create table " + table + "(id int, v varchar(30), d double)");
+			PreparedStatement pr = con.prepareStatement("INSERT into " + table + "(id, v, d) Values(?,?,?)");
+			for(int i=0; i<3000; i++){
+				pr.setInt( 1, i );
+				pr.setString( 2, (i % 3 == 0 ? "Value" : "VALUE") + ((i * 7) % 1000) );
+				if(i % 17 == 0){
+					pr.setNull( 3, Types.DOUBLE );
+				}else{
+					pr.setDouble( 3, (i * 13) % 500 - 250.5 );
+				}
+				pr.execute();
+			}
+			pr.close();
+
+			String sql = "SELECT id FROM " + table + " ORDER BY v DESC, d, id DESC";
+			String expected = getIds(st.executeQuery(sql), -1);
+			ResultSet rs = st.executeQuery("SELECT v, d, id FROM " + table + " ORDER BY v DESC, d, id DESC");
+			int count = 0;
+			String oldV = null;
+			Object oldD = null;
+			int oldId = 0;
+			while(rs.next()){
+				String v = rs.getString(1);
+				Object d = rs.getObject(2);
+				int id = rs.getInt(3);
+				if(count > 0){
+					int comp = -oldV.compareToIgnoreCase(v);
+					if(comp == 0){
+						comp = oldD == null ? (d == null ? 0 : -1) : (d == null ? 1 : ((Double)oldD).compareTo((Double)d));
+					}
+					if(comp == 0){
+						comp = id - oldId;
+					}
+					assertTrue( "Row " + count, comp < 0 );
+				}
+				oldV = v;
+				oldD = d;
+				oldId = id;
+				count++;
+			}
+			assertEquals( 3000, count );
+
+			// sort with temporary files
+			Connection con2 = AllTests.createConnection("?workmemory=1", null);
+			try{
+				Statement st2 = con2.createStatement();
+				assertEquals( expected, getIds(st2.executeQuery(sql), -1) );
+				st2.setMaxRows(2000);
+				assertEquals( getFirstIds(expected, 2000), getIds(st2.executeQuery(sql), -1) );
+			}finally{
+				con2.close();
+			}
+
+			// Top-N with a bounded heap
+			st.setMaxRows(25);
+			assertEquals( getFirstIds(expected, 25), getIds(st.executeQuery(sql), -1) );
+			st.setMaxRows(0);
+			assertEquals( getFirstIds(expected, 10), getIds(st.executeQuery("SELECT TOP 10 id FROM " + table + " ORDER BY v DESC, d, id DESC"), -1) );
+
+			// scrolling in a Top-N result
+			Statement scroll = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			scroll.setMaxRows(25);
+			rs = scroll.executeQuery(sql);
+			assertTrue( rs.last() );
+			assertEquals( 25, rs.getRow() );
+			assertTrue( rs.absolute(3) );
+			String[] ids = getFirstIds(expected, 3).split(",");
+			assertEquals( Integer.parseInt(ids[2]), rs.getInt(1) );
+			assertTrue( rs.previous() );
+			assertEquals( Integer.parseInt(ids[1]), rs.getInt(1) );
+
+			// a PreparedStatement must sort again on every execute
+			PreparedStatement pr2 = con.prepareStatement("SELECT id FROM " + table + " WHERE id < ? ORDER BY d DESC, id");
+			pr2.setInt( 1, 100 );
+			String first = getIds(pr2.executeQuery(), -1);
+			pr2.setInt( 1, 200 );
+			pr2.executeQuery();
+			pr2.setInt( 1, 100 );
+			assertEquals( first, getIds(pr2.executeQuery(), -1) );
+			pr2.close();
+		}finally{
+			dropTable( con, table );
+		}
+	}
+
+
+	private static String getIds(ResultSet rs, int maxCount) throws Exception{
+		StringBuilder ids = new StringBuilder();
+		while(rs.next() && maxCount-- != 0){
+			ids.append( rs.getInt(1) ).append(',');
+		}
+		return ids.toString();
+	}
+
+
+	private static String getFirstIds(String ids, int count){
+		int idx = 0;
+		while(count-- > 0){
+			idx = ids.indexOf(',', idx) + 1;
+		}
+		return ids.substring(0, idx);
+	}
 }
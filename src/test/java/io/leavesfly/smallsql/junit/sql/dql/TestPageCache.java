@@ -0,0 +1,142 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestPageCache.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dql;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.sql.*;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+import io.leavesfly.smallsql.rdb.engine.store.PageCache;
+
+/**
+ * Test the page cache of the database and its counters.
+ */
+public class TestPageCache extends BasicTestCase {
+
+	private static final String TABLE = "PageCache";
+
+
+	public void setUp() throws SQLException{
+		Connection con = AllTests.getConnection();
+		dropTable(con, TABLE);
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE " + TABLE + " (i int, v varchar(20))");
+		for(int i = 0; i < 100; i++){
+			st.execute("INSERT INTO " + TABLE + " VALUES(" + i + ", 'Value" + i + "')");
+		}
+		st.close();
+	}
+
+
+	public void tearDown() throws SQLException{
+		dropTable(AllTests.getConnection(), TABLE);
+	}
+
+
+	public void testRescan() throws Exception{
+		Connection con = AllTests.getConnection();
+		PageCache cache = ((SsConnection)con).getPageCache();
+		Statement st = con.createStatement();
+		assertRowCount(100, st.executeQuery("SELECT * FROM " + TABLE));
+		long hits = cache.getHitCount();
+		long misses = cache.getMissCount();
+		// every row of the second scan is read from the cache
+		assertRowCount(100, st.executeQuery("SELECT * FROM " + TABLE));
+		assertTrue(cache.getHitCount() - hits >= 100);
+		assertEquals(misses, cache.getMissCount());
+		assertTrue(cache.getUsedSize() > 0);
+		st.close();
+	}
+
+
+	public void testEviction() throws Exception{
+		File file = File.createTempFile("smallsql", ".cache");
+		RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+		try{
+			FileChannel channel = raFile.getChannel();
+			PageCache cache = new PageCache(64 * 1024);
+			// a dirty page is never evicted
+			byte[] dirty = new byte[100];
+			cache.write(channel, 0, dirty, dirty.length);
+			for(int i = 1; i <= 1000; i++){
+				long offset = i * 1000L;
+				cache.putLoaded(channel, offset, new byte[1000], cache.getLoadStamp(channel, offset));
+			}
+			assertTrue(cache.getEvictionCount() > 0);
+			assertTrue(cache.getUsedSize() <= cache.getMaxSize());
+			assertNotNull(cache.get(channel, 0));
+
+			cache.written(channel, 0);
+
+			// a page that was changed after the stamp is not added
+			long stamp = cache.getLoadStamp(channel, 5);
+			cache.discard(channel, 5);
+			cache.putLoaded(channel, 5, new byte[10], stamp);
+			assertNull(cache.get(channel, 5));
+
+			cache.invalidate(channel);
+			assertEquals(0, cache.getUsedSize());
+		}finally{
+			raFile.close();
+			file.delete();
+		}
+	}
+
+
+	public void testDisabled() throws Exception{
+		File file = File.createTempFile("smallsql", ".cache");
+		RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+		try{
+			FileChannel channel = raFile.getChannel();
+			PageCache cache = new PageCache(0);
+			cache.putLoaded(channel, 0, new byte[10], cache.getLoadStamp(channel, 0));
+			assertNull(cache.get(channel, 0));
+			assertEquals(0, cache.getMissCount());
+		}finally{
+			raFile.close();
+			file.delete();
+		}
+	}
+
+
+	public void testInvalidSize() throws Exception{
+		try{
+			DriverManager.getConnection("jdbc:smallsql:" + AllTests.CATALOG + "Cache?create=true;locale=en;cachesize=abc");
+			fail("Invalid cachesize");
+		}catch(SQLException ex){
+			// expected
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * ---------------
+ * TestParallelScan.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test that aggregates over the partitions of a parallel table scan return the
+ * same results as the sequential scan.
+ */
+public class TestParallelScan extends BasicTestCase {
+
+	private static final String TABLE = "ParallelScan";
+	private static final int ROW_COUNT = 30000;
+
+	private static final String[] QUERIES = {
+		"SELECT count(*), sum(i), min(i), max(i), sum(d), min(d), max(d) FROM " + TABLE,
+		"SELECT count(*), count(d), sum(b) FROM " + TABLE + " WHERE i > 1000 AND grp < 50",
+		"SELECT count(*), sum(d) FROM " + TABLE + " WHERE i BETWEEN 10 AND 20000 OR d < 10",
+		"SELECT grp, count(*), sum(i), min(d), max(b) FROM " + TABLE + " GROUP BY grp",
+		"SELECT grp, count(*) FROM " + TABLE + " WHERE i % 3 = 0 GROUP BY grp",
+		"SELECT count(*), max(i) FROM " + TABLE + " WHERE i < 0",
+		"SELECT grp, sum(i) FROM " + TABLE + " WHERE i < 0 GROUP BY grp",
+	};
+
+	private Connection parallelCon;
+	private Connection sequentialCon;
+
+
+	public void setUp() throws SQLException{
+		Connection con = AllTests.getConnection();
+		dropTable(con, TABLE);
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE " + TABLE + " (i int, grp int, b bigint, d double, v varchar(100))");
+		con.setAutoCommit(false);
+		PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?,?,?,?,?)");
+		for(int i = 0; i < ROW_COUNT; i++){
+			pr.setInt(1, i);
+			pr.setInt(2, i % 100);
+			pr.setLong(3, i * 1000000L);
+			if(i % 10 == 0){
+				pr.setNull(4, Types.DOUBLE);
+			}else{
+				pr.setDouble(4, i * 0.25);
+			}
+			pr.setString(5, "Value " + i);
+			pr.execute();
+		}
+		con.commit();
+		con.setAutoCommit(true);
+		pr.close();
+		// deleted rows and rows that are moved to the end of the file
+		st.execute("DELETE FROM " + TABLE + " WHERE i % 7 = 0");
+		st.execute("UPDATE " + TABLE + " SET v = '" + createString(90) + "', i = i + 1 WHERE i % 11 = 0");
+		st.close();
+		parallelCon = AllTests.createConnection("?locale=en;parallelism=4", null);
+		sequentialCon = AllTests.createConnection("?locale=en;parallelism=1", null);
+	}
+
+
+	public void tearDown() throws SQLException{
+		if(parallelCon != null){
+			parallelCon.close();
+			sequentialCon.close();
+		}
+		dropTable(AllTests.getConnection(), TABLE);
+	}
+
+
+	public void testAggregates() throws Exception{
+		for(int q = 0; q < QUERIES.length; q++){
+			String sql = QUERIES[q];
+			assertEquals(sql, query(sequentialCon, sql), query(parallelCon, sql));
+		}
+	}
+
+
+	/**
+	 * The groups of a partition need more memory as its part of the limit.
+	 * The query must run sequential.
+	 */
+	public void testMemoryLimit() throws Exception{
+		Connection con = AllTests.createConnection("?locale=en;parallelism=4;workmemory=16", null);
+		try{
+			String sql = "SELECT i, count(*) FROM " + TABLE + " GROUP BY i";
+			assertEquals(query(sequentialCon, sql), query(con, sql));
+		}finally{
+			con.close();
+		}
+	}
+
+
+	public void testUncommittedRows() throws Exception{
+		parallelCon.setAutoCommit(false);
+		try{
+			String sql = QUERIES[0];
+			String before = query(parallelCon, sql);
+			Statement st = parallelCon.createStatement();
+			st.execute("INSERT INTO " + TABLE + "(i, grp, d) VALUES(-5, 1, 1.5)");
+			st.close();
+			String after = query(parallelCon, sql);
+			assertFalse(before.equals(after));
+			assertTrue(after, after.startsWith(Integer.toString(Integer.parseInt(before.substring(0, before.indexOf(','))) + 1)));
+		}finally{
+			parallelCon.rollback();
+			parallelCon.setAutoCommit(true);
+		}
+	}
+
+
+	private static String createString(int length){
+		StringBuilder builder = new StringBuilder(length);
+		for(int i = 0; i < length; i++){
+			builder.append((char)('a' + i % 26));
+		}
+		return builder.toString();
+	}
+
+
+	/**
+	 * Execute the query and return all values as string.
+	 */
+	private static String query(Connection con, String sql) throws SQLException{
+		Statement st = con.createStatement();
+		ResultSet rs = st.executeQuery(sql);
+		StringBuilder result = new StringBuilder();
+		int count = rs.getMetaData().getColumnCount();
+		while(rs.next()){
+			for(int c = 1; c <= count; c++){
+				result.append(rs.getObject(c)).append(',');
+			}
+			result.append('\n');
+		}
+		st.close();
+		return result.toString();
+	}
+}
@@ -282,4 +282,49 @@ public class TestResultSet extends BasicTestCase {
         rs.setFetchSize(123);
         assertEquals( rs.getFetchSize(), 123);
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Only the offsets of the needed columns are calculated on reading a row. The other columns must be
+     * readable on demand.
+     */
+    public void testNarrowProjection() throws Exception{
+        Connection con = AllTests.getConnection();
+        Statement st = con.createStatement();
+        try{
+            dropTable(con, "ResultSetWide");
+            st.execute("Create Table ResultSetWide (a int, s smallint, v1 varchar(20), b bigint, v2 varchar(20), d double, v3 varchar(20))");
+            for(int i = 1; i <= 3; i++){
+                st.execute("Insert Into ResultSetWide Values(" + i + "," + (i * 2) + ",'x" + i + "'," + (i * 10) + ","
+                        + (i == 2 ? "null" : "'y" + i + "'") + "," + i + ".5,'z" + i + "')");
+            }
+            ResultSet rs = st.executeQuery("Select v3, a From ResultSetWide Order By a");
+            assertTrue(rs.next());
+            assertEquals("z1", rs.getString(1));
+            assertEquals(1, rs.getInt(2));
+
+            assertEqualsRsValue(new Double(3.5), "Select d From ResultSetWide Where v2 = 'y3'");
+            assertEqualsRsValue(new Long(20), "Select b From ResultSetWide Where v2 is null");
+            assertRowCount(0, "Select x.v3, y.b From ResultSetWide x Left Join ResultSetWide y On x.a = y.a + 100 Where y.b is not null");
+
+            // the update must copy all not selected columns
+            Statement st2 = con.createStatement(ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_UPDATABLE);
+            rs = st2.executeQuery("Select a From ResultSetWide Where a = 2");
+            assertTrue(rs.next());
+            rs.updateInt(1, 5);
+            rs.updateRow();
+            st2.close();
+
+            rs = st.executeQuery("Select * From ResultSetWide Where a = 5");
+            assertTrue(rs.next());
+            assertEquals(4, rs.getInt("s"));
+            assertEquals("x2", rs.getString("v1"));
+            assertEquals(20, rs.getLong("b"));
+            assertNull(rs.getObject("v2"));
+            assertEquals(2.5, rs.getDouble("d"), 0);
+            assertEquals("z2", rs.getString("v3"));
+        }finally{
+            dropTable(con, "ResultSetWide");
+        }
+    }
+}
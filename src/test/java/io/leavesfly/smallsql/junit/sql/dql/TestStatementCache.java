@@ -0,0 +1,172 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestStatementCache.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.dql;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+import io.leavesfly.smallsql.rdb.command.StatementCache;
+
+/**
+ * Test the reuse of parsed commands from the statement cache of the database.
+ */
+public class TestStatementCache extends BasicTestCase {
+
+	private static final String TABLE = "StatementCache";
+
+
+	public void setUp() throws SQLException{
+		Connection con = AllTests.getConnection();
+		dropTable(con, TABLE);
+		Statement st = con.createStatement();
+		st.execute("CREATE TABLE " + TABLE + " (i int, v varchar(20))");
+		for(int i = 0; i < 10; i++){
+			st.execute("INSERT INTO " + TABLE + " VALUES(" + i + ", 'Value" + i + "')");
+		}
+		st.close();
+	}
+
+
+	public void tearDown() throws SQLException{
+		dropTable(AllTests.getConnection(), TABLE);
+	}
+
+
+	private StatementCache getCache() throws SQLException{
+		return ((SsConnection)AllTests.getConnection()).getStatementCache();
+	}
+
+
+	public void testNormalize(){
+		assertEquals("SELECT * FROM t WHERE v = 'a  b'", StatementCache.normalize("  SELECT *\n\tFROM   t WHERE v = 'a  b' "));
+		assertEquals("SELECT [a  b] FROM t", StatementCache.normalize("SELECT [a  b]  FROM t"));
+		// a line break end a comment
+		assertEquals("SELECT 1 -- x\nFROM t", StatementCache.normalize(" SELECT 1 -- x\nFROM t"));
+	}
+
+
+	public void testReuse() throws Exception{
+		Connection con = AllTests.getConnection();
+		StatementCache cache = getCache();
+		String sql = "SELECT v FROM " + TABLE + " WHERE i = ?";
+
+		PreparedStatement pr = con.prepareStatement(sql);
+		pr.setInt(1, 3);
+		assertRowCount(1, pr.executeQuery());
+		pr.close();
+
+		long hits = cache.getHitCount();
+		pr = con.prepareStatement("SELECT v  FROM " + TABLE + "\nWHERE i = ?");
+		assertEquals(hits + 1, cache.getHitCount());
+		// the parameter of the previous statement must be cleared
+		try{
+			pr.executeQuery();
+			fail("Parameter not set");
+		}catch(SQLException ex){
+			// expected
+		}
+		pr.setInt(1, 5);
+		ResultSet rs = pr.executeQuery();
+		assertTrue(rs.next());
+		assertEquals("Value5", rs.getString(1));
+
+		// the command is in use and can not be shared
+		PreparedStatement pr2 = con.prepareStatement(sql);
+		assertEquals(hits + 1, cache.getHitCount());
+		pr2.close();
+		pr.close();
+	}
+
+
+	public void testMaxRows() throws Exception{
+		Connection con = AllTests.getConnection();
+		String sql = "SELECT * FROM " + TABLE;
+		Statement st = con.createStatement();
+		st.setMaxRows(2);
+		assertRowCount(2, st.executeQuery(sql));
+		st.close();
+
+		long hits = getCache().getHitCount();
+		st = con.createStatement();
+		assertRowCount(10, st.executeQuery(sql));
+		assertEquals(hits + 1, getCache().getHitCount());
+		st.close();
+	}
+
+
+	public void testInvalidate() throws Exception{
+		Connection con = AllTests.getConnection();
+		String sql = "SELECT * FROM " + TABLE;
+		Statement st = con.createStatement();
+		ResultSet rs = st.executeQuery(sql);
+		assertEquals(2, rs.getMetaData().getColumnCount());
+		st.execute("ALTER TABLE " + TABLE + " ADD x int");
+
+		long hits = getCache().getHitCount();
+		rs = st.executeQuery(sql);
+		assertEquals(3, rs.getMetaData().getColumnCount());
+		assertEquals(hits, getCache().getHitCount());
+
+		dropTable(con, TABLE);
+		st.execute("CREATE TABLE " + TABLE + " (a int)");
+		st.execute("INSERT INTO " + TABLE + " VALUES(7)");
+		rs = st.executeQuery(sql);
+		assertEquals(1, rs.getMetaData().getColumnCount());
+		assertRowCount(1, rs);
+		assertEquals(hits, getCache().getHitCount());
+		st.close();
+	}
+
+
+	public void testOtherConnection() throws Exception{
+		Connection con = AllTests.getConnection();
+		Connection con2 = AllTests.createConnection();
+		try{
+			String sql = "SELECT * FROM " + TABLE;
+			Statement st = con.createStatement();
+			assertRowCount(10, st.executeQuery(sql));
+			st.close();
+
+			// a command is bound to the connection that has compiled it
+			StatementCache cache = ((SsConnection)con2).getStatementCache();
+			long hits = cache.getHitCount();
+			st = con2.createStatement();
+			assertRowCount(10, st.executeQuery(sql));
+			assertEquals(hits, cache.getHitCount());
+			st.close();
+		}finally{
+			con2.close();
+		}
+	}
+
+}
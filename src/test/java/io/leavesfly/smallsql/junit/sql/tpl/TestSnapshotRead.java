@@ -0,0 +1,245 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestSnapshotRead.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.tpl;
+
+import java.sql.*;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.junit.AllTests;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+import io.leavesfly.smallsql.rdb.engine.store.VersionStore;
+
+/**
+ * Test that readers see a snapshot of the committed rows without page locks
+ * and that concurrent writers are not blocked from the readers.
+ */
+public class TestSnapshotRead extends BasicTestCase {
+
+    private static final String TABLE = "snapshotread";
+    private static final String INDEX_TABLE = "snapshotindex";
+    private static final int COUNT = 200;
+
+    private Connection reader;
+
+
+    public void setUp() throws Exception{
+        Connection con = AllTests.getConnection();
+        dropTable(con, TABLE);
+        Statement st = con.createStatement();
+        st.execute("CREATE TABLE " + TABLE + " (id int, v varchar(200), n int)");
+        PreparedStatement pr = con.prepareStatement("INSERT INTO " + TABLE + " VALUES(?, ?, ?)");
+        for(int i = 0; i < COUNT; i++){
+            pr.setInt(1, i);
+            pr.setString(2, "v" + i);
+            pr.setInt(3, 1);
+            pr.execute();
+        }
+        pr.close();
+        st.close();
+        reader = AllTests.createConnection();
+    }
+
+
+    public void tearDown() throws Exception{
+        reader.close();
+        Connection con = AllTests.getConnection();
+        con.setAutoCommit(true);
+        con.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        dropTable(con, TABLE);
+    }
+
+
+    public void testRepeatableRead() throws Exception{
+        Connection con = AllTests.getConnection();
+        reader.setAutoCommit(false);
+        reader.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        assertSum(COUNT, COUNT);
+
+        // the writer is not blocked from the rows that the reader has read
+        long time = System.currentTimeMillis();
+        Statement st = con.createStatement();
+        assertEquals(COUNT, st.executeUpdate("UPDATE " + TABLE + " SET n = 2"));
+        st.execute("INSERT INTO " + TABLE + " VALUES(1000, 'new', 5)");
+        assertEquals(1, st.executeUpdate("DELETE FROM " + TABLE + " WHERE id = 7"));
+        assertTrue("Writer was blocked", System.currentTimeMillis() - time < 5000);
+        assertTrue(getVersionCount() > 0);
+
+        // the reader see ever its snapshot
+        assertSum(COUNT, COUNT);
+        assertEqualsRsValue("v7", reader, "SELECT v FROM " + TABLE + " WHERE id = 7");
+
+        reader.commit();
+        assertSum(COUNT, COUNT * 2 - 2 + 5);
+        assertEquals("Old versions are not removed", 0, getVersionCount());
+    }
+
+
+    public void testReadCommitted() throws Exception{
+        Connection con = AllTests.getConnection();
+        reader.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        con.setAutoCommit(false);
+        Statement st = con.createStatement();
+        st.executeUpdate("UPDATE " + TABLE + " SET n = 3 WHERE id < 100");
+        st.execute("INSERT INTO " + TABLE + " VALUES(1000, 'new', 5)");
+
+        // the reader see the last committed rows without waiting for the writer
+        long time = System.currentTimeMillis();
+        assertSum(COUNT, COUNT);
+        assertTrue("Reader was blocked", System.currentTimeMillis() - time < 5000);
+
+        // the writer see its own changes
+        assertEqualsRsValue(new Integer(100 * 3 + 100 + 5), con, "SELECT SUM(n) FROM " + TABLE);
+
+        con.commit();
+        assertSum(COUNT + 1, 100 * 3 + 100 + 5);
+        con.setAutoCommit(true);
+        assertEquals(0, getVersionCount());
+    }
+
+
+    public void testMovedRows() throws Exception{
+        Connection con = AllTests.getConnection();
+        reader.setAutoCommit(false);
+        reader.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        assertSum(COUNT, COUNT);
+
+        // the larger values does not fit into the old pages of the rows
+        String value = "0123456789012345678901234567890123456789";
+        Statement st = con.createStatement();
+        assertEquals(COUNT, st.executeUpdate("UPDATE " + TABLE + " SET v = CONCAT('" + value + "', v), n = 4"));
+
+        assertSum(COUNT, COUNT);
+        assertEqualsRsValue("v123", reader, "SELECT v FROM " + TABLE + " WHERE id = 123");
+
+        reader.rollback();
+        assertSum(COUNT, COUNT * 4);
+        assertEqualsRsValue(value + "v123", reader, "SELECT v FROM " + TABLE + " WHERE id = 123");
+        reader.commit();
+        assertEquals(0, getVersionCount());
+    }
+
+
+    public void testSpillVersions() throws Exception{
+        // a writer with only 4 KB work memory for the versions of its commits
+        Connection con = AllTests.createConnection("?workmemory=4", null);
+        try{
+            reader.setAutoCommit(false);
+            reader.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            assertSum(COUNT, COUNT);
+            assertEqualsRsValue("v77", reader, "SELECT v FROM " + TABLE + " WHERE id = 77");
+
+            Statement st = con.createStatement();
+            for(int i = 0; i < 20; i++){
+                assertEquals(COUNT, st.executeUpdate("UPDATE " + TABLE + " SET n = n + 1, v = CONCAT('x', v)"));
+            }
+            VersionStore store = getVersionStore();
+            assertTrue("Versions are not spilled", store.getMemorySize() <= 4096);
+            assertTrue(store.getVersionCount() >= COUNT * 20);
+
+            // the snapshot read the spilled versions
+            assertSum(COUNT, COUNT);
+            assertEqualsRsValue("v77", reader, "SELECT v FROM " + TABLE + " WHERE id = 77");
+
+            reader.commit();
+            assertSum(COUNT, COUNT * 21);
+            assertEquals(0, store.getVersionCount());
+            assertEquals(0, store.getMemorySize());
+        }finally{
+            con.close();
+        }
+    }
+
+
+    public void testIndexLookup() throws Exception{
+        Connection con = AllTests.getConnection();
+        dropTable(con, INDEX_TABLE);
+        Statement st = con.createStatement();
+        try{
+            st.execute("CREATE TABLE " + INDEX_TABLE + " (id int PRIMARY KEY, v varchar(20))");
+            for(int i = 0; i < 50; i++){
+                st.execute("INSERT INTO " + INDEX_TABLE + " VALUES(" + i + ", 'x" + i + "')");
+            }
+            reader.setAutoCommit(false);
+            reader.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            assertEqualsRsValue("x7", reader, "SELECT v FROM " + INDEX_TABLE + " WHERE id = 7");
+
+            long time = System.currentTimeMillis();
+            assertEquals(1, st.executeUpdate("DELETE FROM " + INDEX_TABLE + " WHERE id = 7"));
+            assertEquals(1, st.executeUpdate("UPDATE " + INDEX_TABLE + " SET id = 1000 WHERE id = 8"));
+            assertTrue("Writer was blocked", System.currentTimeMillis() - time < 5000);
+
+            // the lookups with the primary key find the rows of the snapshot
+            assertEqualsRsValue("x7", reader, "SELECT v FROM " + INDEX_TABLE + " WHERE id = 7");
+            assertEqualsRsValue("x8", reader, "SELECT v FROM " + INDEX_TABLE + " WHERE id = 8");
+            assertFalse(reader.createStatement().executeQuery("SELECT v FROM " + INDEX_TABLE + " WHERE id = 1000").next());
+            assertEqualsRsValue(new Integer(50), reader, "SELECT count(*) FROM " + INDEX_TABLE);
+            assertEqualsRsValue(new Integer(7), reader, "SELECT id FROM " + INDEX_TABLE + " WHERE v = 'x7'");
+
+            reader.commit();
+            assertFalse(reader.createStatement().executeQuery("SELECT v FROM " + INDEX_TABLE + " WHERE id = 7").next());
+            assertEqualsRsValue("x8", reader, "SELECT v FROM " + INDEX_TABLE + " WHERE id = 1000");
+            assertEqualsRsValue(new Integer(49), reader, "SELECT count(*) FROM " + INDEX_TABLE);
+        }finally{
+            reader.setAutoCommit(true);
+            dropTable(con, INDEX_TABLE);
+        }
+    }
+
+
+    /**
+     * Verify the row count and the sum of the column n that the reader see.
+     */
+    private void assertSum(int count, int sum) throws Exception{
+        ResultSet rs = reader.createStatement().executeQuery("SELECT count(*), SUM(n) FROM " + TABLE);
+        assertTrue(rs.next());
+        assertEquals("Wrong row count", count, rs.getInt(1));
+        assertEquals("Wrong sum", sum, rs.getInt(2));
+        rs.close();
+    }
+
+
+    private void assertEqualsRsValue(Object obj, Connection con, String sql) throws Exception{
+        ResultSet rs = con.createStatement().executeQuery(sql);
+        assertTrue("No row produce", rs.next());
+        assertEquals(obj, rs.getObject(1));
+        rs.close();
+    }
+
+
+    private int getVersionCount() throws Exception{
+        return getVersionStore().getVersionCount();
+    }
+
+
+    private VersionStore getVersionStore() throws Exception{
+        return ((SsConnection)AllTests.getConnection()).getDatabase(false).getVersionStore();
+    }
+}
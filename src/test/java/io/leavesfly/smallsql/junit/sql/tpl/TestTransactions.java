@@ -32,6 +32,7 @@
  * Created on 05.08.2004
  */
 package io.leavesfly.smallsql.junit.sql.tpl;
+import java.io.File;
 import java.sql.*;
 
 import io.leavesfly.smallsql.junit.AllTests;
@@ -107,6 +108,127 @@ public class TestTransactions extends BasicTestCase {
 	}
 	
 
+	/**
+	 * A large transaction with new rows, updates of new rows and updates of
+	 * committed rows. All pages are written together on commit.
+	 */
+	public void testCommitManyPages() throws Exception{
+		Connection con = AllTests.getConnection();
+		try{
+			con.createStatement().execute("Create Table transactions (i int, v varchar(20))");
+			con.createStatement().execute("Insert Into transactions Values(-1, 'old')");
+			con.setAutoCommit(false);
+			PreparedStatement pr = con.prepareStatement("Insert Into transactions Values(?,?)");
+			for(int i = 0; i < 1000; i++){
+				pr.setInt(1, i);
+				pr.setString(2, "v" + i);
+				pr.execute();
+			}
+			pr.close();
+			assertEquals( 10, con.createStatement().executeUpdate("Update transactions set v='updated' Where i>=100 and i<110") );
+			assertEquals( 1, con.createStatement().executeUpdate("Update transactions set v='old updated' Where i=-1") );
+			assertEquals( 1, con.createStatement().executeUpdate("Delete From transactions Where i=500") );
+			con.commit();
+
+			assertRowCount( 1000, "Select * from transactions");
+			assertRowCount( 10, "Select * from transactions Where v='updated'");
+			assertEqualsRsValue("old updated", "Select v from transactions Where i=-1");
+			assertEqualsRsValue("v999", "Select v from transactions Where i=999");
+			assertRowCount( 0, "Select * from transactions Where i=500");
+		}finally{
+			try{
+				con.createStatement().execute("Drop Table transactions");
+			}catch(Throwable e){e.printStackTrace();}
+			con.setAutoCommit(true);
+		}
+	}
+	
+
+	/**
+	 * Commits with the durability levels fsync and group from concurrent
+	 * connections.
+	 */
+	public void testDurability() throws Throwable{
+		Connection con = AllTests.getConnection();
+		try{
+			con.createStatement().execute("Create Table transactions (i int, v varchar(20))");
+			String[] modes = {"fsync", "group"};
+			for(int m = 0; m < modes.length; m++){
+				final Connection[] cons = new Connection[4];
+				final Throwable[] errors = new Throwable[1];
+				Thread[] threads = new Thread[cons.length];
+				for(int t = 0; t < cons.length; t++){
+					cons[t] = DriverManager.getConnection(AllTests.JDBC_URL + "?locale=en;durability=" + modes[m]);
+					final int id = t;
+					threads[t] = new Thread(){
+						public void run(){
+							try{
+								for(int i = 0; i < 20; i++){
+									cons[id].createStatement().execute("Insert Into transactions Values(" + id + ", 'v" + i + "')");
+								}
+							}catch(Throwable e){
+								errors[0] = e;
+							}
+						}
+					};
+					threads[t].start();
+				}
+				for(int t = 0; t < cons.length; t++){
+					threads[t].join();
+					cons[t].close();
+				}
+				if(errors[0] != null){
+					throw errors[0];
+				}
+				assertRowCount( 80 * (m + 1), "Select * from transactions");
+			}
+
+			try{
+				DriverManager.getConnection(AllTests.JDBC_URL + "?locale=en;durability=xyz");
+				fail("SQLException should be thrown");
+			}catch(SQLException ex){
+				// expected
+			}
+		}finally{
+			try{
+				con.createStatement().execute("Drop Table transactions");
+			}catch(Throwable e){e.printStackTrace();}
+		}
+	}
+	
+
+	/**
+	 * The durability level group on the connection that creates a new database.
+	 */
+	public void testDurabilityGroupCreate() throws Exception{
+		File dir = new File(AllTests.CATALOG + "Group");
+		deleteFiles(dir);
+		Connection con = DriverManager.getConnection("jdbc:smallsql:" + dir.getPath() + "?create=true;locale=en;durability=group");
+		try{
+			Statement st = con.createStatement();
+			st.execute("Create Table transactions (i int, v varchar(20))");
+			st.execute("Insert Into transactions Values(1, 'v1')");
+			ResultSet rs = st.executeQuery("Select count(*) From transactions");
+			assertTrue(rs.next());
+			assertEquals(1, rs.getInt(1));
+			st.execute("Drop Table transactions");
+		}finally{
+			con.close();
+		}
+	}
+
+
+	private static void deleteFiles(File file){
+		File[] files = file.listFiles();
+		if(files != null){
+			for(int i = 0; i < files.length; i++){
+				deleteFiles(files[i]);
+			}
+		}
+		file.delete();
+	}
+	
+
 	/**
 	 * In the table there is already one row that is committed.
 	 */
@@ -494,9 +616,16 @@ public class TestTransactions extends BasicTestCase {
 			con1.setAutoCommit(false);
 			con1.createStatement().execute("Update transactions Set v = 'qwert'");
 			
+			// a reader see the last committed version without waiting
+			ResultSet rs = con2.createStatement().executeQuery("Select v from transactions");
+			assertTrue( rs.next() );
+			assertEquals( "qwert1", rs.getString(1) );
+
+			// a concurrent writer must wait for the lock
 			long time = System.currentTimeMillis();
 			try{
-				con2.createStatement().executeQuery("Select count(*) from transactions");
+				con2.createStatement().execute("Update transactions Set v = 'asdfg'");
+				fail("Update should be locked");
 			}catch(SQLException ex){
 			    assertSQLException("01000", 0, ex);
 			}		
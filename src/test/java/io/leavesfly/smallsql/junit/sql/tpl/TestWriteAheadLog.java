@@ -0,0 +1,209 @@
+/* =============================================================
+ * SmallSQL : a free Java DBMS library for the Java(tm) platform
+ * =============================================================
+ *
+ * (C) Copyright 2004-2011, by Volker Berlin.
+ *
+ * Project Info:  http://www.smallsql.de/
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation; either version 2.1 of the License, or
+ * (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ *
+ * [Java is a trademark or registered trademark of Sun Microsystems, Inc.
+ * in the United States and other countries.]
+ *
+ * ---------------
+ * TestWriteAheadLog.java
+ * ---------------
+ */
+package io.leavesfly.smallsql.junit.sql.tpl;
+
+import java.io.*;
+import java.sql.*;
+import java.util.ArrayList;
+
+import io.leavesfly.smallsql.jdbc.SsConnection;
+import io.leavesfly.smallsql.junit.BasicTestCase;
+
+/**
+ * Test the write ahead log with its own database that can be closed and
+ * reopened.
+ */
+public class TestWriteAheadLog extends BasicTestCase {
+
+    private static final String DATABASE = "testwal";
+
+    private final File tableFile = new File(DATABASE, "wal.sdb");
+    private final File logFile = new File(DATABASE, "smallsql.wal");
+
+    private final ArrayList<Connection> connections = new ArrayList<Connection>();
+
+
+    public void setUp() throws Exception{
+        Class.forName("io.leavesfly.smallsql.SsDriver");
+        Connection con = open("");
+        con.createStatement().execute("CREATE TABLE wal (id int, v varchar(100))");
+        con.close();
+    }
+
+
+    public void tearDown() throws Exception{
+        // the database is only closed if all its connections are closed
+        for(int i = 0; i < connections.size(); i++){
+            Connection con = connections.get(i);
+            if(!con.isClosed()){
+                con.close();
+            }
+        }
+        Connection con = DriverManager.getConnection("jdbc:smallsql");
+        con.createStatement().execute("DROP DATABASE " + DATABASE);
+        con.close();
+    }
+
+
+    private Connection open(String options) throws SQLException{
+        Connection con = DriverManager.getConnection("jdbc:smallsql:" + DATABASE + "?create=true;locale=en" + options);
+        connections.add(con);
+        return con;
+    }
+
+
+    private void insert(Connection con, int from, int to) throws SQLException{
+        PreparedStatement pr = con.prepareStatement("INSERT INTO wal (id, v) VALUES (?, ?)");
+        for(int i = from; i < to; i++){
+            pr.setInt(1, i);
+            pr.setString(2, "value of the row " + i + " with some padding to make the rows larger");
+            pr.executeUpdate();
+        }
+        pr.close();
+    }
+
+
+    private void assertRows(Connection con, int count, String where) throws Exception{
+        ResultSet rs = con.createStatement().executeQuery("SELECT * FROM wal " + where);
+        assertRowCount(count, rs);
+    }
+
+
+    /**
+     * A crash after the log record of a commit was written but before the table file was changed.
+     */
+    public void testRecovery() throws Exception{
+        Connection con = open("");
+        insert(con, 0, 10);
+        ((SsConnection)con).getDatabase(false).checkpoint();
+        assertEquals("log after checkpoint", 0, logFile.length());
+        byte[] table = readFile(tableFile);
+
+        con.setAutoCommit(false);
+        insert(con, 10, 20);
+        con.createStatement().execute("UPDATE wal SET v = 'updated' WHERE id < 5");
+        con.commit();
+        byte[] log = readFile(logFile);
+        assertTrue("log size", log.length > 0);
+        con.close();
+
+        writeFile(tableFile, table);
+        writeFile(logFile, log);
+        con = open("");
+        assertEquals("log after recovery", 0, logFile.length());
+        assertRows(con, 20, "");
+        assertRows(con, 5, "WHERE v = 'updated'");
+        con.close();
+    }
+
+
+    /**
+     * A record that was not written completely must be ignored.
+     */
+    public void testTornRecord() throws Exception{
+        Connection con = open("");
+        insert(con, 0, 10);
+        con.close();
+
+        byte[] torn = {1, 0, 0, 1, 0, 0, 0, 0, 5, 'w', 'a'};
+        writeFile(logFile, torn);
+        con = open("");
+        assertRows(con, 10, "");
+        insert(con, 10, 15);
+        assertRows(con, 15, "");
+        con.close();
+    }
+
+
+    /**
+     * A transaction that is larger as the work memory spill its pages into the log.
+     */
+    public void testSpill() throws Exception{
+        Connection con = open(";workmemory=16");
+        con.setAutoCommit(false);
+        insert(con, 0, 2000);
+        assertTrue("spilled", logFile.length() > 100000);
+        assertRows(con, 2000, "");
+        assertRows(con, 1, "WHERE id = 7 AND v = 'value of the row 7 with some padding to make the rows larger'");
+        con.createStatement().execute("UPDATE wal SET v = 'updated' WHERE id < 1000");
+        assertRows(con, 1000, "WHERE v = 'updated'");
+        con.rollback();
+        assertRows(con, 0, "");
+
+        insert(con, 0, 2000);
+        con.createStatement().execute("UPDATE wal SET v = 'updated' WHERE id < 1000");
+        con.commit();
+        con.close();
+
+        con = open("");
+        assertRows(con, 2000, "");
+        assertRows(con, 1000, "WHERE v = 'updated'");
+        con.close();
+    }
+
+
+    /**
+     * The checkpointer truncate the log if it is larger as the checkpoint size.
+     */
+    public void testCheckpointer() throws Exception{
+        Connection con = open(";checkpointsize=16");
+        insert(con, 0, 1000);
+        long end = System.currentTimeMillis() + 10000;
+        while(logFile.length() > 64 * 1024 && System.currentTimeMillis() < end){
+            Thread.sleep(10);
+        }
+        assertTrue("log size", logFile.length() <= 64 * 1024);
+        assertRows(con, 1000, "");
+        con.close();
+    }
+
+
+    private static byte[] readFile(File file) throws IOException{
+        byte[] data = new byte[(int)file.length()];
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try{
+            input.readFully(data);
+        }finally{
+            input.close();
+        }
+        return data;
+    }
+
+
+    private static void writeFile(File file, byte[] data) throws IOException{
+        FileOutputStream output = new FileOutputStream(file);
+        try{
+            output.write(data);
+        }finally{
+            output.close();
+        }
+    }
+}